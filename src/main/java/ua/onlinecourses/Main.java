@@ -8,8 +8,10 @@ import ua.onlinecourses.parallel.CompletableFutureProcessor;
 import ua.onlinecourses.parallel.ExecutorServiceProcessor;
 import ua.onlinecourses.parallel.ParallelDataLoader;
 import ua.onlinecourses.parallel.ProcessingComparison;
+import ua.onlinecourses.parallel.StorageModeComparison;
 import ua.onlinecourses.persistence.PersistenceManager;
 import ua.onlinecourses.repository.CourseRepository;
+import ua.onlinecourses.repository.ExecutionPolicy;
 import ua.onlinecourses.repository.InstructorRepository;
 import ua.onlinecourses.repository.ModuleRepository;
 import ua.onlinecourses.repository.StudentRepository;
@@ -36,6 +38,11 @@ public class Main {
             CourseRepository courseRepo = new CourseRepository();
             InstructorRepository instructorRepo = new InstructorRepository();
             ModuleRepository moduleRepo = new ModuleRepository();
+            ExecutionPolicy scanPolicy = ExecutionPolicy.fromConfig(config);
+            studentRepo.setExecutionPolicy(scanPolicy);
+            courseRepo.setExecutionPolicy(scanPolicy);
+            instructorRepo.setExecutionPolicy(scanPolicy);
+            moduleRepo.setExecutionPolicy(scanPolicy);
 
             logger.log(Level.INFO, "Parallel Data Loading from CSV Files");
             demonstrateParallelLoading(studentRepo, courseRepo, instructorRepo, moduleRepo);
@@ -84,6 +91,7 @@ public class Main {
             logger.log(Level.INFO, "  Courses: {0}", courseRepo.size());
             logger.log(Level.INFO, "  Instructors: {0}", instructorRepo.size());
             logger.log(Level.INFO, "  Modules: {0}", moduleRepo.size());
+            logger.log(Level.INFO, "  Shared student names: {0}", studentRepo.getValueDictionary().getStats());
 
         } catch (Exception e) {
             logger.log(Level.SEVERE, "Error during parallel loading: {0}", e.getMessage());
@@ -147,6 +155,14 @@ public class Main {
         logger.log(Level.INFO, "");
 
         ProcessingComparison.compareSumApproaches(courseRepo);
+
+        logger.log(Level.INFO, "");
+
+        StorageModeComparison.compareAcrossWriteRatios(10_000, 4, 2_000, 0.1, 0.5, 0.9);
+
+        logger.log(Level.INFO, "");
+
+        ProcessingComparison.benchmarkParallelScan(100_000, 3, 5);
     }
 
     private static void demonstrateRepositoryWithValidation(AppConfig config, PersistenceManager manager)
@@ -87,6 +87,10 @@ public class AppConfig {
         return combinePaths(basePath, filename);
     }
 
+    public String getJournalFilePath(String entityType) {
+        return combinePaths(getBaseDataPath(), String.format("%s.journal", entityType.toLowerCase()));
+    }
+
     public String getBaseDataPath() {
         return getProperty("data.path.base", "./data");
     }
@@ -24,4 +24,14 @@ public final class ConfigKeys {
     public static final String DATA_PATH_ASSIGNMENTS_YAML = "data.path.assignments.yaml";
 
     public static final String TEST_DATA_COUNT = "test.data.count";
+
+    public static final String REPOSITORY_PARALLEL_THRESHOLD = "repository.parallel.threshold";
+    public static final String REPOSITORY_PARALLELISM = "repository.parallel.parallelism";
+
+    public static final String JOURNAL_CHECKPOINT_INTERVAL = "journal.checkpoint.interval";
+    public static final String JOURNAL_SYNC = "journal.sync";
+
+    public static final String PERSISTENCE_NORMALIZE_ASSIGNMENTS = "persistence.assignments.normalized";
+    public static final String PERSISTENCE_FLUSH_DELAY_MS = "persistence.writebehind.delay.ms";
+    public static final String PERSISTENCE_MAX_LAG_MS = "persistence.writebehind.maxlag.ms";
 }
\ No newline at end of file
@@ -5,6 +5,7 @@ import jakarta.validation.constraints.Min;
 import jakarta.validation.constraints.NotNull;
 
 import java.time.LocalDate;
+import java.time.format.DateTimeParseException;
 import java.util.Comparator;
 import java.util.logging.Level;
 import java.util.logging.Logger;
@@ -73,7 +74,42 @@ public record Assignment(
 
     @com.fasterxml.jackson.annotation.JsonIgnore
     public String getIdentity() {
-        return module.getFullName() + "-" + dueDate.toString();
+        return identityKey().toString();
+    }
+
+    public Key identityKey() {
+        return new Key(module.getFullName(), dueDate);
+    }
+
+    // composite identity; toString() gives the same string as getIdentity()
+    public record Key(String moduleName, LocalDate dueDate) implements Comparable<Key> {
+
+        private static final Comparator<Key> ORDER =
+                Comparator.comparing(Key::moduleName).thenComparing(Key::dueDate);
+
+        // returns null when the identity is not "<module>-<yyyy-MM-dd>"
+        public static Key parse(String identity) {
+            int dateLength = "yyyy-MM-dd".length();
+            int separator = identity.length() - dateLength - 1;
+            if (separator < 0 || identity.charAt(separator) != '-') {
+                return null;
+            }
+            try {
+                return new Key(identity.substring(0, separator), LocalDate.parse(identity.substring(separator + 1)));
+            } catch (DateTimeParseException e) {
+                return null;
+            }
+        }
+
+        @Override
+        public int compareTo(Key other) {
+            return ORDER.compare(this, other);
+        }
+
+        @Override
+        public String toString() {
+            return moduleName + "-" + dueDate;
+        }
     }
 
     @Override
@@ -91,7 +91,7 @@ public class CompletableFutureProcessor {
             logger.log(Level.INFO, "Thread [{0}] filtering courses with credits >= {1}",
                     new Object[]{threadName, minCredits});
             try {
-                long count = repository.getAll().stream()
+                long count = repository.stream()
                         .filter(c -> c.credits() >= minCredits)
                         .count();
                 long endTime = System.currentTimeMillis();
@@ -58,7 +58,7 @@ public class DataProcessingService {
             logger.log(Level.INFO, "Thread [{0}] started counting courses with credits >= {1}",
                     new Object[]{threadName, minCredits});
             try {
-                long count = repository.getAll().stream()
+                long count = repository.stream()
                         .filter(c -> c.credits() >= minCredits)
                         .count();
                 logger.log(Level.INFO, "Thread [{0}] completed counting. Found {1} courses",
@@ -135,7 +135,7 @@ public class DataProcessingService {
             String threadName = Thread.currentThread().getName();
             logger.log(Level.INFO, "Thread [{0}] started printing students", threadName);
             try {
-                List<Student> students = repository.getAll();
+                List<Student> students = repository.asReadOnlyList();
                 logger.log(Level.INFO, "Thread [{0}] processing {1} students",
                         new Object[]{threadName, students.size()});
                 for (Student student : students) {
@@ -1,9 +1,5 @@
 package ua.onlinecourses.parallel;
 
-import ua.onlinecourses.model.Course;
-import ua.onlinecourses.model.Instructor;
-import ua.onlinecourses.model.Student;
-import ua.onlinecourses.model.myModule;
 import ua.onlinecourses.parser.CourseFileParser;
 import ua.onlinecourses.parser.InstructorFileParser;
 import ua.onlinecourses.parser.ModuleFileParser;
@@ -13,7 +9,6 @@ import ua.onlinecourses.repository.InstructorRepository;
 import ua.onlinecourses.repository.ModuleRepository;
 import ua.onlinecourses.repository.StudentRepository;
 
-import java.util.List;
 import java.util.concurrent.CompletableFuture;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
@@ -78,13 +73,7 @@ public class ParallelDataLoader {
             String threadName = Thread.currentThread().getName();
             logger.log(Level.INFO, "Thread [{0}] started loading students from {1}", new Object[]{threadName, filePath});
             try {
-                List<Student> students = StudentFileParser.parseFromCSV(filePath);
-                int count = 0;
-                for (Student student : students) {
-                    if (studentRepository.add(student)) {
-                        count++;
-                    }
-                }
+                int count = StudentFileParser.loadIntoRepository(filePath, studentRepository).addedCount();
                 logger.log(Level.INFO, "Thread [{0}] completed loading {1} students", new Object[]{threadName, count});
                 return count;
             } catch (Exception e) {
@@ -99,13 +88,7 @@ public class ParallelDataLoader {
             String threadName = Thread.currentThread().getName();
             logger.log(Level.INFO, "Thread [{0}] started loading courses from {1}", new Object[]{threadName, filePath});
             try {
-                List<Course> courses = CourseFileParser.parseFromCSV(filePath);
-                int count = 0;
-                for (Course course : courses) {
-                    if (courseRepository.add(course)) {
-                        count++;
-                    }
-                }
+                int count = CourseFileParser.loadIntoRepository(filePath, courseRepository).addedCount();
                 logger.log(Level.INFO, "Thread [{0}] completed loading {1} courses", new Object[]{threadName, count});
                 return count;
             } catch (Exception e) {
@@ -120,13 +103,7 @@ public class ParallelDataLoader {
             String threadName = Thread.currentThread().getName();
             logger.log(Level.INFO, "Thread [{0}] started loading instructors from {1}", new Object[]{threadName, filePath});
             try {
-                List<Instructor> instructors = InstructorFileParser.parseFromCSV(filePath);
-                int count = 0;
-                for (Instructor instructor : instructors) {
-                    if (instructorRepository.add(instructor)) {
-                        count++;
-                    }
-                }
+                int count = InstructorFileParser.loadIntoRepository(filePath, instructorRepository).addedCount();
                 logger.log(Level.INFO, "Thread [{0}] completed loading {1} instructors", new Object[]{threadName, count});
                 return count;
             } catch (Exception e) {
@@ -141,13 +118,7 @@ public class ParallelDataLoader {
             String threadName = Thread.currentThread().getName();
             logger.log(Level.INFO, "Thread [{0}] started loading modules from {1}", new Object[]{threadName, filePath});
             try {
-                List<myModule> modules = ModuleFileParser.parseFromCSV(filePath);
-                int count = 0;
-                for (myModule module : modules) {
-                    if (moduleRepository.add(module)) {
-                        count++;
-                    }
-                }
+                int count = ModuleFileParser.loadIntoRepository(filePath, moduleRepository).addedCount();
                 logger.log(Level.INFO, "Thread [{0}] completed loading {1} modules", new Object[]{threadName, count});
                 return count;
             } catch (Exception e) {
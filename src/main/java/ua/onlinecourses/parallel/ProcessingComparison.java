@@ -2,8 +2,16 @@ package ua.onlinecourses.parallel;
 
 import ua.onlinecourses.model.Course;
 import ua.onlinecourses.repository.CourseRepository;
+import ua.onlinecourses.repository.ExecutionPolicy;
+import ua.onlinecourses.repository.GenericRepository;
+import ua.onlinecourses.repository.StorageMode;
+import ua.onlinecourses.util.ValidationUtils;
 
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.EnumMap;
 import java.util.List;
+import java.util.Map;
 import java.util.concurrent.CompletableFuture;
 import java.util.logging.Level;
 import java.util.logging.Logger;
@@ -17,6 +25,7 @@ public class ProcessingComparison {
 
         long parallelStreamResult = filterWithParallelStream(repository, minCredits);
         long sequentialStreamResult = filterWithSequentialStream(repository, minCredits);
+        long repositoryPolicyResult = filterWithRepositoryPolicy(repository, minCredits);
 
         ExecutorServiceProcessor executorProcessor = new ExecutorServiceProcessor(4);
         long executorServiceResult = executorProcessor.filterCoursesWithExecutorService(repository, minCredits);
@@ -33,10 +42,12 @@ public class ProcessingComparison {
         logger.log(Level.INFO, "=== Comparison Results ===");
         logger.log(Level.INFO, "Sequential Stream result: {0}", sequentialStreamResult);
         logger.log(Level.INFO, "Parallel Stream result: {0}", parallelStreamResult);
+        logger.log(Level.INFO, "Repository policy result: {0}", repositoryPolicyResult);
         logger.log(Level.INFO, "ExecutorService result: {0}", executorServiceResult);
         logger.log(Level.INFO, "CompletableFuture result: {0}", completableFutureResult);
 
         boolean allEqual = (parallelStreamResult == sequentialStreamResult) &&
+                           (sequentialStreamResult == repositoryPolicyResult) &&
                            (sequentialStreamResult == executorServiceResult) &&
                            (executorServiceResult == completableFutureResult);
         logger.log(Level.INFO, "All results equal: {0}", allEqual);
@@ -87,6 +98,27 @@ public class ProcessingComparison {
         }
     }
 
+    // lets the repository's execution policy pick sequential or parallel by size, without copying via getAll()
+    public static long filterWithRepositoryPolicy(CourseRepository repository, int minCredits) {
+        String threadName = Thread.currentThread().getName();
+        logger.log(Level.INFO, "Thread [{0}] starting repository policy filtering", threadName);
+        long startTime = System.currentTimeMillis();
+
+        try {
+            ExecutionPolicy.Execution<Long> execution = repository.scan(courses -> courses
+                    .filter(course -> course.credits() >= minCredits)
+                    .count());
+
+            long endTime = System.currentTimeMillis();
+            logger.log(Level.INFO, "Repository policy filtering ran {0} in {1} ms. Found {2} courses",
+                    new Object[]{execution.mode(), (endTime - startTime), execution.result()});
+            return execution.result();
+        } catch (Exception e) {
+            logger.log(Level.SEVERE, "Error in repository policy filtering: {0}", e.getMessage());
+            return 0;
+        }
+    }
+
     public static int sumCreditsWithParallelStream(CourseRepository repository) {
         String threadName = Thread.currentThread().getName();
         logger.log(Level.INFO, "Thread [{0}] starting Parallel Stream credits sum", threadName);
@@ -149,4 +181,98 @@ public class ProcessingComparison {
         logger.log(Level.INFO, "CompletableFuture sum: {0}", completableFutureResult);
         logger.log(Level.INFO, "Results equal: {0}", parallelResult == completableFutureResult);
     }
+
+    public static long filterWithRepositoryParallelStream(CourseRepository repository, int minCredits) {
+        return repository.parallelStream()
+                .filter(course -> course.credits() >= minCredits)
+                .count();
+    }
+
+    // copy-then-parallelStream (getAll) against the repository's own spliterator, same filter,
+    // best of several rounds after a warm-up; returns how many times faster the direct path is
+    public static double compareParallelScanPaths(CourseRepository repository, int minCredits, int rounds) {
+        logger.log(Level.INFO, "=== Comparing parallel scan paths over {0} courses ({1} storage) ===",
+                new Object[]{repository.size(), repository.getStorageMode()});
+
+        // getAll() logs once per call, which would skew the copy path
+        Logger repositoryLogger = Logger.getLogger(GenericRepository.class.getName());
+        Level previousLevel = repositoryLogger.getLevel();
+        repositoryLogger.setLevel(Level.WARNING);
+        try {
+            long copyResult = 0;
+            long directResult = 0;
+            long bestCopy = Long.MAX_VALUE;
+            long bestDirect = Long.MAX_VALUE;
+            for (int round = 0; round <= rounds; round++) {
+                long start = System.nanoTime();
+                copyResult = repository.getAll().parallelStream()
+                        .filter(course -> course.credits() >= minCredits)
+                        .count();
+                long copyElapsed = System.nanoTime() - start;
+
+                start = System.nanoTime();
+                directResult = filterWithRepositoryParallelStream(repository, minCredits);
+                long directElapsed = System.nanoTime() - start;
+
+                // round 0 only warms up both paths
+                if (round > 0) {
+                    bestCopy = Math.min(bestCopy, copyElapsed);
+                    bestDirect = Math.min(bestDirect, directElapsed);
+                }
+            }
+
+            double speedup = bestDirect == 0 ? 1.0 : (double) bestCopy / bestDirect;
+            logger.log(Level.INFO, "getAll().parallelStream(): {0} us, found {1}",
+                    new Object[]{bestCopy / 1_000, copyResult});
+            logger.log(Level.INFO, "repository.parallelStream(): {0} us, found {1}",
+                    new Object[]{bestDirect / 1_000, directResult});
+            logger.log(Level.INFO, "Speedup: {0}x, results equal: {1}",
+                    new Object[]{String.format("%.2f", speedup), copyResult == directResult});
+            return speedup;
+        } finally {
+            repositoryLogger.setLevel(previousLevel);
+        }
+    }
+
+    public static Map<StorageMode, Double> benchmarkParallelScan(int courseCount, int minCredits, int rounds) {
+        Map<StorageMode, Double> results = new EnumMap<>(StorageMode.class);
+        List<Course> courses = generateCourses(courseCount);
+        for (StorageMode mode : StorageMode.values()) {
+            CourseRepository repository = new CourseRepository(mode);
+            Logger repositoryLogger = Logger.getLogger(GenericRepository.class.getName());
+            Level previousLevel = repositoryLogger.getLevel();
+            repositoryLogger.setLevel(Level.WARNING);
+            try {
+                repository.addAll(courses);
+            } finally {
+                repositoryLogger.setLevel(previousLevel);
+            }
+            results.put(mode, compareParallelScanPaths(repository, minCredits, rounds));
+        }
+        return results;
+    }
+
+    // unique full names: title prefix, credits and start date vary independently
+    private static List<Course> generateCourses(int count) {
+        List<Logger> quiet = List.of(Logger.getLogger(Course.class.getName()),
+                Logger.getLogger(ValidationUtils.class.getName()));
+        List<Level> previousLevels = new ArrayList<>();
+        quiet.forEach(courseLogger -> {
+            previousLevels.add(courseLogger.getLevel());
+            courseLogger.setLevel(Level.WARNING);
+        });
+        try {
+            LocalDate firstStart = LocalDate.now().minusDays(180);
+            List<Course> courses = new ArrayList<>(count);
+            for (int i = 0; i < count; i++) {
+                courses.add(new Course(String.format("%03d generated course", i % 1000), "Generated course",
+                        1 + (i / 1000) % 5, firstStart.plusDays(i / 5000)));
+            }
+            return courses;
+        } finally {
+            for (int i = 0; i < quiet.size(); i++) {
+                quiet.get(i).setLevel(previousLevels.get(i));
+            }
+        }
+    }
 }
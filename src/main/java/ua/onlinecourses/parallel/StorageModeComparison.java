@@ -0,0 +1,103 @@
+package ua.onlinecourses.parallel;
+
+import ua.onlinecourses.repository.GenericRepository;
+import ua.onlinecourses.repository.StorageMode;
+
+import java.util.ArrayList;
+import java.util.EnumMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+public class StorageModeComparison {
+    private static final Logger logger = Logger.getLogger(StorageModeComparison.class.getName());
+
+    public static Map<StorageMode, Long> compareStorageModes(int initialSize, int threads,
+                                                             int operationsPerThread, double writeRatio) {
+        logger.log(Level.INFO, "=== Comparing storage modes: {0} items, {1} threads, write ratio {2} ===",
+                new Object[]{initialSize, threads, writeRatio});
+
+        Map<StorageMode, Long> results = new EnumMap<>(StorageMode.class);
+        for (StorageMode mode : StorageMode.values()) {
+            results.put(mode, runMixedWorkload(mode, initialSize, threads, operationsPerThread, writeRatio));
+        }
+
+        logger.log(Level.INFO, "=== Storage Mode Results (write ratio {0}) ===", writeRatio);
+        results.forEach((mode, elapsed) ->
+                logger.log(Level.INFO, "{0}: {1} ms", new Object[]{mode, elapsed}));
+        return results;
+    }
+
+    public static void compareAcrossWriteRatios(int initialSize, int threads, int operationsPerThread,
+                                                double... writeRatios) {
+        for (double writeRatio : writeRatios) {
+            compareStorageModes(initialSize, threads, operationsPerThread, writeRatio);
+        }
+    }
+
+    public static long runMixedWorkload(StorageMode mode, int initialSize, int threads,
+                                        int operationsPerThread, double writeRatio) {
+        // per-item INFO logging from the repository would dominate the timings
+        Logger repositoryLogger = Logger.getLogger(GenericRepository.class.getName());
+        Level previousLevel = repositoryLogger.getLevel();
+        repositoryLogger.setLevel(Level.WARNING);
+
+        ExecutorService executor = Executors.newFixedThreadPool(threads);
+        try {
+            GenericRepository<Integer> repository = new GenericRepository<>(String::valueOf, "BenchmarkItem", mode);
+            List<Integer> initial = new ArrayList<>(initialSize);
+            for (int i = 0; i < initialSize; i++) {
+                initial.add(i);
+            }
+            repository.addAll(initial);
+            AtomicInteger nextKey = new AtomicInteger(initialSize);
+
+            long startTime = System.currentTimeMillis();
+            List<Future<Long>> futures = new ArrayList<>();
+            for (int t = 0; t < threads; t++) {
+                futures.add(executor.submit(() ->
+                        runOperations(repository, nextKey, operationsPerThread, writeRatio)));
+            }
+            long matches = 0;
+            for (Future<Long> future : futures) {
+                matches += future.get();
+            }
+            long elapsed = System.currentTimeMillis() - startTime;
+
+            logger.log(Level.INFO, "{0} storage: {1} ops in {2} ms, final size {3}, scanned matches {4}",
+                    new Object[]{mode, threads * operationsPerThread, elapsed, repository.size(), matches});
+            return elapsed;
+        } catch (Exception e) {
+            logger.log(Level.SEVERE, "Error in {0} storage workload: {1}", new Object[]{mode, e.getMessage()});
+            return -1;
+        } finally {
+            executor.shutdown();
+            repositoryLogger.setLevel(previousLevel);
+        }
+    }
+
+    private static long runOperations(GenericRepository<Integer> repository, AtomicInteger nextKey,
+                                      int operations, double writeRatio) {
+        ThreadLocalRandom random = ThreadLocalRandom.current();
+        long matches = 0;
+        for (int i = 0; i < operations; i++) {
+            if (random.nextDouble() < writeRatio) {
+                // half appends, half removals of a random existing key, so the size stays roughly level
+                if (random.nextBoolean()) {
+                    repository.add(nextKey.getAndIncrement());
+                } else {
+                    repository.removeByIdentity(String.valueOf(random.nextInt(nextKey.get())));
+                }
+            } else {
+                matches += repository.stream().filter(value -> value % 7 == 0).count();
+            }
+        }
+        return matches;
+    }
+}
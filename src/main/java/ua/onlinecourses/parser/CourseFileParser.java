@@ -7,6 +7,8 @@ package ua.onlinecourses.parser;
 
 import ua.onlinecourses.exception.InvalidDataException;
 import ua.onlinecourses.model.Course;
+import ua.onlinecourses.repository.BatchAddResult;
+import ua.onlinecourses.repository.GenericRepository;
 
 import java.io.IOException;
 import java.net.URISyntaxException;
@@ -66,6 +68,15 @@ public class CourseFileParser {
         return courses;
     }
    
+   public static BatchAddResult<Course> loadIntoRepository(String filePath, GenericRepository<Course> repository)
+           throws IOException, InvalidDataException, URISyntaxException {
+        List<Course> courses = parseFromCSV(filePath);
+        BatchAddResult<Course> result = repository.addAll(courses);
+        logger.log(Level.INFO, "Loaded {0} of {1} parsed courses into repository",
+                new Object[]{result.addedCount(), courses.size()});
+        return result;
+    }
+   
    private static Course parseCourseFromLineWithNumber(String line, int lineNumber) throws InvalidDataException {
         try {
             return parseCourseFromLine(line);
@@ -10,6 +10,8 @@ package ua.onlinecourses.parser;
  */
 import ua.onlinecourses.exception.InvalidDataException;
 import ua.onlinecourses.model.Instructor;
+import ua.onlinecourses.repository.BatchAddResult;
+import ua.onlinecourses.repository.GenericRepository;
 
 import java.io.IOException;
 import java.net.URISyntaxException;
@@ -68,6 +70,15 @@ public class InstructorFileParser {
         return instructors;
     }
    
+   public static BatchAddResult<Instructor> loadIntoRepository(String filePath, GenericRepository<Instructor> repository)
+           throws IOException, InvalidDataException, URISyntaxException {
+        List<Instructor> instructors = parseFromCSV(filePath);
+        BatchAddResult<Instructor> result = repository.addAll(instructors);
+        logger.log(Level.INFO, "Loaded {0} of {1} parsed instructors into repository",
+                new Object[]{result.addedCount(), instructors.size()});
+        return result;
+    }
+   
    private static Instructor parseInstructorFromLineWithNumber(String line, int lineNumber) throws InvalidDataException {
         try {
             return parseInstructorFromLine(line);
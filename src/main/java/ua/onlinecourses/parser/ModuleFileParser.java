@@ -7,6 +7,8 @@ package ua.onlinecourses.parser;
 
 import ua.onlinecourses.exception.InvalidDataException;
 import ua.onlinecourses.model.myModule;
+import ua.onlinecourses.repository.BatchAddResult;
+import ua.onlinecourses.repository.GenericRepository;
 
 import java.io.IOException;
 import java.net.URISyntaxException;
@@ -64,6 +66,15 @@ public class ModuleFileParser {
         return modules;
     }
    
+   public static BatchAddResult<myModule> loadIntoRepository(String filePath, GenericRepository<myModule> repository)
+           throws IOException, InvalidDataException, URISyntaxException {
+        List<myModule> modules = parseFromCSV(filePath);
+        BatchAddResult<myModule> result = repository.addAll(modules);
+        logger.log(Level.INFO, "Loaded {0} of {1} parsed modules into repository",
+                new Object[]{result.addedCount(), modules.size()});
+        return result;
+    }
+   
    private static myModule parseModuleFromLineWithNumber(String line, int lineNumber) throws InvalidDataException {
         try {
             return parseModuleFromLine(line);
@@ -17,6 +17,8 @@ import java.util.logging.Level;
 import java.util.logging.Logger;
 import ua.onlinecourses.exception.InvalidDataException;
 import ua.onlinecourses.model.Student;
+import ua.onlinecourses.repository.BatchAddResult;
+import ua.onlinecourses.repository.GenericRepository;
 
 
 public class StudentFileParser {
@@ -64,6 +66,15 @@ public class StudentFileParser {
         return students;
     }
    
+   public static BatchAddResult<Student> loadIntoRepository(String filePath, GenericRepository<Student> repository)
+           throws IOException, InvalidDataException, URISyntaxException {
+        List<Student> students = parseFromCSV(filePath);
+        BatchAddResult<Student> result = repository.addAll(students);
+        logger.log(Level.INFO, "Loaded {0} of {1} parsed students into repository",
+                new Object[]{result.addedCount(), students.size()});
+        return result;
+    }
+   
    private static Student parseStudentFromLineWithNumber(String line, int lineNumber) throws InvalidDataException {
         try {
             return parseStudentFromLine(line);
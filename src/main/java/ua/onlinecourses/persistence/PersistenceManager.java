@@ -1,14 +1,28 @@
 package ua.onlinecourses.persistence;
 
 import ua.onlinecourses.config.AppConfig;
+import ua.onlinecourses.config.ConfigKeys;
 import ua.onlinecourses.exception.DataSerializationException;
+import ua.onlinecourses.model.Assignment;
+import ua.onlinecourses.model.myModule;
+import ua.onlinecourses.repository.ModuleRepository;
+import ua.onlinecourses.serializer.AssignmentTable;
 import ua.onlinecourses.serializer.DataSerializer;
 import ua.onlinecourses.serializer.JsonDataSerializer;
+import ua.onlinecourses.repository.GenericRepository;
 import ua.onlinecourses.serializer.YamlDataSerializer;
 
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.time.Duration;
+import java.util.ArrayList;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.Optional;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 
@@ -16,6 +30,10 @@ public class PersistenceManager {
 
     private static final Logger logger = Logger.getLogger(PersistenceManager.class.getName());
 
+    private static final String ASSIGNMENTS = "assignments";
+    // the normalized document has its own file, so the plain array readers never see it
+    private static final String ASSIGNMENT_TABLE = "assignment-table";
+
     private final AppConfig config;
     private final Map<String, DataSerializer<?>> serializers;
 
@@ -54,6 +72,48 @@ public class PersistenceManager {
         }
     }
 
+    // writes to a temporary file and moves it into place, so readers and crash recovery
+    // see either the previous snapshot or the new one, never a partial file
+    public <T> void saveSnapshot(List<T> items, String entityType, Class<T> clazz, String format)
+            throws DataSerializationException {
+        validateParameters(items, entityType, clazz);
+
+        String formatUpper = format.toUpperCase();
+        DataSerializer<T> serializer = getSerializer(formatUpper);
+        Path target = Paths.get(getFilePath(entityType, formatUpper));
+        Path temporary = target.resolveSibling(target.getFileName() + ".tmp");
+
+        serializer.serialize(items, temporary.toString());
+        try {
+            Files.move(temporary, target, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } catch (IOException e) {
+            logger.log(Level.SEVERE, "Failed to publish {0} snapshot {1}: {2}",
+                    new Object[]{entityType, target, e.getMessage()});
+            throw new DataSerializationException("Failed to replace snapshot file: " + target, e);
+        }
+        logger.log(Level.INFO, "Saved snapshot of {0} {1} items to {2}",
+                new Object[]{items.size(), entityType, target});
+    }
+
+    public <T> RepositoryJournal<T> openJournal(GenericRepository<T> repository, String entityType, Class<T> clazz)
+            throws DataSerializationException {
+        int checkpointInterval = config.getIntProperty(ConfigKeys.JOURNAL_CHECKPOINT_INTERVAL, 1000);
+        boolean sync = config.getBooleanProperty(ConfigKeys.JOURNAL_SYNC, false);
+        return RepositoryJournal.open(repository, this, entityType, clazz,
+                Paths.get(config.getJournalFilePath(entityType)), checkpointInterval, sync);
+    }
+
+    // loads lazily and flushes in the background; the caller closes the store to flush what is left
+    public <T> WriteBehindStore<T> openStore(GenericRepository<T> repository, String entityType, Class<T> clazz,
+                                             String format) throws DataSerializationException {
+        validateParameters(List.of(), entityType, clazz);
+        getSerializer(format.toUpperCase());
+        long delay = config.getIntProperty(ConfigKeys.PERSISTENCE_FLUSH_DELAY_MS, 200);
+        long maxLag = config.getIntProperty(ConfigKeys.PERSISTENCE_MAX_LAG_MS, 2000);
+        return new WriteBehindStore<>(repository, this, entityType, clazz, format,
+                Duration.ofMillis(delay), Duration.ofMillis(Math.max(delay, maxLag)));
+    }
+
     public <T> List<T> load(String entityType, Class<T> clazz, String format)
             throws DataSerializationException {
         if (entityType == null || entityType.trim().isEmpty()) {
@@ -83,6 +143,87 @@ public class PersistenceManager {
         }
     }
 
+    // with persistence.assignments.normalized each distinct module is written once to the assignment
+    // table file and assignments refer to it; otherwise every assignment embeds its module as save() does
+    public void saveAssignments(List<Assignment> assignments, String format) throws DataSerializationException {
+        if (!isAssignmentsNormalized()) {
+            save(assignments, ASSIGNMENTS, Assignment.class, format);
+            return;
+        }
+        validateParameters(assignments, ASSIGNMENTS, Assignment.class);
+
+        String formatUpper = format.toUpperCase();
+        DataSerializer<Assignment> serializer = getSerializer(formatUpper);
+        String filePath = getFilePath(ASSIGNMENT_TABLE, formatUpper);
+
+        AssignmentTable table = AssignmentTable.of(assignments);
+        serializer.serializeDocument(table, filePath);
+        logger.log(Level.INFO, "Saved {0} assignments referencing {1} modules to {2}",
+                new Object[]{assignments.size(), table.modules().size(), filePath});
+    }
+
+    // modules are resolved through the repository: a module it already holds is reused, an unknown
+    // one is added, so every assignment of a module shares the repository's instance. With the
+    // normalized layout on but no assignment table written yet, the embedded file is read instead,
+    // and the next saveAssignments writes the table
+    public List<Assignment> loadAssignments(ModuleRepository modules, String format)
+            throws DataSerializationException {
+        if (modules == null) {
+            throw new DataSerializationException("Module repository cannot be null");
+        }
+        if (!isAssignmentsNormalized()) {
+            return loadEmbeddedAssignments(modules, format);
+        }
+
+        String formatUpper = format.toUpperCase();
+        DataSerializer<Assignment> serializer = getSerializer(formatUpper);
+        String filePath = getFilePath(ASSIGNMENT_TABLE, formatUpper);
+        if (!Files.exists(Path.of(filePath))) {
+            logger.log(Level.INFO, "No assignment table at {0}; reading embedded assignments", filePath);
+            return loadEmbeddedAssignments(modules, format);
+        }
+
+        AssignmentTable table = serializer.deserializeDocument(filePath, AssignmentTable.class);
+        if (table == null) {
+            return new ArrayList<>();
+        }
+        List<Assignment> assignments = table.resolve(module -> resolveModule(modules, module));
+        logger.log(Level.INFO, "Loaded {0} assignments referencing {1} modules from {2}",
+                new Object[]{assignments.size(), table.modules().size(), filePath});
+        return assignments;
+    }
+
+    public boolean isAssignmentsNormalized() {
+        return config.getBooleanProperty(ConfigKeys.PERSISTENCE_NORMALIZE_ASSIGNMENTS, false);
+    }
+
+    private List<Assignment> loadEmbeddedAssignments(ModuleRepository modules, String format)
+            throws DataSerializationException {
+        List<Assignment> loaded = load(ASSIGNMENTS, Assignment.class, format);
+        List<Assignment> resolved = new ArrayList<>(loaded.size());
+        for (Assignment assignment : loaded) {
+            myModule module = resolveModule(modules, assignment.module());
+            resolved.add(module == assignment.module() ? assignment
+                    : new Assignment(module, assignment.dueDate(), assignment.maxPoints(), assignment.mark()));
+        }
+        return resolved;
+    }
+
+    // the instance the repository holds, which after canonicalization need not be the one passed to add
+    private static myModule resolveModule(ModuleRepository modules, myModule module) {
+        String identity = module.getFullName();
+        Optional<myModule> known = modules.findByIdentity(identity);
+        if (known.isEmpty() && modules.add(module)) {
+            known = modules.findByIdentity(identity);
+        }
+        if (known.isPresent() && known.get().equals(module)) {
+            return known.get();
+        }
+        // another module already holds this identity, so keep the file's own instance
+        logger.log(Level.WARNING, "Module {0} conflicts with a different module in the repository", identity);
+        return module;
+    }
+
     public <T> void saveAllFormats(List<T> items, String entityType, Class<T> clazz)
             throws DataSerializationException {
         logger.log(Level.INFO, "Saving {0} items of type {1} to all formats",
@@ -0,0 +1,443 @@
+package ua.onlinecourses.persistence;
+
+import com.fasterxml.jackson.databind.DeserializationFeature;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+import com.fasterxml.jackson.datatype.jsr310.JavaTimeModule;
+import ua.onlinecourses.exception.DataSerializationException;
+import ua.onlinecourses.repository.CachingRepository;
+import ua.onlinecourses.repository.ChangeEvent;
+import ua.onlinecourses.repository.GenericRepository;
+import ua.onlinecourses.repository.RepositoryListener;
+
+import java.io.BufferedWriter;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.RandomAccessFile;
+import java.io.Writer;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+// Append-only log of repository changes, one JSON record per line, next to a periodic JSON snapshot.
+// A write costs one appended line; every checkpointInterval records the repository is snapshotted
+// through PersistenceManager and the journal restarts, so recovery replays about that many records.
+// The write path only captures a read-only view and the LSN it reflects; serializing the snapshot
+// and restarting the journal run on a background thread, so writers never wait for a full dump.
+//
+// Recovery loads the snapshot and replays the journal over it. Replaying records the snapshot
+// already reflects is harmless: an ADD of a present identity is rejected, a REMOVE of an absent one
+// is a no-op, and a CLEAR is followed by the ADDs that rebuilt the state. That covers a crash
+// between publishing a snapshot and restarting the journal.
+//
+// EVICT events are not journaled: an evicted item was not deleted from its source. A checkpoint
+// snapshots only what the repository holds, though, so a bounded CachingRepository is rejected;
+// journal the repository behind the cache instead.
+public class RepositoryJournal<T> implements RepositoryListener<T>, AutoCloseable {
+
+    private static final Logger logger = Logger.getLogger(RepositoryJournal.class.getName());
+    private static final String SNAPSHOT_FORMAT = "JSON";
+    private static final String CHECKPOINT = "CHECKPOINT";
+
+    private final GenericRepository<T> repository;
+    private final PersistenceManager manager;
+    private final String entityType;
+    private final Class<T> clazz;
+    private final Path journalPath;
+    private final int checkpointInterval;
+    private final boolean sync;
+    private final ObjectMapper mapper;
+    private final ExecutorService checkpointer;
+    // held for a whole checkpoint, so snapshots and journal restarts happen in LSN order
+    private final Object checkpointLock = new Object();
+
+    private FileOutputStream output;
+    private Writer writer;
+    private long lastLsn;
+    private int recordsSinceCheckpoint;
+    // bytes cut from the front of the journal by restarts; a logical position minus this is a file offset
+    private long droppedBytes;
+    // captured on the write path, not yet picked up by the checkpoint thread
+    private Capture<T> pendingCapture;
+    private long checkpointedLsn = -1;
+    private DataSerializationException failure;
+    private boolean closed;
+
+    private RepositoryJournal(GenericRepository<T> repository, PersistenceManager manager, String entityType,
+                              Class<T> clazz, Path journalPath, int checkpointInterval, boolean sync) {
+        this.repository = repository;
+        this.manager = manager;
+        this.entityType = entityType;
+        this.clazz = clazz;
+        this.journalPath = journalPath;
+        this.checkpointInterval = checkpointInterval;
+        this.sync = sync;
+        this.mapper = new ObjectMapper();
+        this.mapper.registerModule(new JavaTimeModule());
+        this.mapper.disable(DeserializationFeature.FAIL_ON_UNKNOWN_PROPERTIES);
+        this.checkpointer = Executors.newSingleThreadExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "journal-checkpoint-" + entityType);
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+    // read-only view of the repository at lsn; journalEnd is the logical journal length at that point
+    private record Capture<T>(List<T> items, long lsn, long journalEnd, int records) {
+    }
+
+    // restores the snapshot and journal into an empty repository, then journals its changes
+    public static <T> RepositoryJournal<T> open(GenericRepository<T> repository, PersistenceManager manager,
+                                                String entityType, Class<T> clazz, Path journalPath,
+                                                int checkpointInterval, boolean sync)
+            throws DataSerializationException {
+        if (!repository.isEmpty()) {
+            throw new DataSerializationException("Journal recovery needs an empty repository for " + entityType);
+        }
+        if (checkpointInterval <= 0) {
+            throw new DataSerializationException("Checkpoint interval must be positive: " + checkpointInterval);
+        }
+        if (repository instanceof CachingRepository) {
+            throw new DataSerializationException("Cannot journal the bounded cache for " + entityType
+                    + ": its checkpoints would drop evicted items");
+        }
+
+        RepositoryJournal<T> journal = new RepositoryJournal<>(repository, manager, entityType, clazz,
+                journalPath, checkpointInterval, sync);
+        journal.recover();
+        repository.addListener(journal);
+        return journal;
+    }
+
+    @Override
+    public synchronized void onChanges(List<ChangeEvent<T>> events) {
+        if (closed || failure != null) {
+            logger.log(Level.SEVERE, "Journal for {0} is {1}; {2} changes were not recorded",
+                    new Object[]{entityType, closed ? "closed" : "failed", events.size()});
+            return;
+        }
+        try {
+            int written = 0;
+            for (ChangeEvent<T> event : events) {
+                if (event.type() != ChangeEvent.Type.EVICT) {
+                    writeRecord(toRecord(event, ++lastLsn));
+                    written++;
+                }
+            }
+            if (written == 0) {
+                return;
+            }
+            flush();
+            recordsSinceCheckpoint += written;
+            if (recordsSinceCheckpoint >= checkpointInterval) {
+                // a capture the checkpoint thread has not started yet is replaced by this newer one
+                boolean queued = pendingCapture != null;
+                pendingCapture = capture(queued ? pendingCapture.records() : 0);
+                if (!queued) {
+                    checkpointer.execute(this::checkpointInBackground);
+                }
+            }
+        } catch (IOException e) {
+            failure = new DataSerializationException("Failed to append to journal " + journalPath, e);
+            logger.log(Level.SEVERE, "Journal for {0} failed at LSN {1}: {2}",
+                    new Object[]{entityType, lastLsn, e.getMessage()});
+        }
+    }
+
+    // snapshots the repository and restarts the journal after it, on the calling thread
+    public void checkpoint() throws DataSerializationException {
+        Capture<T> capture;
+        synchronized (this) {
+            ensureUsable();
+            try {
+                capture = capture(0);
+            } catch (IOException e) {
+                throw new DataSerializationException("Failed to read journal " + journalPath, e);
+            }
+        }
+        writeCheckpoint(capture);
+    }
+
+    public synchronized long getLastLsn() {
+        return lastLsn;
+    }
+
+    public synchronized int getRecordsSinceCheckpoint() {
+        return recordsSinceCheckpoint;
+    }
+
+    public Path getJournalPath() {
+        return journalPath;
+    }
+
+    // stops journaling after a checkpoint in progress finishes; reports a write failure that
+    // happened while the journal was open
+    @Override
+    public void close() throws DataSerializationException {
+        synchronized (this) {
+            if (closed) {
+                return;
+            }
+        }
+        repository.removeListener(this);
+        checkpointer.shutdown();
+        try {
+            while (!checkpointer.awaitTermination(1, TimeUnit.SECONDS)) {
+                logger.log(Level.INFO, "Waiting for the checkpoint of {0} to finish", entityType);
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new DataSerializationException("Interrupted while closing journal " + journalPath, e);
+        }
+
+        synchronized (this) {
+            if (closed) {
+                return;
+            }
+            closed = true;
+            try {
+                closeWriter();
+            } catch (IOException e) {
+                throw new DataSerializationException("Failed to close journal " + journalPath, e);
+            }
+            if (failure != null) {
+                throw failure;
+            }
+        }
+    }
+
+    // called under the journal monitor right after a flush, so the view reflects exactly lastLsn
+    private Capture<T> capture(int carriedRecords) throws IOException {
+        Capture<T> capture = new Capture<>(repository.asReadOnlyList(), lastLsn,
+                droppedBytes + output.getChannel().size(), carriedRecords + recordsSinceCheckpoint);
+        recordsSinceCheckpoint = 0;
+        return capture;
+    }
+
+    private void checkpointInBackground() {
+        Capture<T> capture;
+        synchronized (this) {
+            capture = pendingCapture;
+            pendingCapture = null;
+        }
+        if (capture == null) {
+            return;
+        }
+        try {
+            writeCheckpoint(capture);
+        } catch (DataSerializationException e) {
+            // the journal still holds every record, so a failed checkpoint only delays truncation
+            logger.log(Level.WARNING, "Checkpoint of {0} failed: {1}", new Object[]{entityType, e.getMessage()});
+        }
+    }
+
+    private void writeCheckpoint(Capture<T> capture) throws DataSerializationException {
+        synchronized (checkpointLock) {
+            if (capture.lsn() <= checkpointedLsn && checkpointedLsn >= 0) {
+                return;
+            }
+            try {
+                manager.saveSnapshot(capture.items(), entityType, clazz, SNAPSHOT_FORMAT);
+            } catch (DataSerializationException e) {
+                synchronized (this) {
+                    recordsSinceCheckpoint += capture.records();
+                }
+                throw e;
+            }
+
+            synchronized (this) {
+                ensureUsable();
+                try {
+                    restartJournal(capture);
+                } catch (IOException e) {
+                    failure = new DataSerializationException("Failed to restart journal " + journalPath, e);
+                    throw failure;
+                }
+            }
+            checkpointedLsn = capture.lsn();
+        }
+        logger.log(Level.INFO, "Checkpointed {0} {1} items at LSN {2}",
+                new Object[]{capture.items().size(), entityType, capture.lsn()});
+    }
+
+    // replaces the journal with a checkpoint header followed by the records appended after the capture
+    private void restartJournal(Capture<T> capture) throws IOException {
+        ObjectNode header = mapper.createObjectNode()
+                .put("lsn", capture.lsn())
+                .put("op", CHECKPOINT)
+                .put("items", capture.items().size());
+        byte[] headerLine = (mapper.writeValueAsString(header) + "\n").getBytes(StandardCharsets.UTF_8);
+
+        closeWriter();
+        Path temporary = journalPath.resolveSibling(journalPath.getFileName() + ".tmp");
+        try (FileChannel source = FileChannel.open(journalPath, StandardOpenOption.READ);
+             FileChannel target = FileChannel.open(temporary, StandardOpenOption.CREATE,
+                     StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.WRITE)) {
+            target.write(ByteBuffer.wrap(headerLine));
+            long position = capture.journalEnd() - droppedBytes;
+            while (position < source.size()) {
+                position += source.transferTo(position, source.size() - position, target);
+            }
+            if (sync) {
+                target.force(false);
+            }
+        }
+        Files.move(temporary, journalPath, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        droppedBytes = capture.journalEnd() - headerLine.length;
+        openWriter();
+    }
+
+    private void recover() throws DataSerializationException {
+        List<T> snapshot = manager.load(entityType, clazz, SNAPSHOT_FORMAT);
+        repository.addAll(snapshot);
+
+        int replayed = 0;
+        try {
+            if (Files.exists(journalPath)) {
+                replayed = replay(Files.readAllBytes(journalPath));
+            } else if (journalPath.getParent() != null) {
+                Files.createDirectories(journalPath.getParent());
+            }
+            openWriter();
+        } catch (IOException e) {
+            throw new DataSerializationException("Failed to read journal " + journalPath, e);
+        }
+
+        recordsSinceCheckpoint = replayed;
+        logger.log(Level.INFO, "Recovered {0}: {1} items from snapshot, {2} journal records replayed, LSN {3}",
+                new Object[]{entityType, snapshot.size(), replayed, lastLsn});
+        if (recordsSinceCheckpoint >= checkpointInterval) {
+            checkpoint();
+        }
+    }
+
+    private int replay(byte[] content) throws IOException, DataSerializationException {
+        int replayed = 0;
+        int lineStart = 0;
+        int lineNumber = 0;
+        while (lineStart < content.length) {
+            int lineEnd = lineStart;
+            while (lineEnd < content.length && content[lineEnd] != '\n') {
+                lineEnd++;
+            }
+            lineNumber++;
+            boolean complete = lineEnd < content.length;
+            JsonNode record = complete ? parse(content, lineStart, lineEnd) : null;
+            if (record == null) {
+                if (complete && hasMoreContent(content, lineEnd + 1)) {
+                    throw new DataSerializationException(
+                            String.format("Corrupt journal record at line %d of %s", lineNumber, journalPath));
+                }
+                // a write cut short by a crash: the change was never acknowledged, drop it
+                logger.log(Level.WARNING, "Dropping torn journal record at line {0} of {1}",
+                        new Object[]{lineNumber, journalPath});
+                truncate(lineStart);
+                break;
+            }
+            if (apply(record)) {
+                replayed++;
+            }
+            lineStart = lineEnd + 1;
+        }
+        return replayed;
+    }
+
+    private JsonNode parse(byte[] content, int from, int to) {
+        try {
+            JsonNode record = mapper.readTree(new String(content, from, to - from, StandardCharsets.UTF_8));
+            return record != null && record.hasNonNull("op") && record.hasNonNull("lsn") ? record : null;
+        } catch (IOException e) {
+            return null;
+        }
+    }
+
+    private static boolean hasMoreContent(byte[] content, int from) {
+        for (int i = from; i < content.length; i++) {
+            if (!Character.isWhitespace(content[i])) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private boolean apply(JsonNode record) throws IOException {
+        long lsn = record.get("lsn").asLong();
+        String op = record.get("op").asText();
+        lastLsn = Math.max(lastLsn, lsn);
+        switch (op) {
+            case CHECKPOINT -> {
+                return false;
+            }
+            case "ADD" -> repository.add(mapper.treeToValue(record.get("item"), clazz));
+            case "REMOVE" -> repository.removeByIdentity(record.get("identity").asText());
+            case "CLEAR" -> repository.clear();
+            default -> throw new IOException("Unknown journal operation: " + op);
+        }
+        return true;
+    }
+
+    private ObjectNode toRecord(ChangeEvent<T> event, long lsn) {
+        ObjectNode record = mapper.createObjectNode()
+                .put("lsn", lsn)
+                .put("op", event.type().name());
+        switch (event.type()) {
+            case ADD -> record.set("item", mapper.valueToTree(event.item()));
+            case REMOVE -> record.put("identity", event.identity());
+            case CLEAR, EVICT -> {
+            }
+        }
+        return record;
+    }
+
+    private void writeRecord(ObjectNode record) throws IOException {
+        writer.write(mapper.writeValueAsString(record));
+        writer.write('\n');
+    }
+
+    private void flush() throws IOException {
+        writer.flush();
+        if (sync) {
+            output.getChannel().force(false);
+        }
+    }
+
+    private void truncate(long length) throws IOException {
+        try (RandomAccessFile file = new RandomAccessFile(journalPath.toFile(), "rw")) {
+            file.setLength(length);
+        }
+    }
+
+    private void openWriter() throws IOException {
+        output = new FileOutputStream(journalPath.toFile(), true);
+        writer = new BufferedWriter(new OutputStreamWriter(output, StandardCharsets.UTF_8));
+    }
+
+    private void closeWriter() throws IOException {
+        if (writer != null) {
+            writer.close();
+            writer = null;
+            output = null;
+        }
+    }
+
+    private void ensureUsable() throws DataSerializationException {
+        if (closed) {
+            throw new DataSerializationException("Journal for " + entityType + " is closed");
+        }
+        if (failure != null) {
+            throw failure;
+        }
+    }
+}
@@ -0,0 +1,342 @@
+package ua.onlinecourses.persistence;
+
+import ua.onlinecourses.exception.DataSerializationException;
+import ua.onlinecourses.repository.BatchAddResult;
+import ua.onlinecourses.repository.CachingRepository;
+import ua.onlinecourses.repository.ChangeEvent;
+import ua.onlinecourses.repository.GenericRepository;
+import ua.onlinecourses.repository.RepositoryListener;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Set;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+// Read-through, write-behind access to one entity file. The file is loaded into the repository on
+// first access and every read is then served from memory. Writes only mark the store dirty: a
+// background flush writes one snapshot for all changes made until flushDelay passes without a new
+// one, but never later than maxLag after the oldest unflushed change, so a burst of writes costs
+// one file rewrite instead of one per write.
+//
+// Changes are picked up through a repository listener, so writes made directly on the repository
+// returned by repository() are flushed too.
+//
+// A bounded CachingRepository holds only part of the file, so its flush merges: the file's rows stay
+// unless they were removed or cleared since the last flush, and evicted items that never reached the
+// file are written from their EVICT events. An eviction alone is not a change and triggers no flush.
+// Reads see the same merge: a miss in the cache falls through to the file, and getAll() returns what
+// the next flush would write.
+public class WriteBehindStore<T> implements RepositoryListener<T>, AutoCloseable {
+
+    private static final Logger logger = Logger.getLogger(WriteBehindStore.class.getName());
+
+    private final GenericRepository<T> repository;
+    private final PersistenceManager manager;
+    private final String entityType;
+    private final Class<T> clazz;
+    private final String format;
+    private final long delayNanos;
+    private final long maxLagNanos;
+    private final boolean merging;
+    private final ScheduledExecutorService flusher;
+    // held for a whole flush, so snapshots reach the file in the order they were taken
+    private final Object flushLock = new Object();
+
+    private volatile boolean loaded;
+    private int pendingChanges;
+    // every event since the last flush, in order, evictions included; only a merging flush reads them
+    private List<ChangeEvent<T>> pendingEvents = new ArrayList<>();
+    private long firstPendingNanos;
+    private ScheduledFuture<?> scheduledFlush;
+    private long flushCount;
+    private long flushedChanges;
+    private DataSerializationException lastFailure;
+    private boolean closed;
+
+    public WriteBehindStore(GenericRepository<T> repository, PersistenceManager manager, String entityType,
+                            Class<T> clazz, String format, Duration flushDelay, Duration maxLag) {
+        if (flushDelay.isNegative() || maxLag.compareTo(flushDelay) < 0) {
+            throw new IllegalArgumentException(String.format(
+                    "Need 0 <= flush delay <= max lag, got %s and %s", flushDelay, maxLag));
+        }
+        this.repository = repository;
+        this.manager = manager;
+        this.entityType = entityType;
+        this.clazz = clazz;
+        this.format = format;
+        this.delayNanos = flushDelay.toNanos();
+        this.maxLagNanos = maxLag.toNanos();
+        this.merging = repository instanceof CachingRepository;
+        this.flusher = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "write-behind-" + entityType);
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+    // the repository, loaded from the file on the first call
+    public GenericRepository<T> repository() throws DataSerializationException {
+        ensureLoaded();
+        return repository;
+    }
+
+    public Optional<T> findByIdentity(String identity) throws DataSerializationException {
+        Optional<T> cached = repository().findByIdentity(identity);
+        if (cached.isPresent() || !merging) {
+            return cached;
+        }
+        return findInView(identity);
+    }
+
+    public List<T> getAll() throws DataSerializationException {
+        ensureLoaded();
+        return merging ? view() : repository.getAll();
+    }
+
+    public boolean add(T item) throws DataSerializationException {
+        return repository().add(item);
+    }
+
+    public BatchAddResult<T> addAll(List<T> items) throws DataSerializationException {
+        return repository().addAll(items);
+    }
+
+    public boolean removeByIdentity(String identity) throws DataSerializationException {
+        boolean removed = repository().removeByIdentity(identity);
+        if (removed || !merging) {
+            return removed;
+        }
+        synchronized (flushLock) {
+            // only in the file or in an EVICT event: record the removal for the next merge
+            if (findInView(identity).isEmpty()) {
+                return false;
+            }
+            onChanges(List.of(new ChangeEvent<>(ChangeEvent.Type.REMOVE, -1, entityType, identity, null)));
+            return true;
+        }
+    }
+
+    public boolean isLoaded() {
+        return loaded;
+    }
+
+    @Override
+    public synchronized void onChanges(List<ChangeEvent<T>> events) {
+        if (closed) {
+            logger.log(Level.WARNING, "Write-behind store for {0} is closed; {1} changes will not be flushed",
+                    new Object[]{entityType, events.size()});
+            return;
+        }
+        int changes = 0;
+        for (ChangeEvent<T> event : events) {
+            if (event.type() != ChangeEvent.Type.EVICT) {
+                changes++;
+            }
+        }
+        if (merging) {
+            pendingEvents.addAll(events);
+        }
+        if (changes == 0) {
+            return;
+        }
+        long now = System.nanoTime();
+        if (pendingChanges == 0) {
+            firstPendingNanos = now;
+        }
+        pendingChanges += changes;
+        schedule(now, Math.min(now + delayNanos, firstPendingNanos + maxLagNanos));
+    }
+
+    // writes the pending changes now instead of waiting for the background flush
+    public void flush() throws DataSerializationException {
+        synchronized (flushLock) {
+            List<T> items;
+            List<ChangeEvent<T>> events;
+            int changes;
+            synchronized (this) {
+                if (pendingChanges == 0) {
+                    return;
+                }
+                changes = pendingChanges;
+                pendingChanges = 0;
+                events = pendingEvents;
+                pendingEvents = new ArrayList<>();
+                cancelScheduledFlush();
+                items = repository.getAll();
+            }
+
+            try {
+                if (merging) {
+                    items = merge(items, events);
+                }
+                manager.saveSnapshot(items, entityType, clazz, format);
+            } catch (DataSerializationException e) {
+                synchronized (this) {
+                    // keep the changes pending and retry after the usual delay
+                    lastFailure = e;
+                    long now = System.nanoTime();
+                    if (pendingChanges == 0) {
+                        firstPendingNanos = now;
+                    }
+                    pendingChanges += changes;
+                    pendingEvents.addAll(0, events);
+                    if (!closed) {
+                        schedule(now, now + delayNanos);
+                    }
+                }
+                throw e;
+            }
+
+            synchronized (this) {
+                flushCount++;
+                flushedChanges += changes;
+                lastFailure = null;
+            }
+            logger.log(Level.INFO, "Flushed {0} changes to {1} as one snapshot of {2} items",
+                    new Object[]{changes, entityType, items.size()});
+        }
+    }
+
+    public synchronized int getPendingChanges() {
+        return pendingChanges;
+    }
+
+    public synchronized long getFlushCount() {
+        return flushCount;
+    }
+
+    public synchronized long getFlushedChanges() {
+        return flushedChanges;
+    }
+
+    public synchronized DataSerializationException getLastFailure() {
+        return lastFailure;
+    }
+
+    // flushes what is pending and stops the background flusher
+    @Override
+    public void close() throws DataSerializationException {
+        synchronized (this) {
+            if (closed) {
+                return;
+            }
+            closed = true;
+            cancelScheduledFlush();
+        }
+        repository.removeListener(this);
+        try {
+            flush();
+        } finally {
+            flusher.shutdown();
+        }
+    }
+
+    private void ensureLoaded() throws DataSerializationException {
+        if (loaded) {
+            return;
+        }
+        synchronized (flushLock) {
+            if (loaded) {
+                return;
+            }
+            synchronized (this) {
+                if (closed) {
+                    throw new DataSerializationException("Write-behind store for " + entityType + " is closed");
+                }
+            }
+            List<T> items = manager.load(entityType, clazz, format);
+            repository.addAll(items);
+            // registered after the load, so loading itself does not count as a change
+            repository.addListener(this);
+            loaded = true;
+            logger.log(Level.INFO, "Loaded {0} {1} items on first access", new Object[]{items.size(), entityType});
+        }
+    }
+
+    // what the next flush would write; holding flushLock keeps a flush from moving rows into the file meanwhile
+    private List<T> view() throws DataSerializationException {
+        synchronized (flushLock) {
+            List<T> cached;
+            List<ChangeEvent<T>> events;
+            synchronized (this) {
+                cached = repository.getAll();
+                events = new ArrayList<>(pendingEvents);
+            }
+            return merge(cached, events);
+        }
+    }
+
+    private Optional<T> findInView(String identity) throws DataSerializationException {
+        return view().stream().filter(item -> identity.equals(repository.identityOf(item))).findFirst();
+    }
+
+    // the file as of the last flush, with the events since then applied, overlaid by what the cache holds
+    private List<T> merge(List<T> cached, List<ChangeEvent<T>> events) throws DataSerializationException {
+        Set<String> removed = new HashSet<>();
+        Map<String, T> evicted = new LinkedHashMap<>();
+        boolean cleared = false;
+        for (ChangeEvent<T> event : events) {
+            switch (event.type()) {
+                case ADD -> {
+                    removed.remove(event.identity());
+                    evicted.remove(event.identity());
+                }
+                case REMOVE -> {
+                    removed.add(event.identity());
+                    evicted.remove(event.identity());
+                }
+                case EVICT -> evicted.put(event.identity(), event.item());
+                case CLEAR -> {
+                    cleared = true;
+                    removed.clear();
+                    evicted.clear();
+                }
+            }
+        }
+
+        Map<String, T> merged = new LinkedHashMap<>();
+        if (!cleared) {
+            for (T item : manager.load(entityType, clazz, format)) {
+                String identity = repository.identityOf(item);
+                if (!removed.contains(identity)) {
+                    merged.put(identity, item);
+                }
+            }
+        }
+        merged.putAll(evicted);
+        for (T item : cached) {
+            merged.put(repository.identityOf(item), item);
+        }
+        return new ArrayList<>(merged.values());
+    }
+
+    private void schedule(long now, long deadline) {
+        cancelScheduledFlush();
+        scheduledFlush = flusher.schedule(this::flushInBackground, Math.max(0, deadline - now), TimeUnit.NANOSECONDS);
+    }
+
+    private void cancelScheduledFlush() {
+        if (scheduledFlush != null) {
+            scheduledFlush.cancel(false);
+            scheduledFlush = null;
+        }
+    }
+
+    private void flushInBackground() {
+        try {
+            flush();
+        } catch (DataSerializationException e) {
+            logger.log(Level.SEVERE, "Background flush of {0} failed: {1}", new Object[]{entityType, e.getMessage()});
+        }
+    }
+}
@@ -0,0 +1,84 @@
+package ua.onlinecourses.repository;
+
+import java.util.OptionalInt;
+import java.util.TreeMap;
+import java.util.function.ToIntFunction;
+
+public class AggregateIndex<T> extends RepositoryIndex<T> {
+
+    private final ToIntFunction<? super T> valueExtractor;
+    // value -> occurrences, so min/max survive removals; touched only under the repository monitor
+    private final TreeMap<Integer, Integer> values = new TreeMap<>();
+    // republished after every change, so readers get count, sum and extrema from one volatile read
+    private volatile Stats stats = Stats.EMPTY;
+
+    AggregateIndex(String name, ToIntFunction<? super T> valueExtractor) {
+        super(name);
+        this.valueExtractor = valueExtractor;
+    }
+
+    public Stats getStats() {
+        return stats;
+    }
+
+    public long count() {
+        return stats.count();
+    }
+
+    public long sum() {
+        return stats.sum();
+    }
+
+    public double average() {
+        return stats.average();
+    }
+
+    public OptionalInt min() {
+        return stats.min();
+    }
+
+    public OptionalInt max() {
+        return stats.max();
+    }
+
+    @Override
+    void onAdd(RepositoryEntry<T> entry) {
+        int value = valueExtractor.applyAsInt(entry.item());
+        values.merge(value, 1, Integer::sum);
+        Stats current = stats;
+        stats = new Stats(current.count() + 1, current.sum() + value, values.firstKey(), values.lastKey());
+    }
+
+    @Override
+    void onRemove(RepositoryEntry<T> entry) {
+        int value = valueExtractor.applyAsInt(entry.item());
+        values.computeIfPresent(value, (key, occurrences) -> occurrences == 1 ? null : occurrences - 1);
+        Stats current = stats;
+        stats = values.isEmpty()
+                ? Stats.EMPTY
+                : new Stats(current.count() - 1, current.sum() - value, values.firstKey(), values.lastKey());
+    }
+
+    @Override
+    void onClear() {
+        values.clear();
+        stats = Stats.EMPTY;
+    }
+
+    public record Stats(long count, long sum, int minValue, int maxValue) {
+
+        static final Stats EMPTY = new Stats(0, 0, 0, 0);
+
+        public double average() {
+            return count == 0 ? 0.0 : (double) sum / count;
+        }
+
+        public OptionalInt min() {
+            return count == 0 ? OptionalInt.empty() : OptionalInt.of(minValue);
+        }
+
+        public OptionalInt max() {
+            return count == 0 ? OptionalInt.empty() : OptionalInt.of(maxValue);
+        }
+    }
+}
@@ -2,6 +2,8 @@ package ua.onlinecourses.repository;
 
 import ua.onlinecourses.model.Assignment;
 import ua.onlinecourses.model.Mark;
+import ua.onlinecourses.util.AssignmentUtils;
+import ua.onlinecourses.util.ValueDictionary;
 import java.time.LocalDate;
 import java.util.Comparator;
 import java.util.List;
@@ -14,66 +16,107 @@ import java.util.stream.Collectors;
 public class AssignmentRepository extends GenericRepository<Assignment> {
     private static final Logger logger = Logger.getLogger(AssignmentRepository.class.getName());
 
+    private final ValueDictionary dictionary = new ValueDictionary(ValueDictionary.DEFAULT_MAX_ENTRIES);
+
+    static final String MARK_INDEX = "mark";
+    static final String DUE_DATE_INDEX = "dueDate";
+    static final String MAX_POINTS_INDEX = "maxPoints";
+    static final String MODULE_TITLE_INDEX = "moduleTitle";
+    static final String MODULE_TITLE_TEXT = "moduleTitleText";
+    static final String MAX_POINTS_STATS = "maxPointsStats";
+
+    private static final IdentityExtractor<Assignment> IDENTITY =
+            IdentityExtractor.composite(Assignment::identityKey, Assignment.Key::parse);
+
+    // query fields share their index's name and extractor so query() can plan through the index
+    public static final Field<Assignment, Mark> MARK = Field.of(MARK_INDEX, Assignment::mark);
+    public static final Field<Assignment, LocalDate> DUE_DATE = Field.of(DUE_DATE_INDEX, Assignment::dueDate);
+    public static final Field<Assignment, Integer> MAX_POINTS = Field.of(MAX_POINTS_INDEX, Assignment::maxPoints);
+    public static final Field<Assignment, String> MODULE_TITLE =
+            Field.of(MODULE_TITLE_INDEX, assignment -> assignment.module().title());
+    public static final Field<Assignment, String> MODULE_TITLE_SEARCH =
+            Field.of(MODULE_TITLE_TEXT, assignment -> assignment.module().title());
+
+    // shared instances so repeated sorts hit the cached sorted view
+    private static final Comparator<Assignment> BY_DUE_DATE_DESC = Assignment.BY_DUE_DATE.reversed();
+    private static final Comparator<Assignment> BY_MODULE_TITLE =
+            (a1, a2) -> a1.module().title().compareTo(a2.module().title());
+    private static final Comparator<Assignment> BY_MARK_POINTS_DATE =
+            Comparator.comparing(Assignment::mark)
+                    .thenComparingInt(Assignment::maxPoints).reversed()
+                    .thenComparing(Assignment::dueDate);
+
     public AssignmentRepository() {
-        super(Assignment::getIdentity, "Assignment");
+        this(StorageMode.COPY_ON_WRITE);
+    }
+
+    public AssignmentRepository(StorageMode storageMode) {
+        super(IDENTITY, "Assignment", storageMode);
+        setCanonicalizer(assignment -> AssignmentUtils.canonical(assignment, dictionary));
+        registerIndex(MARK);
+        registerRangeIndex(DUE_DATE);
+        registerRangeIndex(MAX_POINTS);
+        registerIndex(MODULE_TITLE);
+        registerTrigramIndex(MODULE_TITLE_SEARCH);
+        registerAggregate(MAX_POINTS_STATS, Assignment::maxPoints);
     }
 
     public List<Assignment> sortByDueDate() {
-        List<Assignment> allAssignments = getAll();
-        allAssignments.sort(Assignment.BY_DUE_DATE);
+        List<Assignment> allAssignments = sorted(Assignment.BY_DUE_DATE);
         logger.log(Level.INFO, "Sorted Assignment by due date");
         return allAssignments;
     }
 
+    public List<Assignment> nextDue(int k) {
+        List<Assignment> top = topK(Assignment.BY_DUE_DATE, k);
+        logger.log(Level.INFO, "Selected {0} Assignment by due date", top.size());
+        return top;
+    }
+
+    public Page<Assignment> pageByDueDate(Assignment afterKey, int limit) {
+        Page<Assignment> page = page(Assignment.BY_DUE_DATE, afterKey, limit);
+        logger.log(Level.INFO, "Fetched page of {0} Assignment by due date", page.size());
+        return page;
+    }
+
     public List<Assignment> sortByDueDateDesc() {
-        List<Assignment> allAssignments = getAll();
-        allAssignments.sort(Assignment.BY_DUE_DATE.reversed());
+        List<Assignment> allAssignments = sorted(BY_DUE_DATE_DESC);
         logger.log(Level.INFO, "Sorted Assignment by due date (descending)");
         return allAssignments;
     }
 
     public List<Assignment> sortByMaxPoints() {
-        List<Assignment> allAssignments = getAll();
-        allAssignments.sort(Assignment.BY_MAX_POINTS);
+        List<Assignment> allAssignments = sorted(Assignment.BY_MAX_POINTS);
         logger.log(Level.INFO, "Sorted Assignment by max points (descending)");
         return allAssignments;
     }
 
     public List<Assignment> sortByMark() {
-        List<Assignment> allAssignments = getAll();
-        allAssignments.sort(Assignment.BY_MARK);
+        List<Assignment> allAssignments = sorted(Assignment.BY_MARK);
         logger.log(Level.INFO, "Sorted Assignment by mark");
         return allAssignments;
     }
 
     public List<Assignment> sortByModuleAndDate() {
-        List<Assignment> allAssignments = getAll();
-        allAssignments.sort(Assignment.BY_MODULE_AND_DATE);
+        List<Assignment> allAssignments = sorted(Assignment.BY_MODULE_AND_DATE);
         logger.log(Level.INFO, "Sorted Assignment by module and due date");
         return allAssignments;
     }
 
     public List<Assignment> sortByModuleTitle() {
-        List<Assignment> allAssignments = getAll();
-        allAssignments.sort((a1, a2) -> a1.module().title().compareTo(a2.module().title()));
+        List<Assignment> allAssignments = sorted(BY_MODULE_TITLE);
         logger.log(Level.INFO, "Sorted Assignment by module title using lambda");
         return allAssignments;
     }
 
     public List<Assignment> sortByMarkPointsDate() {
-        List<Assignment> allAssignments = getAll();
-        allAssignments.sort(
-                Comparator.comparing(Assignment::mark)
-                        .thenComparingInt(Assignment::maxPoints).reversed()
-                        .thenComparing(Assignment::dueDate)
-        );
+        List<Assignment> allAssignments = sorted(BY_MARK_POINTS_DATE);
         logger.log(Level.INFO, "Sorted Assignment by mark, max points (desc), and due date");
         return allAssignments;
     }
 
     public List<Assignment> sortNaturally() {
-        List<Assignment> allAssignments = getAll();
-        allAssignments.sort(null);
+        List<Assignment> allAssignments = sorted(null);
         logger.log(Level.INFO, "Sorted Assignment using natural order (Comparable)");
         return allAssignments;
     }
@@ -84,9 +127,7 @@ public class AssignmentRepository extends GenericRepository<Assignment> {
             return List.of();
         }
 
-        List<Assignment> results = getAll().stream()
-                .filter(assignment -> assignment.mark() == mark)
-                .collect(Collectors.toList());
+        List<Assignment> results = findByIndex(MARK_INDEX, mark);
 
         logger.log(Level.INFO, "Found {0} assignments with mark ''{1}''",
                 new Object[]{results.size(), mark});
@@ -100,10 +141,7 @@ public class AssignmentRepository extends GenericRepository<Assignment> {
             return List.of();
         }
 
-        List<Assignment> results = getAll().stream()
-                .filter(assignment -> assignment.maxPoints() >= minPoints &&
-                        assignment.maxPoints() <= maxPoints)
-                .collect(Collectors.toList());
+        List<Assignment> results = this.<Integer>getRangeIndex(MAX_POINTS_INDEX).between(minPoints, maxPoints);
 
         logger.log(Level.INFO, "Found {0} assignments with points between {1} and {2}",
                 new Object[]{results.size(), minPoints, maxPoints});
@@ -116,9 +154,7 @@ public class AssignmentRepository extends GenericRepository<Assignment> {
             return List.of();
         }
 
-        List<Assignment> results = getAll().stream()
-                .filter(assignment -> assignment.dueDate().isBefore(date))
-                .collect(Collectors.toList());
+        List<Assignment> results = this.<LocalDate>getRangeIndex(DUE_DATE_INDEX).lessThan(date);
 
         logger.log(Level.INFO, "Found {0} assignments due before {1}",
                 new Object[]{results.size(), date});
@@ -131,9 +167,7 @@ public class AssignmentRepository extends GenericRepository<Assignment> {
             return List.of();
         }
 
-        List<Assignment> results = getAll().stream()
-                .filter(assignment -> assignment.dueDate().isAfter(date))
-                .collect(Collectors.toList());
+        List<Assignment> results = this.<LocalDate>getRangeIndex(DUE_DATE_INDEX).greaterThan(date);
 
         logger.log(Level.INFO, "Found {0} assignments due after {1}",
                 new Object[]{results.size(), date});
@@ -146,10 +180,7 @@ public class AssignmentRepository extends GenericRepository<Assignment> {
             return List.of();
         }
 
-        String searchTerm = moduleTitle.trim().toLowerCase();
-        List<Assignment> results = getAll().stream()
-                .filter(assignment -> assignment.module().title().toLowerCase().contains(searchTerm))
-                .collect(Collectors.toList());
+        List<Assignment> results = getTrigramIndex(MODULE_TITLE_TEXT).search(moduleTitle.trim());
 
         logger.log(Level.INFO, "Found {0} assignments with module title containing ''{1}''",
                 new Object[]{results.size(), moduleTitle});
@@ -157,43 +188,35 @@ public class AssignmentRepository extends GenericRepository<Assignment> {
     }
 
     public Map<Mark, List<Assignment>> groupByMark() {
-        Map<Mark, List<Assignment>> grouped = getAll().stream()
-                .collect(Collectors.groupingBy(Assignment::mark));
+        Map<Mark, List<Assignment>> grouped = this.<Mark>getIndex(MARK_INDEX).groups();
 
         logger.log(Level.INFO, "Grouped assignments by mark: {0} groups", grouped.size());
         return grouped;
     }
 
     public Map<String, List<Assignment>> groupByModuleTitle() {
-        Map<String, List<Assignment>> grouped = getAll().stream()
-                .collect(Collectors.groupingBy(assignment -> assignment.module().title()));
+        Map<String, List<Assignment>> grouped = this.<String>getIndex(MODULE_TITLE_INDEX).groups();
 
         logger.log(Level.INFO, "Grouped assignments by module title: {0} groups", grouped.size());
         return grouped;
     }
 
     public int getTotalMaxPoints() {
-        int total = getAll().stream()
-                .map(Assignment::maxPoints)
-                .reduce(0, Integer::sum);
+        int total = (int) getAggregate(MAX_POINTS_STATS).sum();
 
         logger.log(Level.INFO, "Total max points across all assignments: {0}", total);
         return total;
     }
 
     public double getAverageMaxPoints() {
-        double average = getAll().stream()
-                .mapToInt(Assignment::maxPoints)
-                .average()
-                .orElse(0.0);
+        double average = getAggregate(MAX_POINTS_STATS).average();
 
         logger.log(Level.INFO, "Average max points: {0}", average);
         return average;
     }
 
     public Optional<Assignment> getAssignmentWithMaxPoints() {
-        Optional<Assignment> result = getAll().stream()
-                .max(Comparator.comparingInt(Assignment::maxPoints));
+        Optional<Assignment> result = this.<Integer>getRangeIndex(MAX_POINTS_INDEX).max();
 
         if (result.isPresent()) {
             logger.log(Level.INFO, "Assignment with max points: {0} ({1} points)",
@@ -206,20 +229,15 @@ public class AssignmentRepository extends GenericRepository<Assignment> {
     }
 
     public List<Assignment> getAllAssignmentsWithMaxPoints() {
-        List<Assignment> allAssignments = getAll();
-        if (allAssignments.isEmpty()) {
+        RangeIndex<Assignment, Integer> pointsIndex = getRangeIndex(MAX_POINTS_INDEX);
+        Optional<Integer> maxKey = pointsIndex.maxKey();
+        if (maxKey.isEmpty()) {
             logger.log(Level.INFO, "No assignments found");
             return List.of();
         }
 
-        int maxPoints = allAssignments.stream()
-                .mapToInt(Assignment::maxPoints)
-                .max()
-                .orElse(0);
-
-        List<Assignment> results = allAssignments.stream()
-                .filter(assignment -> assignment.maxPoints() == maxPoints)
-                .collect(Collectors.toList());
+        int maxPoints = maxKey.get();
+        List<Assignment> results = pointsIndex.find(maxPoints);
 
         logger.log(Level.INFO, "Found {0} assignment(s) with max points: {1} points",
                 new Object[]{results.size(), maxPoints});
@@ -227,18 +245,17 @@ public class AssignmentRepository extends GenericRepository<Assignment> {
     }
 
     public List<String> getAllModuleTitles() {
-        List<String> titles = getAll().stream()
-                .map(assignment -> assignment.module().title())
-                .distinct()
-                .collect(Collectors.toList());
+        List<String> titles = scan(items -> items
+                    .map(assignment -> assignment.module().title())
+                    .distinct()
+                    .collect(Collectors.toList())).result();
 
         logger.log(Level.INFO, "Retrieved {0} unique module titles", titles.size());
         return titles;
     }
 
     public boolean hasAssignmentWithPoints(int points) {
-        boolean exists = getAll().stream()
-                .anyMatch(assignment -> assignment.maxPoints() == points);
+        boolean exists = this.<Integer>getRangeIndex(MAX_POINTS_INDEX).containsKey(points);
 
         logger.log(Level.INFO, "Assignments with {0} points exist: {1}",
                 new Object[]{points, exists});
@@ -246,8 +263,9 @@ public class AssignmentRepository extends GenericRepository<Assignment> {
     }
 
     public boolean allAssignmentsHaveMinPoints(int minPoints) {
-        boolean result = getAll().stream()
-                .allMatch(assignment -> assignment.maxPoints() >= minPoints);
+        boolean result = this.<Integer>getRangeIndex(MAX_POINTS_INDEX).minKey()
+                .map(lowest -> lowest >= minPoints)
+                .orElse(true);
 
         logger.log(Level.INFO, "All assignments have >= {0} points: {1}",
                 new Object[]{minPoints, result});
@@ -256,9 +274,13 @@ public class AssignmentRepository extends GenericRepository<Assignment> {
 
     public void printAllAssignments() {
         logger.log(Level.INFO, "Printing all assignments:");
-        getAll().stream()
-                .forEach(assignment -> System.out.println(assignment.module().title() +
-                        " - due: " + assignment.dueDate() +
-                        ", points: " + assignment.maxPoints()));
+        forEach(assignment -> System.out.println(assignment.module().title() +
+                " - due: " + assignment.dueDate() +
+                ", points: " + assignment.maxPoints()));
+    }
+
+    // one module instance per distinct module across stored assignments; dropped together with the repository
+    public ValueDictionary getValueDictionary() {
+        return dictionary;
     }
-}
\ No newline at end of file
+}
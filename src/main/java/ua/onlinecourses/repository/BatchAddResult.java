@@ -0,0 +1,33 @@
+package ua.onlinecourses.repository;
+
+import java.util.List;
+
+public record BatchAddResult<T>(
+        List<Boolean> accepted,
+        List<T> added,
+        List<T> rejected
+) {
+
+    public BatchAddResult {
+        accepted = List.copyOf(accepted);
+        added = List.copyOf(added);
+        rejected = List.copyOf(rejected);
+    }
+
+    public boolean isAccepted(int index) {
+        return accepted.get(index);
+    }
+
+    public int addedCount() {
+        return added.size();
+    }
+
+    // duplicates only, the same items as rejected(); null entries are counted by nullCount()
+    public int rejectedCount() {
+        return rejected.size();
+    }
+
+    public int nullCount() {
+        return accepted.size() - added.size() - rejected.size();
+    }
+}
@@ -0,0 +1,185 @@
+package ua.onlinecourses.repository;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+// Hands events to a delegate on one background thread, in batches of up to maxBatchSize collected
+// for at most maxDelay. A single consumer thread keeps the repository's commit order. When the queue
+// is full, the writing thread blocks, so a slow consumer slows writers down instead of losing events.
+// Enqueueing and close() share one lock, so nothing is queued behind the stop marker; events that
+// arrive after close(), or after the worker died, are dropped with a warning instead of blocking.
+public class BatchingDispatcher<T> implements RepositoryListener<T>, AutoCloseable {
+    private static final Logger logger = Logger.getLogger(BatchingDispatcher.class.getName());
+
+    private final RepositoryListener<T> delegate;
+    private final int maxBatchSize;
+    private final long maxDelayNanos;
+    private final BlockingQueue<ChangeEvent<T>> queue;
+    private final ChangeEvent<T> stop = new ChangeEvent<>(ChangeEvent.Type.CLEAR, -1, "", null, null);
+    private final Thread worker;
+    private final Object progress = new Object();
+    // held while queueing, so close() cannot slip its stop marker between two events of a batch
+    private final Object enqueueLock = new Object();
+    private long enqueued;
+    private long delivered;
+    private boolean closed;
+
+    public BatchingDispatcher(RepositoryListener<T> delegate, int maxBatchSize, Duration maxDelay) {
+        this(delegate, maxBatchSize, maxDelay, 10_000);
+    }
+
+    public BatchingDispatcher(RepositoryListener<T> delegate, int maxBatchSize, Duration maxDelay, int capacity) {
+        if (maxBatchSize <= 0 || capacity <= 0) {
+            throw new IllegalArgumentException("Batch size and capacity must be positive");
+        }
+        this.delegate = delegate;
+        this.maxBatchSize = maxBatchSize;
+        this.maxDelayNanos = maxDelay.toNanos();
+        this.queue = new ArrayBlockingQueue<>(capacity);
+        this.worker = new Thread(this::run, "repository-events");
+        this.worker.setDaemon(true);
+        this.worker.start();
+    }
+
+    @Override
+    public void onChanges(List<ChangeEvent<T>> events) {
+        synchronized (enqueueLock) {
+            if (closed) {
+                logger.log(Level.WARNING, "Dropped {0} change events - dispatcher is closed", events.size());
+                return;
+            }
+            for (int i = 0; i < events.size(); i++) {
+                if (!enqueue(events.get(i))) {
+                    logger.log(Level.SEVERE, "Dropped {0} change events - the event worker has stopped",
+                            events.size() - i);
+                    return;
+                }
+                synchronized (progress) {
+                    enqueued++;
+                }
+            }
+        }
+    }
+
+    // blocks until every event queued before the call has been handed to the delegate
+    public boolean flush(Duration timeout) throws InterruptedException {
+        long deadline = System.nanoTime() + timeout.toNanos();
+        synchronized (progress) {
+            long target = enqueued;
+            while (delivered < target) {
+                long remaining = deadline - System.nanoTime();
+                if (remaining <= 0) {
+                    return false;
+                }
+                TimeUnit.NANOSECONDS.timedWait(progress, remaining);
+            }
+            return true;
+        }
+    }
+
+    public long getDeliveredCount() {
+        synchronized (progress) {
+            return delivered;
+        }
+    }
+
+    // delivers what is already queued, then stops the worker
+    @Override
+    public void close() {
+        synchronized (enqueueLock) {
+            if (closed) {
+                return;
+            }
+            closed = true;
+            if (!enqueue(stop)) {
+                logger.log(Level.WARNING, "Event worker had already stopped; {0} events were not delivered",
+                        queue.size());
+                return;
+            }
+        }
+        try {
+            worker.join();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    // waits for room as long as the worker is alive to make it; an interrupt does not abandon the event
+    private boolean enqueue(ChangeEvent<T> event) {
+        boolean interrupted = false;
+        try {
+            while (true) {
+                try {
+                    if (queue.offer(event, 100, TimeUnit.MILLISECONDS)) {
+                        return true;
+                    }
+                    if (!worker.isAlive()) {
+                        return false;
+                    }
+                } catch (InterruptedException e) {
+                    interrupted = true;
+                }
+            }
+        } finally {
+            if (interrupted) {
+                Thread.currentThread().interrupt();
+            }
+        }
+    }
+
+    // only the stop marker ends the worker; an interrupt just cuts the current batch short
+    private void run() {
+        List<ChangeEvent<T>> batch = new ArrayList<>(maxBatchSize);
+        boolean stopping = false;
+        while (!stopping) {
+            ChangeEvent<T> first;
+            try {
+                first = queue.take();
+            } catch (InterruptedException e) {
+                logger.log(Level.FINE, "Event worker interrupted while idle; still waiting for close()");
+                continue;
+            }
+            if (first == stop) {
+                break;
+            }
+            batch.add(first);
+            long deadline = System.nanoTime() + maxDelayNanos;
+            try {
+                while (batch.size() < maxBatchSize) {
+                    ChangeEvent<T> next = queue.poll(Math.max(0, deadline - System.nanoTime()), TimeUnit.NANOSECONDS);
+                    if (next == null) {
+                        break;
+                    }
+                    if (next == stop) {
+                        stopping = true;
+                        break;
+                    }
+                    batch.add(next);
+                }
+            } catch (InterruptedException e) {
+                logger.log(Level.FINE, "Event worker interrupted; delivering a batch of {0} early", batch.size());
+            }
+            deliver(batch);
+            batch.clear();
+        }
+    }
+
+    private void deliver(List<ChangeEvent<T>> batch) {
+        try {
+            delegate.onChanges(List.copyOf(batch));
+        } catch (RuntimeException e) {
+            logger.log(Level.SEVERE, "Change listener failed on a batch of {0} events: {1}",
+                    new Object[]{batch.size(), e.getMessage()});
+        }
+        synchronized (progress) {
+            delivered += batch.size();
+            progress.notifyAll();
+        }
+    }
+}
@@ -0,0 +1,204 @@
+package ua.onlinecourses.repository;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.Optional;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.ToIntFunction;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+// Bounded repository for a hot working set in front of persisted data. When an add would push the
+// total weight (one per item unless a weigher is given) past maxWeight, the policy's victims are
+// evicted first; listeners see them as EVICT events. findByIdentity takes the usual identity lookup and feeds
+// the policy, so hits and misses drive both eviction and the statistics.
+public class CachingRepository<T> extends GenericRepository<T> {
+    private static final Logger logger = Logger.getLogger(CachingRepository.class.getName());
+
+    static final String POLICY_INDEX = "cachePolicy";
+
+    private final EvictionPolicy policy;
+    private final ToIntFunction<? super T> weigher;
+    private final long maxWeight;
+    // policy calls from lookups run outside the repository monitor, so they take this lock
+    private final Object policyLock = new Object();
+    // touched only under the repository monitor
+    private long weight;
+    private final AtomicLong hits = new AtomicLong();
+    private final AtomicLong misses = new AtomicLong();
+    private final AtomicLong evictions = new AtomicLong();
+    private final AtomicLong rejections = new AtomicLong();
+
+    public record CacheStats(long hits, long misses, long evictions, long rejections, int size, long weight) {
+
+        public double hitRate() {
+            long lookups = hits + misses;
+            return lookups == 0 ? 0.0 : (double) hits / lookups;
+        }
+    }
+
+    public CachingRepository(IdentityExtractor<T> identityExtractor, String entityType, int maxEntries,
+                             EvictionPolicy policy) {
+        this(identityExtractor, entityType, maxEntries, item -> 1, policy);
+    }
+
+    // segmented storage: a cache is write-heavy, and copy-on-write would copy it on every add and eviction
+    public CachingRepository(IdentityExtractor<T> identityExtractor, String entityType, long maxWeight,
+                             ToIntFunction<? super T> weigher, EvictionPolicy policy) {
+        super(identityExtractor, entityType, StorageMode.SEGMENTED);
+        if (maxWeight <= 0) {
+            throw new IllegalArgumentException("Max weight must be positive: " + maxWeight);
+        }
+        if (weigher == null || policy == null) {
+            throw new IllegalArgumentException("Weigher and eviction policy must not be null");
+        }
+        this.maxWeight = maxWeight;
+        this.weigher = weigher;
+        this.policy = policy;
+        addIndex(new PolicyIndex());
+        logger.log(Level.INFO, "Created {0} cache bounded to weight {1} with {2}",
+                new Object[]{entityType, maxWeight, policy.getClass().getSimpleName()});
+    }
+
+    // room is made before the item goes in, so a policy never picks the newcomer as its own victim
+    @Override
+    public synchronized boolean add(T item) {
+        if (item == null || containsKey(keyOf(item))) {
+            return super.add(item);
+        }
+        int itemWeight = weigher.applyAsInt(item);
+        if (!admit(item, itemWeight)) {
+            return false;
+        }
+        makeRoom(itemWeight);
+        return super.add(item);
+    }
+
+    // items go through add() one by one, so admission and eviction apply within the batch too
+    @Override
+    public synchronized BatchAddResult<T> addAll(Collection<? extends T> batch) {
+        if (batch == null) {
+            return super.addAll(null);
+        }
+        List<Boolean> accepted = new ArrayList<>(batch.size());
+        List<T> added = new ArrayList<>(batch.size());
+        List<T> rejected = new ArrayList<>();
+        for (T item : batch) {
+            boolean wasAdded = add(item);
+            accepted.add(wasAdded);
+            if (wasAdded) {
+                added.add(item);
+            } else if (item != null) {
+                rejected.add(item);
+            }
+        }
+        return new BatchAddResult<>(accepted, added, rejected);
+    }
+
+    @Override
+    public Optional<T> findByIdentity(String identity) {
+        Optional<T> result = super.findByIdentity(identity);
+        Object key = identity == null ? null : toKey(identity);
+        if (key != null) {
+            synchronized (policyLock) {
+                policy.onAccess(key, result.isPresent());
+            }
+        }
+        (result.isPresent() ? hits : misses).incrementAndGet();
+        return result;
+    }
+
+    @Override
+    public synchronized boolean dropIndex(String name) {
+        if (POLICY_INDEX.equals(name)) {
+            throw new IllegalArgumentException("Index '" + name + "' tracks the eviction policy and cannot be dropped");
+        }
+        return super.dropIndex(name);
+    }
+
+    public synchronized CacheStats getStats() {
+        return new CacheStats(hits.get(), misses.get(), evictions.get(), rejections.get(), size(), weight);
+    }
+
+    public long getMaxWeight() {
+        return maxWeight;
+    }
+
+    public EvictionPolicy getPolicy() {
+        return policy;
+    }
+
+    private boolean admit(T item, int itemWeight) {
+        if (itemWeight > maxWeight) {
+            rejections.incrementAndGet();
+            logger.log(Level.WARNING, "Rejected {0}: weight {1} exceeds the cache bound {2}",
+                    new Object[]{getEntityType(), itemWeight, maxWeight});
+            return false;
+        }
+        if (weight + itemWeight <= maxWeight) {
+            return true;
+        }
+        boolean admitted;
+        synchronized (policyLock) {
+            Object victim = policy.victim();
+            admitted = victim == null || policy.admit(keyOf(item), victim);
+        }
+        if (!admitted) {
+            rejections.incrementAndGet();
+            logger.log(Level.FINE, "Admission filter kept {0} out: {1}", new Object[]{getEntityType(), keyOf(item)});
+        }
+        return admitted;
+    }
+
+    private void makeRoom(int itemWeight) {
+        while (weight + itemWeight > maxWeight) {
+            Object victim;
+            synchronized (policyLock) {
+                victim = policy.victim();
+            }
+            if (victim == null) {
+                break;
+            }
+            if (evict(victim)) {
+                evictions.incrementAndGet();
+            } else {
+                // the policy still tracks a key the repository no longer holds
+                synchronized (policyLock) {
+                    policy.onRemove(victim);
+                }
+            }
+        }
+    }
+
+    private final class PolicyIndex extends RepositoryIndex<T> {
+
+        PolicyIndex() {
+            super(POLICY_INDEX);
+        }
+
+        @Override
+        void onAdd(RepositoryEntry<T> entry) {
+            weight += weigher.applyAsInt(entry.item());
+            synchronized (policyLock) {
+                policy.onAdd(entry.key());
+            }
+        }
+
+        @Override
+        void onRemove(RepositoryEntry<T> entry) {
+            weight -= weigher.applyAsInt(entry.item());
+            synchronized (policyLock) {
+                policy.onRemove(entry.key());
+            }
+        }
+
+        @Override
+        void onClear() {
+            weight = 0;
+            synchronized (policyLock) {
+                policy.onClear();
+            }
+        }
+    }
+}
@@ -0,0 +1,14 @@
+package ua.onlinecourses.repository;
+
+// sequence increases by one per event within a repository, so consumers can spot gaps and reorderings
+public record ChangeEvent<T>(Type type, long sequence, String entityType, String identity, T item) {
+
+    public enum Type {
+        ADD,
+        REMOVE,
+        // removed by a bounded repository to make room; the item was not deleted from its source
+        EVICT,
+        // identity and item are null; every item present before it is gone
+        CLEAR
+    }
+}
@@ -0,0 +1,160 @@
+package ua.onlinecourses.repository;
+
+import java.util.AbstractList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.RandomAccess;
+import java.util.Spliterator;
+import java.util.function.Consumer;
+import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
+
+class CopyOnWriteStorage<T> implements RepositoryStorage<T> {
+
+    private static final RepositoryEntry<?>[] EMPTY = new RepositoryEntry<?>[0];
+
+    // never mutated once published, so readers can use it without locking
+    private volatile RepositoryEntry<?>[] array = EMPTY;
+
+    @Override
+    public synchronized void append(RepositoryEntry<T> entry) {
+        RepositoryEntry<?>[] current = array;
+        RepositoryEntry<?>[] next = Arrays.copyOf(current, current.length + 1);
+        next[current.length] = entry;
+        array = next;
+    }
+
+    @Override
+    public synchronized void appendAll(List<RepositoryEntry<T>> entries) {
+        if (entries.isEmpty()) {
+            return;
+        }
+        RepositoryEntry<?>[] current = array;
+        RepositoryEntry<?>[] next = Arrays.copyOf(current, current.length + entries.size());
+        int position = current.length;
+        for (RepositoryEntry<T> entry : entries) {
+            next[position++] = entry;
+        }
+        array = next;
+    }
+
+    @Override
+    public synchronized boolean remove(RepositoryEntry<T> entry) {
+        RepositoryEntry<?>[] current = array;
+        for (int i = 0; i < current.length; i++) {
+            if (current[i] == entry) {
+                RepositoryEntry<?>[] next = new RepositoryEntry<?>[current.length - 1];
+                System.arraycopy(current, 0, next, 0, i);
+                System.arraycopy(current, i + 1, next, i, current.length - i - 1);
+                array = next;
+                return true;
+            }
+        }
+        return false;
+    }
+
+    @Override
+    public synchronized void clear() {
+        array = EMPTY;
+    }
+
+    @Override
+    public int size() {
+        return array.length;
+    }
+
+    @Override
+    public Spliterator<T> spliterator() {
+        RepositoryEntry<?>[] current = array;
+        return new SnapshotSpliterator<>(current, 0, current.length, true);
+    }
+
+    @Override
+    public Stream<RepositoryEntry<T>> entries() {
+        RepositoryEntry<?>[] current = array;
+        return StreamSupport.stream(new SnapshotSpliterator<>(current, 0, current.length, false), false);
+    }
+
+    @Override
+    public List<T> snapshot() {
+        return new ItemView<>(array);
+    }
+
+    private static final class ItemView<T> extends AbstractList<T> implements RandomAccess {
+        private final RepositoryEntry<?>[] entries;
+
+        ItemView(RepositoryEntry<?>[] entries) {
+            this.entries = entries;
+        }
+
+        @Override
+        @SuppressWarnings("unchecked")
+        public T get(int index) {
+            return (T) entries[index].item();
+        }
+
+        @Override
+        public int size() {
+            return entries.length;
+        }
+    }
+
+    // yields items straight from the entry array, so a parallel scan skips the per-element map stage
+    private static final class SnapshotSpliterator<E> implements Spliterator<E> {
+        private final RepositoryEntry<?>[] entries;
+        private final boolean items;
+        private int position;
+        private final int end;
+
+        SnapshotSpliterator(RepositoryEntry<?>[] entries, int position, int end, boolean items) {
+            this.entries = entries;
+            this.position = position;
+            this.end = end;
+            this.items = items;
+        }
+
+        @Override
+        public boolean tryAdvance(Consumer<? super E> action) {
+            if (position >= end) {
+                return false;
+            }
+            action.accept(element(entries[position++]));
+            return true;
+        }
+
+        @Override
+        public void forEachRemaining(Consumer<? super E> action) {
+            int current = position;
+            position = end;
+            for (; current < end; current++) {
+                action.accept(element(entries[current]));
+            }
+        }
+
+        @Override
+        public Spliterator<E> trySplit() {
+            int middle = (position + end) >>> 1;
+            if (middle <= position) {
+                return null;
+            }
+            SnapshotSpliterator<E> prefix = new SnapshotSpliterator<>(entries, position, middle, items);
+            position = middle;
+            return prefix;
+        }
+
+        @Override
+        public long estimateSize() {
+            return end - position;
+        }
+
+        @Override
+        public int characteristics() {
+            return ORDERED | NONNULL | IMMUTABLE | SIZED | SUBSIZED;
+        }
+
+        @SuppressWarnings("unchecked")
+        private E element(RepositoryEntry<?> entry) {
+            return (E) (items ? entry.item() : entry);
+        }
+    }
+}
@@ -13,65 +13,93 @@ import java.util.stream.Collectors;
 public class CourseRepository extends GenericRepository<Course> {
     private static final Logger logger = Logger.getLogger(CourseRepository.class.getName());
 
+    static final String CREDITS_INDEX = "credits";
+    static final String START_DATE_INDEX = "startDate";
+    static final String TITLE_TEXT = "titleText";
+    static final String DESCRIPTION_TEXT = "descriptionText";
+    static final String CREDITS_STATS = "creditsStats";
+
+    // query fields share their index's name and extractor so query() can plan through the index
+    public static final Field<Course, Integer> CREDITS = Field.of(CREDITS_INDEX, Course::credits);
+    public static final Field<Course, LocalDate> START_DATE = Field.of(START_DATE_INDEX, Course::startDate);
+    public static final Field<Course, String> TITLE = Field.of(TITLE_TEXT, Course::title);
+    public static final Field<Course, String> DESCRIPTION = Field.of(DESCRIPTION_TEXT, Course::description);
+
+    // shared instances so repeated sorts hit the cached sorted view
+    private static final Comparator<Course> BY_CREDITS_DESC = Course.BY_CREDITS.reversed();
+    private static final Comparator<Course> BY_DESCRIPTION = (c1, c2) -> c1.description().compareTo(c2.description());
+    private static final Comparator<Course> BY_CREDITS_DESC_AND_DATE =
+            Comparator.comparingInt(Course::credits).reversed()
+                    .thenComparing(Course::startDate);
+
     public CourseRepository() {
-        super(Course::getFullName, "Course");
+        this(StorageMode.COPY_ON_WRITE);
+    }
+
+    public CourseRepository(StorageMode storageMode) {
+        super(Course::getFullName, "Course", storageMode);
+        registerRangeIndex(CREDITS);
+        registerRangeIndex(START_DATE);
+        registerTrigramIndex(TITLE);
+        registerTrigramIndex(DESCRIPTION);
+        registerAggregate(CREDITS_STATS, Course::credits);
     }
 
     public List<Course> sortByTitle() {
-        List<Course> allCourses = getAll();
-        allCourses.sort(Course.BY_TITLE);
+        List<Course> allCourses = sorted(Course.BY_TITLE);
         logger.log(Level.INFO, "Sorted Course by title");
         return allCourses;
     }
 
     public List<Course> sortByCredits() {
-        List<Course> allCourses = getAll();
-        allCourses.sort(Course.BY_CREDITS);
+        List<Course> allCourses = sorted(Course.BY_CREDITS);
         logger.log(Level.INFO, "Sorted Course by credits");
         return allCourses;
     }
 
     public List<Course> sortByCreditsDesc() {
-        List<Course> allCourses = getAll();
-        allCourses.sort(Course.BY_CREDITS.reversed());
+        List<Course> allCourses = sorted(BY_CREDITS_DESC);
         logger.log(Level.INFO, "Sorted Course by credits (descending)");
         return allCourses;
     }
 
     public List<Course> sortByStartDate() {
-        List<Course> allCourses = getAll();
-        allCourses.sort(Course.BY_START_DATE);
+        List<Course> allCourses = sorted(Course.BY_START_DATE);
         logger.log(Level.INFO, "Sorted Course by start date");
         return allCourses;
     }
 
     public List<Course> sortByDescription() {
-        List<Course> allCourses = getAll();
-        allCourses.sort((c1, c2) -> c1.description().compareTo(c2.description()));
+        List<Course> allCourses = sorted(BY_DESCRIPTION);
         logger.log(Level.INFO, "Sorted Course by description using lambda");
         return allCourses;
     }
 
     public List<Course> sortByCreditsAndDate() {
-        List<Course> allCourses = getAll();
-        allCourses.sort(
-                Comparator.comparingInt(Course::credits).reversed()
-                        .thenComparing(Course::startDate)
-        );
+        List<Course> allCourses = sorted(BY_CREDITS_DESC_AND_DATE);
         logger.log(Level.INFO, "Sorted Course by credits (desc) and start date");
         return allCourses;
     }
 
+    public List<Course> topByCreditsAndDate(int k) {
+        List<Course> top = topK(BY_CREDITS_DESC_AND_DATE, k);
+        logger.log(Level.INFO, "Selected {0} Course by credits (descending) and start date", top.size());
+        return top;
+    }
+
+    public Page<Course> pageByCreditsAndDate(Course afterKey, int limit) {
+        Page<Course> page = page(BY_CREDITS_DESC_AND_DATE, afterKey, limit);
+        logger.log(Level.INFO, "Fetched page of {0} Course by credits (descending) and start date", page.size());
+        return page;
+    }
+
     public List<Course> findByTitleContaining(String partialTitle) {
         if (partialTitle == null || partialTitle.trim().isEmpty()) {
             logger.log(Level.WARNING, "Attempted to search with null or empty partial title");
             return List.of();
         }
 
-        String searchTerm = partialTitle.trim().toLowerCase();
-        List<Course> results = getAll().stream()
-                .filter(course -> course.title().toLowerCase().contains(searchTerm))
-                .collect(Collectors.toList());
+        List<Course> results = getTrigramIndex(TITLE_TEXT).search(partialTitle.trim());
 
         logger.log(Level.INFO, "Found {0} courses with title containing ''{1}''",
                 new Object[]{results.size(), partialTitle});
@@ -85,9 +113,7 @@ public class CourseRepository extends GenericRepository<Course> {
             return List.of();
         }
 
-        List<Course> results = getAll().stream()
-                .filter(course -> course.credits() >= minCredits && course.credits() <= maxCredits)
-                .collect(Collectors.toList());
+        List<Course> results = this.<Integer>getRangeIndex(CREDITS_INDEX).between(minCredits, maxCredits);
 
         logger.log(Level.INFO, "Found {0} courses with credits between {1} and {2}",
                 new Object[]{results.size(), minCredits, maxCredits});
@@ -100,9 +126,7 @@ public class CourseRepository extends GenericRepository<Course> {
             return List.of();
         }
 
-        List<Course> results = getAll().stream()
-                .filter(course -> course.startDate().isAfter(date))
-                .collect(Collectors.toList());
+        List<Course> results = this.<LocalDate>getRangeIndex(START_DATE_INDEX).greaterThan(date);
 
         logger.log(Level.INFO, "Found {0} courses starting after {1}",
                 new Object[]{results.size(), date});
@@ -115,10 +139,7 @@ public class CourseRepository extends GenericRepository<Course> {
             return List.of();
         }
 
-        String searchTerm = keyword.trim().toLowerCase();
-        List<Course> results = getAll().stream()
-                .filter(course -> course.description().toLowerCase().contains(searchTerm))
-                .collect(Collectors.toList());
+        List<Course> results = getTrigramIndex(DESCRIPTION_TEXT).search(keyword.trim());
 
         logger.log(Level.INFO, "Found {0} courses with description containing ''{1}''",
                 new Object[]{results.size(), keyword});
@@ -126,35 +147,28 @@ public class CourseRepository extends GenericRepository<Course> {
     }
 
     public Map<Integer, List<Course>> groupByCredits() {
-        Map<Integer, List<Course>> grouped = getAll().stream()
-                .collect(Collectors.groupingBy(Course::credits));
+        Map<Integer, List<Course>> grouped = this.<Integer>getIndex(CREDITS_INDEX).groups();
 
         logger.log(Level.INFO, "Grouped courses by credits: {0} groups", grouped.size());
         return grouped;
     }
 
     public int getTotalCredits() {
-        int total = getAll().stream()
-                .map(Course::credits)
-                .reduce(0, Integer::sum);
+        int total = (int) getAggregate(CREDITS_STATS).sum();
 
         logger.log(Level.INFO, "Total credits across all courses: {0}", total);
         return total;
     }
 
     public double getAverageCredits() {
-        double average = getAll().stream()
-                .mapToInt(Course::credits)
-                .average()
-                .orElse(0.0);
+        double average = getAggregate(CREDITS_STATS).average();
 
         logger.log(Level.INFO, "Average credits: {0}", average);
         return average;
     }
 
     public Optional<Course> getCourseWithMaxCredits() {
-        Optional<Course> result = getAll().stream()
-                .max(Comparator.comparingInt(Course::credits));
+        Optional<Course> result = this.<Integer>getRangeIndex(CREDITS_INDEX).max();
 
         if (result.isPresent()) {
             logger.log(Level.INFO, "Course with max credits: {0} ({1} credits)",
@@ -167,20 +181,15 @@ public class CourseRepository extends GenericRepository<Course> {
     }
 
     public List<Course> getAllCoursesWithMaxCredits() {
-        List<Course> allCourses = getAll();
-        if (allCourses.isEmpty()) {
+        RangeIndex<Course, Integer> creditsIndex = getRangeIndex(CREDITS_INDEX);
+        Optional<Integer> maxKey = creditsIndex.maxKey();
+        if (maxKey.isEmpty()) {
             logger.log(Level.INFO, "No courses found");
             return List.of();
         }
 
-        int maxCredits = allCourses.stream()
-                .mapToInt(Course::credits)
-                .max()
-                .orElse(0);
-
-        List<Course> results = allCourses.stream()
-                .filter(course -> course.credits() == maxCredits)
-                .collect(Collectors.toList());
+        int maxCredits = maxKey.get();
+        List<Course> results = creditsIndex.find(maxCredits);
 
         logger.log(Level.INFO, "Found {0} course(s) with max credits: {1} credits",
                 new Object[]{results.size(), maxCredits});
@@ -188,17 +197,16 @@ public class CourseRepository extends GenericRepository<Course> {
     }
 
     public List<String> getAllTitles() {
-        List<String> titles = getAll().stream()
-                .map(Course::title)
-                .collect(Collectors.toList());
+        List<String> titles = scan(items -> items
+                    .map(Course::title)
+                    .collect(Collectors.toList())).result();
 
         logger.log(Level.INFO, "Retrieved {0} course titles", titles.size());
         return titles;
     }
 
     public boolean hasCourseWithCredits(int credits) {
-        boolean exists = getAll().stream()
-                .anyMatch(course -> course.credits() == credits);
+        boolean exists = this.<Integer>getIndex(CREDITS_INDEX).containsKey(credits);
 
         logger.log(Level.INFO, "Courses with {0} credits exist: {1}",
                 new Object[]{credits, exists});
@@ -206,8 +214,9 @@ public class CourseRepository extends GenericRepository<Course> {
     }
 
     public boolean allCoursesHaveMinCredits(int minCredits) {
-        boolean result = getAll().stream()
-                .allMatch(course -> course.credits() >= minCredits);
+        boolean result = this.<Integer>getRangeIndex(CREDITS_INDEX).minKey()
+                .map(lowest -> lowest >= minCredits)
+                .orElse(true);
 
         logger.log(Level.INFO, "All courses have >= {0} credits: {1}",
                 new Object[]{minCredits, result});
@@ -216,8 +225,7 @@ public class CourseRepository extends GenericRepository<Course> {
 
     public void printAllCourses() {
         logger.log(Level.INFO, "Printing all courses:");
-        getAll().stream()
-                .forEach(course -> System.out.println(course.title() + " - " +
-                        course.credits() + " credits"));
+        forEach(course -> System.out.println(course.title() + " - " +
+                course.credits() + " credits"));
     }
 }
\ No newline at end of file
@@ -0,0 +1,36 @@
+package ua.onlinecourses.repository;
+
+// Chooses what a CachingRepository evicts when it is over its bound. Keys are repository identity
+// keys. The repository calls a policy from one thread at a time, so implementations need no locking.
+public interface EvictionPolicy {
+
+    void onAdd(Object key);
+
+    // every findByIdentity, including misses for keys that are not cached
+    void onAccess(Object key, boolean hit);
+
+    void onRemove(Object key);
+
+    void onClear();
+
+    // next key to evict, or null when nothing is tracked
+    Object victim();
+
+    // asked before a candidate is added to a full repository; false keeps the victim and drops the candidate
+    default boolean admit(Object candidate, Object victim) {
+        return true;
+    }
+
+    static EvictionPolicy lru() {
+        return new LruPolicy();
+    }
+
+    static EvictionPolicy lfu() {
+        return new LfuPolicy();
+    }
+
+    // LRU order with a frequency-sketch admission filter sized for about expectedEntries keys
+    static EvictionPolicy tinyLfu(int expectedEntries) {
+        return new TinyLfuPolicy(expectedEntries);
+    }
+}
@@ -0,0 +1,121 @@
+package ua.onlinecourses.repository;
+
+import ua.onlinecourses.config.AppConfig;
+import ua.onlinecourses.config.ConfigKeys;
+
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinWorkerThread;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Function;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+import java.util.stream.Stream;
+
+// Decides per call whether a repository scan runs sequentially or on a fork-join pool.
+// Parallel work goes to the policy's own pool, never the common pool, so repository scans
+// neither starve nor get starved by unrelated parallel streams.
+public class ExecutionPolicy {
+    private static final Logger logger = Logger.getLogger(ExecutionPolicy.class.getName());
+
+    public static final int DEFAULT_PARALLEL_THRESHOLD = 10_000;
+
+    private static final ExecutionPolicy DEFAULT = new ExecutionPolicy(DEFAULT_PARALLEL_THRESHOLD,
+            createPool(Runtime.getRuntime().availableProcessors()));
+    private static final ExecutionPolicy SEQUENTIAL = new ExecutionPolicy(Integer.MAX_VALUE, null);
+
+    public enum Mode {
+        SEQUENTIAL,
+        PARALLEL
+    }
+
+    public record Execution<R>(R result, Mode mode, int elements, long elapsedNanos) {
+    }
+
+    private final int parallelThreshold;
+    private final ForkJoinPool pool;
+    private final AtomicLong sequentialRuns = new AtomicLong();
+    private final AtomicLong parallelRuns = new AtomicLong();
+
+    public ExecutionPolicy(int parallelThreshold, ForkJoinPool pool) {
+        if (parallelThreshold < 0) {
+            throw new IllegalArgumentException("Parallel threshold must not be negative: " + parallelThreshold);
+        }
+        if (pool == null && parallelThreshold != Integer.MAX_VALUE) {
+            throw new IllegalArgumentException("A pool is required unless the policy is sequential");
+        }
+        this.parallelThreshold = parallelThreshold;
+        this.pool = pool;
+    }
+
+    // shared by every repository that does not set its own policy
+    public static ExecutionPolicy defaultPolicy() {
+        return DEFAULT;
+    }
+
+    public static ExecutionPolicy sequential() {
+        return SEQUENTIAL;
+    }
+
+    public static ExecutionPolicy withThreshold(int parallelThreshold, int parallelism) {
+        return new ExecutionPolicy(parallelThreshold, createPool(parallelism));
+    }
+
+    public static ExecutionPolicy fromConfig(AppConfig config) {
+        int threshold = config.getIntProperty(ConfigKeys.REPOSITORY_PARALLEL_THRESHOLD, DEFAULT_PARALLEL_THRESHOLD);
+        int parallelism = config.getIntProperty(ConfigKeys.REPOSITORY_PARALLELISM,
+                Runtime.getRuntime().availableProcessors());
+        if (parallelism <= 1) {
+            return SEQUENTIAL;
+        }
+        return withThreshold(threshold, parallelism);
+    }
+
+    public Mode modeFor(int elements) {
+        return pool != null && elements >= parallelThreshold ? Mode.PARALLEL : Mode.SEQUENTIAL;
+    }
+
+    // elements is the caller's size estimate for the source; it only picks the mode
+    public <E, R> Execution<R> execute(Stream<E> source, int elements, Function<? super Stream<E>, ? extends R> operation) {
+        Mode mode = modeFor(elements);
+        long start = System.nanoTime();
+        R result;
+        if (mode == Mode.PARALLEL) {
+            parallelRuns.incrementAndGet();
+            // a parallel terminal operation started inside a pool task forks into that pool
+            result = pool.submit(() -> operation.apply(source.parallel())).join();
+        } else {
+            sequentialRuns.incrementAndGet();
+            result = operation.apply(source.sequential());
+        }
+        long elapsed = System.nanoTime() - start;
+        logger.log(Level.FINE, "{0} scan over {1} elements took {2} us",
+                new Object[]{mode, elements, elapsed / 1_000});
+        return new Execution<>(result, mode, elements, elapsed);
+    }
+
+    public int getParallelThreshold() {
+        return parallelThreshold;
+    }
+
+    public int getParallelism() {
+        return pool == null ? 1 : pool.getParallelism();
+    }
+
+    public long getSequentialRuns() {
+        return sequentialRuns.get();
+    }
+
+    public long getParallelRuns() {
+        return parallelRuns.get();
+    }
+
+    // pools created here are never shut down; daemon workers let the JVM exit regardless
+    private static ForkJoinPool createPool(int parallelism) {
+        return new ForkJoinPool(Math.max(1, parallelism), pool -> {
+            ForkJoinWorkerThread worker = ForkJoinPool.defaultForkJoinWorkerThreadFactory.newThread(pool);
+            worker.setName("repository-scan-" + worker.getPoolIndex());
+            worker.setDaemon(true);
+            return worker;
+        }, null, false);
+    }
+}
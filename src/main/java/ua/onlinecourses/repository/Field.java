@@ -0,0 +1,16 @@
+package ua.onlinecourses.repository;
+
+import java.util.function.Function;
+
+// named attribute for queries; when an index is registered under the same name with the same
+// extractor, the planner can answer conditions on the field from that index
+public record Field<T, V>(String name, Function<? super T, ? extends V> accessor) {
+
+    public static <T, V> Field<T, V> of(String name, Function<? super T, ? extends V> accessor) {
+        return new Field<>(name, accessor);
+    }
+
+    public V get(T item) {
+        return accessor.apply(item);
+    }
+}
@@ -6,23 +6,89 @@ import java.util.logging.Level;
 import java.util.logging.Logger;
 
 import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.Objects;
 import java.util.Optional;
+import java.util.PriorityQueue;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.function.Consumer;
+import java.util.function.Function;
+import java.util.function.Supplier;
+import java.util.function.ToIntFunction;
+import java.util.function.UnaryOperator;
+import java.util.stream.Stream;
 
 public class GenericRepository<T> {
     private static final Logger logger = Logger.getLogger(GenericRepository.class.getName());
-
-
-    private final List<T> items;
+    private static final Object NATURAL_ORDER = new Object();
+    private static final int MAX_SORTED_VIEWS = 64;
+    private static final Object IDENTITY_ASCENDING = new Object();
+    private static final Object IDENTITY_DESCENDING = new Object();
+
+
+    private final RepositoryStorage<T> storage;
+    private final StorageMode storageMode;
+    // identity -> entry, kept in step with storage under the repository monitor;
+    // null when the storage answers identity lookups itself
+    private final Map<Object, RepositoryEntry<T>> identityIndex;
+    private final Map<String, RepositoryIndex<T>> indexes;
+    // comparator -> last sorted result, valid while its version matches the repository's
+    private final Map<Object, SortedView<T>> sortedViews;
     private final IdentityExtractor<T> identityExtractor;
     private final String entityType;
+    private long nextSequence;
+    private volatile long version;
+    private final List<RepositoryListener<T>> listeners = new CopyOnWriteArrayList<>();
+    private long nextChangeSequence;
+    private volatile ExecutionPolicy executionPolicy = ExecutionPolicy.defaultPolicy();
+    private volatile ExecutionPolicy.Mode lastScanMode;
+    private volatile UnaryOperator<T> canonicalizer = UnaryOperator.identity();
 
     public GenericRepository(IdentityExtractor<T> identityExtractor, String entityType) {
-        this.items = new CopyOnWriteArrayList<>();
+        this(identityExtractor, entityType, StorageMode.COPY_ON_WRITE);
+    }
+
+    public GenericRepository(IdentityExtractor<T> identityExtractor, String entityType, StorageMode storageMode) {
+        this.storage = RepositoryStorage.create(storageMode);
+        this.storageMode = storageMode;
+        this.identityIndex = new ConcurrentHashMap<>();
+        this.indexes = new ConcurrentHashMap<>();
+        this.sortedViews = new ConcurrentHashMap<>();
+        this.identityExtractor = identityExtractor;
+        this.entityType = entityType;
+        logger.log(Level.INFO,"Created repository for {0} with {1} storage", new Object[]{entityType, storageMode});
+    }
+
+    // sits on an on-disk LSM storage: identity lookups go to the storage, and sequences carry on
+    // from the ones already stored; the caller keeps ownership of storage and closes it
+    public GenericRepository(IdentityExtractor<T> identityExtractor, String entityType, LsmStorage<T> storage) {
+        this(identityExtractor, entityType, (RepositoryStorage<T>) storage);
+        logger.log(Level.INFO, "Created repository for {0} on LSM storage in {1} with {2} items",
+                new Object[]{entityType, storage.getDirectory(), storage.size()});
+    }
+
+    // sits on memory-mapped storage, like the LSM constructor; items live off the heap
+    public GenericRepository(IdentityExtractor<T> identityExtractor, String entityType, OffHeapStorage<T> storage) {
+        this(identityExtractor, entityType, (RepositoryStorage<T>) storage);
+        logger.log(Level.INFO, "Created repository for {0} on off-heap storage in {1} with {2} items",
+                new Object[]{entityType, storage.getDirectory(), storage.size()});
+    }
+
+    private GenericRepository(IdentityExtractor<T> identityExtractor, String entityType, RepositoryStorage<T> storage) {
+        storage.bind(identityExtractor);
+        this.storage = storage;
+        this.storageMode = null;
+        this.identityIndex = storage.indexesIdentity() ? null : new ConcurrentHashMap<>();
+        this.indexes = new ConcurrentHashMap<>();
+        this.sortedViews = new ConcurrentHashMap<>();
         this.identityExtractor = identityExtractor;
         this.entityType = entityType;
-        logger.log(Level.INFO,"Created repository for {0}", entityType);
+        this.nextSequence = storage.lastSequence() + 1;
     }
 
     public synchronized boolean add(T item) {
@@ -31,49 +97,105 @@ public class GenericRepository<T> {
             return false;
         }
 
-        String identity = identityExtractor.extractIdentity(item);
-        if (findByIdentity(identity).isPresent()) {
-            logger.log(Level.WARNING,"Cannot add {0} - already exists with identity: {1}",new Object[]{entityType, identity});
+        item = canonicalize(item);
+        Object key = identityExtractor.extractKey(item);
+        if (lookup(key) != null) {
+            logger.log(Level.WARNING,"Cannot add {0} - already exists with identity: {1}",new Object[]{entityType, key});
             return false;
         }
 
-        boolean added = items.add(item);
-        if (added) {
-            logger.log(Level.INFO, "Added {0}: {1}", new Object[]{entityType, identity});
+        RepositoryEntry<T> entry = new RepositoryEntry<>(nextSequence++, key, item);
+        storage.append(entry);
+        if (identityIndex != null) {
+            identityIndex.put(key, entry);
         }
-        return added;
+        indexes.values().forEach(index -> index.onAdd(entry));
+        markModified();
+        publish(ChangeEvent.Type.ADD, List.of(entry));
+        logger.log(Level.INFO, "Added {0}: {1}", new Object[]{entityType, key});
+        return true;
     }
 
+    public synchronized BatchAddResult<T> addAll(Collection<? extends T> batch) {
+        if (batch == null) {
+            logger.log(Level.WARNING, "Attempted to add null batch of {0}", entityType);
+            return new BatchAddResult<>(List.of(), List.of(), List.of());
+        }
+
+        List<Boolean> accepted = new ArrayList<>(batch.size());
+        List<T> added = new ArrayList<>(batch.size());
+        List<T> rejected = new ArrayList<>();
+        Map<Object, RepositoryEntry<T>> batchIndex = new LinkedHashMap<>();
+
+        for (T candidate : batch) {
+            if (candidate == null) {
+                logger.log(Level.WARNING, "Rejected null {0} from batch", entityType);
+                accepted.add(false);
+                continue;
+            }
+            T item = canonicalize(candidate);
+            Object key = identityExtractor.extractKey(item);
+            if (batchIndex.containsKey(key) || lookup(key) != null) {
+                logger.log(Level.FINE, "Rejected {0} from batch - duplicate identity: {1}",
+                        new Object[]{entityType, key});
+                accepted.add(false);
+                rejected.add(item);
+            } else {
+                batchIndex.put(key, new RepositoryEntry<>(nextSequence++, key, item));
+                accepted.add(true);
+                added.add(item);
+            }
+        }
+
+        // one storage write for the whole batch instead of one per item
+        storage.appendAll(new ArrayList<>(batchIndex.values()));
+        if (identityIndex != null) {
+            identityIndex.putAll(batchIndex);
+        }
+        for (RepositoryIndex<T> index : indexes.values()) {
+            batchIndex.values().forEach(index::onAdd);
+        }
+        if (!added.isEmpty()) {
+            markModified();
+            publish(ChangeEvent.Type.ADD, batchIndex.values());
+        }
 
-    public boolean remove(T item) {
+        logger.log(Level.INFO, "Added batch of {0}: {1} accepted, {2} rejected",
+                new Object[]{entityType, added.size(), rejected.size()});
+        return new BatchAddResult<>(accepted, added, rejected);
+    }
+
+    public synchronized boolean remove(T item) {
         if (item == null) {
             logger.log(Level.WARNING, "Attempted to remove null {0}", entityType);
             return false;
         }
 
-        boolean removed = items.remove(item);
+        Object key = identityExtractor.extractKey(item);
+        RepositoryEntry<T> indexed = lookup(key);
+        boolean removed = indexed != null && indexed.item().equals(item) && storage.remove(indexed);
         if (removed) {
-            logger.log(Level.INFO, "Removed {0}: {1}", new Object[]{entityType, identityExtractor.extractIdentity(item)});
+            unindex(indexed);
+            logger.log(Level.INFO, "Removed {0}: {1}", new Object[]{entityType, key});
         } else {
-            logger.log(Level.WARNING,"Failed to remove {0}: {1}", new Object[]{entityType, identityExtractor.extractIdentity(item)});
+            logger.log(Level.WARNING,"Failed to remove {0}: {1}", new Object[]{entityType, key});
         }
         return removed;
     }
 
 
-    public boolean removeByIdentity(String identity) {
+    public synchronized boolean removeByIdentity(String identity) {
         if (identity == null) {
             logger.log(Level.WARNING,"Attempted to remove {0} with null identity", entityType);
             return false;
         }
 
-        Optional<T> itemToRemove = items.stream()
-                .filter(item -> identity.equals(identityExtractor.extractIdentity(item)))
-                .findFirst();
+        RepositoryEntry<T> entryToRemove = lookup(identityExtractor.toKey(identity));
 
-        if (itemToRemove.isPresent()) {
-            boolean removed = items.remove(itemToRemove.get());
+        if (entryToRemove != null) {
+            boolean removed = storage.remove(entryToRemove);
             if (removed) {
+                unindex(entryToRemove);
                 logger.log(Level.INFO, "Removed {0} by identity: {1}", new Object[]{entityType, identity});
             }
             return removed;
@@ -84,11 +206,20 @@ public class GenericRepository<T> {
     }
 
     public boolean contains(T item) {
-        return items.contains(item); // Uses equals() internally
+        if (item == null) {
+            return false;
+        }
+        RepositoryEntry<T> entry = lookup(identityExtractor.extractKey(item));
+        return entry != null && entry.item().equals(item);
+    }
+
+    // identity string the repository files item under, as findByIdentity takes it
+    public String identityOf(T item) {
+        return identityExtractor.extractIdentity(item);
     }
 
     public boolean containsIdentity(String identity) {
-        return findByIdentity(identity).isPresent();
+        return identity != null && lookup(identityExtractor.toKey(identity)) != null;
     }
 
     public Optional<T> findByIdentity(String identity) {
@@ -97,9 +228,8 @@ public class GenericRepository<T> {
             return Optional.empty();
         }
 
-        Optional<T> result = items.stream()
-                .filter(item -> identity.equals(identityExtractor.extractIdentity(item)))
-                .findFirst();
+        RepositoryEntry<T> entry = lookup(identityExtractor.toKey(identity));
+        Optional<T> result = entry == null ? Optional.empty() : Optional.of(entry.item());
 
         if (result.isPresent()) {
             logger.log(Level.INFO,"Found {0} with identity: {1}", new Object[]{entityType, identity});
@@ -111,21 +241,119 @@ public class GenericRepository<T> {
     }
 
     public List<T> getAll() {
-        logger.log(Level.INFO,"Retrieved all {0} items. Count: {1}", new Object[]{entityType, items.size()} );
-        return new ArrayList<>(items);
+        logger.log(Level.INFO,"Retrieved all {0} items. Count: {1}", new Object[]{entityType, storage.size()} );
+        return new ArrayList<>(storage.snapshot());
+    }
+
+    // iterates a storage snapshot directly, without copying it into a new list. On LsmStorage the
+    // snapshot pins segment files until the stream is drained or closed, so callers that may stop
+    // early (anyMatch, findFirst, limit) must close it, e.g. with try-with-resources
+    public Stream<T> stream() {
+        return storage.stream();
+    }
+
+    // splits the storage snapshot directly instead of copying it into a list first; close it like stream()
+    public Stream<T> parallelStream() {
+        return storage.stream().parallel();
+    }
+
+    public void forEach(Consumer<? super T> action) {
+        try (Stream<T> items = storage.stream()) {
+            items.forEach(action);
+        }
+    }
+
+    // read-only point-in-time view; later writes are not visible through it
+    public List<T> asReadOnlyList() {
+        return storage.snapshot();
+    }
+
+    // comparator may be null for natural ordering; the result is read-only and shared
+    // between callers until the next mutation, so pass the same comparator instance to hit it
+    public List<T> sorted(Comparator<? super T> comparator) {
+        return cachedView(comparator == null ? NATURAL_ORDER : comparator, () -> {
+            List<T> sortedItems = new ArrayList<>(storage.snapshot());
+            sortedItems.sort(comparator);
+            return sortedItems;
+        });
+    }
+
+    public long getVersion() {
+        return version;
+    }
+
+    // first k items in comparator order, ties kept in insertion order like sorted();
+    // a bounded heap keeps this O(n log k) when no sorted view is cached
+    public List<T> topK(Comparator<? super T> comparator, int k) {
+        if (comparator == null || k <= 0) {
+            logger.log(Level.WARNING, "Invalid top-k request on {0}: k={1}", new Object[]{entityType, k});
+            return List.of();
+        }
+
+        SortedView<T> cached = sortedViews.get(comparator);
+        if (cached != null && cached.version() == version) {
+            return List.copyOf(cached.items().subList(0, Math.min(k, cached.items().size())));
+        }
+
+        Comparator<RepositoryEntry<T>> order = GenericRepository.<T>byItem(comparator)
+                .thenComparingLong(RepositoryEntry::sequence);
+        List<T> result;
+        try (Stream<RepositoryEntry<T>> entries = storage.entries()) {
+            result = selectFirst(entries, order, k);
+        }
+        logger.log(Level.FINE, "Selected top {0} of {1}", new Object[]{result.size(), entityType});
+        return result;
+    }
+
+    // keyset pagination: items strictly after afterKey in comparator order, ties broken by
+    // identity so the cursor is unambiguous; afterKey is null for the first page
+    public Page<T> page(Comparator<? super T> comparator, T afterKey, int limit) {
+        if (comparator == null || limit <= 0) {
+            logger.log(Level.WARNING, "Invalid page request on {0}: limit={1}", new Object[]{entityType, limit});
+            return new Page<>(List.of(), false);
+        }
+
+        Comparator<RepositoryEntry<T>> order = GenericRepository.<T>byItem(comparator).thenComparing(GenericRepository::compareKeys);
+        List<T> selected;
+        try (Stream<RepositoryEntry<T>> entries = storage.entries()) {
+            Stream<RepositoryEntry<T>> remaining = entries;
+            if (afterKey != null) {
+                RepositoryEntry<T> cursor = new RepositoryEntry<>(-1, identityExtractor.extractKey(afterKey), afterKey);
+                remaining = remaining.filter(entry -> order.compare(entry, cursor) > 0);
+            }
+            // one extra item tells whether another page follows
+            selected = selectFirst(remaining, order, limit + 1);
+        }
+        boolean hasMore = selected.size() > limit;
+        Page<T> page = new Page<>(hasMore ? selected.subList(0, limit) : selected, hasMore);
+        logger.log(Level.FINE, "Fetched page of {0} {1}, more: {2}", new Object[]{page.size(), entityType, hasMore});
+        return page;
     }
 
     public int size() {
-        return items.size();
+        return storage.size();
     }
 
     public boolean isEmpty() {
-        return items.isEmpty();
+        return storage.size() == 0;
+    }
+
+    // null for a repository on LsmStorage or OffHeapStorage
+    public StorageMode getStorageMode() {
+        return storageMode;
     }
 
-    public void clear() {
-        int sizeBefore = items.size();
-        items.clear();
+    public synchronized void clear() {
+        int sizeBefore = storage.size();
+        storage.clear();
+        if (identityIndex != null) {
+            identityIndex.clear();
+        }
+        indexes.values().forEach(RepositoryIndex::onClear);
+        markModified();
+        if (!listeners.isEmpty()) {
+            publishAll(List.of(new ChangeEvent<>(ChangeEvent.Type.CLEAR, nextChangeSequence++, entityType, null, null)));
+        }
         logger.log(Level.INFO,"Cleared repository. Removed {0} {1} items", new Object[]{sizeBefore, entityType});
     }
 
@@ -135,24 +363,316 @@ public class GenericRepository<T> {
             order = "asc";
         }
 
-        List<T> sortedItems = new ArrayList<>(items);
+        // sorts on the keys stored at insertion instead of re-extracting identities per comparison
+        boolean descending = order.equalsIgnoreCase("desc");
+        List<T> sortedItems = cachedView(descending ? IDENTITY_DESCENDING : IDENTITY_ASCENDING, () -> {
+            Comparator<RepositoryEntry<T>> byKey = GenericRepository::compareKeys;
+            List<RepositoryEntry<T>> entries;
+            try (Stream<RepositoryEntry<T>> stored = storage.entries()) {
+                entries = stored.sorted(descending ? byKey.reversed() : byKey).toList();
+            }
+            List<T> items = new ArrayList<>(entries.size());
+            entries.forEach(entry -> items.add(entry.item()));
+            return items;
+        });
 
-        Comparator<T> comparator = Comparator.comparing(identityExtractor::extractIdentity);
+        logger.log(Level.INFO, "Sorted {0} items by identity in {1} order",
+                new Object[]{entityType, order});
 
-        if (order.equalsIgnoreCase("desc")) {
-            comparator = comparator.reversed();
+        return sortedItems;
+    }
+
+    // runs operation over a snapshot stream, in parallel on the policy's pool once the repository is large enough
+    public <R> ExecutionPolicy.Execution<R> scan(Function<? super Stream<T>, ? extends R> operation) {
+        try (Stream<T> items = storage.stream()) {
+            return execute(items, storage.size(), operation);
         }
+    }
 
-        sortedItems.sort(comparator);
+    public ExecutionPolicy getExecutionPolicy() {
+        return executionPolicy;
+    }
 
-        logger.log(Level.INFO, "Sorted {0} items by identity in {1} order",
-                new Object[]{entityType, order});
+    public void setExecutionPolicy(ExecutionPolicy executionPolicy) {
+        this.executionPolicy = Objects.requireNonNull(executionPolicy, "executionPolicy");
+        logger.log(Level.INFO, "{0} scans go parallel from {1} items with parallelism {2}",
+                new Object[]{entityType, executionPolicy.getParallelThreshold(), executionPolicy.getParallelism()});
+    }
 
-        return sortedItems;
+    // applied to every item before it is stored, e.g. to share repeated values through a ValueDictionary;
+    // must return an item equal to its argument
+    public void setCanonicalizer(UnaryOperator<T> canonicalizer) {
+        this.canonicalizer = Objects.requireNonNull(canonicalizer, "canonicalizer");
     }
 
+    // mode of the most recent scan on this repository, null before the first one
+    public ExecutionPolicy.Mode getLastScanMode() {
+        return lastScanMode;
+    }
+
+    // listeners registered here are called synchronously inside every write; see RepositoryListener
+    public void addListener(RepositoryListener<T> listener) {
+        listeners.add(Objects.requireNonNull(listener, "listener"));
+        logger.log(Level.INFO, "Registered change listener on {0}", entityType);
+    }
+
+    public boolean removeListener(RepositoryListener<T> listener) {
+        return listeners.remove(listener);
+    }
+
+    public Query<T> query() {
+        return new Query<>(this);
+    }
+
+    public synchronized <K> SecondaryIndex<T, K> registerIndex(String name, Function<? super T, ? extends K> keyExtractor) {
+        return addIndex(new SecondaryIndex<>(name, keyExtractor));
+    }
+
+    public synchronized <K extends Comparable<? super K>> RangeIndex<T, K> registerRangeIndex(
+            String name, Function<? super T, ? extends K> keyExtractor) {
+        return addIndex(new RangeIndex<>(name, keyExtractor));
+    }
+
+    // field-bound variants: the planner answers conditions on the field from the index
+    public <K> SecondaryIndex<T, K> registerIndex(Field<T, K> field) {
+        return registerIndex(field.name(), field.accessor());
+    }
+
+    public <K extends Comparable<? super K>> RangeIndex<T, K> registerRangeIndex(Field<T, K> field) {
+        return registerRangeIndex(field.name(), field.accessor());
+    }
+
+    public TrigramIndex<T> registerTrigramIndex(Field<T, String> field) {
+        return registerTrigramIndex(field.name(), field.accessor());
+    }
+
+    public synchronized AggregateIndex<T> registerAggregate(String name, ToIntFunction<? super T> valueExtractor) {
+        return addIndex(new AggregateIndex<>(name, valueExtractor));
+    }
+
+    public synchronized TrigramIndex<T> registerTrigramIndex(String name, Function<? super T, ? extends String> textExtractor) {
+        return addIndex(new TrigramIndex<>(name, textExtractor));
+    }
+
+    public TrigramIndex<T> getTrigramIndex(String name) {
+        RepositoryIndex<T> index = indexes.get(name);
+        if (!(index instanceof TrigramIndex<T> trigramIndex)) {
+            throw new IllegalArgumentException("No trigram index '" + name + "' registered for " + entityType);
+        }
+        return trigramIndex;
+    }
+
+    public AggregateIndex<T> getAggregate(String name) {
+        RepositoryIndex<T> index = indexes.get(name);
+        if (!(index instanceof AggregateIndex<T> aggregate)) {
+            throw new IllegalArgumentException("No aggregate '" + name + "' registered for " + entityType);
+        }
+        return aggregate;
+    }
+
+    @SuppressWarnings("unchecked")
+    public <K extends Comparable<? super K>> RangeIndex<T, K> getRangeIndex(String name) {
+        RepositoryIndex<T> index = indexes.get(name);
+        if (!(index instanceof RangeIndex)) {
+            throw new IllegalArgumentException("No range index '" + name + "' registered for " + entityType);
+        }
+        return (RangeIndex<T, K>) index;
+    }
+
+    @SuppressWarnings("unchecked")
+    public <K> SecondaryIndex<T, K> getIndex(String name) {
+        RepositoryIndex<T> index = indexes.get(name);
+        if (!(index instanceof SecondaryIndex)) {
+            throw new IllegalArgumentException("No secondary index '" + name + "' registered for " + entityType);
+        }
+        return (SecondaryIndex<T, K>) index;
+    }
+
+    public <K> List<T> findByIndex(String name, K key) {
+        List<T> results = this.<K>getIndex(name).find(key);
+        logger.log(Level.FINE, "Index {0} lookup on {1}: {2} matches",
+                new Object[]{name, entityType, results.size()});
+        return results;
+    }
+
+    public synchronized boolean dropIndex(String name) {
+        return indexes.remove(name) != null;
+    }
+
+    synchronized <I extends RepositoryIndex<T>> I addIndex(I index) {
+        if (indexes.containsKey(index.getName())) {
+            throw new IllegalArgumentException("Index '" + index.getName() + "' already registered for " + entityType);
+        }
+        try (Stream<RepositoryEntry<T>> entries = storage.entries()) {
+            entries.forEach(index::onAdd);
+        }
+        indexes.put(index.getName(), index);
+        logger.log(Level.INFO, "Registered index {0} on {1} with {2} items",
+                new Object[]{index.getName(), entityType, storage.size()});
+        return index;
+    }
+
+    <E, R> ExecutionPolicy.Execution<R> execute(Stream<E> source, int elements,
+                                                Function<? super Stream<E>, ? extends R> operation) {
+        ExecutionPolicy.Execution<R> execution = executionPolicy.execute(source, elements, operation);
+        lastScanMode = execution.mode();
+        return execution;
+    }
+
+    // an index of the same name built with another extractor holds other keys, so it is not offered
+    RepositoryIndex<T> findIndex(Field<?, ?> field) {
+        RepositoryIndex<T> index = indexes.get(field.name());
+        return index != null && index.indexes(field) ? index : null;
+    }
+
+    // callers close it, see stream()
+    Stream<RepositoryEntry<T>> entryStream() {
+        return storage.entries();
+    }
+
+    RepositoryEntry<T> entryForIdentity(String identity) {
+        Object key = toKey(identity);
+        return key == null ? null : lookup(key);
+    }
+
+    // removal that makes room in a bounded repository; listeners see EVICT instead of REMOVE
+    synchronized boolean evict(Object key) {
+        RepositoryEntry<T> entry = lookup(key);
+        if (entry == null || !storage.remove(entry)) {
+            return false;
+        }
+        unindex(entry, ChangeEvent.Type.EVICT);
+        logger.log(Level.FINE, "Evicted {0}: {1}", new Object[]{entityType, key});
+        return true;
+    }
+
+    boolean containsKey(Object key) {
+        return lookup(key) != null;
+    }
+
+    boolean scansInInsertionOrder() {
+        return storage.insertionOrdered();
+    }
+
+    Object toKey(String identity) {
+        return identityExtractor.toKey(identity);
+    }
+
+    Object keyOf(T item) {
+        return identityExtractor.extractKey(item);
+    }
+
+    String getEntityType() {
+        return entityType;
+    }
+
+    private T canonicalize(T item) {
+        try {
+            return canonicalizer.apply(item);
+        } catch (RuntimeException e) {
+            // e.g. a rebuilt record failing validation that the original passed earlier
+            logger.log(Level.FINE, "Kept {0} as given, canonicalizing failed: {1}",
+                    new Object[]{entityType, e.getMessage()});
+            return item;
+        }
+    }
+
+    private RepositoryEntry<T> lookup(Object key) {
+        return identityIndex != null ? identityIndex.get(key) : storage.find(key);
+    }
+
+    private void unindex(RepositoryEntry<T> entry) {
+        unindex(entry, ChangeEvent.Type.REMOVE);
+    }
+
+    private void unindex(RepositoryEntry<T> entry, ChangeEvent.Type type) {
+        if (identityIndex != null) {
+            identityIndex.remove(entry.key());
+        }
+        indexes.values().forEach(index -> index.onRemove(entry));
+        markModified();
+        publish(type, List.of(entry));
+    }
+
+    private List<T> cachedView(Object cacheKey, Supplier<List<T>> builder) {
+        // read the version before the snapshot: a concurrent write can only make the view look stale
+        long currentVersion = version;
+        SortedView<T> cached = sortedViews.get(cacheKey);
+        if (cached != null && cached.version() == currentVersion) {
+            return cached.items();
+        }
+
+        List<T> view = Collections.unmodifiableList(builder.get());
+        if (sortedViews.size() >= MAX_SORTED_VIEWS) {
+            sortedViews.clear();
+        }
+        sortedViews.put(cacheKey, new SortedView<>(currentVersion, view));
+        logger.log(Level.FINE, "Rebuilt sorted view of {0} at version {1}", new Object[]{entityType, currentVersion});
+        return view;
+    }
+
+    static <T> Comparator<RepositoryEntry<T>> byItem(Comparator<? super T> comparator) {
+        return (a, b) -> comparator.compare(a.item(), b.item());
+    }
+
+    private static int compareKeys(RepositoryEntry<?> first, RepositoryEntry<?> second) {
+        return RepositoryEntry.compareKeys(first.key(), second.key());
+    }
+
+    // order must be total; the worst of the current k candidates sits at the heap head
+    static <T> List<T> selectFirst(Stream<RepositoryEntry<T>> source,
+                                           Comparator<RepositoryEntry<T>> order, int k) {
+        PriorityQueue<RepositoryEntry<T>> heap = new PriorityQueue<>(Math.min(k, 1024), order.reversed());
+        source.forEachOrdered(entry -> {
+            if (heap.size() < k) {
+                heap.add(entry);
+            } else if (order.compare(entry, heap.peek()) < 0) {
+                heap.poll();
+                heap.add(entry);
+            }
+        });
+
+        List<RepositoryEntry<T>> selected = new ArrayList<>(heap);
+        selected.sort(order);
+        List<T> result = new ArrayList<>(selected.size());
+        selected.forEach(entry -> result.add(entry.item()));
+        return result;
+    }
+
+    // called under the repository monitor after indexes are updated, so listeners observe the new state
+    private void publish(ChangeEvent.Type type, Collection<RepositoryEntry<T>> entries) {
+        if (listeners.isEmpty()) {
+            return;
+        }
+        List<ChangeEvent<T>> events = new ArrayList<>(entries.size());
+        for (RepositoryEntry<T> entry : entries) {
+            events.add(new ChangeEvent<>(type, nextChangeSequence++, entityType, entry.identity(), entry.item()));
+        }
+        publishAll(events);
+    }
+
+    private void publishAll(List<ChangeEvent<T>> events) {
+        List<ChangeEvent<T>> delivered = Collections.unmodifiableList(events);
+        for (RepositoryListener<T> listener : listeners) {
+            try {
+                listener.onChanges(delivered);
+            } catch (RuntimeException e) {
+                // the write is already committed; a failing listener must not undo or block it
+                logger.log(Level.SEVERE, "Change listener on {0} failed: {1}", new Object[]{entityType, e.getMessage()});
+            }
+        }
+    }
+
+    // called under the repository monitor after the storage write, never before it
+    private void markModified() {
+        version++;
+        sortedViews.clear();
+    }
 
     List<T> getItemsForTesting() {
-        return items;
+        return storage.snapshot();
+    }
+
+    private record SortedView<T>(long version, List<T> items) {
     }
-}
\ No newline at end of file
+}
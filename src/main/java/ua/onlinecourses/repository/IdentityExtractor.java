@@ -1,7 +1,41 @@
 package ua.onlinecourses.repository;
 
+import java.util.function.Function;
 
 @FunctionalInterface
 public interface IdentityExtractor<T> {
     String extractIdentity(T object);
-}
\ No newline at end of file
+
+    // key the repository computes once on insertion and keeps next to the entity;
+    // must have value equality, be Comparable, and order the same way as the identity string
+    default Object extractKey(T object) {
+        return extractIdentity(object);
+    }
+
+    // maps an identity string from findByIdentity/removeByIdentity onto the key space
+    default Object toKey(String identity) {
+        return identity;
+    }
+
+    // identity backed by a composite key whose toString() is the identity string
+    static <T, K extends Comparable<? super K>> IdentityExtractor<T> composite(
+            Function<? super T, ? extends K> keyExtractor, Function<String, ? extends K> parser) {
+        return new IdentityExtractor<>() {
+            @Override
+            public String extractIdentity(T object) {
+                return keyExtractor.apply(object).toString();
+            }
+
+            @Override
+            public Object extractKey(T object) {
+                return keyExtractor.apply(object);
+            }
+
+            @Override
+            public Object toKey(String identity) {
+                K key = parser.apply(identity);
+                return key != null ? key : identity;
+            }
+        };
+    }
+}
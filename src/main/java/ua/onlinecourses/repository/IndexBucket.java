@@ -0,0 +1,50 @@
+package ua.onlinecourses.repository;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ConcurrentSkipListMap;
+
+class IndexBucket<T> {
+
+    private final ConcurrentSkipListMap<Long, RepositoryEntry<T>> entries = new ConcurrentSkipListMap<>();
+    private volatile int size;
+
+    void add(RepositoryEntry<T> entry) {
+        if (entries.put(entry.sequence(), entry) == null) {
+            size++;
+        }
+    }
+
+    void remove(RepositoryEntry<T> entry) {
+        if (entries.remove(entry.sequence()) != null) {
+            size--;
+        }
+    }
+
+    int size() {
+        return size;
+    }
+
+    boolean isEmpty() {
+        return size == 0;
+    }
+
+    T first() {
+        var first = entries.firstEntry();
+        return first == null ? null : first.getValue().item();
+    }
+
+    List<T> toList() {
+        List<T> items = new ArrayList<>(size);
+        addTo(items);
+        return items;
+    }
+
+    void addTo(List<T> target) {
+        entries.values().forEach(entry -> target.add(entry.item()));
+    }
+
+    void addEntriesTo(List<RepositoryEntry<T>> target) {
+        target.addAll(entries.values());
+    }
+}
@@ -1,8 +1,11 @@
 package ua.onlinecourses.repository;
 
 import ua.onlinecourses.model.Instructor;
+import ua.onlinecourses.util.InstructorUtils;
+import ua.onlinecourses.util.ValueDictionary;
 import java.util.Comparator;
 import java.util.List;
+import java.util.Locale;
 import java.util.Map;
 import java.util.Optional;
 import java.util.logging.Level;
@@ -12,51 +15,85 @@ import java.util.stream.Collectors;
 public class InstructorRepository extends GenericRepository<Instructor> {
     private static final Logger logger = Logger.getLogger(InstructorRepository.class.getName());
 
+    private final ValueDictionary dictionary = new ValueDictionary(ValueDictionary.DEFAULT_MAX_ENTRIES);
+
+    static final String LAST_NAME_INDEX = "lastName";
+    static final String EXPERTISE_INDEX = "expertise";
+    static final String LAST_NAME_GROUPS = "lastNameGroups";
+    static final String FIRST_NAME_TEXT = "firstNameText";
+    static final String EXPERTISE_STATS = "expertiseStats";
+
+    // query fields share their index's name and extractor so query() can plan through the index
+    public static final Field<Instructor, String> LAST_NAME =
+            Field.of(LAST_NAME_INDEX, instructor -> instructor.lastName().toLowerCase(Locale.ROOT));
+    public static final Field<Instructor, Integer> EXPERTISE = Field.of(EXPERTISE_INDEX, Instructor::expertise);
+    public static final Field<Instructor, String> FIRST_NAME = Field.of(FIRST_NAME_TEXT, Instructor::firstName);
+
+    // shared instances so repeated sorts hit the cached sorted view
+    private static final Comparator<Instructor> BY_LAST_NAME_LENGTH = (i1, i2) -> {
+        int lengthCompare = Integer.compare(i1.lastName().length(), i2.lastName().length());
+        if (lengthCompare != 0) {
+            return lengthCompare;
+        }
+        return i1.lastName().compareTo(i2.lastName());
+    };
+    private static final Comparator<Instructor> BY_EXPERTISE_AND_NAME =
+            Comparator.comparingInt(Instructor::expertise).reversed()
+                    .thenComparing(Instructor::lastName)
+                    .thenComparing(Instructor::firstName);
+
     public InstructorRepository() {
-        super(Instructor::getFullName, "Instructor");
+        this(StorageMode.COPY_ON_WRITE);
+    }
+
+    public InstructorRepository(StorageMode storageMode) {
+        super(Instructor::getFullName, "Instructor", storageMode);
+        setCanonicalizer(instructor -> InstructorUtils.canonical(instructor, dictionary));
+        registerIndex(LAST_NAME);
+        registerRangeIndex(EXPERTISE);
+        registerIndex(LAST_NAME_GROUPS, Instructor::lastName);
+        registerTrigramIndex(FIRST_NAME);
+        registerAggregate(EXPERTISE_STATS, Instructor::expertise);
     }
 
     public List<Instructor> sortByExpertise() {
-        List<Instructor> allInstructors = getAll();
-        allInstructors.sort(Instructor.BY_EXPERTISE);
+        List<Instructor> allInstructors = sorted(Instructor.BY_EXPERTISE);
         logger.log(Level.INFO, "Sorted Instructor by expertise level (descending)");
         return allInstructors;
     }
 
+    public List<Instructor> topByExpertise(int k) {
+        List<Instructor> top = topK(Instructor.BY_EXPERTISE, k);
+        logger.log(Level.INFO, "Selected {0} Instructor by expertise (descending)", top.size());
+        return top;
+    }
+
+    public Page<Instructor> pageByExpertise(Instructor afterKey, int limit) {
+        Page<Instructor> page = page(Instructor.BY_EXPERTISE, afterKey, limit);
+        logger.log(Level.INFO, "Fetched page of {0} Instructor by expertise (descending)", page.size());
+        return page;
+    }
+
     public List<Instructor> sortByLastName() {
-        List<Instructor> allInstructors = getAll();
-        allInstructors.sort(Instructor.BY_LAST_NAME);
+        List<Instructor> allInstructors = sorted(Instructor.BY_LAST_NAME);
         logger.log(Level.INFO, "Sorted Instructor by lastName and firstName");
         return allInstructors;
     }
 
     public List<Instructor> sortByFirstName() {
-        List<Instructor> allInstructors = getAll();
-        allInstructors.sort(Instructor.BY_FIRST_NAME);
+        List<Instructor> allInstructors = sorted(Instructor.BY_FIRST_NAME);
         logger.log(Level.INFO, "Sorted Instructor by firstName and lastName");
         return allInstructors;
     }
 
     public List<Instructor> sortByLastNameLength() {
-        List<Instructor> allInstructors = getAll();
-        allInstructors.sort((i1, i2) -> {
-            int lengthCompare = Integer.compare(i1.lastName().length(), i2.lastName().length());
-            if (lengthCompare != 0) {
-                return lengthCompare;
-            }
-            return i1.lastName().compareTo(i2.lastName());
-        });
+        List<Instructor> allInstructors = sorted(BY_LAST_NAME_LENGTH);
         logger.log(Level.INFO, "Sorted Instructor by lastName length using lambda");
         return allInstructors;
     }
 
     public List<Instructor> sortByExpertiseAndName() {
-        List<Instructor> allInstructors = getAll();
-        allInstructors.sort(
-                Comparator.comparingInt(Instructor::expertise).reversed()
-                        .thenComparing(Instructor::lastName)
-                        .thenComparing(Instructor::firstName)
-        );
+        List<Instructor> allInstructors = sorted(BY_EXPERTISE_AND_NAME);
         logger.log(Level.INFO, "Sorted Instructor by expertise (desc) and name");
         return allInstructors;
     }
@@ -67,9 +104,7 @@ public class InstructorRepository extends GenericRepository<Instructor> {
             return List.of();
         }
 
-        List<Instructor> results = getAll().stream()
-                .filter(instructor -> instructor.lastName().equalsIgnoreCase(lastName.trim()))
-                .collect(Collectors.toList());
+        List<Instructor> results = findByIndex(LAST_NAME_INDEX, lastName.trim().toLowerCase(Locale.ROOT));
 
         logger.log(Level.INFO, "Found {0} instructors with lastName ''{1}''",
                 new Object[]{results.size(), lastName});
@@ -83,10 +118,7 @@ public class InstructorRepository extends GenericRepository<Instructor> {
             return List.of();
         }
 
-        List<Instructor> results = getAll().stream()
-                .filter(instructor -> instructor.expertise() >= minExpertise &&
-                        instructor.expertise() <= maxExpertise)
-                .collect(Collectors.toList());
+        List<Instructor> results = this.<Integer>getRangeIndex(EXPERTISE_INDEX).between(minExpertise, maxExpertise);
 
         logger.log(Level.INFO, "Found {0} instructors with expertise between {1} and {2}",
                 new Object[]{results.size(), minExpertise, maxExpertise});
@@ -94,9 +126,7 @@ public class InstructorRepository extends GenericRepository<Instructor> {
     }
 
     public List<Instructor> findByMinExpertise(int minExpertise) {
-        List<Instructor> results = getAll().stream()
-                .filter(instructor -> instructor.expertise() >= minExpertise)
-                .collect(Collectors.toList());
+        List<Instructor> results = this.<Integer>getRangeIndex(EXPERTISE_INDEX).atLeast(minExpertise);
 
         logger.log(Level.INFO, "Found {0} instructors with expertise >= {1}",
                 new Object[]{results.size(), minExpertise});
@@ -109,10 +139,7 @@ public class InstructorRepository extends GenericRepository<Instructor> {
             return List.of();
         }
 
-        String searchTerm = partialName.trim().toLowerCase();
-        List<Instructor> results = getAll().stream()
-                .filter(instructor -> instructor.firstName().toLowerCase().contains(searchTerm))
-                .collect(Collectors.toList());
+        List<Instructor> results = getTrigramIndex(FIRST_NAME_TEXT).search(partialName.trim());
 
         logger.log(Level.INFO, "Found {0} instructors with firstName containing ''{1}''",
                 new Object[]{results.size(), partialName});
@@ -120,35 +147,28 @@ public class InstructorRepository extends GenericRepository<Instructor> {
     }
 
     public Map<String, List<Instructor>> groupByLastName() {
-        Map<String, List<Instructor>> grouped = getAll().stream()
-                .collect(Collectors.groupingBy(Instructor::lastName));
+        Map<String, List<Instructor>> grouped = this.<String>getIndex(LAST_NAME_GROUPS).groups();
 
         logger.log(Level.INFO, "Grouped instructors by lastName: {0} groups", grouped.size());
         return grouped;
     }
 
     public int getTotalExpertise() {
-        int total = getAll().stream()
-                .map(Instructor::expertise)
-                .reduce(0, Integer::sum);
+        int total = (int) getAggregate(EXPERTISE_STATS).sum();
 
         logger.log(Level.INFO, "Total expertise across all instructors: {0}", total);
         return total;
     }
 
     public double getAverageExpertise() {
-        double average = getAll().stream()
-                .mapToInt(Instructor::expertise)
-                .average()
-                .orElse(0.0);
+        double average = getAggregate(EXPERTISE_STATS).average();
 
         logger.log(Level.INFO, "Average expertise: {0}", average);
         return average;
     }
 
     public Optional<Instructor> getInstructorWithMaxExpertise() {
-        Optional<Instructor> result = getAll().stream()
-                .max(Comparator.comparingInt(Instructor::expertise));
+        Optional<Instructor> result = this.<Integer>getRangeIndex(EXPERTISE_INDEX).max();
 
         if (result.isPresent()) {
             logger.log(Level.INFO, "Instructor with max expertise: {0} {1} ({2})",
@@ -162,20 +182,15 @@ public class InstructorRepository extends GenericRepository<Instructor> {
     }
 
     public List<Instructor> getAllInstructorsWithMaxExpertise() {
-        List<Instructor> allInstructors = getAll();
-        if (allInstructors.isEmpty()) {
+        RangeIndex<Instructor, Integer> expertiseIndex = getRangeIndex(EXPERTISE_INDEX);
+        Optional<Integer> maxKey = expertiseIndex.maxKey();
+        if (maxKey.isEmpty()) {
             logger.log(Level.INFO, "No instructors found");
             return List.of();
         }
 
-        int maxExpertise = allInstructors.stream()
-                .mapToInt(Instructor::expertise)
-                .max()
-                .orElse(0);
-
-        List<Instructor> results = allInstructors.stream()
-                .filter(instructor -> instructor.expertise() == maxExpertise)
-                .collect(Collectors.toList());
+        int maxExpertise = maxKey.get();
+        List<Instructor> results = expertiseIndex.find(maxExpertise);
 
         logger.log(Level.INFO, "Found {0} instructor(s) with max expertise: {1}",
                 new Object[]{results.size(), maxExpertise});
@@ -183,17 +198,16 @@ public class InstructorRepository extends GenericRepository<Instructor> {
     }
 
     public List<String> getAllFullNames() {
-        List<String> fullNames = getAll().stream()
-                .map(instructor -> instructor.firstName() + " " + instructor.lastName())
-                .collect(Collectors.toList());
+        List<String> fullNames = scan(items -> items
+                    .map(instructor -> instructor.firstName() + " " + instructor.lastName())
+                    .collect(Collectors.toList())).result();
 
         logger.log(Level.INFO, "Retrieved {0} instructor full names", fullNames.size());
         return fullNames;
     }
 
     public boolean hasInstructorWithExpertise(int expertise) {
-        boolean exists = getAll().stream()
-                .anyMatch(instructor -> instructor.expertise() == expertise);
+        boolean exists = this.<Integer>getIndex(EXPERTISE_INDEX).containsKey(expertise);
 
         logger.log(Level.INFO, "Instructors with expertise {0} exist: {1}",
                 new Object[]{expertise, exists});
@@ -201,8 +215,9 @@ public class InstructorRepository extends GenericRepository<Instructor> {
     }
 
     public boolean allInstructorsHaveMinExpertise(int minExpertise) {
-        boolean result = getAll().stream()
-                .allMatch(instructor -> instructor.expertise() >= minExpertise);
+        boolean result = this.<Integer>getRangeIndex(EXPERTISE_INDEX).minKey()
+                .map(lowest -> lowest >= minExpertise)
+                .orElse(true);
 
         logger.log(Level.INFO, "All instructors have >= {0} expertise: {1}",
                 new Object[]{minExpertise, result});
@@ -211,9 +226,13 @@ public class InstructorRepository extends GenericRepository<Instructor> {
 
     public void printAllInstructors() {
         logger.log(Level.INFO, "Printing all instructors:");
-        getAll().stream()
-                .forEach(instructor -> System.out.println(instructor.firstName() + " " +
-                        instructor.lastName() + " - expertise: " +
-                        instructor.expertise()));
+        forEach(instructor -> System.out.println(instructor.firstName() + " " +
+                instructor.lastName() + " - expertise: " +
+                instructor.expertise()));
+    }
+
+    // first and last names shared between stored instructors; dropped together with the repository
+    public ValueDictionary getValueDictionary() {
+        return dictionary;
     }
-}
\ No newline at end of file
+}
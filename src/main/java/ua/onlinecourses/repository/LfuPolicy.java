@@ -0,0 +1,59 @@
+package ua.onlinecourses.repository;
+
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.Map;
+import java.util.TreeMap;
+
+class LfuPolicy implements EvictionPolicy {
+
+    private final Map<Object, Integer> counts = new HashMap<>();
+    // use count -> keys with that count, oldest first, so ties go to the least recently promoted key
+    private final TreeMap<Integer, LinkedHashSet<Object>> buckets = new TreeMap<>();
+
+    @Override
+    public void onAdd(Object key) {
+        if (counts.putIfAbsent(key, 1) == null) {
+            buckets.computeIfAbsent(1, count -> new LinkedHashSet<>()).add(key);
+        }
+    }
+
+    @Override
+    public void onAccess(Object key, boolean hit) {
+        Integer count = hit ? counts.get(key) : null;
+        if (count == null) {
+            return;
+        }
+        unlink(key, count);
+        counts.put(key, count + 1);
+        buckets.computeIfAbsent(count + 1, next -> new LinkedHashSet<>()).add(key);
+    }
+
+    @Override
+    public void onRemove(Object key) {
+        Integer count = counts.remove(key);
+        if (count != null) {
+            unlink(key, count);
+        }
+    }
+
+    @Override
+    public void onClear() {
+        counts.clear();
+        buckets.clear();
+    }
+
+    @Override
+    public Object victim() {
+        Map.Entry<Integer, LinkedHashSet<Object>> least = buckets.firstEntry();
+        return least == null ? null : least.getValue().iterator().next();
+    }
+
+    private void unlink(Object key, int count) {
+        LinkedHashSet<Object> bucket = buckets.get(count);
+        bucket.remove(key);
+        if (bucket.isEmpty()) {
+            buckets.remove(count);
+        }
+    }
+}
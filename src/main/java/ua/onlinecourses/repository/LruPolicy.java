@@ -0,0 +1,38 @@
+package ua.onlinecourses.repository;
+
+import java.util.Iterator;
+import java.util.LinkedHashSet;
+
+class LruPolicy implements EvictionPolicy {
+
+    // least recently used first; re-inserting a key moves it to the end
+    private final LinkedHashSet<Object> order = new LinkedHashSet<>();
+
+    @Override
+    public void onAdd(Object key) {
+        order.add(key);
+    }
+
+    @Override
+    public void onAccess(Object key, boolean hit) {
+        if (hit && order.remove(key)) {
+            order.add(key);
+        }
+    }
+
+    @Override
+    public void onRemove(Object key) {
+        order.remove(key);
+    }
+
+    @Override
+    public void onClear() {
+        order.clear();
+    }
+
+    @Override
+    public Object victim() {
+        Iterator<Object> oldest = order.iterator();
+        return oldest.hasNext() ? oldest.next() : null;
+    }
+}
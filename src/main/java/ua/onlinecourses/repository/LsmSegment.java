@@ -0,0 +1,361 @@
+package ua.onlinecourses.repository;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.BitSet;
+import java.util.Iterator;
+import java.util.concurrent.atomic.AtomicInteger;
+
+// Immutable sorted run of records on disk: a header, then records in ascending identity order.
+// Only every INDEX_INTERVAL-th identity and a Bloom filter stay in heap; a lookup reads at most
+// one interval of records with positional reads, so concurrent readers never share a file pointer.
+final class LsmSegment {
+
+    static final int INDEX_INTERVAL = 32;
+    private static final int MAGIC = 0x4C534D31;
+    private static final int HEADER_BYTES = Integer.BYTES * 2;
+    private static final int BLOOM_BITS_PER_KEY = 10;
+    private static final int BLOOM_HASHES = 4;
+
+    // value is null for a tombstone
+    record Record(String identity, long sequence, byte[] value) {
+
+        boolean isTombstone() {
+            return value == null;
+        }
+    }
+
+    private final Path path;
+    private final long generation;
+    private final FileChannel channel;
+    private final int count;
+    private final String[] indexKeys;
+    private final long[] indexOffsets;
+    private final BitSet bloom;
+    private final int bloomBits;
+    // one reference belongs to the storage state that lists the segment; readers take their own
+    private final AtomicInteger references = new AtomicInteger(1);
+
+    private LsmSegment(Path path, long generation, FileChannel channel, int count, String[] indexKeys,
+                       long[] indexOffsets, BitSet bloom, int bloomBits) {
+        this.path = path;
+        this.generation = generation;
+        this.channel = channel;
+        this.count = count;
+        this.indexKeys = indexKeys;
+        this.indexOffsets = indexOffsets;
+        this.bloom = bloom;
+        this.bloomBits = bloomBits;
+    }
+
+    // records must arrive in strictly ascending identity order
+    static LsmSegment write(Path path, long generation, Iterator<Record> records)
+            throws IOException {
+        Path temporary = path.resolveSibling(path.getFileName() + ".tmp");
+        int count = 0;
+        try (FileChannel out = FileChannel.open(temporary, StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+                StandardOpenOption.TRUNCATE_EXISTING);
+             DataOutputStream data = new DataOutputStream(new BufferedOutputStream(
+                     new ChannelOutput(out), 64 * 1024))) {
+            data.writeInt(MAGIC);
+            data.writeInt(0);
+            while (records.hasNext()) {
+                writeRecord(data, records.next());
+                count++;
+            }
+            data.flush();
+            // the record count goes into the header once it is known
+            out.write(ByteBuffer.allocate(Integer.BYTES).putInt(0, count), Integer.BYTES);
+            out.force(true);
+        }
+        Files.move(temporary, path, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        return open(path, generation);
+    }
+
+    // scans the file once to rebuild the sparse index and Bloom filter
+    static LsmSegment open(Path path, long generation) throws IOException {
+        FileChannel channel = FileChannel.open(path, StandardOpenOption.READ);
+        try {
+            ByteBuffer header = ByteBuffer.allocate(HEADER_BYTES);
+            readFully(channel, header, 0);
+            if (header.getInt(0) != MAGIC) {
+                throw new IOException("Not a segment file: " + path);
+            }
+            int count = header.getInt(Integer.BYTES);
+            int indexSize = (count + INDEX_INTERVAL - 1) / INDEX_INTERVAL;
+            String[] indexKeys = new String[indexSize];
+            long[] indexOffsets = new long[indexSize];
+            int bloomBits = Math.max(64, count * BLOOM_BITS_PER_KEY);
+            BitSet bloom = new BitSet(bloomBits);
+
+            try (ChannelInput counting = new ChannelInput(channel, HEADER_BYTES);
+                 DataInputStream data = new DataInputStream(new BufferedInputStream(counting, 64 * 1024))) {
+                long offset = HEADER_BYTES;
+                for (int i = 0; i < count; i++) {
+                    String identity = data.readUTF();
+                    data.readLong();
+                    int length = data.readInt();
+                    if (length > 0) {
+                        data.skipNBytes(length);
+                    }
+                    if (i % INDEX_INTERVAL == 0) {
+                        indexKeys[i / INDEX_INTERVAL] = identity;
+                        indexOffsets[i / INDEX_INTERVAL] = offset;
+                    }
+                    addToBloom(bloom, bloomBits, identity);
+                    offset += recordBytes(identity, length);
+                }
+            }
+            return new LsmSegment(path, generation, channel, count, indexKeys, indexOffsets, bloom, bloomBits);
+        } catch (IOException | RuntimeException e) {
+            channel.close();
+            throw e;
+        }
+    }
+
+    Record find(String identity) throws IOException {
+        if (count == 0 || !mightContain(identity)) {
+            return null;
+        }
+        int slot = floorIndex(identity);
+        if (slot < 0) {
+            return null;
+        }
+        try (DataInputStream data = reader(indexOffsets[slot], 4096)) {
+            int limit = Math.min(INDEX_INTERVAL, count - slot * INDEX_INTERVAL);
+            for (int i = 0; i < limit; i++) {
+                Record record = readRecord(data);
+                int compare = record.identity().compareTo(identity);
+                if (compare == 0) {
+                    return record;
+                }
+                if (compare > 0) {
+                    return null;
+                }
+            }
+        }
+        return null;
+    }
+
+    // sequential cursor over every record, for merges and full scans
+    Cursor cursor() throws IOException {
+        return new Cursor(reader(HEADER_BYTES, 64 * 1024), count);
+    }
+
+    boolean retain() {
+        while (true) {
+            int current = references.get();
+            if (current == 0) {
+                return false;
+            }
+            if (references.compareAndSet(current, current + 1)) {
+                return true;
+            }
+        }
+    }
+
+    // the last release closes the file and, once the segment is obsolete, deletes it
+    void release() {
+        if (references.decrementAndGet() == 0) {
+            try {
+                channel.close();
+                Files.deleteIfExists(path);
+            } catch (IOException e) {
+                path.toFile().deleteOnExit();
+            }
+        }
+    }
+
+    // closes without deleting, when the whole storage shuts down
+    void closeQuietly() {
+        try {
+            channel.close();
+        } catch (IOException ignored) {
+            // nothing useful to do while shutting down
+        }
+    }
+
+    int count() {
+        return count;
+    }
+
+    long generation() {
+        return generation;
+    }
+
+    Path path() {
+        return path;
+    }
+
+    private boolean mightContain(String identity) {
+        int hash = identity.hashCode();
+        int second = Integer.rotateLeft(hash, 16) * 0x9E3779B9 | 1;
+        for (int i = 0; i < BLOOM_HASHES; i++) {
+            if (!bloom.get(Math.floorMod(hash + i * second, bloomBits))) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static void addToBloom(BitSet bloom, int bloomBits, String identity) {
+        int hash = identity.hashCode();
+        int second = Integer.rotateLeft(hash, 16) * 0x9E3779B9 | 1;
+        for (int i = 0; i < BLOOM_HASHES; i++) {
+            bloom.set(Math.floorMod(hash + i * second, bloomBits));
+        }
+    }
+
+    // last index slot whose first identity is <= identity
+    private int floorIndex(String identity) {
+        int low = 0;
+        int high = indexKeys.length - 1;
+        int found = -1;
+        while (low <= high) {
+            int mid = (low + high) >>> 1;
+            if (indexKeys[mid].compareTo(identity) <= 0) {
+                found = mid;
+                low = mid + 1;
+            } else {
+                high = mid - 1;
+            }
+        }
+        return found;
+    }
+
+    private DataInputStream reader(long position, int bufferSize) {
+        return new DataInputStream(new BufferedInputStream(new ChannelInput(channel, position), bufferSize));
+    }
+
+    static void writeRecord(DataOutputStream data, Record record) throws IOException {
+        data.writeUTF(record.identity());
+        data.writeLong(record.sequence());
+        if (record.isTombstone()) {
+            data.writeInt(-1);
+        } else {
+            data.writeInt(record.value().length);
+            data.write(record.value());
+        }
+    }
+
+    static Record readRecord(DataInputStream data) throws IOException {
+        String identity = data.readUTF();
+        long sequence = data.readLong();
+        int length = data.readInt();
+        if (length < 0) {
+            return new Record(identity, sequence, null);
+        }
+        byte[] value = new byte[length];
+        data.readFully(value);
+        return new Record(identity, sequence, value);
+    }
+
+    private static long recordBytes(String identity, int valueLength) {
+        int utfLength = 0;
+        for (int i = 0; i < identity.length(); i++) {
+            char c = identity.charAt(i);
+            utfLength += c >= 0x0001 && c <= 0x007F ? 1 : (c > 0x07FF ? 3 : 2);
+        }
+        return 2 + utfLength + Long.BYTES + Integer.BYTES + Math.max(0, valueLength);
+    }
+
+    private static void readFully(FileChannel channel, ByteBuffer buffer, long position) throws IOException {
+        while (buffer.hasRemaining()) {
+            int read = channel.read(buffer, position + buffer.position());
+            if (read < 0) {
+                throw new EOFException("Unexpected end of segment file");
+            }
+        }
+    }
+
+    static final class Cursor implements AutoCloseable {
+        private final DataInputStream data;
+        private int remaining;
+        private Record current;
+
+        private Cursor(DataInputStream data, int remaining) {
+            this.data = data;
+            this.remaining = remaining;
+        }
+
+        // advances and returns false once every record has been read
+        boolean next() throws IOException {
+            if (remaining == 0) {
+                current = null;
+                return false;
+            }
+            remaining--;
+            current = readRecord(data);
+            return true;
+        }
+
+        Record current() {
+            return current;
+        }
+
+        @Override
+        public void close() throws IOException {
+            data.close();
+        }
+    }
+
+    // reads a channel from a fixed position without moving the channel's own position
+    private static final class ChannelInput extends InputStream {
+        private final FileChannel channel;
+        private long position;
+
+        ChannelInput(FileChannel channel, long position) {
+            this.channel = channel;
+            this.position = position;
+        }
+
+        @Override
+        public int read() throws IOException {
+            byte[] single = new byte[1];
+            return read(single, 0, 1) < 0 ? -1 : single[0] & 0xFF;
+        }
+
+        @Override
+        public int read(byte[] bytes, int offset, int length) throws IOException {
+            int read = channel.read(ByteBuffer.wrap(bytes, offset, length), position);
+            if (read > 0) {
+                position += read;
+            }
+            return read;
+        }
+    }
+
+    private static final class ChannelOutput extends OutputStream {
+        private final FileChannel channel;
+
+        ChannelOutput(FileChannel channel) {
+            this.channel = channel;
+        }
+
+        @Override
+        public void write(int b) throws IOException {
+            write(new byte[]{(byte) b}, 0, 1);
+        }
+
+        @Override
+        public void write(byte[] bytes, int offset, int length) throws IOException {
+            ByteBuffer buffer = ByteBuffer.wrap(bytes, offset, length);
+            while (buffer.hasRemaining()) {
+                channel.write(buffer);
+            }
+        }
+    }
+
+}
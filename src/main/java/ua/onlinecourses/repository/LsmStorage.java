@@ -0,0 +1,779 @@
+package ua.onlinecourses.repository;
+
+import com.fasterxml.jackson.databind.DeserializationFeature;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.datatype.jsr310.JavaTimeModule;
+
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayInputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
+import java.nio.channels.FileChannel;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.NavigableMap;
+import java.util.NoSuchElementException;
+import java.util.Objects;
+import java.util.PriorityQueue;
+import java.util.Properties;
+import java.util.Spliterator;
+import java.util.Spliterators;
+import java.util.TreeMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.function.Function;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
+
+// Log-structured storage for repositories larger than the heap. Writes go to a write-ahead log and
+// a sorted in-heap memtable; a full memtable is flushed to an immutable segment file sorted by
+// identity, and a background thread merges segments once there are compactionTrigger of them.
+// Only the memtable, a sparse key index and a Bloom filter per segment stay in heap.
+//
+// Lookups check the memtable, then segments newest first. Scans merge all of them in identity
+// order, so iteration order is identity order rather than insertion order. Secondary indexes
+// registered on the repository still hold their entries in heap; a repository meant to outgrow
+// the heap should index only what it must.
+//
+// The manifest names the live segments, newest first. It is replaced atomically after every
+// flush, compaction and clear, and records the last log sequence number already in segments,
+// so recovery replays only the log records after it.
+public final class LsmStorage<T> implements RepositoryStorage<T>, AutoCloseable {
+    private static final Logger logger = Logger.getLogger(LsmStorage.class.getName());
+
+    public static final int DEFAULT_MEMTABLE_LIMIT = 4_096;
+    public static final int DEFAULT_COMPACTION_TRIGGER = 4;
+    private static final String MANIFEST = "MANIFEST";
+    private static final String WAL = "wal.log";
+    private static final String SEGMENT_PREFIX = "segment-";
+    private static final String SEGMENT_SUFFIX = ".seg";
+
+    private final Path directory;
+    private final Class<T> type;
+    private final int memtableLimit;
+    private final int compactionTrigger;
+    private final boolean sync;
+    private final ObjectMapper mapper;
+    private final ExecutorService compactor;
+    // guards the memtable, the live count and swaps of state, so a reader can capture all three at once
+    private final Object memtableLock = new Object();
+    private final Object compactionLock = new Object();
+
+    private volatile State<T> state;
+    private int live;
+    // live count as of flushedLsn, which is what the manifest records
+    private int flushedLive;
+    private IdentityExtractor<T> identityExtractor;
+
+    // the fields below change only under the repository monitor (writes) or this (flush, compaction, clear)
+    private FileOutputStream walFile;
+    private DataOutputStream wal;
+    private long lsn;
+    private long flushedLsn;
+    private long lastSequence = -1;
+    private long nextGeneration;
+    private boolean compactionScheduled;
+    private volatile boolean closed;
+    private volatile long flushCount;
+    private volatile long compactionCount;
+
+    private record Slot<T>(long sequence, T item, byte[] bytes) {
+    }
+
+    private record State<T>(NavigableMap<String, Slot<T>> memtable, List<LsmSegment> segments) {
+    }
+
+    private LsmStorage(Path directory, Class<T> type, int memtableLimit, int compactionTrigger, boolean sync) {
+        this.directory = directory;
+        this.type = type;
+        this.memtableLimit = memtableLimit;
+        this.compactionTrigger = compactionTrigger;
+        this.sync = sync;
+        this.mapper = new ObjectMapper();
+        this.mapper.registerModule(new JavaTimeModule());
+        this.mapper.disable(DeserializationFeature.FAIL_ON_UNKNOWN_PROPERTIES);
+        this.compactor = Executors.newSingleThreadExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "lsm-compaction-" + directory.getFileName());
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+    public static <T> LsmStorage<T> open(Path directory, Class<T> type) throws IOException {
+        return open(directory, type, DEFAULT_MEMTABLE_LIMIT, DEFAULT_COMPACTION_TRIGGER, false);
+    }
+
+    // reopens whatever an earlier instance left in directory: manifest, segments and the log tail
+    public static <T> LsmStorage<T> open(Path directory, Class<T> type, int memtableLimit,
+                                         int compactionTrigger, boolean sync) throws IOException {
+        if (memtableLimit <= 0 || compactionTrigger < 2) {
+            throw new IllegalArgumentException("Memtable limit must be positive and compaction trigger at least 2");
+        }
+        Files.createDirectories(directory);
+        LsmStorage<T> storage = new LsmStorage<>(directory, type, memtableLimit, compactionTrigger, sync);
+        try {
+            storage.recover();
+        } catch (IOException | RuntimeException e) {
+            storage.close();
+            throw e;
+        }
+        return storage;
+    }
+
+    @Override
+    public boolean indexesIdentity() {
+        return true;
+    }
+
+    @Override
+    public boolean insertionOrdered() {
+        return false;
+    }
+
+    @Override
+    public RepositoryEntry<T> find(Object key) {
+        String identity = key.toString();
+        State<T> current;
+        synchronized (memtableLock) {
+            current = state;
+            Slot<T> slot = current.memtable().get(identity);
+            if (slot != null) {
+                return slot.item() == null ? null : new RepositoryEntry<>(slot.sequence(), key, slot.item());
+            }
+            current.segments().forEach(LsmSegment::retain);
+        }
+        try {
+            for (LsmSegment segment : current.segments()) {
+                LsmSegment.Record record = segment.find(identity);
+                if (record != null) {
+                    return record.isTombstone() ? null
+                            : new RepositoryEntry<>(record.sequence(), key, deserialize(record.value()));
+                }
+            }
+            return null;
+        } catch (IOException e) {
+            throw new UncheckedIOException("Failed to read segment in " + directory, e);
+        } finally {
+            current.segments().forEach(LsmSegment::release);
+        }
+    }
+
+    @Override
+    public void append(RepositoryEntry<T> entry) {
+        appendAll(List.of(entry));
+    }
+
+    @Override
+    public void appendAll(List<RepositoryEntry<T>> entries) {
+        if (entries.isEmpty()) {
+            return;
+        }
+        List<Map.Entry<String, Slot<T>>> slots = new ArrayList<>(entries.size());
+        for (RepositoryEntry<T> entry : entries) {
+            slots.add(Map.entry(entry.identity(), new Slot<>(entry.sequence(), entry.item(), serialize(entry.item()))));
+        }
+        write(slots, entries.size());
+    }
+
+    // the repository only removes entries it has just found, so a tombstone always hides a live item
+    @Override
+    public boolean remove(RepositoryEntry<T> entry) {
+        write(List.of(Map.entry(entry.identity(), new Slot<T>(entry.sequence(), null, null))), -1);
+        return true;
+    }
+
+    @Override
+    public synchronized void clear() {
+        ensureOpen();
+        List<LsmSegment> retired;
+        synchronized (memtableLock) {
+            retired = state.segments();
+            state = new State<>(new TreeMap<>(), List.of());
+            live = 0;
+        }
+        try {
+            flushedLsn = lsn;
+            flushedLive = 0;
+            writeManifest(List.of());
+            restartWal();
+        } catch (IOException e) {
+            throw new UncheckedIOException("Failed to clear " + directory, e);
+        }
+        retired.forEach(LsmSegment::release);
+        logger.log(Level.INFO, "Cleared LSM storage in {0}, retired {1} segments",
+                new Object[]{directory, retired.size()});
+    }
+
+    @Override
+    public int size() {
+        synchronized (memtableLock) {
+            return live;
+        }
+    }
+
+    // ORDERED and SIZED over a merged point-in-time view; splits by batching, not by halves
+    @Override
+    public Spliterator<T> spliterator() {
+        return openView().spliterator(record -> deserialize(record.value()));
+    }
+
+    @Override
+    public Stream<T> stream() {
+        View view = openView();
+        return StreamSupport.stream(view.spliterator(record -> deserialize(record.value())), false)
+                .onClose(view::close);
+    }
+
+    @Override
+    public Stream<RepositoryEntry<T>> entries() {
+        View view = openView();
+        return StreamSupport.stream(view.spliterator(this::toEntry), false).onClose(view::close);
+    }
+
+    // materializes every live item, so it needs the heap this storage otherwise avoids
+    @Override
+    public List<T> snapshot() {
+        return stream().toList();
+    }
+
+    // writes the memtable out as a segment now instead of waiting for it to fill up
+    public synchronized void flush() {
+        ensureOpen();
+        try {
+            flushMemtable();
+        } catch (IOException e) {
+            throw new UncheckedIOException("Failed to flush memtable in " + directory, e);
+        }
+    }
+
+    // merges every segment into one and drops tombstones; the background thread calls this too
+    public void compact() {
+        synchronized (compactionLock) {
+            List<LsmSegment> inputs;
+            long generation;
+            synchronized (this) {
+                ensureOpen();
+                inputs = state.segments();
+                if (inputs.size() < 2) {
+                    return;
+                }
+                inputs.forEach(LsmSegment::retain);
+                generation = nextGeneration++;
+            }
+            try {
+                long start = System.nanoTime();
+                LsmSegment output = writeCompacted(inputs, generation);
+                install(inputs, output);
+                compactionCount++;
+                logger.log(Level.INFO, "Compacted {0} segments into {1} with {2} records in {3} ms",
+                        new Object[]{inputs.size(), output.path().getFileName(), output.count(),
+                                (System.nanoTime() - start) / 1_000_000});
+            } catch (IOException e) {
+                throw new UncheckedIOException("Failed to compact segments in " + directory, e);
+            } finally {
+                inputs.forEach(LsmSegment::release);
+            }
+        }
+    }
+
+    public int getSegmentCount() {
+        return state.segments().size();
+    }
+
+    public int getMemtableSize() {
+        synchronized (memtableLock) {
+            return state.memtable().size();
+        }
+    }
+
+    public long getFlushCount() {
+        return flushCount;
+    }
+
+    public long getCompactionCount() {
+        return compactionCount;
+    }
+
+    public Path getDirectory() {
+        return directory;
+    }
+
+    // stops compaction and closes files; the log already holds every acknowledged write
+    @Override
+    public void close() {
+        synchronized (this) {
+            if (closed) {
+                return;
+            }
+            closed = true;
+        }
+        compactor.shutdown();
+        try {
+            if (!compactor.awaitTermination(30, TimeUnit.SECONDS)) {
+                logger.log(Level.WARNING, "Compaction in {0} did not stop in time", directory);
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        synchronized (this) {
+            try {
+                if (wal != null) {
+                    wal.close();
+                }
+            } catch (IOException e) {
+                logger.log(Level.WARNING, "Failed to close log in {0}: {1}", new Object[]{directory, e.getMessage()});
+            }
+            State<T> current = state;
+            if (current != null) {
+                current.segments().forEach(LsmSegment::closeQuietly);
+            }
+        }
+        logger.log(Level.INFO, "Closed LSM storage in {0}", directory);
+    }
+
+    @Override
+    public void bind(IdentityExtractor<T> identityExtractor) {
+        this.identityExtractor = Objects.requireNonNull(identityExtractor, "identityExtractor");
+    }
+
+    @Override
+    public synchronized long lastSequence() {
+        return lastSequence;
+    }
+
+    private synchronized void write(List<Map.Entry<String, Slot<T>>> slots, int liveDelta) {
+        ensureOpen();
+        try {
+            for (Map.Entry<String, Slot<T>> slot : slots) {
+                wal.writeLong(++lsn);
+                LsmSegment.writeRecord(wal, new LsmSegment.Record(slot.getKey(), slot.getValue().sequence(),
+                        slot.getValue().bytes()));
+            }
+            wal.flush();
+            if (sync) {
+                walFile.getChannel().force(false);
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException("Failed to append to log in " + directory, e);
+        }
+
+        synchronized (memtableLock) {
+            NavigableMap<String, Slot<T>> memtable = state.memtable();
+            for (Map.Entry<String, Slot<T>> slot : slots) {
+                memtable.put(slot.getKey(), slot.getValue());
+                lastSequence = Math.max(lastSequence, slot.getValue().sequence());
+            }
+            live += liveDelta;
+        }
+
+        if (state.memtable().size() >= memtableLimit) {
+            try {
+                flushMemtable();
+            } catch (IOException e) {
+                // the log still holds the memtable, so a failed flush only delays it
+                logger.log(Level.WARNING, "Memtable flush in {0} failed: {1}", new Object[]{directory, e.getMessage()});
+            }
+        }
+    }
+
+    private synchronized void flushMemtable() throws IOException {
+        State<T> current = state;
+        if (current.memtable().isEmpty()) {
+            return;
+        }
+        long generation = nextGeneration++;
+        Iterator<LsmSegment.Record> records = current.memtable().entrySet().stream()
+                .map(slot -> new LsmSegment.Record(slot.getKey(), slot.getValue().sequence(), slot.getValue().bytes()))
+                .iterator();
+        LsmSegment segment = LsmSegment.write(segmentPath(generation), generation, records);
+
+        List<LsmSegment> segments = new ArrayList<>(current.segments().size() + 1);
+        segments.add(segment);
+        segments.addAll(current.segments());
+        flushedLsn = lsn;
+        flushedLive = live;
+        writeManifest(segments);
+        synchronized (memtableLock) {
+            state = new State<>(new TreeMap<>(), List.copyOf(segments));
+        }
+        restartWal();
+        flushCount++;
+        logger.log(Level.FINE, "Flushed {0} records to {1}", new Object[]{segment.count(), segment.path().getFileName()});
+
+        if (segments.size() >= compactionTrigger && !compactionScheduled) {
+            compactionScheduled = true;
+            compactor.execute(this::compactInBackground);
+        }
+    }
+
+    private void compactInBackground() {
+        synchronized (this) {
+            compactionScheduled = false;
+        }
+        try {
+            if (!closed && getSegmentCount() >= compactionTrigger) {
+                compact();
+            }
+        } catch (RuntimeException e) {
+            // the inputs stay in place, so a failed compaction loses nothing and is retried on the next flush
+            logger.log(Level.WARNING, "Background compaction in {0} failed: {1}", new Object[]{directory, e.getMessage()});
+        }
+    }
+
+    // every input is merged, so nothing older can be hiding behind a tombstone and they are all dropped
+    private LsmSegment writeCompacted(List<LsmSegment> inputs, long generation) throws IOException {
+        List<LsmSegment.Cursor> cursors = new ArrayList<>(inputs.size());
+        try {
+            for (LsmSegment input : inputs) {
+                cursors.add(input.cursor());
+            }
+            Iterator<LsmSegment.Record> merged = new MergeIterator(new TreeMap<>(), cursors, true);
+            return LsmSegment.write(segmentPath(generation), generation, merged);
+        } catch (UncheckedIOException e) {
+            throw e.getCause();
+        } finally {
+            for (LsmSegment.Cursor cursor : cursors) {
+                cursor.close();
+            }
+        }
+    }
+
+    private synchronized void install(List<LsmSegment> inputs, LsmSegment output) throws IOException {
+        List<LsmSegment> current = state.segments();
+        if (closed || !current.containsAll(inputs)) {
+            // a clear retired the inputs while they were being merged
+            output.release();
+            return;
+        }
+        // segments flushed during the merge are newer than all of its inputs and stay in front
+        List<LsmSegment> segments = new ArrayList<>(current.size() - inputs.size() + 1);
+        current.stream().filter(segment -> !inputs.contains(segment)).forEach(segments::add);
+        segments.add(output);
+        writeManifest(segments);
+        synchronized (memtableLock) {
+            state = new State<>(state.memtable(), List.copyOf(segments));
+        }
+        // drops the references the old state held; files go once the last reader lets go
+        inputs.forEach(LsmSegment::release);
+    }
+
+    private View openView() {
+        NavigableMap<String, Slot<T>> memtable;
+        List<LsmSegment> segments;
+        int size;
+        synchronized (memtableLock) {
+            State<T> current = state;
+            memtable = new TreeMap<>(current.memtable());
+            segments = current.segments();
+            segments.forEach(LsmSegment::retain);
+            size = live;
+        }
+        List<LsmSegment.Cursor> cursors = new ArrayList<>(segments.size());
+        try {
+            for (LsmSegment segment : segments) {
+                cursors.add(segment.cursor());
+            }
+        } catch (IOException e) {
+            segments.forEach(LsmSegment::release);
+            throw new UncheckedIOException("Failed to open segment in " + directory, e);
+        }
+        return new View(new MergeIterator(memtable, cursors, true), segments, cursors, size);
+    }
+
+    private RepositoryEntry<T> toEntry(LsmSegment.Record record) {
+        T item = deserialize(record.value());
+        return new RepositoryEntry<>(record.sequence(), identityExtractor.extractKey(item), item);
+    }
+
+    private void recover() throws IOException {
+        List<LsmSegment> segments = new ArrayList<>();
+        Path manifestPath = directory.resolve(MANIFEST);
+        if (Files.exists(manifestPath)) {
+            Properties manifest = new Properties();
+            try (InputStream input = Files.newInputStream(manifestPath)) {
+                manifest.load(input);
+            }
+            flushedLive = Integer.parseInt(manifest.getProperty("live", "0"));
+            lastSequence = Long.parseLong(manifest.getProperty("lastSequence", "-1"));
+            flushedLsn = Long.parseLong(manifest.getProperty("flushedLsn", "0"));
+            nextGeneration = Long.parseLong(manifest.getProperty("nextGeneration", "0"));
+            String names = manifest.getProperty("segments", "");
+            for (String name : names.isEmpty() ? new String[0] : names.split(",")) {
+                segments.add(LsmSegment.open(directory.resolve(name), generationOf(name)));
+            }
+        }
+        lsn = flushedLsn;
+        live = flushedLive;
+        state = new State<>(new TreeMap<>(), List.copyOf(segments));
+        removeUnreferencedFiles(segments);
+
+        int replayed = replayWal();
+        walFile = new FileOutputStream(directory.resolve(WAL).toFile(), true);
+        wal = new DataOutputStream(new BufferedOutputStream(walFile));
+        logger.log(Level.INFO, "Opened LSM storage in {0}: {1} items, {2} segments, {3} log records replayed",
+                new Object[]{directory, live, segments.size(), replayed});
+    }
+
+    private int replayWal() throws IOException {
+        Path walPath = directory.resolve(WAL);
+        if (!Files.exists(walPath)) {
+            return 0;
+        }
+        byte[] content = Files.readAllBytes(walPath);
+        ByteArrayInputStream bytes = new ByteArrayInputStream(content);
+        DataInputStream input = new DataInputStream(bytes);
+        NavigableMap<String, Slot<T>> memtable = state.memtable();
+        int replayed = 0;
+        long goodLength = 0;
+        while (bytes.available() > 0) {
+            long recordLsn;
+            LsmSegment.Record record;
+            try {
+                recordLsn = input.readLong();
+                record = LsmSegment.readRecord(input);
+            } catch (IOException e) {
+                // a write cut short by a crash was never acknowledged, so it is dropped
+                logger.log(Level.WARNING, "Dropping torn log record at byte {0} of {1}",
+                        new Object[]{goodLength, walPath});
+                try (FileChannel channel = FileChannel.open(walPath, StandardOpenOption.WRITE)) {
+                    channel.truncate(goodLength);
+                }
+                break;
+            }
+            goodLength = content.length - bytes.available();
+            if (recordLsn <= flushedLsn) {
+                continue;
+            }
+            lsn = Math.max(lsn, recordLsn);
+            T item = record.isTombstone() ? null : deserialize(record.value());
+            memtable.put(record.identity(), new Slot<>(record.sequence(), item, record.value()));
+            live += record.isTombstone() ? -1 : 1;
+            lastSequence = Math.max(lastSequence, record.sequence());
+            replayed++;
+        }
+        return replayed;
+    }
+
+    private void restartWal() throws IOException {
+        wal.close();
+        walFile = new FileOutputStream(directory.resolve(WAL).toFile(), false);
+        wal = new DataOutputStream(new BufferedOutputStream(walFile));
+    }
+
+    private void writeManifest(List<LsmSegment> segments) throws IOException {
+        Properties manifest = new Properties();
+        List<String> names = new ArrayList<>(segments.size());
+        segments.forEach(segment -> names.add(segment.path().getFileName().toString()));
+        manifest.setProperty("segments", String.join(",", names));
+        manifest.setProperty("live", Integer.toString(flushedLive));
+        manifest.setProperty("lastSequence", Long.toString(lastSequence));
+        manifest.setProperty("flushedLsn", Long.toString(flushedLsn));
+        manifest.setProperty("nextGeneration", Long.toString(nextGeneration));
+
+        Path temporary = directory.resolve(MANIFEST + ".tmp");
+        try (OutputStream output = Files.newOutputStream(temporary)) {
+            manifest.store(output, "LSM storage manifest");
+            if (output instanceof FileOutputStream file) {
+                file.getChannel().force(true);
+            }
+        }
+        Files.move(temporary, directory.resolve(MANIFEST), StandardCopyOption.REPLACE_EXISTING,
+                StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    private void removeUnreferencedFiles(List<LsmSegment> segments) throws IOException {
+        List<Path> referenced = new ArrayList<>();
+        segments.forEach(segment -> referenced.add(segment.path().getFileName()));
+        try (DirectoryStream<Path> files = Files.newDirectoryStream(directory)) {
+            for (Path file : files) {
+                String name = file.getFileName().toString();
+                boolean orphanSegment = name.startsWith(SEGMENT_PREFIX) && !referenced.contains(file.getFileName());
+                if (orphanSegment || name.endsWith(".tmp")) {
+                    // left behind by a flush or compaction that crashed before its manifest was written
+                    Files.deleteIfExists(file);
+                    logger.log(Level.INFO, "Removed unreferenced file {0}", file);
+                }
+            }
+        }
+    }
+
+    private Path segmentPath(long generation) {
+        return directory.resolve(String.format("%s%010d%s", SEGMENT_PREFIX, generation, SEGMENT_SUFFIX));
+    }
+
+    private static long generationOf(String name) {
+        return Long.parseLong(name.substring(SEGMENT_PREFIX.length(), name.length() - SEGMENT_SUFFIX.length()));
+    }
+
+    private byte[] serialize(T item) {
+        try {
+            return mapper.writeValueAsBytes(item);
+        } catch (IOException e) {
+            throw new UncheckedIOException("Failed to serialize " + type.getSimpleName(), e);
+        }
+    }
+
+    private T deserialize(byte[] bytes) {
+        try {
+            return mapper.readValue(bytes, type);
+        } catch (IOException e) {
+            throw new UncheckedIOException("Failed to deserialize " + type.getSimpleName(), e);
+        }
+    }
+
+    private void ensureOpen() {
+        if (closed) {
+            throw new IllegalStateException("LSM storage in " + directory + " is closed");
+        }
+    }
+
+    // k-way merge of the memtable and segment cursors in identity order; for an identity present in
+    // several sources the newest wins, the memtable first and then segments in list order
+    private final class MergeIterator implements Iterator<LsmSegment.Record> {
+        private final PriorityQueue<Head> heads = new PriorityQueue<>();
+        private final boolean skipTombstones;
+        private LsmSegment.Record next;
+
+        MergeIterator(NavigableMap<String, Slot<T>> memtable, List<LsmSegment.Cursor> cursors,
+                      boolean skipTombstones) {
+            this.skipTombstones = skipTombstones;
+            Iterator<Map.Entry<String, Slot<T>>> memtableRecords = memtable.entrySet().iterator();
+            advance(new Head(0, () -> {
+                if (!memtableRecords.hasNext()) {
+                    return null;
+                }
+                Map.Entry<String, Slot<T>> slot = memtableRecords.next();
+                return new LsmSegment.Record(slot.getKey(), slot.getValue().sequence(), slot.getValue().bytes());
+            }));
+            for (int i = 0; i < cursors.size(); i++) {
+                LsmSegment.Cursor cursor = cursors.get(i);
+                advance(new Head(i + 1, () -> cursor.next() ? cursor.current() : null));
+            }
+        }
+
+        @Override
+        public boolean hasNext() {
+            while (next == null && !heads.isEmpty()) {
+                Head winner = heads.poll();
+                LsmSegment.Record record = winner.record;
+                while (!heads.isEmpty() && heads.peek().record.identity().equals(record.identity())) {
+                    advance(heads.poll());
+                }
+                advance(winner);
+                if (!record.isTombstone() || !skipTombstones) {
+                    next = record;
+                }
+            }
+            return next != null;
+        }
+
+        @Override
+        public LsmSegment.Record next() {
+            if (!hasNext()) {
+                throw new NoSuchElementException();
+            }
+            LsmSegment.Record result = next;
+            next = null;
+            return result;
+        }
+
+        private void advance(Head head) {
+            try {
+                head.record = head.source.read();
+            } catch (IOException e) {
+                throw new UncheckedIOException("Failed to read segment in " + directory, e);
+            }
+            if (head.record != null) {
+                heads.add(head);
+            }
+        }
+    }
+
+    @FunctionalInterface
+    private interface RecordSource {
+        LsmSegment.Record read() throws IOException;
+    }
+
+    private static final class Head implements Comparable<Head> {
+        private final int rank;
+        private final RecordSource source;
+        private LsmSegment.Record record;
+
+        Head(int rank, RecordSource source) {
+            this.rank = rank;
+            this.source = source;
+        }
+
+        @Override
+        public int compareTo(Head other) {
+            int byIdentity = record.identity().compareTo(other.record.identity());
+            return byIdentity != 0 ? byIdentity : Integer.compare(rank, other.rank);
+        }
+    }
+
+    // holds segment references until the merge is exhausted or the stream is closed, whichever comes first
+    private final class View {
+        private final MergeIterator merged;
+        private final List<LsmSegment> segments;
+        private final List<LsmSegment.Cursor> cursors;
+        private final int size;
+        private final AtomicBoolean closed = new AtomicBoolean();
+
+        View(MergeIterator merged, List<LsmSegment> segments, List<LsmSegment.Cursor> cursors, int size) {
+            this.merged = merged;
+            this.segments = segments;
+            this.cursors = cursors;
+            this.size = size;
+        }
+
+        <E> Spliterator<E> spliterator(Function<LsmSegment.Record, E> reader) {
+            Iterator<E> items = new Iterator<>() {
+                @Override
+                public boolean hasNext() {
+                    boolean more = merged.hasNext();
+                    if (!more) {
+                        close();
+                    }
+                    return more;
+                }
+
+                @Override
+                public E next() {
+                    return reader.apply(merged.next());
+                }
+            };
+            return Spliterators.spliterator(items, size,
+                    Spliterator.ORDERED | Spliterator.NONNULL | Spliterator.IMMUTABLE);
+        }
+
+        void close() {
+            if (!closed.compareAndSet(false, true)) {
+                return;
+            }
+            for (LsmSegment.Cursor cursor : cursors) {
+                try {
+                    cursor.close();
+                } catch (IOException ignored) {
+                    // the channel belongs to the segment; the cursor only buffers it
+                }
+            }
+            segments.forEach(LsmSegment::release);
+        }
+    }
+}
@@ -1,8 +1,11 @@
 package ua.onlinecourses.repository;
 
 import ua.onlinecourses.model.myModule;
+import ua.onlinecourses.util.ModuleUtils;
+import ua.onlinecourses.util.ValueDictionary;
 import java.util.Comparator;
 import java.util.List;
+import java.util.Locale;
 import java.util.Map;
 import java.util.Optional;
 import java.util.logging.Level;
@@ -12,54 +15,91 @@ import java.util.stream.Collectors;
 public class ModuleRepository extends GenericRepository<myModule> {
     private static final Logger logger = Logger.getLogger(ModuleRepository.class.getName());
 
+    private final ValueDictionary dictionary = new ValueDictionary(ValueDictionary.DEFAULT_MAX_ENTRIES);
+
+    static final String TITLE_INDEX = "title";
+    static final String TITLE_LENGTH_INDEX = "titleLength";
+    static final String CONTENT_LENGTH_INDEX = "contentLength";
+    static final String CONTENT_LENGTH_STATS = "contentLengthStats";
+    static final String TITLE_TEXT = "titleText";
+    static final String CONTENT_TEXT = "contentText";
+
+    // query fields share their index's name and extractor so query() can plan through the index
+    public static final Field<myModule, String> TITLE = Field.of(TITLE_INDEX, module -> module.title().toLowerCase(Locale.ROOT));
+    public static final Field<myModule, Integer> TITLE_LENGTH = Field.of(TITLE_LENGTH_INDEX, module -> module.title().length());
+    public static final Field<myModule, Integer> CONTENT_LENGTH =
+            Field.of(CONTENT_LENGTH_INDEX, module -> module.content().length());
+    public static final Field<myModule, String> TITLE_SEARCH = Field.of(TITLE_TEXT, myModule::title);
+    public static final Field<myModule, String> CONTENT_SEARCH = Field.of(CONTENT_TEXT, myModule::content);
+
+    // shared instances so repeated sorts hit the cached sorted view
+    private static final Comparator<myModule> BY_TITLE_LENGTH = (m1, m2) -> {
+        int lengthCompare = Integer.compare(m1.title().length(), m2.title().length());
+        return lengthCompare != 0 ? lengthCompare : m1.title().compareTo(m2.title());
+    };
+    private static final Comparator<myModule> BY_TOTAL_LENGTH =
+            Comparator.comparingInt((myModule m) -> m.title().length() + m.content().length())
+                    .thenComparing(myModule::title);
+
     public ModuleRepository() {
-        super(myModule::getFullName, "Module");
+        this(StorageMode.COPY_ON_WRITE);
+    }
+
+    public ModuleRepository(StorageMode storageMode) {
+        super(myModule::getFullName, "Module", storageMode);
+        setCanonicalizer(module -> ModuleUtils.canonical(module, dictionary));
+        registerIndex(TITLE);
+        registerRangeIndex(TITLE_LENGTH);
+        registerRangeIndex(CONTENT_LENGTH);
+        registerAggregate(CONTENT_LENGTH_STATS, module -> module.content().length());
+        registerTrigramIndex(TITLE_SEARCH);
+        registerTrigramIndex(CONTENT_SEARCH);
     }
 
     public List<myModule> sortByTitle() {
-        List<myModule> allModules = getAll();
-        allModules.sort(myModule.BY_TITLE);
+        List<myModule> allModules = sorted(myModule.BY_TITLE);
         logger.log(Level.INFO, "Sorted Module by title");
         return allModules;
     }
 
+    public List<myModule> firstByTitle(int k) {
+        List<myModule> top = topK(myModule.BY_TITLE, k);
+        logger.log(Level.INFO, "Selected {0} myModule by title", top.size());
+        return top;
+    }
+
+    public Page<myModule> pageByTitle(myModule afterKey, int limit) {
+        Page<myModule> page = page(myModule.BY_TITLE, afterKey, limit);
+        logger.log(Level.INFO, "Fetched page of {0} myModule by title", page.size());
+        return page;
+    }
+
     public List<myModule> sortByContent() {
-        List<myModule> allModules = getAll();
-        allModules.sort(myModule.BY_CONTENT);
+        List<myModule> allModules = sorted(myModule.BY_CONTENT);
         logger.log(Level.INFO, "Sorted Module by content");
         return allModules;
     }
 
     public List<myModule> sortByContentLength() {
-        List<myModule> allModules = getAll();
-        allModules.sort(myModule.BY_CONTENT_LENGTH);
+        List<myModule> allModules = sorted(myModule.BY_CONTENT_LENGTH);
         logger.log(Level.INFO, "Sorted Module by content length");
         return allModules;
     }
 
     public List<myModule> sortByTitleLength() {
-        List<myModule> allModules = getAll();
-        allModules.sort((m1, m2) -> {
-            int lengthCompare = Integer.compare(m1.title().length(), m2.title().length());
-            return lengthCompare != 0 ? lengthCompare : m1.title().compareTo(m2.title());
-        });
+        List<myModule> allModules = sorted(BY_TITLE_LENGTH);
         logger.log(Level.INFO, "Sorted Module by title length using lambda");
         return allModules;
     }
 
     public List<myModule> sortByTotalLength() {
-        List<myModule> allModules = getAll();
-        allModules.sort(
-                Comparator.comparingInt((myModule m) -> m.title().length() + m.content().length())
-                        .thenComparing(myModule::title)
-        );
+        List<myModule> allModules = sorted(BY_TOTAL_LENGTH);
         logger.log(Level.INFO, "Sorted Module by total length (title + content)");
         return allModules;
     }
 
     public List<myModule> sortNaturally() {
-        List<myModule> allModules = getAll();
-        allModules.sort(null);
+        List<myModule> allModules = sorted(null);
         logger.log(Level.INFO, "Sorted Module using natural order (Comparable)");
         return allModules;
     }
@@ -70,10 +110,7 @@ public class ModuleRepository extends GenericRepository<myModule> {
             return List.of();
         }
 
-        String searchTerm = partialTitle.trim().toLowerCase();
-        List<myModule> results = getAll().stream()
-                .filter(module -> module.title().toLowerCase().contains(searchTerm))
-                .collect(Collectors.toList());
+        List<myModule> results = getTrigramIndex(TITLE_TEXT).search(partialTitle.trim());
 
         logger.log(Level.INFO, "Found {0} modules with title containing ''{1}''",
                 new Object[]{results.size(), partialTitle});
@@ -86,10 +123,7 @@ public class ModuleRepository extends GenericRepository<myModule> {
             return List.of();
         }
 
-        String searchTerm = keyword.trim().toLowerCase();
-        List<myModule> results = getAll().stream()
-                .filter(module -> module.content().toLowerCase().contains(searchTerm))
-                .collect(Collectors.toList());
+        List<myModule> results = getTrigramIndex(CONTENT_TEXT).search(keyword.trim());
 
         logger.log(Level.INFO, "Found {0} modules with content containing ''{1}''",
                 new Object[]{results.size(), keyword});
@@ -103,10 +137,7 @@ public class ModuleRepository extends GenericRepository<myModule> {
             return List.of();
         }
 
-        List<myModule> results = getAll().stream()
-                .filter(module -> module.title().length() >= minLength &&
-                        module.title().length() <= maxLength)
-                .collect(Collectors.toList());
+        List<myModule> results = this.<Integer>getRangeIndex(TITLE_LENGTH_INDEX).between(minLength, maxLength);
 
         logger.log(Level.INFO, "Found {0} modules with title length between {1} and {2}",
                 new Object[]{results.size(), minLength, maxLength});
@@ -120,10 +151,7 @@ public class ModuleRepository extends GenericRepository<myModule> {
             return List.of();
         }
 
-        List<myModule> results = getAll().stream()
-                .filter(module -> module.content().length() >= minLength &&
-                        module.content().length() <= maxLength)
-                .collect(Collectors.toList());
+        List<myModule> results = this.<Integer>getRangeIndex(CONTENT_LENGTH_INDEX).between(minLength, maxLength);
 
         logger.log(Level.INFO, "Found {0} modules with content length between {1} and {2}",
                 new Object[]{results.size(), minLength, maxLength});
@@ -131,35 +159,28 @@ public class ModuleRepository extends GenericRepository<myModule> {
     }
 
     public Map<Integer, List<myModule>> groupByTitleLength() {
-        Map<Integer, List<myModule>> grouped = getAll().stream()
-                .collect(Collectors.groupingBy(module -> module.title().length()));
+        Map<Integer, List<myModule>> grouped = this.<Integer>getIndex(TITLE_LENGTH_INDEX).groups();
 
         logger.log(Level.INFO, "Grouped modules by title length: {0} groups", grouped.size());
         return grouped;
     }
 
     public int getTotalContentLength() {
-        int total = getAll().stream()
-                .map(module -> module.content().length())
-                .reduce(0, Integer::sum);
+        int total = (int) getAggregate(CONTENT_LENGTH_STATS).sum();
 
         logger.log(Level.INFO, "Total content length across all modules: {0}", total);
         return total;
     }
 
     public double getAverageContentLength() {
-        double average = getAll().stream()
-                .mapToInt(module -> module.content().length())
-                .average()
-                .orElse(0.0);
+        double average = getAggregate(CONTENT_LENGTH_STATS).average();
 
         logger.log(Level.INFO, "Average content length: {0}", average);
         return average;
     }
 
     public Optional<myModule> getModuleWithLongestContent() {
-        Optional<myModule> result = getAll().stream()
-                .max(Comparator.comparingInt(module -> module.content().length()));
+        Optional<myModule> result = this.<Integer>getRangeIndex(CONTENT_LENGTH_INDEX).max();
 
         if (result.isPresent()) {
             logger.log(Level.INFO, "Module with longest content: {0} ({1} chars)",
@@ -172,19 +193,19 @@ public class ModuleRepository extends GenericRepository<myModule> {
     }
 
     public List<String> getAllTitles() {
-        List<String> titles = getAll().stream()
-                .map(myModule::title)
-                .collect(Collectors.toList());
+        List<String> titles = scan(items -> items
+                    .map(myModule::title)
+                    .collect(Collectors.toList())).result();
 
         logger.log(Level.INFO, "Retrieved {0} module titles", titles.size());
         return titles;
     }
 
     public List<String> getAllTitlesUpperCase() {
-        List<String> titles = getAll().stream()
-                .map(myModule::title)
-                .map(String::toUpperCase)
-                .collect(Collectors.toList());
+        List<String> titles = scan(items -> items
+                    .map(myModule::title)
+                    .map(String::toUpperCase)
+                    .collect(Collectors.toList())).result();
 
         logger.log(Level.INFO, "Retrieved {0} module titles in uppercase", titles.size());
         return titles;
@@ -196,8 +217,7 @@ public class ModuleRepository extends GenericRepository<myModule> {
             return false;
         }
 
-        boolean exists = getAll().stream()
-                .anyMatch(module -> module.title().equalsIgnoreCase(title.trim()));
+        boolean exists = this.<String>getIndex(TITLE_INDEX).containsKey(title.trim().toLowerCase(Locale.ROOT));
 
         logger.log(Level.INFO, "Module with title ''{0}'' exists: {1}",
                 new Object[]{title, exists});
@@ -205,8 +225,9 @@ public class ModuleRepository extends GenericRepository<myModule> {
     }
 
     public boolean allModulesHaveMinContentLength(int minLength) {
-        boolean result = getAll().stream()
-                .allMatch(module -> module.content().length() >= minLength);
+        boolean result = this.<Integer>getRangeIndex(CONTENT_LENGTH_INDEX).minKey()
+                .map(shortest -> shortest >= minLength)
+                .orElse(true);
 
         logger.log(Level.INFO, "All modules have content length >= {0}: {1}",
                 new Object[]{minLength, result});
@@ -215,8 +236,12 @@ public class ModuleRepository extends GenericRepository<myModule> {
 
     public void printAllModules() {
         logger.log(Level.INFO, "Printing all modules:");
-        getAll().stream()
-                .forEach(module -> System.out.println(module.title() + " - " +
-                        module.content()));
+        forEach(module -> System.out.println(module.title() + " - " +
+                module.content()));
+    }
+
+    // titles and module instances of stored modules; dropped together with the repository
+    public ValueDictionary getValueDictionary() {
+        return dictionary;
     }
-}
\ No newline at end of file
+}
@@ -0,0 +1,698 @@
+package ua.onlinecourses.repository;
+
+import com.fasterxml.jackson.databind.DeserializationFeature;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.datatype.jsr310.JavaTimeModule;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.VarHandle;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Objects;
+import java.util.Spliterator;
+import java.util.function.Consumer;
+import java.util.function.IntFunction;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
+
+// Keeps items outside the heap in memory-mapped files and decodes them only when read.
+// A data file holds the encoded records back to back. A slot file holds a header and one
+// fixed-width slot per record: sequence, data offset, length, identity hash and the
+// removal version. The heap keeps only an open-addressing int table from identity hash
+// to slot, about eight bytes per item and no objects, so heap use barely grows with size.
+// Reopening maps the files again and rebuilds that table from the slots, without decoding items.
+//
+// Removal only stamps the slot, so snapshots stay valid without locks: a snapshot sees the
+// slots that existed when it was taken and were not yet removed at its removal version.
+// The space of removed records is reclaimed by compact() or clear(), which write a new file
+// generation; files of the old one are deleted and unmapped once no snapshot uses them.
+public final class OffHeapStorage<T> implements RepositoryStorage<T>, AutoCloseable {
+    private static final Logger logger = Logger.getLogger(OffHeapStorage.class.getName());
+
+    public static final int DEFAULT_CHUNK_BYTES = 16 * 1024 * 1024;
+    private static final int MAGIC = 0x4F464831;
+    private static final int HEADER_BYTES = 64;
+    private static final int SLOT_BYTES = 32;
+    private static final int SLOTS_PER_CHUNK = 65_536;
+    private static final long LIVE = Long.MAX_VALUE;
+
+    // header fields
+    private static final int SLOT_COUNT = 8;
+    private static final int DATA_END = 16;
+    private static final int REMOVALS = 24;
+    private static final int LIVE_COUNT = 32;
+    private static final int COMMITTED = 40;
+
+    // slot fields
+    private static final int SEQUENCE = 0;
+    private static final int OFFSET = 8;
+    private static final int LENGTH = 16;
+    private static final int HASH = 20;
+    private static final int REMOVED_AT = 24;
+
+    // removal stamps are written by the writer and read by snapshots on other threads
+    private static final VarHandle LONGS =
+            MethodHandles.byteBufferViewVarHandle(long[].class, ByteOrder.BIG_ENDIAN);
+
+    private final Path directory;
+    private final Class<T> type;
+    private final int chunkBytes;
+    private final boolean sync;
+    private final ObjectMapper mapper;
+    private IdentityExtractor<T> identityExtractor;
+
+    // all below guarded by this
+    private Generation generation;
+    private int slotCount;
+    private long dataEnd;
+    private long removals;
+    private int live;
+    // slot + 1 per entry, 0 for empty, -1 for a removed entry
+    private int[] table = new int[16];
+    private int tableUsed;
+    private boolean closed;
+
+    // one pair of mapped files; chunks are appended, never remapped, so captured arrays stay valid
+    private static final class Generation {
+        final int number;
+        final Path dataPath;
+        final Path slotPath;
+        final FileChannel data;
+        final FileChannel slots;
+        final MappedByteBuffer header;
+        MappedByteBuffer[] dataChunks = new MappedByteBuffer[0];
+        MappedByteBuffer[] slotChunks = new MappedByteBuffer[0];
+
+        Generation(int number, Path dataPath, Path slotPath, FileChannel data, FileChannel slots,
+                   MappedByteBuffer header) {
+            this.number = number;
+            this.dataPath = dataPath;
+            this.slotPath = slotPath;
+            this.data = data;
+            this.slots = slots;
+            this.header = header;
+        }
+    }
+
+    private record View(Generation generation, MappedByteBuffer[] dataChunks, MappedByteBuffer[] slotChunks,
+                        int slotCount, long removals, int live) {
+    }
+
+    private OffHeapStorage(Path directory, Class<T> type, int chunkBytes, boolean sync) {
+        this.directory = directory;
+        this.type = type;
+        this.chunkBytes = chunkBytes;
+        this.sync = sync;
+        this.mapper = new ObjectMapper();
+        this.mapper.registerModule(new JavaTimeModule());
+        this.mapper.disable(DeserializationFeature.FAIL_ON_UNKNOWN_PROPERTIES);
+    }
+
+    public static <T> OffHeapStorage<T> open(Path directory, Class<T> type) throws IOException {
+        return open(directory, type, DEFAULT_CHUNK_BYTES, false);
+    }
+
+    // maps the newest generation found in directory, or starts an empty one;
+    // sync forces every write to disk before it returns
+    public static <T> OffHeapStorage<T> open(Path directory, Class<T> type, int chunkBytes, boolean sync)
+            throws IOException {
+        if (chunkBytes < 1024) {
+            throw new IllegalArgumentException("Chunk size must be at least 1024 bytes: " + chunkBytes);
+        }
+        Files.createDirectories(directory);
+        OffHeapStorage<T> storage = new OffHeapStorage<>(directory, type, chunkBytes, sync);
+        storage.recover();
+        return storage;
+    }
+
+    @Override
+    public boolean indexesIdentity() {
+        return true;
+    }
+
+    @Override
+    public RepositoryEntry<T> find(Object key) {
+        View view;
+        int slot;
+        synchronized (this) {
+            ensureOpen();
+            view = view();
+            slot = findSlot(key.toString());
+        }
+        if (slot < 0) {
+            return null;
+        }
+        return new RepositoryEntry<>(sequence(view.slotChunks(), slot), key, decodeItem(view, slot));
+    }
+
+    @Override
+    public void append(RepositoryEntry<T> entry) {
+        appendAll(List.of(entry));
+    }
+
+    @Override
+    public synchronized void appendAll(List<RepositoryEntry<T>> entries) {
+        ensureOpen();
+        try {
+            for (RepositoryEntry<T> entry : entries) {
+                byte[] identity = entry.identity().getBytes(StandardCharsets.UTF_8);
+                byte[] value = mapper.writeValueAsBytes(entry.item());
+                int length = Integer.BYTES + identity.length + value.length;
+                if (length > chunkBytes) {
+                    throw new IllegalArgumentException("Encoded " + type.getSimpleName() + " takes " + length
+                            + " bytes, more than the " + chunkBytes + "-byte chunk size");
+                }
+
+                // a record never straddles two chunks
+                long offset = dataEnd;
+                if (offset % chunkBytes + length > chunkBytes) {
+                    offset = (offset / chunkBytes + 1) * chunkBytes;
+                }
+                MappedByteBuffer chunk = dataChunk(generation, (int) (offset / chunkBytes));
+                int position = (int) (offset % chunkBytes);
+                chunk.putInt(position, identity.length);
+                chunk.put(position + Integer.BYTES, identity);
+                chunk.put(position + Integer.BYTES + identity.length, value);
+
+                int slot = slotCount;
+                MappedByteBuffer slots = slotChunk(generation, slot / SLOTS_PER_CHUNK);
+                int base = (slot % SLOTS_PER_CHUNK) * SLOT_BYTES;
+                slots.putLong(base + SEQUENCE, entry.sequence());
+                slots.putLong(base + OFFSET, offset);
+                slots.putInt(base + LENGTH, length);
+                slots.putInt(base + HASH, entry.identity().hashCode());
+                LONGS.setVolatile(slots, base + REMOVED_AT, LIVE);
+
+                dataEnd = offset + length;
+                slotCount++;
+                live++;
+                insert(entry.identity().hashCode(), slot);
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException("Failed to write to off-heap storage in " + directory, e);
+        }
+        // the slot count goes last, so a crash part way through leaves the earlier records intact
+        writeHeader();
+    }
+
+    @Override
+    public synchronized boolean remove(RepositoryEntry<T> entry) {
+        ensureOpen();
+        int slot = findSlot(entry.identity());
+        if (slot < 0) {
+            return false;
+        }
+        removals++;
+        MappedByteBuffer slots = generation.slotChunks[slot / SLOTS_PER_CHUNK];
+        LONGS.setVolatile(slots, (slot % SLOTS_PER_CHUNK) * SLOT_BYTES + REMOVED_AT, removals);
+        removeFromTable(entry.identity().hashCode(), slot);
+        live--;
+        writeHeader();
+        return true;
+    }
+
+    @Override
+    public synchronized void clear() {
+        ensureOpen();
+        try {
+            Generation previous = generation;
+            switchTo(createGeneration(generation.number + 1));
+            commit(previous);
+        } catch (IOException e) {
+            throw new UncheckedIOException("Failed to clear off-heap storage in " + directory, e);
+        }
+        logger.log(Level.INFO, "Cleared off-heap storage in {0}", directory);
+    }
+
+    @Override
+    public synchronized int size() {
+        return live;
+    }
+
+    // SIZED and SUBSIZED only while no slot in the snapshot has been removed
+    @Override
+    public Spliterator<T> spliterator() {
+        View view = capture();
+        return new SlotSpliterator<>(view, 0, view.slotCount(), slot -> decodeItem(view, slot));
+    }
+
+    @Override
+    public Stream<RepositoryEntry<T>> entries() {
+        View view = capture();
+        return StreamSupport.stream(new SlotSpliterator<>(view, 0, view.slotCount(), slot -> {
+            T item = decodeItem(view, slot);
+            return new RepositoryEntry<>(sequence(view.slotChunks(), slot), identityExtractor.extractKey(item), item);
+        }), false);
+    }
+
+    // decodes every live item onto the heap
+    @Override
+    public List<T> snapshot() {
+        return stream().toList();
+    }
+
+    // rewrites the live records into a new generation, dropping the space of removed ones;
+    // until the copy is committed, a crash or failure leaves the current generation in charge
+    public synchronized void compact() {
+        ensureOpen();
+        View view = view();
+        int[] previousTable = table;
+        int previousTableUsed = tableUsed;
+        Generation target;
+        try {
+            target = createGeneration(generation.number + 1);
+        } catch (IOException e) {
+            throw new UncheckedIOException("Failed to compact off-heap storage in " + directory, e);
+        }
+        switchTo(target);
+        try {
+            for (int slot = 0; slot < view.slotCount(); slot++) {
+                if (visible(view, slot)) {
+                    T item = decodeItem(view, slot);
+                    appendAll(List.of(new RepositoryEntry<>(sequence(view.slotChunks(), slot),
+                            identityExtractor.extractKey(item), item)));
+                }
+            }
+            commit(view.generation());
+        } catch (IOException | RuntimeException e) {
+            generation = view.generation();
+            slotCount = view.slotCount();
+            dataEnd = view.generation().header.getLong(DATA_END);
+            removals = view.removals();
+            live = view.live();
+            table = previousTable;
+            tableUsed = previousTableUsed;
+            try {
+                discard(target);
+            } catch (IOException suppressed) {
+                // recovery ignores the uncommitted generation and deletes it
+                e.addSuppressed(suppressed);
+            }
+            throw e instanceof IOException io
+                    ? new UncheckedIOException("Failed to compact off-heap storage in " + directory, io)
+                    : (RuntimeException) e;
+        }
+        logger.log(Level.INFO, "Compacted off-heap storage in {0} to generation {1}: {2} of {3} slots kept",
+                new Object[]{directory, target.number, slotCount, view.slotCount()});
+    }
+
+    public synchronized long getDataBytes() {
+        return dataEnd;
+    }
+
+    public synchronized int getSlotCount() {
+        return slotCount;
+    }
+
+    public Path getDirectory() {
+        return directory;
+    }
+
+    @Override
+    public synchronized void close() {
+        if (closed) {
+            return;
+        }
+        closed = true;
+        try {
+            forceAll(generation);
+            generation.data.close();
+            generation.slots.close();
+        } catch (IOException e) {
+            logger.log(Level.WARNING, "Failed to close off-heap storage in {0}: {1}",
+                    new Object[]{directory, e.getMessage()});
+        }
+        logger.log(Level.INFO, "Closed off-heap storage in {0}", directory);
+    }
+
+    @Override
+    public void bind(IdentityExtractor<T> identityExtractor) {
+        this.identityExtractor = Objects.requireNonNull(identityExtractor, "identityExtractor");
+    }
+
+    @Override
+    public synchronized long lastSequence() {
+        return slotCount == 0 ? -1 : sequence(generation.slotChunks, slotCount - 1);
+    }
+
+    private synchronized View capture() {
+        ensureOpen();
+        return view();
+    }
+
+    private View view() {
+        return new View(generation, generation.dataChunks, generation.slotChunks, slotCount, removals, live);
+    }
+
+    private void recover() throws IOException {
+        int newest = -1;
+        try (DirectoryStream<Path> files = Files.newDirectoryStream(directory, "slots-*.idx")) {
+            for (Path file : files) {
+                int number = generationOf(file);
+                if (number > newest && isCommitted(file)) {
+                    newest = number;
+                }
+            }
+        }
+        if (newest < 0) {
+            generation = createGeneration(0);
+            generation.header.putLong(COMMITTED, 1);
+            deleteOtherGenerations(0);
+            logger.log(Level.INFO, "Created off-heap storage in {0}", directory);
+            return;
+        }
+
+        generation = mapGeneration(newest);
+        slotCount = (int) generation.header.getLong(SLOT_COUNT);
+        dataEnd = generation.header.getLong(DATA_END);
+        removals = generation.header.getLong(REMOVALS);
+        live = (int) generation.header.getLong(LIVE_COUNT);
+        for (int chunk = 0; chunk * (long) chunkBytes < dataEnd; chunk++) {
+            dataChunk(generation, chunk);
+        }
+        for (int chunk = 0; chunk * SLOTS_PER_CHUNK < slotCount; chunk++) {
+            slotChunk(generation, chunk);
+        }
+
+        // the identity table is rebuilt from the slots' hashes; no item is decoded
+        table = new int[tableCapacity(live)];
+        tableUsed = 0;
+        for (int slot = 0; slot < slotCount; slot++) {
+            MappedByteBuffer slots = generation.slotChunks[slot / SLOTS_PER_CHUNK];
+            int base = (slot % SLOTS_PER_CHUNK) * SLOT_BYTES;
+            if ((long) LONGS.getVolatile(slots, base + REMOVED_AT) == LIVE) {
+                insert(slots.getInt(base + HASH), slot);
+            }
+        }
+        deleteOtherGenerations(newest);
+        logger.log(Level.INFO, "Mapped off-heap storage in {0}: {1} items in {2} slots, {3} data bytes",
+                new Object[]{directory, live, slotCount, dataEnd});
+    }
+
+    private static boolean isCommitted(Path slotFile) throws IOException {
+        try (FileChannel channel = FileChannel.open(slotFile, StandardOpenOption.READ)) {
+            if (channel.size() < HEADER_BYTES) {
+                return false;
+            }
+            MappedByteBuffer header = channel.map(FileChannel.MapMode.READ_ONLY, 0, HEADER_BYTES);
+            return header.getInt(0) == MAGIC && header.getLong(COMMITTED) == 1;
+        }
+    }
+
+    // a new generation stays uncommitted, and is ignored by recovery, until commit()
+    private Generation createGeneration(int number) throws IOException {
+        Path dataPath = directory.resolve(String.format("data-%06d.bin", number));
+        Path slotPath = directory.resolve(String.format("slots-%06d.idx", number));
+        Files.deleteIfExists(dataPath);
+        Files.deleteIfExists(slotPath);
+        Generation created = mapGeneration(number);
+        created.header.putInt(0, MAGIC);
+        return created;
+    }
+
+    private Generation mapGeneration(int number) throws IOException {
+        Path dataPath = directory.resolve(String.format("data-%06d.bin", number));
+        Path slotPath = directory.resolve(String.format("slots-%06d.idx", number));
+        FileChannel data = FileChannel.open(dataPath, StandardOpenOption.CREATE, StandardOpenOption.READ,
+                StandardOpenOption.WRITE);
+        FileChannel slots = FileChannel.open(slotPath, StandardOpenOption.CREATE, StandardOpenOption.READ,
+                StandardOpenOption.WRITE);
+        MappedByteBuffer header = slots.map(FileChannel.MapMode.READ_WRITE, 0, HEADER_BYTES);
+        return new Generation(number, dataPath, slotPath, data, slots, header);
+    }
+
+    private void switchTo(Generation next) {
+        generation = next;
+        slotCount = 0;
+        dataEnd = 0;
+        removals = 0;
+        live = 0;
+        table = new int[16];
+        tableUsed = 0;
+        writeHeader();
+    }
+
+    // makes the current generation the one recovery picks, then drops previous;
+    // snapshots of previous keep reading its mappings after its files are gone
+    private void commit(Generation previous) throws IOException {
+        forceAll(generation);
+        generation.header.putLong(COMMITTED, 1);
+        generation.header.force();
+        discard(previous);
+    }
+
+    private static void discard(Generation target) throws IOException {
+        target.data.close();
+        target.slots.close();
+        Files.deleteIfExists(target.dataPath);
+        Files.deleteIfExists(target.slotPath);
+    }
+
+    private void deleteOtherGenerations(int keep) throws IOException {
+        try (DirectoryStream<Path> files = Files.newDirectoryStream(directory, "{data,slots}-*")) {
+            for (Path file : files) {
+                if (generationOf(file) != keep) {
+                    // left behind by a clear or compaction that crashed part way
+                    Files.deleteIfExists(file);
+                }
+            }
+        }
+    }
+
+    private static int generationOf(Path file) {
+        String name = file.getFileName().toString();
+        return Integer.parseInt(name.substring(name.indexOf('-') + 1, name.lastIndexOf('.')));
+    }
+
+    private MappedByteBuffer dataChunk(Generation target, int chunk) throws IOException {
+        if (chunk >= target.dataChunks.length) {
+            MappedByteBuffer[] grown = Arrays.copyOf(target.dataChunks, chunk + 1);
+            for (int i = target.dataChunks.length; i <= chunk; i++) {
+                grown[i] = target.data.map(FileChannel.MapMode.READ_WRITE, (long) i * chunkBytes, chunkBytes);
+            }
+            target.dataChunks = grown;
+        }
+        return target.dataChunks[chunk];
+    }
+
+    private MappedByteBuffer slotChunk(Generation target, int chunk) throws IOException {
+        if (chunk >= target.slotChunks.length) {
+            MappedByteBuffer[] grown = Arrays.copyOf(target.slotChunks, chunk + 1);
+            long chunkSize = (long) SLOTS_PER_CHUNK * SLOT_BYTES;
+            for (int i = target.slotChunks.length; i <= chunk; i++) {
+                grown[i] = target.slots.map(FileChannel.MapMode.READ_WRITE, HEADER_BYTES + i * chunkSize, chunkSize);
+            }
+            target.slotChunks = grown;
+        }
+        return target.slotChunks[chunk];
+    }
+
+    private void writeHeader() {
+        MappedByteBuffer header = generation.header;
+        header.putLong(DATA_END, dataEnd);
+        header.putLong(REMOVALS, removals);
+        header.putLong(LIVE_COUNT, live);
+        header.putLong(SLOT_COUNT, slotCount);
+        if (sync) {
+            forceAll(generation);
+        }
+    }
+
+    private static void forceAll(Generation target) {
+        for (MappedByteBuffer chunk : target.dataChunks) {
+            chunk.force();
+        }
+        for (MappedByteBuffer chunk : target.slotChunks) {
+            chunk.force();
+        }
+        target.header.force();
+    }
+
+    private static boolean visible(View view, int slot) {
+        MappedByteBuffer slots = view.slotChunks()[slot / SLOTS_PER_CHUNK];
+        long removedAt = (long) LONGS.getVolatile(slots, (slot % SLOTS_PER_CHUNK) * SLOT_BYTES + REMOVED_AT);
+        return removedAt > view.removals();
+    }
+
+    private static long sequence(MappedByteBuffer[] slotChunks, int slot) {
+        return slotChunks[slot / SLOTS_PER_CHUNK].getLong((slot % SLOTS_PER_CHUNK) * SLOT_BYTES + SEQUENCE);
+    }
+
+    private T decodeItem(View view, int slot) {
+        MappedByteBuffer slots = view.slotChunks()[slot / SLOTS_PER_CHUNK];
+        int base = (slot % SLOTS_PER_CHUNK) * SLOT_BYTES;
+        long offset = slots.getLong(base + OFFSET);
+        int length = slots.getInt(base + LENGTH);
+        MappedByteBuffer chunk = view.dataChunks()[(int) (offset / chunkBytes)];
+        int position = (int) (offset % chunkBytes);
+        int identityLength = chunk.getInt(position);
+        byte[] value = new byte[length - Integer.BYTES - identityLength];
+        chunk.get(position + Integer.BYTES + identityLength, value);
+        try {
+            return mapper.readValue(value, type);
+        } catch (IOException e) {
+            throw new UncheckedIOException("Failed to decode " + type.getSimpleName() + " in slot " + slot, e);
+        }
+    }
+
+    private boolean identityMatches(int slot, byte[] identity) {
+        MappedByteBuffer slots = generation.slotChunks[slot / SLOTS_PER_CHUNK];
+        long offset = slots.getLong((slot % SLOTS_PER_CHUNK) * SLOT_BYTES + OFFSET);
+        MappedByteBuffer chunk = generation.dataChunks[(int) (offset / chunkBytes)];
+        int position = (int) (offset % chunkBytes);
+        if (chunk.getInt(position) != identity.length) {
+            return false;
+        }
+        byte[] stored = new byte[identity.length];
+        chunk.get(position + Integer.BYTES, stored);
+        return Arrays.equals(stored, identity);
+    }
+
+    private int findSlot(String identity) {
+        byte[] bytes = identity.getBytes(StandardCharsets.UTF_8);
+        int hash = identity.hashCode();
+        int mask = table.length - 1;
+        for (int i = mix(hash) & mask; table[i] != 0; i = (i + 1) & mask) {
+            int slot = table[i] - 1;
+            if (slot >= 0 && slotHash(slot) == hash && identityMatches(slot, bytes)) {
+                return slot;
+            }
+        }
+        return -1;
+    }
+
+    private int slotHash(int slot) {
+        return generation.slotChunks[slot / SLOTS_PER_CHUNK].getInt((slot % SLOTS_PER_CHUNK) * SLOT_BYTES + HASH);
+    }
+
+    private void insert(int hash, int slot) {
+        // removed markers count towards the load, so they are cleared out by the rebuild too
+        if ((tableUsed + 1) * 2 > table.length) {
+            rebuildTable(tableCapacity(live));
+        }
+        int mask = table.length - 1;
+        int i = mix(hash) & mask;
+        while (table[i] > 0) {
+            i = (i + 1) & mask;
+        }
+        if (table[i] == 0) {
+            tableUsed++;
+        }
+        table[i] = slot + 1;
+    }
+
+    private void removeFromTable(int hash, int slot) {
+        int mask = table.length - 1;
+        for (int i = mix(hash) & mask; table[i] != 0; i = (i + 1) & mask) {
+            if (table[i] == slot + 1) {
+                table[i] = -1;
+                return;
+            }
+        }
+    }
+
+    private void rebuildTable(int capacity) {
+        int[] previous = table;
+        table = new int[capacity];
+        tableUsed = 0;
+        int mask = capacity - 1;
+        for (int entry : previous) {
+            if (entry > 0) {
+                int i = mix(slotHash(entry - 1)) & mask;
+                while (table[i] != 0) {
+                    i = (i + 1) & mask;
+                }
+                table[i] = entry;
+                tableUsed++;
+            }
+        }
+    }
+
+    private static int tableCapacity(int items) {
+        return Math.max(16, Integer.highestOneBit(Math.max(1, items) * 4 - 1) << 1);
+    }
+
+    private static int mix(int hash) {
+        int mixed = hash * 0x9E3779B9;
+        return mixed ^ (mixed >>> 16);
+    }
+
+    private void ensureOpen() {
+        if (closed) {
+            throw new IllegalStateException("Off-heap storage in " + directory + " is closed");
+        }
+    }
+
+    // splits slot ranges in half; removed slots are skipped, so sizes are exact only without removals
+    private static final class SlotSpliterator<E> implements Spliterator<E> {
+        private final View view;
+        private final IntFunction<E> decoder;
+        private final boolean exact;
+        private int position;
+        private final int end;
+
+        SlotSpliterator(View view, int position, int end, IntFunction<E> decoder) {
+            this.view = view;
+            this.position = position;
+            this.end = end;
+            this.decoder = decoder;
+            this.exact = view.live() == view.slotCount();
+        }
+
+        @Override
+        public boolean tryAdvance(Consumer<? super E> action) {
+            while (position < end) {
+                int slot = position++;
+                if (visible(view, slot)) {
+                    action.accept(decoder.apply(slot));
+                    return true;
+                }
+            }
+            return false;
+        }
+
+        @Override
+        public void forEachRemaining(Consumer<? super E> action) {
+            while (position < end) {
+                int slot = position++;
+                if (visible(view, slot)) {
+                    action.accept(decoder.apply(slot));
+                }
+            }
+        }
+
+        @Override
+        public Spliterator<E> trySplit() {
+            int middle = (position + end) >>> 1;
+            if (middle - position < 64) {
+                return null;
+            }
+            Spliterator<E> prefix = new SlotSpliterator<>(view, position, middle, decoder);
+            position = middle;
+            return prefix;
+        }
+
+        @Override
+        public long estimateSize() {
+            return end - position;
+        }
+
+        @Override
+        public int characteristics() {
+            int characteristics = ORDERED | NONNULL | IMMUTABLE;
+            return exact ? characteristics | SIZED | SUBSIZED : characteristics;
+        }
+    }
+}
@@ -0,0 +1,22 @@
+package ua.onlinecourses.repository;
+
+import java.util.List;
+
+public record Page<T>(
+        List<T> items,
+        boolean hasMore
+) {
+
+    public Page {
+        items = List.copyOf(items);
+    }
+
+    // pass back as afterKey to fetch the following page; null when the page is empty
+    public T nextKey() {
+        return items.isEmpty() ? null : items.get(items.size() - 1);
+    }
+
+    public int size() {
+        return items.size();
+    }
+}
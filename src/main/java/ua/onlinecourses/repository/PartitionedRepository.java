@@ -0,0 +1,398 @@
+package ua.onlinecourses.repository;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Optional;
+import java.util.PriorityQueue;
+import java.util.function.Consumer;
+import java.util.function.Function;
+import java.util.function.IntFunction;
+import java.util.function.Supplier;
+import java.util.function.ToIntFunction;
+import java.util.function.UnaryOperator;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
+import java.util.stream.Stream;
+
+// Splits one entity set into N repositories by identity hash. A write locks only the partition
+// that owns the identity, so writers of different identities no longer queue on one monitor.
+// Reads fan out to every partition through the execution policy, in parallel on its pool once the
+// repository is large enough, and the partial results are merged; sorted results are k-way
+// merged from the partitions' own sorted views.
+//
+// Partitions are full entity repositories (StudentRepository::new and so on), so their indexes and
+// entity-specific queries run per partition and are combined with gather() or gatherSorted().
+// Unsorted reads list partition by partition, not in overall insertion order, and listeners see
+// each partition's own event sequence.
+public class PartitionedRepository<T, P extends GenericRepository<T>> {
+    private static final Logger logger = Logger.getLogger(PartitionedRepository.class.getName());
+
+    private final List<P> partitions;
+    private final String entityType;
+    private volatile ExecutionPolicy executionPolicy = ExecutionPolicy.defaultPolicy();
+
+    // factory must return a new, empty repository on every call
+    public PartitionedRepository(int partitionCount, Supplier<? extends P> partitionFactory) {
+        if (partitionCount <= 0) {
+            throw new IllegalArgumentException("Partition count must be positive: " + partitionCount);
+        }
+        List<P> created = new ArrayList<>(partitionCount);
+        for (int i = 0; i < partitionCount; i++) {
+            P partition = partitionFactory.get();
+            if (!partition.isEmpty() || created.contains(partition)) {
+                throw new IllegalArgumentException("Partition factory must create a new, empty repository each time");
+            }
+            created.add(partition);
+        }
+        this.partitions = List.copyOf(created);
+        this.entityType = created.get(0).getEntityType();
+        logger.log(Level.INFO, "Created {0} repository with {1} partitions", new Object[]{entityType, partitionCount});
+    }
+
+    public static <T> PartitionedRepository<T, GenericRepository<T>> of(IdentityExtractor<T> identityExtractor,
+                                                                         String entityType, int partitionCount) {
+        return new PartitionedRepository<>(partitionCount, () -> new GenericRepository<>(identityExtractor, entityType));
+    }
+
+    public boolean add(T item) {
+        if (item == null) {
+            logger.log(Level.WARNING, "Attempted to add null {0}", entityType);
+            return false;
+        }
+        return partitionOfItem(item).add(item);
+    }
+
+    // each partition takes its share of the batch as one addAll; results follow the batch order
+    public BatchAddResult<T> addAll(Collection<? extends T> batch) {
+        if (batch == null) {
+            logger.log(Level.WARNING, "Attempted to add null batch of {0}", entityType);
+            return new BatchAddResult<>(List.of(), List.of(), List.of());
+        }
+
+        List<T> items = new ArrayList<>(batch);
+        List<List<Integer>> positions = new ArrayList<>(partitions.size());
+        partitions.forEach(partition -> positions.add(new ArrayList<>()));
+        for (int i = 0; i < items.size(); i++) {
+            if (items.get(i) != null) {
+                positions.get(indexOfKey(keyOf(items.get(i)))).add(i);
+            }
+        }
+
+        List<BatchAddResult<T>> results = scatterIndexed(items.size(), p -> {
+            List<T> share = new ArrayList<>(positions.get(p).size());
+            positions.get(p).forEach(position -> share.add(items.get(position)));
+            return share.isEmpty() ? null : partitions.get(p).addAll(share);
+        });
+
+        List<Boolean> accepted = new ArrayList<>(Collections.nCopies(items.size(), false));
+        List<T> outcome = new ArrayList<>(Collections.nCopies(items.size(), null));
+        for (int p = 0; p < partitions.size(); p++) {
+            BatchAddResult<T> result = results.get(p);
+            if (result == null) {
+                continue;
+            }
+            Iterator<T> added = result.added().iterator();
+            Iterator<T> rejected = result.rejected().iterator();
+            List<Integer> share = positions.get(p);
+            for (int j = 0; j < share.size(); j++) {
+                boolean wasAdded = result.isAccepted(j);
+                accepted.set(share.get(j), wasAdded);
+                outcome.set(share.get(j), wasAdded ? added.next() : rejected.next());
+            }
+        }
+
+        List<T> added = new ArrayList<>();
+        List<T> rejected = new ArrayList<>();
+        for (int i = 0; i < items.size(); i++) {
+            if (accepted.get(i)) {
+                added.add(outcome.get(i));
+            } else if (outcome.get(i) != null) {
+                rejected.add(outcome.get(i));
+            }
+        }
+        logger.log(Level.INFO, "Added batch of {0} across {1} partitions: {2} accepted, {3} rejected",
+                new Object[]{entityType, partitions.size(), added.size(), rejected.size()});
+        return new BatchAddResult<>(accepted, added, rejected);
+    }
+
+    public boolean remove(T item) {
+        if (item == null) {
+            logger.log(Level.WARNING, "Attempted to remove null {0}", entityType);
+            return false;
+        }
+        return partitionOfItem(item).remove(item);
+    }
+
+    public boolean removeByIdentity(String identity) {
+        P partition = partitionOfIdentity(identity);
+        return partition != null && partition.removeByIdentity(identity);
+    }
+
+    public boolean contains(T item) {
+        return item != null && partitionOfItem(item).contains(item);
+    }
+
+    public boolean containsIdentity(String identity) {
+        P partition = partitionOfIdentity(identity);
+        return partition != null && partition.containsIdentity(identity);
+    }
+
+    public Optional<T> findByIdentity(String identity) {
+        P partition = partitionOfIdentity(identity);
+        if (partition == null) {
+            logger.log(Level.WARNING, "Attempted to find {0} with identity: {1}", new Object[]{entityType, identity});
+            return Optional.empty();
+        }
+        return partition.findByIdentity(identity);
+    }
+
+    public List<T> getAll() {
+        return gather(GenericRepository::getAll);
+    }
+
+    public Stream<T> stream() {
+        return partitions.stream().flatMap(GenericRepository::stream);
+    }
+
+    public Stream<T> parallelStream() {
+        return partitions.parallelStream().flatMap(GenericRepository::stream);
+    }
+
+    public void forEach(Consumer<? super T> action) {
+        partitions.forEach(partition -> partition.forEach(action));
+    }
+
+    public List<T> asReadOnlyList() {
+        return Collections.unmodifiableList(getAll());
+    }
+
+    // a null comparator sorts naturally, as in GenericRepository
+    @SuppressWarnings("unchecked")
+    public List<T> sorted(Comparator<? super T> comparator) {
+        Comparator<? super T> order = comparator != null ? comparator : (Comparator<T>) Comparator.naturalOrder();
+        return Collections.unmodifiableList(gatherSorted(partition -> partition.sorted(comparator), order));
+    }
+
+    public List<T> topK(Comparator<? super T> comparator, int k) {
+        if (comparator == null || k <= 0) {
+            logger.log(Level.WARNING, "Invalid top-k request on {0}: k={1}", new Object[]{entityType, k});
+            return List.of();
+        }
+        return mergeSorted(scatter(partition -> partition.topK(comparator, k)), comparator, k);
+    }
+
+    public Page<T> page(Comparator<? super T> comparator, T afterKey, int limit) {
+        if (comparator == null || limit <= 0) {
+            logger.log(Level.WARNING, "Invalid page request on {0}: limit={1}", new Object[]{entityType, limit});
+            return new Page<>(List.of(), false);
+        }
+        List<Page<T>> pages = scatter(partition -> partition.page(comparator, afterKey, limit));
+        List<List<T>> runs = pages.stream().map(Page::items).collect(Collectors.toList());
+        // same tie-break on identity as each partition's page, so the cursor stays unambiguous
+        Comparator<T> order = (first, second) -> {
+            int compared = comparator.compare(first, second);
+            return compared != 0 ? compared : RepositoryEntry.compareKeys(keyOf(first), keyOf(second));
+        };
+        List<T> merged = mergeSorted(runs, order, limit + 1);
+        boolean hasMore = merged.size() > limit || pages.stream().anyMatch(Page::hasMore);
+        return new Page<>(merged.size() > limit ? merged.subList(0, limit) : merged, hasMore);
+    }
+
+    public List<T> sortByIdentity(String order) {
+        if (order == null || (!order.equalsIgnoreCase("asc") && !order.equalsIgnoreCase("desc"))) {
+            logger.log(Level.WARNING, "Invalid sort order: {0}. Using 'asc' by default", order);
+            order = "asc";
+        }
+        String direction = order;
+        Comparator<T> byKey = (first, second) -> RepositoryEntry.compareKeys(keyOf(first), keyOf(second));
+        return gatherSorted(partition -> partition.sortByIdentity(direction),
+                direction.equalsIgnoreCase("desc") ? byKey.reversed() : byKey);
+    }
+
+    public int size() {
+        int size = 0;
+        for (P partition : partitions) {
+            size += partition.size();
+        }
+        return size;
+    }
+
+    public boolean isEmpty() {
+        return partitions.stream().allMatch(GenericRepository::isEmpty);
+    }
+
+    // clears partition by partition; a concurrent writer may add to a partition already cleared
+    public void clear() {
+        partitions.forEach(GenericRepository::clear);
+    }
+
+    public void registerIndex(String name, Function<? super T, ?> keyExtractor) {
+        partitions.forEach(partition -> partition.registerIndex(name, keyExtractor));
+    }
+
+    public <K extends Comparable<? super K>> void registerRangeIndex(String name,
+                                                                     Function<? super T, ? extends K> keyExtractor) {
+        partitions.forEach(partition -> partition.registerRangeIndex(name, keyExtractor));
+    }
+
+    public void registerAggregate(String name, ToIntFunction<? super T> valueExtractor) {
+        partitions.forEach(partition -> partition.registerAggregate(name, valueExtractor));
+    }
+
+    public void registerTrigramIndex(String name, Function<? super T, ? extends String> textExtractor) {
+        partitions.forEach(partition -> partition.registerTrigramIndex(name, textExtractor));
+    }
+
+    public boolean dropIndex(String name) {
+        boolean dropped = false;
+        for (P partition : partitions) {
+            dropped |= partition.dropIndex(name);
+        }
+        return dropped;
+    }
+
+    public <K> List<T> findByIndex(String name, K key) {
+        return gather(partition -> partition.findByIndex(name, key));
+    }
+
+    // count and sum add up; min and max come from the partitions that hold values
+    public AggregateIndex.Stats getAggregateStats(String name) {
+        List<AggregateIndex.Stats> parts = scatter(partition -> partition.getAggregate(name).getStats());
+        long count = 0;
+        long sum = 0;
+        int min = Integer.MAX_VALUE;
+        int max = Integer.MIN_VALUE;
+        for (AggregateIndex.Stats part : parts) {
+            if (part.count() > 0) {
+                count += part.count();
+                sum += part.sum();
+                min = Math.min(min, part.minValue());
+                max = Math.max(max, part.maxValue());
+            }
+        }
+        return count == 0 ? AggregateIndex.Stats.EMPTY : new AggregateIndex.Stats(count, sum, min, max);
+    }
+
+    // runs operation on every partition and returns the results in partition order
+    public <R> List<R> scatter(Function<? super P, ? extends R> operation) {
+        return scatterIndexed(size(), p -> operation.apply(partitions.get(p)));
+    }
+
+    // concatenates per-partition results, e.g. gather(p -> p.findByFirstName("Anna"))
+    public List<T> gather(Function<? super P, ? extends Collection<? extends T>> operation) {
+        List<T> gathered = new ArrayList<>();
+        scatter(operation).forEach(gathered::addAll);
+        return gathered;
+    }
+
+    // k-way merge of per-partition results that are each sorted by order
+    public List<T> gatherSorted(Function<? super P, ? extends List<T>> operation, Comparator<? super T> order) {
+        return mergeSorted(scatter(operation), order, Integer.MAX_VALUE);
+    }
+
+    public void addListener(RepositoryListener<T> listener) {
+        partitions.forEach(partition -> partition.addListener(listener));
+    }
+
+    public boolean removeListener(RepositoryListener<T> listener) {
+        boolean removed = false;
+        for (P partition : partitions) {
+            removed |= partition.removeListener(listener);
+        }
+        return removed;
+    }
+
+    public void setCanonicalizer(UnaryOperator<T> canonicalizer) {
+        partitions.forEach(partition -> partition.setCanonicalizer(canonicalizer));
+    }
+
+    public ExecutionPolicy getExecutionPolicy() {
+        return executionPolicy;
+    }
+
+    // decides whether reads fan out in parallel; each partition keeps its own policy for its scans
+    public void setExecutionPolicy(ExecutionPolicy executionPolicy) {
+        if (executionPolicy == null) {
+            throw new IllegalArgumentException("Execution policy must not be null");
+        }
+        this.executionPolicy = executionPolicy;
+    }
+
+    public int getPartitionCount() {
+        return partitions.size();
+    }
+
+    public P getPartition(int index) {
+        return partitions.get(index);
+    }
+
+    public List<Integer> getPartitionSizes() {
+        return partitions.stream().map(GenericRepository::size).collect(Collectors.toList());
+    }
+
+    String getEntityType() {
+        return entityType;
+    }
+
+    // ties go to the lower run, so equal items keep their partition order
+    static <T> List<T> mergeSorted(List<? extends List<T>> runs, Comparator<? super T> order, int limit) {
+        record Cursor<T>(List<T> run, int runIndex, int position) {
+            T head() {
+                return run.get(position);
+            }
+        }
+
+        PriorityQueue<Cursor<T>> heads = new PriorityQueue<>(Math.max(1, runs.size()),
+                Comparator.<Cursor<T>, T>comparing(Cursor::head, order).thenComparingInt(Cursor::runIndex));
+        int total = 0;
+        for (int i = 0; i < runs.size(); i++) {
+            List<T> run = runs.get(i);
+            total += run.size();
+            if (!run.isEmpty()) {
+                heads.add(new Cursor<>(run, i, 0));
+            }
+        }
+
+        List<T> merged = new ArrayList<>(Math.min(total, limit));
+        while (!heads.isEmpty() && merged.size() < limit) {
+            Cursor<T> cursor = heads.poll();
+            merged.add(cursor.head());
+            if (cursor.position() + 1 < cursor.run().size()) {
+                heads.add(new Cursor<>(cursor.run(), cursor.runIndex(), cursor.position() + 1));
+            }
+        }
+        return merged;
+    }
+
+    // elements is the size estimate that decides between a sequential and a parallel fan-out
+    private <R> List<R> scatterIndexed(int elements, IntFunction<? extends R> operation) {
+        return executionPolicy.execute(IntStream.range(0, partitions.size()).boxed(), elements,
+                indexes -> indexes.map(operation::apply).collect(Collectors.<R>toList())).result();
+    }
+
+    private P partitionOfItem(T item) {
+        return partitions.get(indexOfKey(keyOf(item)));
+    }
+
+    // null when the identity is null or does not map onto the key space
+    private P partitionOfIdentity(String identity) {
+        Object key = identity == null ? null : partitions.get(0).toKey(identity);
+        return key == null ? null : partitions.get(indexOfKey(key));
+    }
+
+    private Object keyOf(T item) {
+        return partitions.get(0).keyOf(item);
+    }
+
+    // spreads the high bits, so keys whose hashes differ only there still land apart
+    private int indexOfKey(Object key) {
+        int hash = key.hashCode();
+        return Math.floorMod(hash ^ (hash >>> 16), partitions.size());
+    }
+}
@@ -0,0 +1,346 @@
+package ua.onlinecourses.repository;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Objects;
+import java.util.function.Function;
+import java.util.function.Predicate;
+import java.util.function.Supplier;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+import java.util.stream.Stream;
+
+// Composable query over one repository. Conditions are ANDed; the planner drives the query from
+// the most selective index that can answer one of them and checks the rest on the candidates.
+// A Query is a builder: it is not meant to be shared between threads while being built.
+public class Query<T> {
+    private static final Logger logger = Logger.getLogger(Query.class.getName());
+
+    private final GenericRepository<T> repository;
+    private final List<Condition<T>> conditions = new ArrayList<>();
+    private Comparator<? super T> comparator;
+    private String orderDescription;
+    private int limit = -1;
+
+    Query(GenericRepository<T> repository) {
+        this.repository = repository;
+    }
+
+    public Query<T> whereIdentity(String identity) {
+        Objects.requireNonNull(identity, "identity");
+        conditions.add(new IdentityCondition<>(identity, repository.toKey(identity), repository::keyOf));
+        return this;
+    }
+
+    // value is compared in the field's key space, e.g. lowercased for case-folded fields
+    public <V> Query<T> whereEquals(Field<T, V> field, V value) {
+        conditions.add(new EqualsCondition<>(field, value));
+        return this;
+    }
+
+    // null bounds are open
+    public <V extends Comparable<? super V>> Query<T> whereRange(Field<T, V> field, V from, boolean fromInclusive,
+                                                                V to, boolean toInclusive) {
+        conditions.add(new RangeCondition<>(field, from, fromInclusive, to, toInclusive));
+        return this;
+    }
+
+    public <V extends Comparable<? super V>> Query<T> whereBetween(Field<T, V> field, V from, V to) {
+        return whereRange(field, from, true, to, true);
+    }
+
+    public <V extends Comparable<? super V>> Query<T> whereGreaterThan(Field<T, V> field, V value) {
+        return whereRange(field, Objects.requireNonNull(value), false, null, false);
+    }
+
+    public <V extends Comparable<? super V>> Query<T> whereLessThan(Field<T, V> field, V value) {
+        return whereRange(field, null, false, Objects.requireNonNull(value), false);
+    }
+
+    // case-insensitive substring match
+    public Query<T> whereContains(Field<T, String> field, String fragment) {
+        conditions.add(new ContainsCondition<>(field, Objects.requireNonNull(fragment, "fragment")));
+        return this;
+    }
+
+    // arbitrary predicate; never index-backed, always checked on the candidates
+    public Query<T> filter(String description, Predicate<? super T> predicate) {
+        conditions.add(new PredicateCondition<>(description, predicate));
+        return this;
+    }
+
+    public Query<T> orderBy(Comparator<? super T> comparator) {
+        return orderBy("custom comparator", comparator);
+    }
+
+    public Query<T> orderBy(String description, Comparator<? super T> comparator) {
+        this.comparator = Objects.requireNonNull(comparator, "comparator");
+        this.orderDescription = description;
+        return this;
+    }
+
+    public Query<T> limit(int limit) {
+        if (limit < 0) {
+            throw new IllegalArgumentException("Limit must not be negative: " + limit);
+        }
+        this.limit = limit;
+        return this;
+    }
+
+    public QueryPlan explain() {
+        return plan().toQueryPlan();
+    }
+
+    // without orderBy, results come back in insertion order whichever access path was chosen
+    public List<T> list() {
+        Plan plan = plan();
+        if (logger.isLoggable(Level.FINE)) {
+            logger.log(Level.FINE, "Executing query on {0}:\n{1}",
+                    new Object[]{repository.getEntityType(), plan.toQueryPlan().explain()});
+        }
+
+        if (limit == 0) {
+            return new ArrayList<>();
+        }
+        // filtering is the part worth parallelising; ordering and the limit run on the survivors
+        List<RepositoryEntry<T>> matches;
+        if (plan.driving == null) {
+            try (Stream<RepositoryEntry<T>> entries = repository.entryStream()) {
+                matches = repository.execute(entries, repository.size(),
+                        candidates -> matching(candidates, plan.residual)).result();
+            }
+        } else {
+            List<RepositoryEntry<T>> fetched = plan.driving.fetch().get().toList();
+            matches = repository.execute(fetched.stream(), fetched.size(),
+                    candidates -> matching(candidates, plan.residual)).result();
+        }
+
+        Comparator<RepositoryEntry<T>> order = comparator == null
+                ? Comparator.comparingLong(RepositoryEntry::sequence)
+                : GenericRepository.<T>byItem(comparator).thenComparingLong(RepositoryEntry::sequence);
+        if (limit > 0) {
+            return GenericRepository.selectFirst(matches.stream(), order, limit);
+        }
+
+        boolean alreadyOrdered = comparator == null && (plan.driving == null
+                ? repository.scansInInsertionOrder() : plan.driving.insertionOrdered());
+        if (!alreadyOrdered) {
+            matches = new ArrayList<>(matches);
+            matches.sort(order);
+        }
+        List<T> results = new ArrayList<>(matches.size());
+        matches.forEach(entry -> results.add(entry.item()));
+        return results;
+    }
+
+    public <R> List<R> select(Function<? super T, ? extends R> projection) {
+        List<R> projected = new ArrayList<>();
+        list().forEach(item -> projected.add(projection.apply(item)));
+        return projected;
+    }
+
+    public long count() {
+        return list().size();
+    }
+
+    private static <T> List<RepositoryEntry<T>> matching(Stream<RepositoryEntry<T>> candidates,
+                                                         List<Condition<T>> residual) {
+        for (Condition<T> condition : residual) {
+            candidates = candidates.filter(entry -> condition.test(entry.item()));
+        }
+        return candidates.toList();
+    }
+
+    private Plan plan() {
+        List<Access<T>> options = new ArrayList<>();
+        for (Condition<T> condition : conditions) {
+            Access<T> access = condition.access(repository);
+            if (access != null) {
+                options.add(access);
+            }
+        }
+
+        // cheapest index access wins; conditions keep their order on ties
+        Access<T> driving = null;
+        for (Access<T> option : options) {
+            if (driving == null || option.estimate() < driving.estimate()) {
+                driving = option;
+            }
+        }
+        if (driving != null && driving.estimate() >= repository.size() && !(driving.condition() instanceof IdentityCondition)) {
+            // an index that keeps every row is no better than walking storage in order
+            driving = null;
+        }
+
+        List<Condition<T>> residual = new ArrayList<>(conditions);
+        List<String> alternatives = new ArrayList<>();
+        for (Access<T> option : options) {
+            if (option != driving) {
+                alternatives.add(option.kind() + " " + option.source() + " (est. " + option.estimate() + ")");
+            }
+        }
+        if (driving != null) {
+            residual.remove(driving.condition());
+            alternatives.add(QueryPlan.Access.FULL_SCAN + " " + repository.getEntityType()
+                    + " (est. " + repository.size() + ")");
+        }
+        return new Plan(driving, residual, alternatives);
+    }
+
+    private final class Plan {
+        private final Access<T> driving;
+        private final List<Condition<T>> residual;
+        private final List<String> alternatives;
+
+        Plan(Access<T> driving, List<Condition<T>> residual, List<String> alternatives) {
+            this.driving = driving;
+            this.residual = residual;
+            this.alternatives = alternatives;
+        }
+
+        QueryPlan toQueryPlan() {
+            List<String> filters = new ArrayList<>();
+            residual.forEach(condition -> filters.add(condition.describe()));
+            if (driving == null) {
+                return new QueryPlan(QueryPlan.Access.FULL_SCAN, repository.getEntityType(), repository.size(),
+                        filters, orderDescription, limit, alternatives);
+            }
+            return new QueryPlan(driving.kind(), driving.source(), driving.estimate(),
+                    filters, orderDescription, limit, alternatives);
+        }
+    }
+
+    private record Access<T>(QueryPlan.Access kind, String source, long estimate, boolean insertionOrdered,
+                             Condition<T> condition, Supplier<Stream<RepositoryEntry<T>>> fetch) {
+    }
+
+    private interface Condition<T> {
+        boolean test(T item);
+
+        String describe();
+
+        // null when no index can answer this condition
+        Access<T> access(GenericRepository<T> repository);
+    }
+
+    private record IdentityCondition<T>(String identity, Object key, Function<T, Object> keyOf)
+            implements Condition<T> {
+        @Override
+        public boolean test(T item) {
+            return key != null && key.equals(keyOf.apply(item));
+        }
+
+        @Override
+        public String describe() {
+            return "identity = '" + identity + "'";
+        }
+
+        @Override
+        public Access<T> access(GenericRepository<T> repository) {
+            RepositoryEntry<T> entry = repository.entryForIdentity(identity);
+            return new Access<>(QueryPlan.Access.IDENTITY_LOOKUP, "identity", entry == null ? 0 : 1, true, this,
+                    () -> entry == null ? Stream.empty() : Stream.of(entry));
+        }
+    }
+
+    private record EqualsCondition<T, V>(Field<T, V> field, V value) implements Condition<T> {
+        @Override
+        public boolean test(T item) {
+            return Objects.equals(field.get(item), value);
+        }
+
+        @Override
+        public String describe() {
+            return field.name() + " = " + value;
+        }
+
+        @Override
+        public Access<T> access(GenericRepository<T> repository) {
+            if (value == null || !(repository.findIndex(field) instanceof SecondaryIndex<T, ?> index)) {
+                return null;
+            }
+            return new Access<>(QueryPlan.Access.INDEX_LOOKUP, field.name(), index.estimate(value), true, this,
+                    () -> index.findEntries(value).stream());
+        }
+    }
+
+    private record RangeCondition<T, V extends Comparable<? super V>>(
+            Field<T, V> field, V from, boolean fromInclusive, V to, boolean toInclusive) implements Condition<T> {
+        @Override
+        public boolean test(T item) {
+            V value = field.get(item);
+            if (value == null) {
+                return false;
+            }
+            if (from != null) {
+                int compare = value.compareTo(from);
+                if (compare < 0 || (compare == 0 && !fromInclusive)) {
+                    return false;
+                }
+            }
+            if (to != null) {
+                int compare = value.compareTo(to);
+                return compare < 0 || (compare == 0 && toInclusive);
+            }
+            return true;
+        }
+
+        @Override
+        public String describe() {
+            return field.name() + " in " + (from == null ? "(-inf" : (fromInclusive ? "[" : "(") + from)
+                    + ", " + (to == null ? "+inf)" : to + (toInclusive ? "]" : ")"));
+        }
+
+        @Override
+        @SuppressWarnings("unchecked")
+        public Access<T> access(GenericRepository<T> repository) {
+            if (!(repository.findIndex(field) instanceof RangeIndex<T, ?> found)) {
+                return null;
+            }
+            RangeIndex<T, V> index = (RangeIndex<T, V>) found;
+            return new Access<>(QueryPlan.Access.RANGE_SCAN, field.name(),
+                    index.estimateRange(from, fromInclusive, to, toInclusive), false, this,
+                    () -> index.rangeEntries(from, fromInclusive, to, toInclusive).stream());
+        }
+    }
+
+    private record ContainsCondition<T>(Field<T, String> field, String fragment) implements Condition<T> {
+        @Override
+        public boolean test(T item) {
+            String value = field.get(item);
+            return value != null && TrigramIndex.fold(value).contains(TrigramIndex.fold(fragment));
+        }
+
+        @Override
+        public String describe() {
+            return field.name() + " contains '" + fragment + "'";
+        }
+
+        @Override
+        public Access<T> access(GenericRepository<T> repository) {
+            if (!(repository.findIndex(field) instanceof TrigramIndex<T> index)) {
+                return null;
+            }
+            return new Access<>(QueryPlan.Access.TEXT_SEARCH, field.name(), index.estimate(fragment), true, this,
+                    () -> index.searchEntries(fragment).stream());
+        }
+    }
+
+    private record PredicateCondition<T>(String description, Predicate<? super T> predicate) implements Condition<T> {
+        @Override
+        public boolean test(T item) {
+            return predicate.test(item);
+        }
+
+        @Override
+        public String describe() {
+            return description;
+        }
+
+        @Override
+        public Access<T> access(GenericRepository<T> repository) {
+            return null;
+        }
+    }
+}
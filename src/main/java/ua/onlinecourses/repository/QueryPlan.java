@@ -0,0 +1,48 @@
+package ua.onlinecourses.repository;
+
+import java.util.List;
+
+public record QueryPlan(
+        Access access,
+        String source,
+        long estimatedRows,
+        List<String> filters,
+        String order,
+        int limit,
+        List<String> alternatives
+) {
+
+    public enum Access {
+        IDENTITY_LOOKUP,
+        INDEX_LOOKUP,
+        RANGE_SCAN,
+        TEXT_SEARCH,
+        FULL_SCAN
+    }
+
+    public QueryPlan {
+        filters = List.copyOf(filters);
+        alternatives = List.copyOf(alternatives);
+    }
+
+    public String explain() {
+        StringBuilder plan = new StringBuilder()
+                .append(access).append(" on ").append(source)
+                .append(" (est. ").append(estimatedRows).append(" rows)");
+        filters.forEach(filter -> plan.append(System.lineSeparator()).append("  filter: ").append(filter));
+        if (order != null) {
+            plan.append(System.lineSeparator()).append("  order: ").append(order);
+        }
+        if (limit >= 0) {
+            plan.append(System.lineSeparator()).append("  limit: ").append(limit);
+        }
+        alternatives.forEach(alternative ->
+                plan.append(System.lineSeparator()).append("  considered: ").append(alternative));
+        return plan.toString();
+    }
+
+    @Override
+    public String toString() {
+        return explain();
+    }
+}
@@ -0,0 +1,119 @@
+package ua.onlinecourses.repository;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.ConcurrentNavigableMap;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.function.Function;
+
+public class RangeIndex<T, K extends Comparable<? super K>> extends SecondaryIndex<T, K> {
+
+    private final ConcurrentNavigableMap<K, IndexBucket<T>> sortedBuckets;
+
+    RangeIndex(String name, Function<? super T, ? extends K> keyExtractor) {
+        this(name, keyExtractor, new ConcurrentSkipListMap<>());
+    }
+
+    private RangeIndex(String name, Function<? super T, ? extends K> keyExtractor,
+                       ConcurrentNavigableMap<K, IndexBucket<T>> sortedBuckets) {
+        super(name, keyExtractor, sortedBuckets);
+        this.sortedBuckets = sortedBuckets;
+    }
+
+    public List<T> range(K from, boolean fromInclusive, K to, boolean toInclusive) {
+        if (from == null || to == null || from.compareTo(to) > 0) {
+            return List.of();
+        }
+        return collect(sortedBuckets.subMap(from, fromInclusive, to, toInclusive));
+    }
+
+    public List<T> between(K from, K to) {
+        return range(from, true, to, true);
+    }
+
+    public List<T> lessThan(K key) {
+        return key == null ? List.of() : collect(sortedBuckets.headMap(key, false));
+    }
+
+    public List<T> greaterThan(K key) {
+        return key == null ? List.of() : collect(sortedBuckets.tailMap(key, false));
+    }
+
+    public List<T> atLeast(K key) {
+        return key == null ? List.of() : collect(sortedBuckets.tailMap(key, true));
+    }
+
+    public Optional<K> minKey() {
+        return firstKey(sortedBuckets);
+    }
+
+    public Optional<K> maxKey() {
+        return firstKey(sortedBuckets.descendingMap());
+    }
+
+    // earliest-added entity among those sharing the smallest key
+    public Optional<T> min() {
+        return firstItem(sortedBuckets);
+    }
+
+    // earliest-added entity among those sharing the largest key
+    public Optional<T> max() {
+        return firstItem(sortedBuckets.descendingMap());
+    }
+
+    public List<T> allWithMaxKey() {
+        return maxKey().map(this::find).orElse(List.of());
+    }
+
+    // null bounds are open; entries come back in key order
+    List<RepositoryEntry<T>> rangeEntries(K from, boolean fromInclusive, K to, boolean toInclusive) {
+        List<RepositoryEntry<T>> entries = new ArrayList<>();
+        bounded(from, fromInclusive, to, toInclusive).values().forEach(bucket -> bucket.addEntriesTo(entries));
+        return entries;
+    }
+
+    long estimateRange(K from, boolean fromInclusive, K to, boolean toInclusive) {
+        long total = 0;
+        for (IndexBucket<T> bucket : bounded(from, fromInclusive, to, toInclusive).values()) {
+            total += bucket.size();
+        }
+        return total;
+    }
+
+    private Map<K, IndexBucket<T>> bounded(K from, boolean fromInclusive, K to, boolean toInclusive) {
+        if (from != null && to != null) {
+            return from.compareTo(to) > 0 ? Map.of() : sortedBuckets.subMap(from, fromInclusive, to, toInclusive);
+        }
+        if (from != null) {
+            return sortedBuckets.tailMap(from, fromInclusive);
+        }
+        return to != null ? sortedBuckets.headMap(to, toInclusive) : sortedBuckets;
+    }
+
+    private List<T> collect(Map<K, IndexBucket<T>> view) {
+        List<T> results = new ArrayList<>();
+        view.values().forEach(bucket -> bucket.addTo(results));
+        return results;
+    }
+
+    private Optional<K> firstKey(ConcurrentNavigableMap<K, IndexBucket<T>> view) {
+        for (Map.Entry<K, IndexBucket<T>> entry : view.entrySet()) {
+            if (!entry.getValue().isEmpty()) {
+                return Optional.of(entry.getKey());
+            }
+        }
+        return Optional.empty();
+    }
+
+    private Optional<T> firstItem(ConcurrentNavigableMap<K, IndexBucket<T>> view) {
+        for (IndexBucket<T> bucket : view.values()) {
+            T first = bucket.first();
+            if (first != null) {
+                return Optional.of(first);
+            }
+        }
+        return Optional.empty();
+    }
+}
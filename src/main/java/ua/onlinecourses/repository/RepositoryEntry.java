@@ -0,0 +1,15 @@
+package ua.onlinecourses.repository;
+
+// sequence is assigned on insertion and orders entries the way they were added;
+// key is the identity key computed once on insertion
+record RepositoryEntry<T>(long sequence, Object key, T item) {
+
+    String identity() {
+        return key.toString();
+    }
+
+    @SuppressWarnings("unchecked")
+    static int compareKeys(Object first, Object second) {
+        return ((Comparable<Object>) first).compareTo(second);
+    }
+}
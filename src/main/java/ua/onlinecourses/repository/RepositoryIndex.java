@@ -0,0 +1,33 @@
+package ua.onlinecourses.repository;
+
+public abstract class RepositoryIndex<T> {
+
+    private final String name;
+    // the function the index keys entries by, compared by identity with a query field's accessor
+    private final Object extractor;
+
+    protected RepositoryIndex(String name) {
+        this(name, null);
+    }
+
+    protected RepositoryIndex(String name, Object extractor) {
+        this.name = name;
+        this.extractor = extractor;
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    // true when the index was registered from this field, so its keys are the field's values
+    boolean indexes(Field<?, ?> field) {
+        return extractor != null && name.equals(field.name()) && extractor == field.accessor();
+    }
+
+    // called by GenericRepository while holding the repository monitor
+    abstract void onAdd(RepositoryEntry<T> entry);
+
+    abstract void onRemove(RepositoryEntry<T> entry);
+
+    abstract void onClear();
+}
@@ -0,0 +1,12 @@
+package ua.onlinecourses.repository;
+
+import java.util.List;
+
+@FunctionalInterface
+public interface RepositoryListener<T> {
+
+    // Events of one repository write, in commit order. Registered listeners run on the writing
+    // thread under the repository monitor, so they must be quick and must not write back to it;
+    // wrap slow consumers in a BatchingDispatcher.
+    void onChanges(List<ChangeEvent<T>> events);
+}
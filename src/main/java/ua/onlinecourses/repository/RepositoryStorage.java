@@ -0,0 +1,65 @@
+package ua.onlinecourses.repository;
+
+import java.util.List;
+import java.util.Spliterator;
+import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
+
+// Writers are serialized by GenericRepository; implementations must still let readers
+// take consistent snapshots while a write is in progress.
+interface RepositoryStorage<T> {
+
+    void append(RepositoryEntry<T> entry);
+
+    void appendAll(List<RepositoryEntry<T>> entries);
+
+    boolean remove(RepositoryEntry<T> entry);
+
+    void clear();
+
+    int size();
+
+    // SIZED, SUBSIZED and IMMUTABLE over a point-in-time snapshot; splits into balanced halves
+    Spliterator<T> spliterator();
+
+    default Stream<T> stream() {
+        return StreamSupport.stream(spliterator(), false);
+    }
+
+    // same snapshot as stream(), with the precomputed key and sequence of each item
+    Stream<RepositoryEntry<T>> entries();
+
+    // read-only list over a point-in-time snapshot
+    List<T> snapshot();
+
+    // true when the storage answers identity lookups itself, so the repository keeps no identity map in heap
+    default boolean indexesIdentity() {
+        return false;
+    }
+
+    // the live entry for key, or null; only called when indexesIdentity() is true
+    default RepositoryEntry<T> find(Object key) {
+        throw new UnsupportedOperationException("Storage does not index identities");
+    }
+
+    // hands over the repository's extractor, for storages that rebuild entries from stored items
+    default void bind(IdentityExtractor<T> identityExtractor) {
+    }
+
+    // highest sequence already stored, so a repository reopened on persistent storage carries on after it
+    default long lastSequence() {
+        return -1;
+    }
+
+    // whether snapshots iterate in sequence order
+    default boolean insertionOrdered() {
+        return true;
+    }
+
+    static <T> RepositoryStorage<T> create(StorageMode mode) {
+        return switch (mode) {
+            case COPY_ON_WRITE -> new CopyOnWriteStorage<>();
+            case SEGMENTED -> new SegmentedStorage<>();
+        };
+    }
+}
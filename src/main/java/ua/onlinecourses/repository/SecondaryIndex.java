@@ -0,0 +1,153 @@
+package ua.onlinecourses.repository;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Function;
+
+public class SecondaryIndex<T, K> extends RepositoryIndex<T> {
+
+    private final Function<? super T, ? extends K> keyExtractor;
+    final Map<K, IndexBucket<T>> buckets;
+    // grouped snapshot handed out by groups(); only keys touched since it was built get rebuilt
+    private volatile Map<K, List<T>> groups = Map.of();
+    private volatile boolean tracking;
+    private final Set<K> dirtyKeys = ConcurrentHashMap.newKeySet();
+
+    SecondaryIndex(String name, Function<? super T, ? extends K> keyExtractor) {
+        this(name, keyExtractor, new ConcurrentHashMap<>());
+    }
+
+    SecondaryIndex(String name, Function<? super T, ? extends K> keyExtractor, Map<K, IndexBucket<T>> buckets) {
+        super(name, keyExtractor);
+        this.keyExtractor = keyExtractor;
+        this.buckets = buckets;
+    }
+
+    public List<T> find(K key) {
+        if (key == null) {
+            return List.of();
+        }
+        IndexBucket<T> bucket = buckets.get(key);
+        return bucket == null ? List.of() : bucket.toList();
+    }
+
+    public int count(K key) {
+        if (key == null) {
+            return 0;
+        }
+        IndexBucket<T> bucket = buckets.get(key);
+        return bucket == null ? 0 : bucket.size();
+    }
+
+    List<RepositoryEntry<T>> findEntries(Object key) {
+        IndexBucket<T> bucket = key == null ? null : buckets.get(key);
+        List<RepositoryEntry<T>> entries = new ArrayList<>();
+        if (bucket != null) {
+            bucket.addEntriesTo(entries);
+        }
+        return entries;
+    }
+
+    long estimate(Object key) {
+        IndexBucket<T> bucket = key == null ? null : buckets.get(key);
+        return bucket == null ? 0 : bucket.size();
+    }
+
+    public boolean containsKey(K key) {
+        return count(key) > 0;
+    }
+
+    public Set<K> keys() {
+        return Set.copyOf(buckets.keySet());
+    }
+
+    // immutable key -> items map, items in insertion order; rebuilding only the groups that
+    // changed since the last call. Tracking starts on the first call, so unused indexes pay nothing
+    public synchronized Map<K, List<T>> groups() {
+        if (!tracking) {
+            // enable tracking before reading the buckets so no concurrent write is missed
+            tracking = true;
+            Map<K, List<T>> built = new HashMap<>();
+            buckets.forEach((key, bucket) -> addGroup(built, key, bucket));
+            groups = Map.copyOf(built);
+            return groups;
+        }
+        if (dirtyKeys.isEmpty()) {
+            return groups;
+        }
+
+        Map<K, List<T>> next = new HashMap<>(groups);
+        Iterator<K> dirty = dirtyKeys.iterator();
+        while (dirty.hasNext()) {
+            K key = dirty.next();
+            dirty.remove();
+            next.remove(key);
+            addGroup(next, key, buckets.get(key));
+        }
+        groups = Map.copyOf(next);
+        return groups;
+    }
+
+    public Map<K, Long> groupCounts() {
+        Map<K, Long> counts = new HashMap<>();
+        groups().forEach((key, items) -> counts.put(key, (long) items.size()));
+        return Map.copyOf(counts);
+    }
+
+    private static <T, K> void addGroup(Map<K, List<T>> target, K key, IndexBucket<T> bucket) {
+        if (bucket != null) {
+            List<T> items = bucket.toList();
+            if (!items.isEmpty()) {
+                target.put(key, List.copyOf(items));
+            }
+        }
+    }
+
+    private void markDirty(K key) {
+        if (tracking) {
+            dirtyKeys.add(key);
+        }
+    }
+
+    K keyOf(T item) {
+        return keyExtractor.apply(item);
+    }
+
+    @Override
+    void onAdd(RepositoryEntry<T> entry) {
+        K key = keyOf(entry.item());
+        if (key != null) {
+            buckets.computeIfAbsent(key, k -> new IndexBucket<>()).add(entry);
+            markDirty(key);
+        }
+    }
+
+    @Override
+    void onRemove(RepositoryEntry<T> entry) {
+        K key = keyOf(entry.item());
+        if (key == null) {
+            return;
+        }
+        IndexBucket<T> bucket = buckets.get(key);
+        if (bucket != null) {
+            bucket.remove(entry);
+            if (bucket.isEmpty()) {
+                buckets.remove(key);
+            }
+            markDirty(key);
+        }
+    }
+
+    @Override
+    void onClear() {
+        buckets.clear();
+        if (tracking) {
+            dirtyKeys.addAll(groups.keySet());
+        }
+    }
+}
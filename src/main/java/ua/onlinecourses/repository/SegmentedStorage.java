@@ -0,0 +1,323 @@
+package ua.onlinecourses.repository;
+
+import java.util.AbstractList;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.RandomAccess;
+import java.util.Spliterator;
+import java.util.concurrent.locks.StampedLock;
+import java.util.function.Consumer;
+import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
+
+class SegmentedStorage<T> implements RepositoryStorage<T> {
+
+    static final int CHUNK_SIZE = 1024;
+
+    private final StampedLock lock = new StampedLock();
+
+    // Slots below `used` are never rewritten in place: appends only fill slots past it,
+    // removals put a tombstone in a copy of its chunk, and compaction builds fresh chunks,
+    // so a snapshot of (chunks, used) stays valid while writers carry on.
+    private RepositoryEntry<?>[][] chunks = new RepositoryEntry<?>[0][];
+    // liveBefore[k] counts live entries in chunks 0..k-1; replaced, never edited, once a snapshot may hold it
+    private int[] liveBefore = new int[0];
+    private int used;
+    private int live;
+
+    @Override
+    public void append(RepositoryEntry<T> entry) {
+        long stamp = lock.writeLock();
+        try {
+            put(entry);
+        } finally {
+            lock.unlockWrite(stamp);
+        }
+    }
+
+    @Override
+    public void appendAll(List<RepositoryEntry<T>> entries) {
+        long stamp = lock.writeLock();
+        try {
+            entries.forEach(this::put);
+        } finally {
+            lock.unlockWrite(stamp);
+        }
+    }
+
+    @Override
+    public boolean remove(RepositoryEntry<T> entry) {
+        long stamp = lock.writeLock();
+        try {
+            int position = positionOf(entry.sequence());
+            if (position < 0) {
+                return false;
+            }
+            int chunkIndex = position / CHUNK_SIZE;
+            int offset = position % CHUNK_SIZE;
+            if (chunks[chunkIndex][offset] != entry) {
+                return false;
+            }
+            // published snapshots may still hold this chunk, so replace the slot in a copy;
+            // the tombstone keeps the sequence for the binary search
+            RepositoryEntry<?>[] chunk = chunks[chunkIndex].clone();
+            chunk[offset] = new RepositoryEntry<>(entry.sequence(), null, null);
+            RepositoryEntry<?>[][] nextChunks = chunks.clone();
+            nextChunks[chunkIndex] = chunk;
+            int[] nextLiveBefore = liveBefore.clone();
+            for (int later = chunkIndex + 1; later < nextLiveBefore.length; later++) {
+                nextLiveBefore[later]--;
+            }
+            chunks = nextChunks;
+            liveBefore = nextLiveBefore;
+            live--;
+            if (used - live > CHUNK_SIZE && used - live > live) {
+                compact();
+            }
+            return true;
+        } finally {
+            lock.unlockWrite(stamp);
+        }
+    }
+
+    @Override
+    public void clear() {
+        long stamp = lock.writeLock();
+        try {
+            chunks = new RepositoryEntry<?>[0][];
+            liveBefore = new int[0];
+            used = 0;
+            live = 0;
+        } finally {
+            lock.unlockWrite(stamp);
+        }
+    }
+
+    @Override
+    public int size() {
+        long stamp = lock.tryOptimisticRead();
+        int size = live;
+        if (!lock.validate(stamp)) {
+            stamp = lock.readLock();
+            try {
+                size = live;
+            } finally {
+                lock.unlockRead(stamp);
+            }
+        }
+        return size;
+    }
+
+    @Override
+    public Spliterator<T> spliterator() {
+        return takeSnapshot().spliterator(true);
+    }
+
+    @Override
+    public Stream<RepositoryEntry<T>> entries() {
+        // walks the chunks and skips tombstones, so no copy is needed even with holes
+        return StreamSupport.stream(takeSnapshot().<RepositoryEntry<T>>spliterator(false), false);
+    }
+
+    @Override
+    public List<T> snapshot() {
+        Snapshot snapshot = takeSnapshot();
+        if (snapshot.used() == snapshot.live()) {
+            return new ChunkListView<>(snapshot.chunks(), snapshot.used());
+        }
+        // removals leave tombstones, so materialize the live items once
+        List<T> copy = new ArrayList<>(snapshot.live());
+        snapshot.<T>spliterator(true).forEachRemaining(copy::add);
+        return Collections.unmodifiableList(copy);
+    }
+
+    private Snapshot takeSnapshot() {
+        long stamp = lock.tryOptimisticRead();
+        Snapshot snapshot = new Snapshot(chunks, liveBefore, used, live);
+        if (!lock.validate(stamp)) {
+            stamp = lock.readLock();
+            try {
+                snapshot = new Snapshot(chunks, liveBefore, used, live);
+            } finally {
+                lock.unlockRead(stamp);
+            }
+        }
+        return snapshot;
+    }
+
+    private void put(RepositoryEntry<?> entry) {
+        int chunkIndex = used / CHUNK_SIZE;
+        if (chunkIndex == chunks.length) {
+            RepositoryEntry<?>[][] grown = new RepositoryEntry<?>[chunks.length + 1][];
+            System.arraycopy(chunks, 0, grown, 0, chunks.length);
+            grown[chunkIndex] = new RepositoryEntry<?>[CHUNK_SIZE];
+            int[] grownLiveBefore = Arrays.copyOf(liveBefore, chunkIndex + 1);
+            grownLiveBefore[chunkIndex] = live;
+            chunks = grown;
+            liveBefore = grownLiveBefore;
+        }
+        chunks[chunkIndex][used % CHUNK_SIZE] = entry;
+        used++;
+        live++;
+    }
+
+    // entries are appended in increasing sequence order and tombstones keep the sequence
+    // of the entry they replace, so slots stay sorted by sequence
+    private int positionOf(long sequence) {
+        int low = 0;
+        int high = used - 1;
+        while (low <= high) {
+            int mid = (low + high) >>> 1;
+            long midSequence = chunks[mid / CHUNK_SIZE][mid % CHUNK_SIZE].sequence();
+            if (midSequence < sequence) {
+                low = mid + 1;
+            } else if (midSequence > sequence) {
+                high = mid - 1;
+            } else {
+                return mid;
+            }
+        }
+        return -1;
+    }
+
+    private static boolean isLive(RepositoryEntry<?> entry) {
+        return entry.item() != null;
+    }
+
+    private void compact() {
+        RepositoryEntry<?>[][] oldChunks = chunks;
+        int oldUsed = used;
+        chunks = new RepositoryEntry<?>[0][];
+        liveBefore = new int[0];
+        used = 0;
+        live = 0;
+        for (int position = 0; position < oldUsed; position++) {
+            RepositoryEntry<?> entry = oldChunks[position / CHUNK_SIZE][position % CHUNK_SIZE];
+            if (isLive(entry)) {
+                put(entry);
+            }
+        }
+    }
+
+    private record Snapshot(RepositoryEntry<?>[][] chunks, int[] liveBefore, int used, int live) {
+
+        <E> Spliterator<E> spliterator(boolean items) {
+            return new ChunkSpliterator<>(chunks, liveBefore, 0, used, live, live, items);
+        }
+    }
+
+    private static final class ChunkListView<T> extends AbstractList<T> implements RandomAccess {
+        private final RepositoryEntry<?>[][] chunks;
+        private final int size;
+
+        ChunkListView(RepositoryEntry<?>[][] chunks, int size) {
+            this.chunks = chunks;
+            this.size = size;
+        }
+
+        @Override
+        @SuppressWarnings("unchecked")
+        public T get(int index) {
+            if (index < 0 || index >= size) {
+                throw new IndexOutOfBoundsException("Index: " + index + ", Size: " + size);
+            }
+            return (T) chunks[index / CHUNK_SIZE][index % CHUNK_SIZE].item();
+        }
+
+        @Override
+        public int size() {
+            return size;
+        }
+    }
+
+    // Splits on chunk boundaries and sizes every half exactly from liveBefore, so it stays
+    // SIZED and SUBSIZED even with tombstones. Yields entries, or their items when items is set.
+    private static final class ChunkSpliterator<E> implements Spliterator<E> {
+        private final RepositoryEntry<?>[][] chunks;
+        private final int[] liveBefore;
+        private final boolean items;
+        private int position;
+        private final int end;
+        // live entries left in [position, end), and live entries before end
+        private int remaining;
+        private final int liveBeforeEnd;
+
+        ChunkSpliterator(RepositoryEntry<?>[][] chunks, int[] liveBefore, int position, int end,
+                         int remaining, int liveBeforeEnd, boolean items) {
+            this.chunks = chunks;
+            this.liveBefore = liveBefore;
+            this.position = position;
+            this.end = end;
+            this.remaining = remaining;
+            this.liveBeforeEnd = liveBeforeEnd;
+            this.items = items;
+        }
+
+        @Override
+        public boolean tryAdvance(Consumer<? super E> action) {
+            while (position < end) {
+                RepositoryEntry<?> entry = chunks[position / CHUNK_SIZE][position % CHUNK_SIZE];
+                position++;
+                if (isLive(entry)) {
+                    remaining--;
+                    action.accept(element(entry));
+                    return true;
+                }
+            }
+            return false;
+        }
+
+        @Override
+        public void forEachRemaining(Consumer<? super E> action) {
+            int current = position;
+            position = end;
+            remaining = 0;
+            while (current < end) {
+                RepositoryEntry<?>[] chunk = chunks[current / CHUNK_SIZE];
+                int chunkEnd = Math.min(CHUNK_SIZE, end - (current / CHUNK_SIZE) * CHUNK_SIZE);
+                for (int offset = current % CHUNK_SIZE; offset < chunkEnd; offset++) {
+                    RepositoryEntry<?> entry = chunk[offset];
+                    if (isLive(entry)) {
+                        action.accept(element(entry));
+                    }
+                }
+                current += chunkEnd - current % CHUNK_SIZE;
+            }
+        }
+
+        @Override
+        public Spliterator<E> trySplit() {
+            int firstBoundary = position / CHUNK_SIZE + 1;
+            int lastBoundary = (end - 1) / CHUNK_SIZE;
+            if (firstBoundary > lastBoundary) {
+                return null;
+            }
+            // chunk boundary closest to the middle of the remaining slots
+            int middle = ((position + end) >>> 1) + CHUNK_SIZE / 2;
+            int boundary = Math.max(firstBoundary, Math.min(lastBoundary, middle / CHUNK_SIZE));
+            int suffix = liveBeforeEnd - liveBefore[boundary];
+            ChunkSpliterator<E> prefix = new ChunkSpliterator<>(chunks, liveBefore, position, boundary * CHUNK_SIZE,
+                    remaining - suffix, liveBefore[boundary], items);
+            position = boundary * CHUNK_SIZE;
+            remaining = suffix;
+            return prefix;
+        }
+
+        @Override
+        public long estimateSize() {
+            return remaining;
+        }
+
+        @Override
+        public int characteristics() {
+            return ORDERED | NONNULL | IMMUTABLE | SIZED | SUBSIZED;
+        }
+
+        @SuppressWarnings("unchecked")
+        private E element(RepositoryEntry<?> entry) {
+            return (E) (items ? entry.item() : entry);
+        }
+    }
+}
@@ -0,0 +1,8 @@
+package ua.onlinecourses.repository;
+
+public enum StorageMode {
+    // every write copies the whole array; cheapest reads, best for read-mostly data
+    COPY_ON_WRITE,
+    // fixed-size chunks behind a StampedLock; amortized O(1) appends and removals
+    SEGMENTED
+}
@@ -1,9 +1,12 @@
 package ua.onlinecourses.repository;
 
 import ua.onlinecourses.model.Student;
+import ua.onlinecourses.util.StudentUtils;
+import ua.onlinecourses.util.ValueDictionary;
 import java.time.LocalDate;
 import java.util.Comparator;
 import java.util.List;
+import java.util.Locale;
 import java.util.Map;
 import java.util.Optional;
 import java.util.logging.Level;
@@ -13,48 +16,94 @@ import java.util.stream.Collectors;
 public class StudentRepository extends GenericRepository<Student> {
     private static final Logger logger = Logger.getLogger(StudentRepository.class.getName());
 
+    private final ValueDictionary dictionary = new ValueDictionary(ValueDictionary.DEFAULT_MAX_ENTRIES);
+
+    static final String FIRST_NAME_INDEX = "firstName";
+    static final String LAST_NAME_INDEX = "lastName";
+    static final String ENROLLMENT_DATE_INDEX = "enrollmentDate";
+    static final String LAST_NAME_GROUPS = "lastNameGroups";
+    static final String LAST_NAME_TEXT = "lastNameText";
+    static final String NORMALIZED_EMAIL_INDEX = "normalizedEmail";
+    static final String EMAIL_DOMAIN_INDEX = "emailDomain";
+
+    // query fields share their index's name and extractor so query() can plan through the index
+    public static final Field<Student, String> FIRST_NAME =
+            Field.of(FIRST_NAME_INDEX, student -> student.firstName().toLowerCase(Locale.ROOT));
+    public static final Field<Student, String> LAST_NAME =
+            Field.of(LAST_NAME_INDEX, student -> student.lastName().toLowerCase(Locale.ROOT));
+    public static final Field<Student, LocalDate> ENROLLMENT_DATE = Field.of(ENROLLMENT_DATE_INDEX, Student::enrollmentDate);
+    public static final Field<Student, String> LAST_NAME_SEARCH = Field.of(LAST_NAME_TEXT, Student::lastName);
+    public static final Field<Student, String> NORMALIZED_EMAIL =
+            Field.of(NORMALIZED_EMAIL_INDEX, student -> normalizeEmail(student.email()));
+    public static final Field<Student, String> EMAIL_DOMAIN =
+            Field.of(EMAIL_DOMAIN_INDEX, student -> emailDomain(student.email()));
+
+    // shared instances so repeated sorts hit the cached sorted view
+    private static final Comparator<Student> BY_ENROLLMENT_DATE_DESC = Student.BY_ENROLLMENT_DATE.reversed();
+    private static final Comparator<Student> BY_EMAIL_LENGTH =
+            (s1, s2) -> Integer.compare(s1.email().length(), s2.email().length());
+    private static final Comparator<Student> BY_FIRST_NAME = Comparator.comparing(Student::firstName);
+
     public StudentRepository() {
-        super(Student::email, "Student");
+        this(StorageMode.COPY_ON_WRITE);
+    }
+
+    public StudentRepository(StorageMode storageMode) {
+        super(Student::email, "Student", storageMode);
+        setCanonicalizer(student -> StudentUtils.canonical(student, dictionary));
+        registerIndex(FIRST_NAME);
+        registerIndex(LAST_NAME);
+        registerRangeIndex(ENROLLMENT_DATE);
+        registerIndex(LAST_NAME_GROUPS, Student::lastName);
+        registerTrigramIndex(LAST_NAME_SEARCH);
+        registerIndex(NORMALIZED_EMAIL);
+        registerIndex(EMAIL_DOMAIN);
     }
 
     public List<Student> sortByName() {
-        List<Student> allStudents = getAll();
-        allStudents.sort(Student.BY_NAME);
+        List<Student> allStudents = sorted(Student.BY_NAME);
         logger.log(Level.INFO, "Sorted Student by lastName, firstName, and email (ascending)");
         return allStudents;
     }
 
     public List<Student> sortByNameDesc() {
-        List<Student> allStudents = getAll();
-        allStudents.sort(Student.BY_NAME_DESC);
+        List<Student> allStudents = sorted(Student.BY_NAME_DESC);
         logger.log(Level.INFO, "Sorted Student by lastName (desc), firstName, and email");
         return allStudents;
     }
 
     public List<Student> sortByEnrollmentDate() {
-        List<Student> allStudents = getAll();
-        allStudents.sort(Student.BY_ENROLLMENT_DATE);
+        List<Student> allStudents = sorted(Student.BY_ENROLLMENT_DATE);
         logger.log(Level.INFO, "Sorted Student by enrollment date");
         return allStudents;
     }
 
+    public List<Student> firstEnrolled(int k) {
+        List<Student> top = topK(Student.BY_ENROLLMENT_DATE, k);
+        logger.log(Level.INFO, "Selected {0} Student by enrollment date", top.size());
+        return top;
+    }
+
+    public Page<Student> pageByEnrollmentDate(Student afterKey, int limit) {
+        Page<Student> page = page(Student.BY_ENROLLMENT_DATE, afterKey, limit);
+        logger.log(Level.INFO, "Fetched page of {0} Student by enrollment date", page.size());
+        return page;
+    }
+
     public List<Student> sortByEnrollmentDateDesc() {
-        List<Student> allStudents = getAll();
-        allStudents.sort(Student.BY_ENROLLMENT_DATE.reversed());
+        List<Student> allStudents = sorted(BY_ENROLLMENT_DATE_DESC);
         logger.log(Level.INFO, "Sorted Student by enrollment date (descending)");
         return allStudents;
     }
 
     public List<Student> sortByEmailLength() {
-        List<Student> allStudents = getAll();
-        allStudents.sort((s1, s2) -> Integer.compare(s1.email().length(), s2.email().length()));
+        List<Student> allStudents = sorted(BY_EMAIL_LENGTH);
         logger.log(Level.INFO, "Sorted Student by email length using lambda");
         return allStudents;
     }
 
     public List<Student> sortByFirstName() {
-        List<Student> allStudents = getAll();
-        allStudents.sort(Comparator.comparing(Student::firstName));
+        List<Student> allStudents = sorted(BY_FIRST_NAME);
         logger.log(Level.INFO, "Sorted Student by firstName using method reference");
         return allStudents;
     }
@@ -65,10 +114,7 @@ public class StudentRepository extends GenericRepository<Student> {
             return List.of();
         }
 
-        String searchTerm = partialName.trim().toLowerCase();
-        List<Student> results = getAll().stream()
-                .filter(student -> student.lastName().toLowerCase().contains(searchTerm))
-                .collect(Collectors.toList());
+        List<Student> results = getTrigramIndex(LAST_NAME_TEXT).search(partialName.trim());
 
         logger.log(Level.INFO, "Found {0} students with lastName containing ''{1}''",
                 new Object[]{results.size(), partialName});
@@ -81,9 +127,7 @@ public class StudentRepository extends GenericRepository<Student> {
             return List.of();
         }
 
-        List<Student> results = getAll().stream()
-                .filter(student -> student.firstName().equalsIgnoreCase(firstName.trim()))
-                .collect(Collectors.toList());
+        List<Student> results = findByIndex(FIRST_NAME_INDEX, firstName.trim().toLowerCase(Locale.ROOT));
 
         logger.log(Level.INFO, "Found {0} students with firstName ''{1}''",
                 new Object[]{results.size(), firstName});
@@ -97,10 +141,7 @@ public class StudentRepository extends GenericRepository<Student> {
             return List.of();
         }
 
-        List<Student> results = getAll().stream()
-                .filter(student -> !student.enrollmentDate().isBefore(startDate) &&
-                        !student.enrollmentDate().isAfter(endDate))
-                .collect(Collectors.toList());
+        List<Student> results = this.<LocalDate>getRangeIndex(ENROLLMENT_DATE_INDEX).between(startDate, endDate);
 
         logger.log(Level.INFO, "Found {0} students enrolled between {1} and {2}",
                 new Object[]{results.size(), startDate, endDate});
@@ -113,10 +154,7 @@ public class StudentRepository extends GenericRepository<Student> {
             return List.of();
         }
 
-        String searchDomain = domain.trim().toLowerCase();
-        List<Student> results = getAll().stream()
-                .filter(student -> student.email().toLowerCase().endsWith("@" + searchDomain))
-                .collect(Collectors.toList());
+        List<Student> results = this.<String>getIndex(EMAIL_DOMAIN_INDEX).find(domain.trim().toLowerCase(Locale.ROOT));
 
         logger.log(Level.INFO, "Found {0} students with email domain ''{1}''",
                 new Object[]{results.size(), domain});
@@ -124,45 +162,39 @@ public class StudentRepository extends GenericRepository<Student> {
     }
 
     public Map<String, List<Student>> groupByLastName() {
-        Map<String, List<Student>> grouped = getAll().stream()
-                .collect(Collectors.groupingBy(Student::lastName));
+        Map<String, List<Student>> grouped = this.<String>getIndex(LAST_NAME_GROUPS).groups();
 
         logger.log(Level.INFO, "Grouped students by lastName: {0} groups", grouped.size());
         return grouped;
     }
 
     public Map<LocalDate, Long> countByEnrollmentDate() {
-        Map<LocalDate, Long> counts = getAll().stream()
-                .collect(Collectors.groupingBy(
-                        Student::enrollmentDate,
-                        Collectors.counting()
-                ));
+        Map<LocalDate, Long> counts = this.<LocalDate>getRangeIndex(ENROLLMENT_DATE_INDEX).groupCounts();
 
         logger.log(Level.INFO, "Student counts by enrollment date: {0}", counts);
         return counts;
     }
 
     public List<String> getAllEmails() {
-        List<String> emails = getAll().stream()
-                .map(Student::email)
-                .collect(Collectors.toList());
+        List<String> emails = scan(items -> items
+                    .map(Student::email)
+                    .collect(Collectors.toList())).result();
 
         logger.log(Level.INFO, "Retrieved {0} student emails", emails.size());
         return emails;
     }
 
     public List<String> getAllFullNames() {
-        List<String> fullNames = getAll().stream()
-                .map(student -> student.firstName() + " " + student.lastName())
-                .collect(Collectors.toList());
+        List<String> fullNames = scan(items -> items
+                    .map(student -> student.firstName() + " " + student.lastName())
+                    .collect(Collectors.toList())).result();
 
         logger.log(Level.INFO, "Retrieved {0} student full names", fullNames.size());
         return fullNames;
     }
 
     public Optional<Student> findOldestStudent() {
-        Optional<Student> oldest = getAll().stream()
-                .min(Comparator.comparing(Student::enrollmentDate));
+        Optional<Student> oldest = this.<LocalDate>getRangeIndex(ENROLLMENT_DATE_INDEX).min();
 
         if (oldest.isPresent()) {
             logger.log(Level.INFO, "Oldest student: {0} {1} (enrolled: {2})",
@@ -176,8 +208,7 @@ public class StudentRepository extends GenericRepository<Student> {
     }
 
     public Optional<Student> findNewestStudent() {
-        Optional<Student> newest = getAll().stream()
-                .max(Comparator.comparing(Student::enrollmentDate));
+        Optional<Student> newest = this.<LocalDate>getRangeIndex(ENROLLMENT_DATE_INDEX).max();
 
         if (newest.isPresent()) {
             logger.log(Level.INFO, "Newest student: {0} {1} (enrolled: {2})",
@@ -196,9 +227,7 @@ public class StudentRepository extends GenericRepository<Student> {
             return 0;
         }
 
-        long count = getAll().stream()
-                .filter(student -> student.lastName().equalsIgnoreCase(lastName.trim()))
-                .count();
+        long count = this.<String>getIndex(LAST_NAME_INDEX).count(lastName.trim().toLowerCase(Locale.ROOT));
 
         logger.log(Level.INFO, "Count of students with lastName ''{0}'': {1}",
                 new Object[]{lastName, count});
@@ -211,8 +240,7 @@ public class StudentRepository extends GenericRepository<Student> {
             return false;
         }
 
-        boolean exists = getAll().stream()
-                .anyMatch(student -> student.email().equalsIgnoreCase(email.trim()));
+        boolean exists = this.<String>getIndex(NORMALIZED_EMAIL_INDEX).containsKey(normalizeEmail(email));
 
         logger.log(Level.INFO, "Student with email ''{0}'' exists: {1}",
                 new Object[]{email, exists});
@@ -225,8 +253,9 @@ public class StudentRepository extends GenericRepository<Student> {
             return false;
         }
 
-        boolean result = getAll().stream()
-                .allMatch(student -> student.enrollmentDate().isAfter(date));
+        boolean result = this.<LocalDate>getRangeIndex(ENROLLMENT_DATE_INDEX).minKey()
+                .map(earliest -> earliest.isAfter(date))
+                .orElse(true);
 
         logger.log(Level.INFO, "All students enrolled after {0}: {1}",
                 new Object[]{date, result});
@@ -235,9 +264,26 @@ public class StudentRepository extends GenericRepository<Student> {
 
     public void printAllStudents() {
         logger.log(Level.INFO, "Printing all students:");
-        getAll().stream()
-                .forEach(student -> System.out.println(student.firstName() + " " +
-                        student.lastName() + " - " +
-                        student.email()));
+        forEach(student -> System.out.println(student.firstName() + " " +
+                student.lastName() + " - " +
+                student.email()));
+    }
+
+    static String normalizeEmail(String email) {
+        return email == null ? null : email.trim().toLowerCase(Locale.ROOT);
+    }
+
+    // part after the last '@', lowercased; null when there is none, so the index skips it
+    static String emailDomain(String email) {
+        if (email == null) {
+            return null;
+        }
+        int at = email.lastIndexOf('@');
+        return at < 0 ? null : email.substring(at + 1).trim().toLowerCase(Locale.ROOT);
+    }
+
+    // first and last names shared between stored students; dropped together with the repository
+    public ValueDictionary getValueDictionary() {
+        return dictionary;
     }
-}
\ No newline at end of file
+}
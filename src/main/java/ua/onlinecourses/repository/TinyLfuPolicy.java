@@ -0,0 +1,88 @@
+package ua.onlinecourses.repository;
+
+// Evicts in LRU order, but only lets a candidate in when it has been looked up more often recently
+// than the key it would displace, so a one-off scan cannot flush the hot working set.
+class TinyLfuPolicy extends LruPolicy {
+
+    private final FrequencySketch sketch;
+
+    TinyLfuPolicy(int expectedEntries) {
+        if (expectedEntries <= 0) {
+            throw new IllegalArgumentException("Expected entries must be positive: " + expectedEntries);
+        }
+        this.sketch = new FrequencySketch(expectedEntries);
+    }
+
+    @Override
+    public void onAccess(Object key, boolean hit) {
+        sketch.increment(key);
+        super.onAccess(key, hit);
+    }
+
+    @Override
+    public boolean admit(Object candidate, Object victim) {
+        return sketch.frequency(candidate) > sketch.frequency(victim);
+    }
+
+    int frequency(Object key) {
+        return sketch.frequency(key);
+    }
+
+    // count-min sketch of 4-bit counters, 16 per long, four counters per key; every counter is
+    // halved after 10 increments per expected entry, so old popularity fades
+    static final class FrequencySketch {
+        private static final long[] SEEDS = {
+                0x9E3779B97F4A7C15L, 0xC2B2AE3D27D4EB4FL, 0x165667B19E3779F9L, 0x27D4EB2F165667C5L};
+        private static final long HALF_MASK = 0x7777_7777_7777_7777L;
+
+        private final long[] table;
+        private final int counterMask;
+        private final int sampleSize;
+        private int additions;
+
+        FrequencySketch(int expectedEntries) {
+            int words = Integer.highestOneBit(Math.max(8, expectedEntries - 1) << 1);
+            this.table = new long[words];
+            this.counterMask = words * 16 - 1;
+            this.sampleSize = (int) Math.min(Integer.MAX_VALUE, 10L * expectedEntries);
+        }
+
+        int frequency(Object key) {
+            int hash = key.hashCode();
+            int frequency = 15;
+            for (long seed : SEEDS) {
+                int counter = indexOf(hash, seed);
+                frequency = Math.min(frequency, (int) (table[counter >>> 4] >>> shiftOf(counter)) & 0xF);
+            }
+            return frequency;
+        }
+
+        void increment(Object key) {
+            int hash = key.hashCode();
+            boolean added = false;
+            for (long seed : SEEDS) {
+                int counter = indexOf(hash, seed);
+                int shift = shiftOf(counter);
+                if (((table[counter >>> 4] >>> shift) & 0xF) < 15) {
+                    table[counter >>> 4] += 1L << shift;
+                    added = true;
+                }
+            }
+            if (added && ++additions >= sampleSize) {
+                for (int i = 0; i < table.length; i++) {
+                    table[i] = (table[i] >>> 1) & HALF_MASK;
+                }
+                additions /= 2;
+            }
+        }
+
+        private int indexOf(int hash, long seed) {
+            long mixed = (hash + seed) * seed;
+            return (int) (mixed ^ (mixed >>> 32)) & counterMask;
+        }
+
+        private static int shiftOf(int counter) {
+            return (counter & 15) << 2;
+        }
+    }
+}
@@ -0,0 +1,162 @@
+package ua.onlinecourses.repository;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.NavigableSet;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.ConcurrentSkipListSet;
+import java.util.function.Function;
+
+// case-folded substring index: trigram -> sequences of the entries containing it
+public class TrigramIndex<T> extends RepositoryIndex<T> {
+
+    static final int GRAM_LENGTH = 3;
+
+    private final Function<? super T, ? extends String> textExtractor;
+    private final Map<String, NavigableSet<Long>> postings = new ConcurrentHashMap<>();
+    // folded text is kept so candidates are verified without lowercasing the field again
+    private final ConcurrentSkipListMap<Long, Document<T>> documents = new ConcurrentSkipListMap<>();
+
+    TrigramIndex(String name, Function<? super T, ? extends String> textExtractor) {
+        super(name, textExtractor);
+        this.textExtractor = textExtractor;
+    }
+
+    // items whose text contains the fragment, ignoring case, in insertion order
+    public List<T> search(String fragment) {
+        List<T> results = new ArrayList<>();
+        searchEntries(fragment).forEach(entry -> results.add(entry.item()));
+        return results;
+    }
+
+    List<RepositoryEntry<T>> searchEntries(String fragment) {
+        if (fragment == null || fragment.isEmpty()) {
+            return List.of();
+        }
+        String folded = fold(fragment);
+        if (folded.length() < GRAM_LENGTH) {
+            // too short to produce a trigram, so verify every document
+            return verify(documents.keySet(), folded);
+        }
+
+        List<NavigableSet<Long>> candidates = postingsFor(folded);
+        if (candidates.isEmpty()) {
+            return List.of();
+        }
+
+        // walk the rarest trigram and keep sequences present in every other posting
+        NavigableSet<Long> smallest = candidates.get(0);
+        List<NavigableSet<Long>> others = candidates.subList(1, candidates.size());
+        List<Long> matching = new ArrayList<>();
+        for (Long sequence : smallest) {
+            if (others.stream().allMatch(posting -> posting.contains(sequence))) {
+                matching.add(sequence);
+            }
+        }
+        return verify(matching, folded);
+    }
+
+    // upper bound on matches: size of the rarest trigram's posting
+    long estimate(String fragment) {
+        if (fragment == null || fragment.isEmpty()) {
+            return 0;
+        }
+        String folded = fold(fragment);
+        if (folded.length() < GRAM_LENGTH) {
+            return documents.size();
+        }
+        List<NavigableSet<Long>> candidates = postingsFor(folded);
+        return candidates.isEmpty() ? 0 : candidates.get(0).size();
+    }
+
+    // postings of every trigram in the fragment, rarest first; empty if any trigram is absent
+    private List<NavigableSet<Long>> postingsFor(String folded) {
+        List<NavigableSet<Long>> candidates = new ArrayList<>();
+        for (String gram : grams(folded)) {
+            NavigableSet<Long> posting = postings.get(gram);
+            if (posting == null) {
+                return List.of();
+            }
+            candidates.add(posting);
+        }
+        candidates.sort(Comparator.comparingInt(Set::size));
+        return candidates;
+    }
+
+    public int documentCount() {
+        return documents.size();
+    }
+
+    public int gramCount() {
+        return postings.size();
+    }
+
+    @Override
+    void onAdd(RepositoryEntry<T> entry) {
+        String text = textExtractor.apply(entry.item());
+        if (text == null) {
+            return;
+        }
+        String folded = fold(text);
+        documents.put(entry.sequence(), new Document<>(folded, entry));
+        for (String gram : grams(folded)) {
+            postings.computeIfAbsent(gram, key -> new ConcurrentSkipListSet<>()).add(entry.sequence());
+        }
+    }
+
+    @Override
+    void onRemove(RepositoryEntry<T> entry) {
+        Document<T> document = documents.remove(entry.sequence());
+        if (document == null) {
+            return;
+        }
+        for (String gram : grams(document.folded())) {
+            NavigableSet<Long> posting = postings.get(gram);
+            if (posting != null) {
+                posting.remove(entry.sequence());
+                if (posting.isEmpty()) {
+                    postings.remove(gram);
+                }
+            }
+        }
+    }
+
+    @Override
+    void onClear() {
+        documents.clear();
+        postings.clear();
+    }
+
+    private List<RepositoryEntry<T>> verify(Iterable<Long> sequences, String folded) {
+        List<RepositoryEntry<T>> results = new ArrayList<>();
+        for (Long sequence : sequences) {
+            Document<T> document = documents.get(sequence);
+            if (document != null && document.folded().contains(folded)) {
+                results.add(document.entry());
+            }
+        }
+        return results;
+    }
+
+    // same folding the finders used before the index existed
+    static String fold(String text) {
+        return text.toLowerCase(Locale.ROOT);
+    }
+
+    static Set<String> grams(String folded) {
+        Set<String> grams = new HashSet<>();
+        for (int i = 0; i + GRAM_LENGTH <= folded.length(); i++) {
+            grams.add(folded.substring(i, i + GRAM_LENGTH));
+        }
+        return grams;
+    }
+
+    private record Document<T>(String folded, RepositoryEntry<T> entry) {
+    }
+}
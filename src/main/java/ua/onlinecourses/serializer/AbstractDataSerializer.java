@@ -76,6 +76,56 @@ public abstract class AbstractDataSerializer<T> implements DataSerializer<T> {
         }
     }
 
+    @Override
+    public void serializeDocument(Object document, String filePath) throws DataSerializationException {
+        if (document == null) {
+            throw new DataSerializationException("Cannot serialize null document");
+        }
+        validateFilePath(filePath);
+
+        try {
+            File file = new File(filePath);
+            createParentDirectories(file);
+
+            objectMapper.writeValue(file, document);
+            logger.log(Level.INFO, "Successfully serialized {0} to {1} file: {2}",
+                    new Object[]{document.getClass().getSimpleName(), getFormat(), filePath});
+
+        } catch (IOException e) {
+            String errorMsg = String.format("Failed to serialize document to %s file: %s",
+                    getFormat(), filePath);
+            throw new DataSerializationException(errorMsg, e);
+        }
+    }
+
+    // returns null when the file is missing or empty
+    @Override
+    public <D> D deserializeDocument(String filePath, Class<D> type) throws DataSerializationException {
+        validateFilePath(filePath);
+        if (type == null) {
+            throw new DataSerializationException("Class type cannot be null");
+        }
+
+        try {
+            File file = new File(filePath);
+
+            if (!file.exists() || file.length() == 0) {
+                logger.log(Level.WARNING, "File does not exist or is empty: {0}. Returning null.", filePath);
+                return null;
+            }
+
+            D document = objectMapper.readValue(file, type);
+            logger.log(Level.INFO, "Successfully deserialized {0} from {1} file: {2}",
+                    new Object[]{type.getSimpleName(), getFormat(), filePath});
+            return document;
+
+        } catch (IOException e) {
+            String errorMsg = String.format("Failed to deserialize document from %s file: %s",
+                    getFormat(), filePath);
+            throw new DataSerializationException(errorMsg, e);
+        }
+    }
+
     protected void validateItemsForSerialization(List<T> items) throws DataSerializationException {
         if (items == null) {
             throw new DataSerializationException("Cannot serialize null list");
@@ -0,0 +1,55 @@
+package ua.onlinecourses.serializer;
+
+import ua.onlinecourses.exception.DataSerializationException;
+import ua.onlinecourses.model.Assignment;
+import ua.onlinecourses.model.Mark;
+import ua.onlinecourses.model.myModule;
+
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.function.UnaryOperator;
+
+// Normalized assignment file: every distinct module is written once in the module table and
+// each row refers to it by position, instead of repeating the module content per assignment.
+public record AssignmentTable(List<myModule> modules, List<Row> assignments) {
+
+    public record Row(int module, LocalDate dueDate, int maxPoints, Mark mark) {
+    }
+
+    public AssignmentTable {
+        modules = modules == null ? List.of() : modules;
+        assignments = assignments == null ? List.of() : assignments;
+    }
+
+    public static AssignmentTable of(List<Assignment> assignments) {
+        Map<myModule, Integer> positions = new LinkedHashMap<>();
+        List<Row> rows = new ArrayList<>(assignments.size());
+        for (Assignment assignment : assignments) {
+            int position = positions.computeIfAbsent(assignment.module(), module -> positions.size());
+            rows.add(new Row(position, assignment.dueDate(), assignment.maxPoints(), assignment.mark()));
+        }
+        return new AssignmentTable(new ArrayList<>(positions.keySet()), rows);
+    }
+
+    // each table entry goes through the resolver once, so all rows of a module share its result
+    public List<Assignment> resolve(UnaryOperator<myModule> resolver) throws DataSerializationException {
+        List<myModule> resolved = new ArrayList<>(modules.size());
+        for (myModule module : modules) {
+            resolved.add(resolver.apply(module));
+        }
+
+        List<Assignment> result = new ArrayList<>(assignments.size());
+        for (Row row : assignments) {
+            if (row.module() < 0 || row.module() >= resolved.size()) {
+                throw new DataSerializationException(String.format(
+                        "Assignment due %s refers to module %d, but the table has %d modules",
+                        row.dueDate(), row.module(), resolved.size()));
+            }
+            result.add(new Assignment(resolved.get(row.module()), row.dueDate(), row.maxPoints(), row.mark()));
+        }
+        return result;
+    }
+}
@@ -9,5 +9,10 @@ public interface DataSerializer<T> {
 
     List<T> deserialize(String filePath, Class<T> clazz) throws DataSerializationException;
 
+    // single object instead of a list, for files with more than one section
+    void serializeDocument(Object document, String filePath) throws DataSerializationException;
+
+    <D> D deserializeDocument(String filePath, Class<D> type) throws DataSerializationException;
+
     String getFormat();
 }
\ No newline at end of file
@@ -0,0 +1,67 @@
+package ua.onlinecourses.serializer;
+
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.databind.BeanDescription;
+import com.fasterxml.jackson.databind.DeserializationConfig;
+import com.fasterxml.jackson.databind.DeserializationContext;
+import com.fasterxml.jackson.databind.JsonDeserializer;
+import com.fasterxml.jackson.databind.deser.BeanDeserializerModifier;
+import com.fasterxml.jackson.databind.deser.std.DelegatingDeserializer;
+import com.fasterxml.jackson.databind.module.SimpleModule;
+import ua.onlinecourses.model.myModule;
+import ua.onlinecourses.util.ValueDictionary;
+
+import java.io.IOException;
+import java.util.Set;
+
+// Routes every deserialized instance of the canonical types through a ValueDictionary, so loading a
+// file does not create a copy per occurrence of a repeated value. The dictionary belongs to one read
+// call and is dropped with it; strings are left alone, most of them (emails, identities) are unique.
+public class InterningModule extends SimpleModule {
+    private static final long serialVersionUID = 1L;
+
+    // per-call attribute holding the dictionary of the read in progress
+    private static final Object DICTIONARY = new Object();
+
+    public InterningModule(Class<?>... canonicalTypes) {
+        super("InterningModule");
+        Set<Class<?>> canonical = Set.of(canonicalTypes);
+        setDeserializerModifier(new BeanDeserializerModifier() {
+            @Override
+            public JsonDeserializer<?> modifyDeserializer(DeserializationConfig config, BeanDescription description,
+                                                          JsonDeserializer<?> deserializer) {
+                return canonical.contains(description.getBeanClass())
+                        ? new CanonicalDeserializer(deserializer)
+                        : deserializer;
+            }
+        });
+    }
+
+    // modules are the value type embedded in other entities
+    public static InterningModule forEntities() {
+        return new InterningModule(myModule.class);
+    }
+
+    private static final class CanonicalDeserializer extends DelegatingDeserializer {
+        private static final long serialVersionUID = 1L;
+
+        CanonicalDeserializer(JsonDeserializer<?> delegate) {
+            super(delegate);
+        }
+
+        @Override
+        protected JsonDeserializer<?> newDelegatingInstance(JsonDeserializer<?> delegate) {
+            return new CanonicalDeserializer(delegate);
+        }
+
+        @Override
+        public Object deserialize(JsonParser parser, DeserializationContext context) throws IOException {
+            ValueDictionary dictionary = (ValueDictionary) context.getAttribute(DICTIONARY);
+            if (dictionary == null) {
+                dictionary = new ValueDictionary(ValueDictionary.DEFAULT_MAX_ENTRIES);
+                context.setAttribute(DICTIONARY, dictionary);
+            }
+            return dictionary.canonical(super.deserialize(parser, context));
+        }
+    }
+}
@@ -31,6 +31,7 @@ public class YamlDataSerializer<T> extends AbstractDataSerializer<T> {
 
         ObjectMapper mapper = new ObjectMapper(yamlFactory);
         mapper.registerModule(new JavaTimeModule());
+        mapper.registerModule(InterningModule.forEntities());
         mapper.enable(SerializationFeature.INDENT_OUTPUT);
         mapper.disable(DeserializationFeature.FAIL_ON_UNKNOWN_PROPERTIES);
         return mapper;
@@ -2,8 +2,19 @@
 package ua.onlinecourses.util;
 
 import java.time.LocalDate;
+import ua.onlinecourses.model.Assignment;
+import ua.onlinecourses.model.myModule;
 
 public class AssignmentUtils {
+    // assignments of one module share its canonical instance instead of embedding a copy each
+    public static Assignment canonical(Assignment assignment, ValueDictionary dictionary) {
+        myModule module = ModuleUtils.canonical(assignment.module(), dictionary);
+        if (module == assignment.module()) {
+            return assignment;
+        }
+        return new Assignment(module, assignment.dueDate(), assignment.maxPoints(), assignment.mark());
+    }
+
     public static boolean isValidMaxPoints(int maxPoints){
         return ValidationHelper.isNumberBetween (maxPoints, 1, 100);
     }
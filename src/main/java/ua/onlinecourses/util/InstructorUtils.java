@@ -1,11 +1,22 @@
 
 package ua.onlinecourses.util;
 
+import ua.onlinecourses.model.Instructor;
+
 public class InstructorUtils {
     
     private InstructorUtils(){
 
     }
+
+    public static Instructor canonical(Instructor instructor, ValueDictionary dictionary) {
+        String firstName = dictionary.intern(instructor.firstName());
+        String lastName = dictionary.intern(instructor.lastName());
+        if (firstName == instructor.firstName() && lastName == instructor.lastName()) {
+            return instructor;
+        }
+        return new Instructor(firstName, lastName, instructor.expertise());
+    }
     public static String formatName(String firstName, String lastName) {
         if (firstName == null || lastName == null) {
             return "";
@@ -1,9 +1,18 @@
 
 package ua.onlinecourses.util;
 
+import ua.onlinecourses.model.myModule;
+
 public class ModuleUtils {
     public ModuleUtils(){
 }
+
+    // one shared instance per distinct module; titles repeat across modules, content does not
+    public static myModule canonical(myModule module, ValueDictionary dictionary) {
+        String title = dictionary.intern(module.title());
+        myModule withSharedTitle = title == module.title() ? module : new myModule(title, module.content());
+        return dictionary.canonical(withSharedTitle);
+    }
     public static boolean isValidTitle(String title){
         return ValidationHelper.isStringLengthBetween(title, 1, 30);
     }
@@ -2,10 +2,21 @@
 package ua.onlinecourses.util;
 
 import java.time.LocalDate;
+import ua.onlinecourses.model.Student;
 
 public class StudentUtils {
     public StudentUtils(){
     }
+
+    // shares repeated names through the dictionary; rebuilds the student only if one was a duplicate
+    public static Student canonical(Student student, ValueDictionary dictionary) {
+        String firstName = dictionary.intern(student.firstName());
+        String lastName = dictionary.intern(student.lastName());
+        if (firstName == student.firstName() && lastName == student.lastName()) {
+            return student;
+        }
+        return new Student(firstName, lastName, student.email(), student.enrollmentDate());
+    }
     public static String formatName(String firstName, String lastName) {
         if (firstName == null || lastName == null) {
             return "";
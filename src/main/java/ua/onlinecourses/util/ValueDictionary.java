@@ -0,0 +1,143 @@
+package ua.onlinecourses.util;
+
+import java.lang.reflect.RecordComponent;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+// Canonical instances for strings and immutable values that repeat across entities, such as
+// last names or the module embedded in every assignment, so equal values end up as one object and
+// the copies can be collected. A dictionary is owned by one repository or one load and goes away
+// with it; feed it only fields with few distinct values, not emails or identities.
+//
+// Entries are never evicted. Once maxEntries distinct values are held, new values pass through
+// unchanged, so the owner's memory stays bounded.
+public final class ValueDictionary {
+    private static final Logger logger = Logger.getLogger(ValueDictionary.class.getName());
+
+    public static final int DEFAULT_MAX_ENTRIES = 100_000;
+
+    private final int maxEntries;
+    private final ConcurrentMap<String, String> strings = new ConcurrentHashMap<>();
+    private final ConcurrentMap<Object, Object> values = new ConcurrentHashMap<>();
+    private final LongAdder stringHits = new LongAdder();
+    private final LongAdder valueHits = new LongAdder();
+    private final LongAdder deduplicatedBytes = new LongAdder();
+    private volatile boolean fullReported;
+
+    public record Stats(int strings, int values, long stringHits, long valueHits, long deduplicatedBytes) {
+
+        @Override
+        public String toString() {
+            return String.format("%d strings, %d values, %d string and %d value duplicates, ~%d KB deduplicated",
+                    strings, values, stringHits, valueHits, deduplicatedBytes / 1024);
+        }
+    }
+
+    public ValueDictionary(int maxEntries) {
+        if (maxEntries <= 0) {
+            throw new IllegalArgumentException("Max entries must be positive: " + maxEntries);
+        }
+        this.maxEntries = maxEntries;
+    }
+
+    public String intern(String value) {
+        if (value == null) {
+            return null;
+        }
+        String canonical = strings.get(value);
+        if (canonical == null) {
+            if (isFull()) {
+                return value;
+            }
+            canonical = strings.putIfAbsent(value, value);
+            if (canonical == null) {
+                return value;
+            }
+        }
+        if (canonical != value) {
+            stringHits.increment();
+            deduplicatedBytes.add(estimateBytes(value));
+        }
+        return canonical;
+    }
+
+    // value must be immutable with value equality, like the model records
+    @SuppressWarnings("unchecked")
+    public <V> V canonical(V value) {
+        if (value == null) {
+            return null;
+        }
+        Object canonical = values.get(value);
+        if (canonical == null) {
+            if (isFull()) {
+                return value;
+            }
+            canonical = values.putIfAbsent(value, value);
+            if (canonical == null) {
+                return value;
+            }
+        }
+        if (canonical != value) {
+            valueHits.increment();
+            deduplicatedBytes.add(estimateDuplicateBytes(value, canonical));
+        }
+        return (V) canonical;
+    }
+
+    public Stats getStats() {
+        return new Stats(strings.size(), values.size(), stringHits.sum(), valueHits.sum(), deduplicatedBytes.sum());
+    }
+
+    public void clear() {
+        strings.clear();
+        values.clear();
+        stringHits.reset();
+        valueHits.reset();
+        deduplicatedBytes.reset();
+        fullReported = false;
+    }
+
+    private boolean isFull() {
+        boolean full = strings.size() + values.size() >= maxEntries;
+        if (full && !fullReported) {
+            fullReported = true;
+            logger.log(Level.WARNING, "Value dictionary is full at {0} entries; new values are no longer interned",
+                    maxEntries);
+        }
+        return full;
+    }
+
+    // compact strings: 24-byte String header plus a 16-byte array header and one byte per
+    // Latin-1 char (two otherwise), rounded up to 8
+    static long estimateBytes(String value) {
+        boolean latin1 = value.chars().allMatch(c -> c < 256);
+        long array = 16L + (latin1 ? value.length() : 2L * value.length());
+        return 24 + ((array + 7) & ~7L);
+    }
+
+    // object header and one reference per record component, plus component strings that the
+    // duplicate does not share with the canonical value
+    private static long estimateDuplicateBytes(Object duplicate, Object canonical) {
+        RecordComponent[] components = duplicate.getClass().getRecordComponents();
+        if (components == null) {
+            return 16;
+        }
+        long bytes = (12 + 4L * components.length + 7) & ~7L;
+        try {
+            for (RecordComponent component : components) {
+                if (component.getType() == String.class) {
+                    Object own = component.getAccessor().invoke(duplicate);
+                    if (own != null && own != component.getAccessor().invoke(canonical)) {
+                        bytes += estimateBytes((String) own);
+                    }
+                }
+            }
+        } catch (ReflectiveOperationException e) {
+            logger.log(Level.FINE, "Could not size {0}: {1}", new Object[]{duplicate.getClass(), e.getMessage()});
+        }
+        return bytes;
+    }
+}
@@ -4,11 +4,20 @@ import org.junit.jupiter.api.AfterEach;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.DisplayName;
 import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
 import ua.onlinecourses.config.AppConfig;
 import ua.onlinecourses.exception.DataSerializationException;
+import ua.onlinecourses.model.Assignment;
 import ua.onlinecourses.model.Instructor;
+import ua.onlinecourses.model.Mark;
+import ua.onlinecourses.model.myModule;
+import ua.onlinecourses.repository.ModuleRepository;
 
 import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.LocalDate;
 import java.util.ArrayList;
 import java.util.List;
 
@@ -21,6 +30,9 @@ class PersistenceManagerTest {
     private AppConfig config;
     private List<Instructor> testInstructors;
 
+    @TempDir
+    Path tempDir;
+
     @BeforeEach
     void setUp() {
         config = new AppConfig();
@@ -152,8 +164,76 @@ class PersistenceManagerTest {
         }
     }
 
+    @Test
+    @DisplayName("saveAssignments should write each module once and share it on load")
+    void testNormalizedAssignments() throws Exception {
+        myModule streams = new myModule("Streams", "Streams and collectors. ".repeat(40));
+        myModule records = new myModule("Records", "Records and sealed types. ".repeat(40));
+        List<Assignment> assignments = new ArrayList<>();
+        LocalDate dueDate = LocalDate.now().plusDays(1);
+        for (int i = 0; i < 40; i++) {
+            myModule module = i % 2 == 0 ? streams : new myModule("Records", records.content());
+            assignments.add(new Assignment(module, dueDate.plusDays(i), 10 + i, Mark.values()[i % 6]));
+        }
+
+        assertFalse(manager.isAssignmentsNormalized());
+        PersistenceManager normalized = normalizedManager();
+        normalized.save(assignments, "assignments", Assignment.class, "JSON");
+        long embeddedSize = Files.size(tempDir.resolve("assignments.json"));
+        normalized.saveAssignments(assignments, "JSON");
+        long normalizedSize = Files.size(tempDir.resolve("assignment-table.json"));
+        assertTrue(normalizedSize * 5 < embeddedSize);
+        // the plain array file is left to save()/load() and the journal
+        assertEquals(embeddedSize, Files.size(tempDir.resolve("assignments.json")));
+
+        ModuleRepository modules = new ModuleRepository();
+        modules.add(streams);
+        List<Assignment> loaded = normalized.loadAssignments(modules, "JSON");
+
+        assertEquals(assignments, loaded);
+        assertEquals(2, modules.size());
+        // the repository may store a canonical copy rather than the instance it was given
+        assertSame(modules.findByIdentity(streams.getFullName()).orElseThrow(), loaded.get(0).module());
+        assertSame(modules.findByIdentity(records.getFullName()).orElseThrow(), loaded.get(1).module());
+        assertTrue(loaded.stream().allMatch(assignment -> assignment.module() == loaded.get(0).module()
+                || assignment.module() == loaded.get(1).module()));
+    }
+
+    @Test
+    @DisplayName("With normalization on, an embedded assignments file still loads and migrates on save")
+    void testNormalizedLoadsEmbeddedFile() throws Exception {
+        myModule streams = new myModule("Streams", "Streams and collectors.");
+        LocalDate dueDate = LocalDate.now().plusDays(1);
+        // the plain format does not carry marks
+        List<Assignment> assignments = List.of(
+                new Assignment(streams, dueDate, 10, null),
+                new Assignment(new myModule("Streams", streams.content()), dueDate.plusDays(1), 20, null));
+        PersistenceManager normalized = normalizedManager();
+        normalized.save(assignments, "assignments", Assignment.class, "JSON");
+        assertFalse(Files.exists(tempDir.resolve("assignment-table.json")));
+
+        ModuleRepository modules = new ModuleRepository();
+        List<Assignment> loaded = normalized.loadAssignments(modules, "JSON");
+        assertEquals(assignments, loaded);
+        assertEquals(1, modules.size());
+        assertSame(modules.findByIdentity(streams.getFullName()).orElseThrow(), loaded.get(0).module());
+        assertSame(loaded.get(0).module(), loaded.get(1).module());
+
+        normalized.saveAssignments(loaded, "JSON");
+        assertTrue(Files.exists(tempDir.resolve("assignment-table.json")));
+        assertEquals(assignments, normalized.loadAssignments(new ModuleRepository(), "JSON"));
+        assertEquals(assignments, normalized.load("assignments", Assignment.class, "JSON"));
+    }
+
+    private PersistenceManager normalizedManager() throws IOException {
+        Path configFile = tempDir.resolve("normalized.properties");
+        Files.writeString(configFile, "data.path.base=" + tempDir.toString().replace("\\", "/") + "\n"
+                + "persistence.assignments.normalized=true\n");
+        return new PersistenceManager(new AppConfig(configFile.toString()));
+    }
+
     private void cleanupTestFiles() {
-        String[] entities = {"instructors", "students", "courses"};
+        String[] entities = {"instructors", "students", "courses", "assignments"};
         for (String entity : entities) {
             File jsonFile = new File(config.getJsonFilePath(entity));
             if (jsonFile.exists()) {
@@ -0,0 +1,202 @@
+package ua.onlinecourses.persistence;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import ua.onlinecourses.config.AppConfig;
+import ua.onlinecourses.exception.DataSerializationException;
+import ua.onlinecourses.model.Instructor;
+import ua.onlinecourses.repository.CachingRepository;
+import ua.onlinecourses.repository.EvictionPolicy;
+import ua.onlinecourses.repository.InstructorRepository;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+@DisplayName("RepositoryJournal Tests")
+class RepositoryJournalTest {
+
+    @TempDir
+    Path tempDir;
+
+    private PersistenceManager manager;
+    private Path journalPath;
+    private Instructor instructor1, instructor2, instructor3;
+
+    @BeforeEach
+    void setUp() throws IOException {
+        Path configFile = tempDir.resolve("journal-test.properties");
+        Files.writeString(configFile, "data.path.base=" + tempDir.toString().replace("\\", "/") + "\n");
+        manager = new PersistenceManager(new AppConfig(configFile.toString()));
+        journalPath = tempDir.resolve("instructors.journal");
+
+        instructor1 = new Instructor("Igor", "Bylat", 18);
+        instructor2 = new Instructor("Denys", "Skrypa", 22);
+        instructor3 = new Instructor("Olena", "Kovalenko", 9);
+    }
+
+    private RepositoryJournal<Instructor> open(InstructorRepository repository, int checkpointInterval)
+            throws DataSerializationException {
+        return RepositoryJournal.open(repository, manager, "instructors", Instructor.class,
+                journalPath, checkpointInterval, false);
+    }
+
+    @Test
+    @DisplayName("Recovery replays adds and removes from the journal")
+    void testRecoverFromJournal() throws Exception {
+        InstructorRepository repository = new InstructorRepository();
+        try (RepositoryJournal<Instructor> journal = open(repository, 100)) {
+            repository.addAll(List.of(instructor1, instructor2));
+            repository.add(instructor3);
+            repository.remove(instructor2);
+            assertEquals(4, journal.getLastLsn());
+        }
+        assertEquals(4, Files.readAllLines(journalPath).size());
+
+        InstructorRepository recovered = new InstructorRepository();
+        try (RepositoryJournal<Instructor> journal = open(recovered, 100)) {
+            assertEquals(List.of(instructor1, instructor3), recovered.getAll());
+            assertEquals(4, journal.getLastLsn());
+            assertEquals(4, journal.getRecordsSinceCheckpoint());
+        }
+    }
+
+    @Test
+    @DisplayName("Checkpoints snapshot the repository and restart the journal")
+    void testCheckpointBoundsReplay() throws Exception {
+        InstructorRepository repository = new InstructorRepository();
+        try (RepositoryJournal<Instructor> journal = open(repository, 5)) {
+            for (int i = 0; i < 12; i++) {
+                repository.add(new Instructor("Name", "Surname" + (char) ('a' + i), 5 + i));
+            }
+            assertEquals(2, journal.getRecordsSinceCheckpoint());
+        }
+        List<String> lines = Files.readAllLines(journalPath);
+        assertEquals(3, lines.size());
+        assertTrue(lines.get(0).contains("CHECKPOINT"));
+        assertTrue(Files.exists(tempDir.resolve("instructors.json")));
+
+        repository.clear();
+        InstructorRepository recovered = new InstructorRepository();
+        try (RepositoryJournal<Instructor> journal = open(recovered, 5)) {
+            assertEquals(12, recovered.size());
+            assertEquals(12, journal.getLastLsn());
+            assertEquals(2, journal.getRecordsSinceCheckpoint());
+
+            recovered.clear();
+            recovered.add(instructor1);
+        }
+
+        InstructorRepository afterClear = new InstructorRepository();
+        try (RepositoryJournal<Instructor> journal = open(afterClear, 5)) {
+            assertEquals(List.of(instructor1), afterClear.getAll());
+            assertEquals(14, journal.getLastLsn());
+        }
+    }
+
+    @Test
+    @DisplayName("Checkpoints triggered by writes run on the checkpoint thread")
+    void testCheckpointRunsOffWritePath() throws Exception {
+        List<String> snapshotThreads = Collections.synchronizedList(new ArrayList<>());
+        CountDownLatch release = new CountDownLatch(1);
+        PersistenceManager slowManager = new PersistenceManager(
+                new AppConfig(tempDir.resolve("journal-test.properties").toString())) {
+            @Override
+            public <T> void saveSnapshot(List<T> items, String entityType, Class<T> clazz, String format)
+                    throws DataSerializationException {
+                snapshotThreads.add(Thread.currentThread().getName());
+                try {
+                    release.await(5, TimeUnit.SECONDS);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+                super.saveSnapshot(items, entityType, clazz, format);
+            }
+        };
+
+        InstructorRepository repository = new InstructorRepository();
+        RepositoryJournal<Instructor> journal = RepositoryJournal.open(repository, slowManager, "instructors",
+                Instructor.class, journalPath, 2, false);
+        // the snapshot is blocked, yet every write returns and is journaled
+        for (int i = 0; i < 7; i++) {
+            repository.add(new Instructor("Name", "Surname" + (char) ('a' + i), 5 + i));
+        }
+        assertEquals(7, journal.getLastLsn());
+        release.countDown();
+        journal.close();
+
+        assertFalse(snapshotThreads.isEmpty());
+        assertTrue(snapshotThreads.stream().allMatch(name -> name.equals("journal-checkpoint-instructors")));
+        List<String> lines = Files.readAllLines(journalPath);
+        assertTrue(lines.get(0).contains("CHECKPOINT"));
+        assertTrue(lines.size() < 8);
+
+        InstructorRepository recovered = new InstructorRepository();
+        RepositoryJournal<Instructor> reopened = open(recovered, 100);
+        assertEquals(7, recovered.size());
+        assertEquals(7, reopened.getLastLsn());
+        reopened.close();
+    }
+
+    @Test
+    @DisplayName("A torn last record is dropped and the journal stays writable")
+    void testTornTailIsDropped() throws Exception {
+        InstructorRepository repository = new InstructorRepository();
+        try (RepositoryJournal<Instructor> journal = open(repository, 100)) {
+            repository.add(instructor1);
+            assertEquals(1, journal.getLastLsn());
+        }
+        Files.writeString(journalPath, "{\"lsn\":2,\"op\":\"ADD\",\"item\":{\"firstName\":\"Den",
+                StandardCharsets.UTF_8, StandardOpenOption.APPEND);
+
+        InstructorRepository recovered = new InstructorRepository();
+        try (RepositoryJournal<Instructor> journal = open(recovered, 100)) {
+            assertEquals(List.of(instructor1), recovered.getAll());
+            assertEquals(1, Files.readAllLines(journalPath).size());
+            recovered.add(instructor2);
+            assertEquals(2, journal.getLastLsn());
+        }
+
+        InstructorRepository again = new InstructorRepository();
+        try (RepositoryJournal<Instructor> journal = open(again, 100)) {
+            assertEquals(List.of(instructor1, instructor2), again.getAll());
+            assertEquals(2, journal.getLastLsn());
+        }
+    }
+
+    @Test
+    @DisplayName("A bounded cache cannot be journaled, and EVICT records are not replayed as removes")
+    void testEvictionsAreNotJournaled() throws Exception {
+        CachingRepository<Instructor> cache = new CachingRepository<>(Instructor::getFullName, "Instructor", 2,
+                EvictionPolicy.lru());
+        assertThrows(DataSerializationException.class, () -> RepositoryJournal.open(cache, manager,
+                "instructors", Instructor.class, journalPath, 100, false));
+        assertFalse(Files.exists(journalPath));
+
+        Files.writeString(journalPath, "{\"lsn\":1,\"op\":\"ADD\",\"item\":{\"firstName\":\"Igor\","
+                + "\"lastName\":\"Bylat\",\"expertise\":18}}\n"
+                + "{\"lsn\":2,\"op\":\"EVICT\",\"identity\":\"Igor Bylat\"}\n"
+                + "{\"lsn\":3,\"op\":\"ADD\",\"item\":{\"firstName\":\"Denys\","
+                + "\"lastName\":\"Skrypa\",\"expertise\":22}}\n");
+        assertThrows(DataSerializationException.class, () -> open(new InstructorRepository(), 100));
+    }
+
+    @Test
+    @DisplayName("A corrupt record in the middle of the journal fails recovery")
+    void testCorruptRecordFailsRecovery() throws Exception {
+        Files.writeString(journalPath, "not json\n{\"lsn\":1,\"op\":\"CLEAR\"}\n");
+
+        assertThrows(DataSerializationException.class, () -> open(new InstructorRepository(), 100));
+    }
+}
@@ -0,0 +1,168 @@
+package ua.onlinecourses.persistence;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import ua.onlinecourses.config.AppConfig;
+import ua.onlinecourses.model.Instructor;
+import ua.onlinecourses.repository.CachingRepository;
+import ua.onlinecourses.repository.EvictionPolicy;
+import ua.onlinecourses.repository.InstructorRepository;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.List;
+import java.util.Set;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+@DisplayName("WriteBehindStore Tests")
+class WriteBehindStoreTest {
+
+    @TempDir
+    Path tempDir;
+
+    private PersistenceManager manager;
+    private Path instructorsFile;
+
+    @BeforeEach
+    void setUp() throws IOException {
+        Path configFile = tempDir.resolve("store-test.properties");
+        Files.writeString(configFile, "data.path.base=" + tempDir.toString().replace("\\", "/") + "\n");
+        manager = new PersistenceManager(new AppConfig(configFile.toString()));
+        instructorsFile = tempDir.resolve("instructors.json");
+    }
+
+    private WriteBehindStore<Instructor> open(InstructorRepository repository, Duration delay, Duration maxLag) {
+        return new WriteBehindStore<>(repository, manager, "instructors", Instructor.class, "JSON", delay, maxLag);
+    }
+
+    @Test
+    @DisplayName("The file is loaded on first access and a burst of writes is flushed once")
+    void testLazyLoadAndCoalescedFlush() throws Exception {
+        manager.save(List.of(new Instructor("Igor", "Bylat", 18)), "instructors", Instructor.class, "JSON");
+
+        InstructorRepository repository = new InstructorRepository();
+        try (WriteBehindStore<Instructor> store = open(repository, Duration.ofSeconds(30), Duration.ofSeconds(60))) {
+            assertFalse(store.isLoaded());
+            assertTrue(repository.isEmpty());
+            assertEquals(1, store.getAll().size());
+            assertTrue(store.isLoaded());
+            assertEquals(0, store.getPendingChanges());
+
+            long modified = Files.getLastModifiedTime(instructorsFile).toMillis();
+            store.add(new Instructor("Denys", "Skrypa", 22));
+            store.repository().add(new Instructor("Olena", "Kovalenko", 9));
+            store.removeByIdentity(new Instructor("Igor", "Bylat", 18).getFullName());
+            assertEquals(3, store.getPendingChanges());
+            assertEquals(0, store.getFlushCount());
+            assertEquals(modified, Files.getLastModifiedTime(instructorsFile).toMillis());
+        }
+
+        List<Instructor> saved = manager.load("instructors", Instructor.class, "JSON");
+        assertEquals(repository.getAll(), saved);
+        assertEquals(2, saved.size());
+    }
+
+    @Test
+    @DisplayName("Continuous writes are flushed within the maximum lag")
+    void testMaxLagBoundsDelay() throws Exception {
+        InstructorRepository repository = new InstructorRepository();
+        try (WriteBehindStore<Instructor> store = open(repository, Duration.ofMillis(100), Duration.ofMillis(300))) {
+            long start = System.nanoTime();
+            int i = 0;
+            // each write comes before the 100 ms delay runs out, so only the lag bound can force a flush
+            while (store.getFlushCount() == 0 && System.nanoTime() - start < Duration.ofSeconds(5).toNanos()) {
+                store.add(new Instructor("Na" + (char) ('a' + i / 60 % 26), "Surname", 1 + i % 60));
+                i++;
+                Thread.sleep(20);
+            }
+            assertEquals(1, store.getFlushCount());
+            assertTrue(store.getFlushedChanges() > 1);
+            assertTrue(Files.exists(instructorsFile));
+        }
+        assertEquals(repository.size(), manager.load("instructors", Instructor.class, "JSON").size());
+    }
+
+    @Test
+    @DisplayName("A failed flush keeps the changes pending")
+    void testFailedFlushIsRetried() throws Exception {
+        InstructorRepository repository = new InstructorRepository();
+        WriteBehindStore<Instructor> store = open(repository, Duration.ofSeconds(30), Duration.ofSeconds(60));
+        store.add(new Instructor("Igor", "Bylat", 18));
+
+        // a directory where the snapshot should go makes the atomic replace fail
+        Files.createDirectories(instructorsFile.resolve("blocked"));
+        assertThrows(Exception.class, store::flush);
+        assertEquals(1, store.getPendingChanges());
+        assertNotNull(store.getLastFailure());
+
+        Files.delete(instructorsFile.resolve("blocked"));
+        Files.delete(instructorsFile);
+        store.close();
+        assertEquals(0, store.getPendingChanges());
+        assertNull(store.getLastFailure());
+        assertEquals(repository.getAll(), manager.load("instructors", Instructor.class, "JSON"));
+    }
+
+    @Test
+    @DisplayName("A flush behind a bounded cache keeps evicted items in the file")
+    void testFlushKeepsEvictedItems() throws Exception {
+        Instructor igor = new Instructor("Igor", "Bylat", 18);
+        Instructor denys = new Instructor("Denys", "Skrypa", 22);
+        Instructor olena = new Instructor("Olena", "Kovalenko", 9);
+        Instructor taras = new Instructor("Taras", "Melnyk", 14);
+        CachingRepository<Instructor> cache = new CachingRepository<>(Instructor::getFullName, "Instructor", 2,
+                EvictionPolicy.lru());
+        try (WriteBehindStore<Instructor> store = new WriteBehindStore<>(cache, manager, "instructors",
+                Instructor.class, "JSON", Duration.ofSeconds(30), Duration.ofSeconds(60))) {
+            // igor is evicted before any flush wrote him
+            store.addAll(List.of(igor, denys, olena));
+            assertEquals(2, cache.size());
+            assertEquals(3, store.getPendingChanges());
+            store.flush();
+            assertEquals(Set.of(igor, denys, olena),
+                    Set.copyOf(manager.load("instructors", Instructor.class, "JSON")));
+
+            // denys is evicted only from the cache, olena is deleted
+            store.add(taras);
+            store.removeByIdentity(olena.getFullName());
+            assertFalse(cache.contains(denys));
+            assertEquals(2, store.getPendingChanges());
+            store.flush();
+        }
+        assertEquals(Set.of(igor, denys, taras), Set.copyOf(manager.load("instructors", Instructor.class, "JSON")));
+    }
+
+    @Test
+    @DisplayName("Reads and removals behind a bounded cache reach rows held only by the file")
+    void testReadThroughBoundedCache() throws Exception {
+        Instructor igor = new Instructor("Igor", "Bylat", 18);
+        Instructor denys = new Instructor("Denys", "Skrypa", 22);
+        Instructor olena = new Instructor("Olena", "Kovalenko", 9);
+        manager.save(List.of(igor, denys, olena), "instructors", Instructor.class, "JSON");
+        CachingRepository<Instructor> cache = new CachingRepository<>(Instructor::getFullName, "Instructor", 1,
+                EvictionPolicy.lru());
+        try (WriteBehindStore<Instructor> store = new WriteBehindStore<>(cache, manager, "instructors",
+                Instructor.class, "JSON", Duration.ofSeconds(30), Duration.ofSeconds(60))) {
+            assertEquals(Set.of(igor, denys, olena), Set.copyOf(store.getAll()));
+            assertEquals(1, cache.size());
+            assertEquals(igor, store.findByIdentity(igor.getFullName()).orElseThrow());
+            assertEquals(denys, store.findByIdentity(denys.getFullName()).orElseThrow());
+
+            Instructor fileOnly = cache.contains(igor) ? denys : igor;
+            assertTrue(store.removeByIdentity(fileOnly.getFullName()));
+            assertFalse(store.removeByIdentity("Nobody Here"));
+            assertEquals(1, store.getPendingChanges());
+            assertTrue(store.findByIdentity(fileOnly.getFullName()).isEmpty());
+            assertEquals(2, store.getAll().size());
+            store.flush();
+        }
+        List<Instructor> saved = manager.load("instructors", Instructor.class, "JSON");
+        assertEquals(2, saved.size());
+        assertTrue(saved.contains(olena));
+    }
+}
@@ -283,4 +283,31 @@ class AssignmentRepositorySortingTest {
         assertEquals(3, sorted.size());
         assertTrue(sorted.get(0).mark().compareTo(sorted.get(1).mark()) <= 0);
     }
-}
\ No newline at end of file
+
+    @Test
+    @DisplayName("composite identity key should resolve identity strings")
+    void testCompositeIdentityLookup() {
+        String identity = assignment5.getIdentity();
+
+        assertEquals(identity, assignment5.identityKey().toString());
+        assertEquals(assignment5.identityKey(), Assignment.Key.parse(identity));
+        assertTrue(assignmentRepository.containsIdentity(identity));
+        assertEquals(assignment5, assignmentRepository.findByIdentity(identity).orElseThrow());
+        assertTrue(assignmentRepository.findByIdentity("not-an-identity").isEmpty());
+        assertNull(Assignment.Key.parse("2025-05-08"));
+
+        assertTrue(assignmentRepository.removeByIdentity(identity));
+        assertFalse(assignmentRepository.contains(assignment5));
+        assertEquals(4, assignmentRepository.size());
+    }
+
+    @Test
+    @DisplayName("sortByIdentity with composite keys should follow identity string order")
+    void testSortByCompositeIdentity() {
+        List<Assignment> sorted = assignmentRepository.sortByIdentity("asc");
+
+        List<String> identities = sorted.stream().map(Assignment::getIdentity).toList();
+        assertEquals(identities.stream().sorted().toList(), identities);
+        assertEquals(sorted.get(0), assignmentRepository.sortByIdentity("desc").get(4));
+    }
+}
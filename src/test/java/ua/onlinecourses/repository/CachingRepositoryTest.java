@@ -0,0 +1,118 @@
+package ua.onlinecourses.repository;
+
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import ua.onlinecourses.model.Student;
+
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+@DisplayName("CachingRepository Tests")
+class CachingRepositoryTest {
+
+    private static Student student(int i) {
+        return new Student("Name", "Surname", String.format("student%03d@chnu.edu.ua", i), LocalDate.of(2025, 1, 1));
+    }
+
+    private static String identity(int i) {
+        return student(i).email();
+    }
+
+    private static CachingRepository<Student> cache(int maxEntries, EvictionPolicy policy) {
+        return new CachingRepository<>(Student::email, "Student", maxEntries, policy);
+    }
+
+    @Test
+    @DisplayName("LRU keeps recently looked-up items and reports evictions to listeners")
+    void testLruEviction() {
+        CachingRepository<Student> cache = cache(3, EvictionPolicy.lru());
+        List<ChangeEvent<Student>> events = Collections.synchronizedList(new ArrayList<>());
+        cache.addListener(events::addAll);
+
+        cache.addAll(List.of(student(0), student(1), student(2)));
+        assertTrue(cache.findByIdentity(identity(0)).isPresent());
+        assertTrue(cache.add(student(3)));
+
+        assertEquals(3, cache.size());
+        assertFalse(cache.containsIdentity(identity(1)));
+        assertTrue(cache.containsIdentity(identity(0)));
+        assertTrue(cache.findByIdentity(identity(1)).isEmpty());
+        assertEquals(ChangeEvent.Type.EVICT, events.get(3).type());
+        assertEquals(identity(1), events.get(3).identity());
+
+        CachingRepository.CacheStats stats = cache.getStats();
+        assertEquals(1, stats.hits());
+        assertEquals(1, stats.misses());
+        assertEquals(1, stats.evictions());
+        assertEquals(3, stats.weight());
+        assertEquals(0.5, stats.hitRate());
+        assertThrows(IllegalArgumentException.class, () -> cache.dropIndex(CachingRepository.POLICY_INDEX));
+    }
+
+    @Test
+    @DisplayName("LFU evicts the least used item, never the one being added")
+    void testLfuEviction() {
+        CachingRepository<Student> cache = cache(3, EvictionPolicy.lfu());
+        cache.addAll(List.of(student(0), student(1), student(2)));
+        for (int i = 0; i < 3; i++) {
+            cache.findByIdentity(identity(0));
+            cache.findByIdentity(identity(2));
+        }
+        cache.findByIdentity(identity(1));
+
+        assertTrue(cache.add(student(3)));
+        assertTrue(cache.add(student(4)));
+        assertEquals(List.of(student(0), student(2), student(4)), cache.getAll());
+
+        cache.removeByIdentity(identity(0));
+        cache.clear();
+        assertEquals(0, cache.getStats().weight());
+        assertTrue(cache.add(student(5)));
+    }
+
+    @Test
+    @DisplayName("TinyLFU admission keeps a scan from flushing the hot items")
+    void testTinyLfuAdmission() {
+        CachingRepository<Student> cache = cache(10, EvictionPolicy.tinyLfu(10));
+        for (int i = 0; i < 10; i++) {
+            cache.add(student(i));
+            cache.findByIdentity(identity(i));
+            cache.findByIdentity(identity(i));
+        }
+
+        // one lookup each is not enough to displace an item looked up twice
+        for (int i = 100; i < 150; i++) {
+            assertTrue(cache.findByIdentity(identity(i)).isEmpty());
+            assertFalse(cache.add(student(i)));
+        }
+        assertEquals(10, cache.size());
+        assertTrue(cache.containsIdentity(identity(0)));
+        assertEquals(50, cache.getStats().rejections());
+
+        for (int k = 0; k < 3; k++) {
+            cache.findByIdentity(identity(200));
+        }
+        assertTrue(cache.add(student(200)));
+        assertEquals(10, cache.size());
+        assertEquals(1, cache.getStats().evictions());
+    }
+
+    @Test
+    @DisplayName("A weigher bounds the total weight instead of the entry count")
+    void testWeightBound() {
+        CachingRepository<Student> cache = new CachingRepository<>(Student::email, "Student", 60,
+                student -> student.email().length(), EvictionPolicy.lru());
+        int weight = student(0).email().length();
+        for (int i = 0; i < 5; i++) {
+            cache.add(student(i));
+        }
+
+        assertEquals(60 / weight, cache.size());
+        assertTrue(cache.getStats().weight() <= 60);
+        assertFalse(cache.add(new Student("Name", "Surname", "x".repeat(50) + "@chnu.edu.ua", LocalDate.of(2025, 1, 1))));
+    }
+}
@@ -5,15 +5,31 @@ import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.DisplayName;
 import org.junit.jupiter.params.ParameterizedTest;
 import org.junit.jupiter.params.provider.ValueSource;
+import org.junit.jupiter.params.provider.EnumSource;
 import org.junit.jupiter.params.provider.Arguments;
 import org.junit.jupiter.params.provider.MethodSource;
 import static org.junit.jupiter.api.Assertions.*;
 
 import ua.onlinecourses.model.*;
+import ua.onlinecourses.util.AssignmentUtils;
+import ua.onlinecourses.util.ValueDictionary;
 
+import java.time.Duration;
 import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.Iterator;
 import java.util.List;
+import java.util.Locale;
+import java.util.Map;
 import java.util.Optional;
+import java.util.Set;
+import java.util.Spliterator;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.stream.Collectors;
 import java.util.stream.Stream;
 
 @DisplayName("Generic Repository Tests")
@@ -440,4 +456,766 @@ public class GenericRepositoryTest {
         assertTrue(found.isPresent());
         assertEquals("Yuriy", found.get().firstName());
     }
-}
\ No newline at end of file
+
+    @Test
+    @DisplayName("Test identity index stays consistent after remove and re-add")
+    void testIdentityIndexAfterRemoveAndReAdd() {
+        studentRepository.add(student1);
+        studentRepository.remove(student1);
+
+        assertFalse(studentRepository.containsIdentity(student1.email()));
+        assertTrue(studentRepository.add(student1));
+        assertTrue(studentRepository.findByIdentity(student1.email()).isPresent());
+        assertEquals(1, studentRepository.size());
+    }
+
+    @Test
+    @DisplayName("Test removing item that only shares identity with stored item")
+    void testRemoveItemWithSameIdentityButDifferentValue() {
+        studentRepository.add(student1);
+
+        Student sameEmail = new Student("Anna", "Lozinska", student1.email(), LocalDate.of(2024, 3, 1));
+        boolean removed = studentRepository.remove(sameEmail);
+
+        assertFalse(removed);
+        assertEquals(1, studentRepository.size());
+        assertTrue(studentRepository.containsIdentity(student1.email()));
+    }
+
+    @Test
+    @DisplayName("Test identity index cleared with repository")
+    void testIdentityIndexCleared() {
+        studentRepository.add(student1);
+        studentRepository.add(student2);
+        studentRepository.clear();
+
+        assertFalse(studentRepository.containsIdentity(student1.email()));
+        assertFalse(studentRepository.findByIdentity(student2.email()).isPresent());
+        assertTrue(studentRepository.add(student1));
+    }
+
+    @Test
+    @DisplayName("Test batch add reports per-item results")
+    void testAddAllReportsPerItemResults() {
+        studentRepository.add(student1);
+        Student sameEmailAsStudent2 = new Student("Anna", "Lozinska", student2.email(), LocalDate.of(2024, 3, 1));
+
+        BatchAddResult<Student> result = studentRepository.addAll(
+                Arrays.asList(student1, student2, null, sameEmailAsStudent2, student3));
+
+        assertEquals(List.of(false, true, false, false, true), result.accepted());
+        assertEquals(List.of(student2, student3), result.added());
+        assertEquals(List.of(student1, sameEmailAsStudent2), result.rejected());
+        assertEquals(2, result.addedCount());
+        assertEquals(2, result.rejectedCount());
+        assertEquals(result.rejected().size(), result.rejectedCount());
+        assertEquals(1, result.nullCount());
+        assertEquals(3, studentRepository.size());
+        assertEquals(List.of(student1, student2, student3), studentRepository.getAll());
+    }
+
+    @Test
+    @DisplayName("Test batch add keeps identity index in step")
+    void testAddAllUpdatesIdentityIndex() {
+        studentRepository.addAll(List.of(student1, student2));
+
+        assertTrue(studentRepository.containsIdentity(student1.email()));
+        assertTrue(studentRepository.removeByIdentity(student2.email()));
+        assertFalse(studentRepository.add(student1));
+        assertEquals(1, studentRepository.size());
+    }
+
+    @Test
+    @DisplayName("Test batch add with null or empty batch")
+    void testAddAllNullOrEmpty() {
+        assertEquals(0, studentRepository.addAll(null).addedCount());
+        assertEquals(0, studentRepository.addAll(List.of()).addedCount());
+        assertTrue(studentRepository.isEmpty());
+    }
+
+    @Test
+    @DisplayName("Test secondary index is populated on registration and kept up to date")
+    void testSecondaryIndexMaintenance() {
+        Student sameLastName = new Student("Petro", "Rotar", "petro.rotar@chnu.edu.ua", LocalDate.of(2024, 5, 1));
+        studentRepository.add(student2);
+
+        SecondaryIndex<Student, String> byLastName = studentRepository.registerIndex("lastName", Student::lastName);
+        assertEquals(List.of(student2), byLastName.find("Rotar"));
+
+        studentRepository.addAll(List.of(student1, sameLastName));
+        assertEquals(List.of(student2, sameLastName), studentRepository.findByIndex("lastName", "Rotar"));
+        assertEquals(1, byLastName.count("Vasuluk"));
+
+        studentRepository.remove(student2);
+        assertEquals(List.of(sameLastName), byLastName.find("Rotar"));
+
+        studentRepository.removeByIdentity(sameLastName.email());
+        assertFalse(byLastName.containsKey("Rotar"));
+        assertEquals(Set.of("Vasuluk"), byLastName.keys());
+
+        studentRepository.clear();
+        assertTrue(byLastName.keys().isEmpty());
+    }
+
+    @Test
+    @DisplayName("Test registering duplicate or querying unknown index")
+    void testIndexRegistrationErrors() {
+        studentRepository.registerIndex("firstName", Student::firstName);
+
+        assertThrows(IllegalArgumentException.class,
+                () -> studentRepository.registerIndex("firstName", Student::lastName));
+        assertThrows(IllegalArgumentException.class,
+                () -> studentRepository.findByIndex("unknown", "value"));
+        assertTrue(studentRepository.dropIndex("firstName"));
+        assertFalse(studentRepository.dropIndex("firstName"));
+    }
+
+    @Test
+    @DisplayName("Test range index queries and extrema")
+    void testRangeIndexQueries() {
+        Student sameDateAsStudent2 = new Student("Petro", "Koval", "petro.koval@chnu.edu.ua", LocalDate.of(2024, 1, 15));
+        studentRepository.addAll(List.of(student3, student2, student1, sameDateAsStudent2));
+
+        RangeIndex<Student, LocalDate> byDate = studentRepository.registerRangeIndex("enrollmentDate", Student::enrollmentDate);
+
+        assertEquals(List.of(student2, sameDateAsStudent2, student3),
+                byDate.between(LocalDate.of(2024, 1, 15), LocalDate.of(2024, 2, 20)));
+        assertEquals(List.of(student1), byDate.lessThan(LocalDate.of(2024, 1, 15)));
+        assertEquals(List.of(student3), byDate.greaterThan(LocalDate.of(2024, 1, 15)));
+        assertTrue(byDate.between(LocalDate.of(2024, 2, 1), LocalDate.of(2024, 1, 1)).isEmpty());
+
+        assertEquals(Optional.of(student1), byDate.min());
+        assertEquals(Optional.of(student3), byDate.max());
+        assertEquals(Optional.of(LocalDate.of(2023, 9, 1)), byDate.minKey());
+
+        studentRepository.remove(student3);
+        assertEquals(Optional.of(student2), byDate.max());
+        assertEquals(List.of(student2, sameDateAsStudent2), byDate.allWithMaxKey());
+
+        studentRepository.clear();
+        assertTrue(byDate.min().isEmpty());
+        assertTrue(byDate.maxKey().isEmpty());
+    }
+
+    @Test
+    @DisplayName("Test snapshot stream, forEach and read-only view")
+    void testSnapshotIteration() {
+        studentRepository.addAll(List.of(student1, student2));
+
+        assertEquals(List.of(student1, student2), studentRepository.stream().toList());
+
+        List<Student> visited = new ArrayList<>();
+        studentRepository.forEach(visited::add);
+        assertEquals(List.of(student1, student2), visited);
+
+        List<Student> view = studentRepository.asReadOnlyList();
+        assertThrows(UnsupportedOperationException.class, () -> view.add(student3));
+        studentRepository.add(student3);
+        assertEquals(2, view.size());
+        assertEquals(3, studentRepository.asReadOnlyList().size());
+    }
+
+    @Test
+    @DisplayName("Test stream keeps its snapshot while repository changes")
+    void testStreamIsSnapshot() {
+        studentRepository.addAll(List.of(student1, student2));
+
+        Iterator<Student> iterator = studentRepository.stream().iterator();
+        studentRepository.add(student3);
+        studentRepository.remove(student1);
+
+        List<Student> seen = new ArrayList<>();
+        iterator.forEachRemaining(seen::add);
+        assertEquals(List.of(student1, student2), seen);
+    }
+
+    @ParameterizedTest
+    @EnumSource(StorageMode.class)
+    @DisplayName("Test add, remove and lookups work in every storage mode")
+    void testStorageModes(StorageMode mode) {
+        GenericRepository<Student> repository = new GenericRepository<>(Student::email, "Student", mode);
+        assertEquals(mode, repository.getStorageMode());
+
+        repository.addAll(List.of(student1, student2));
+        repository.add(student3);
+        assertEquals(3, repository.size());
+        assertTrue(repository.contains(student2));
+
+        List<Student> before = repository.asReadOnlyList();
+        assertTrue(repository.remove(student2));
+        assertFalse(repository.contains(student2));
+        assertEquals(List.of(student1, student2, student3), before);
+        assertEquals(List.of(student1, student3), repository.stream().toList());
+
+        repository.clear();
+        assertTrue(repository.isEmpty());
+        assertEquals(List.of(student1, student2, student3), before);
+    }
+
+    @Test
+    @DisplayName("Test segmented storage across chunks with removals and compaction")
+    void testSegmentedStorageManyItems() {
+        GenericRepository<Integer> repository =
+                new GenericRepository<>(String::valueOf, "Number", StorageMode.SEGMENTED);
+        int total = SegmentedStorage.CHUNK_SIZE * 3 + 7;
+        List<Integer> numbers = new ArrayList<>();
+        for (int i = 0; i < total; i++) {
+            numbers.add(i);
+        }
+        repository.addAll(numbers);
+        List<Integer> full = repository.asReadOnlyList();
+
+        for (int i = 0; i < total; i += 2) {
+            assertTrue(repository.removeByIdentity(String.valueOf(i)));
+        }
+        for (int i = 1; i < total; i += 4) {
+            assertTrue(repository.removeByIdentity(String.valueOf(i)));
+        }
+
+        List<Integer> expected = new ArrayList<>();
+        for (int i = 3; i < total; i += 4) {
+            expected.add(i);
+        }
+        assertEquals(expected, repository.asReadOnlyList());
+        assertEquals(expected.size(), repository.size());
+        assertEquals(numbers, full);
+
+        repository.add(total);
+        assertEquals(Integer.valueOf(total), repository.stream().reduce((first, second) -> second).orElseThrow());
+    }
+
+    @Test
+    @DisplayName("Test sorted views are reused until the next mutation")
+    void testSortedViewCaching() {
+        studentRepository.addAll(List.of(student1, student2));
+        long version = studentRepository.getVersion();
+
+        List<Student> first = studentRepository.sorted(Student.BY_NAME);
+        assertSame(first, studentRepository.sorted(Student.BY_NAME));
+        assertThrows(UnsupportedOperationException.class, () -> first.add(student3));
+        assertEquals(version, studentRepository.getVersion());
+
+        assertFalse(studentRepository.add(student1));
+        assertSame(first, studentRepository.sorted(Student.BY_NAME));
+
+        studentRepository.add(student3);
+        assertTrue(studentRepository.getVersion() > version);
+        List<Student> second = studentRepository.sorted(Student.BY_NAME);
+        assertNotSame(first, second);
+        assertEquals(3, second.size());
+        assertEquals(2, first.size());
+
+        studentRepository.remove(student2);
+        assertEquals(List.of(student3, student1), studentRepository.sorted(Student.BY_NAME));
+    }
+
+    @Test
+    @DisplayName("Test sortByIdentity reuses cached order per direction")
+    void testSortByIdentityCaching() {
+        moduleRepository.addAll(List.of(module1, module2));
+
+        List<myModule> ascending = moduleRepository.sortByIdentity("asc");
+        List<myModule> descending = moduleRepository.sortByIdentity("desc");
+        assertSame(ascending, moduleRepository.sortByIdentity("ASC"));
+        assertEquals(ascending.get(0), descending.get(1));
+
+        moduleRepository.clear();
+        assertTrue(moduleRepository.sortByIdentity("asc").isEmpty());
+    }
+
+    @Test
+    @DisplayName("Test topK keeps insertion order for equal keys")
+    void testTopKTies() {
+        Student sameDate = new Student("Olena", "Koval", "olena.koval@chnu.edu.ua", LocalDate.of(2023, 9, 1));
+        studentRepository.addAll(List.of(student2, student1, student3, sameDate));
+
+        List<Student> top = studentRepository.topK(Student.BY_ENROLLMENT_DATE, 3);
+        assertEquals(List.of(student1, sameDate, student2), top);
+        assertEquals(studentRepository.sorted(Student.BY_ENROLLMENT_DATE).subList(0, 3),
+                studentRepository.topK(Student.BY_ENROLLMENT_DATE, 3));
+        assertTrue(studentRepository.topK(null, 3).isEmpty());
+    }
+
+    @Test
+    @DisplayName("Test keyset pagination breaks ties by identity")
+    void testPageTies() {
+        Student sameDate = new Student("Olena", "Koval", "olena.koval@chnu.edu.ua", LocalDate.of(2023, 9, 1));
+        studentRepository.addAll(List.of(student1, student2, student3, sameDate));
+
+        Page<Student> first = studentRepository.page(Student.BY_ENROLLMENT_DATE, null, 1);
+        assertEquals(List.of(sameDate), first.items());
+        Page<Student> second = studentRepository.page(Student.BY_ENROLLMENT_DATE, first.nextKey(), 2);
+        assertEquals(List.of(student1, student2), second.items());
+        assertTrue(second.hasMore());
+
+        Page<Student> last = studentRepository.page(Student.BY_ENROLLMENT_DATE, second.nextKey(), 2);
+        assertEquals(List.of(student3), last.items());
+        assertFalse(last.hasMore());
+        assertNull(studentRepository.page(Student.BY_ENROLLMENT_DATE, student3, 2).nextKey());
+    }
+
+    @Test
+    @DisplayName("Test aggregate keeps sum, count and extrema through removals")
+    void testAggregateMaintenance() {
+        Course course3 = new Course("Algorithms", "Sorting and searching", 5, LocalDate.of(2025, 5, 1));
+        courseRepository.addAll(List.of(course1, course2));
+        AggregateIndex<Course> credits = courseRepository.registerAggregate("credits", Course::credits);
+
+        assertEquals(2L, credits.count());
+        assertEquals(9L, credits.sum());
+        assertEquals(4.5, credits.average(), 0.0001);
+
+        courseRepository.add(course3);
+        assertEquals(14L, credits.sum());
+        assertEquals(4, credits.min().getAsInt());
+        assertEquals(5, credits.max().getAsInt());
+
+        courseRepository.remove(course1);
+        assertEquals(5, credits.max().getAsInt());
+        courseRepository.remove(course3);
+        assertEquals(4, credits.max().getAsInt());
+        assertEquals(1L, credits.getStats().count());
+
+        courseRepository.clear();
+        assertEquals(0.0, credits.average(), 0.0001);
+        assertTrue(credits.min().isEmpty());
+        assertSame(credits, courseRepository.getAggregate("credits"));
+        assertThrows(IllegalArgumentException.class, () -> courseRepository.getAggregate("missing"));
+    }
+
+    @Test
+    @DisplayName("Test entity repository totals come from maintained aggregates")
+    void testRepositoryAggregates() {
+        CourseRepository courses = new CourseRepository();
+        courses.addAll(List.of(course1, course2));
+        assertEquals(9, courses.getTotalCredits());
+        assertEquals(4.5, courses.getAverageCredits(), 0.0001);
+
+        courses.remove(course2);
+        assertEquals(5, courses.getTotalCredits());
+
+        InstructorRepository instructors = new InstructorRepository();
+        instructors.addAll(List.of(instructor1, instructor2));
+        assertEquals(35, instructors.getTotalExpertise());
+        assertEquals(17.5, instructors.getAverageExpertise(), 0.0001);
+        instructors.clear();
+        assertEquals(0.0, instructors.getAverageExpertise(), 0.0001);
+    }
+
+    @Test
+    @DisplayName("Test grouped snapshots follow adds and removes")
+    void testGroupedSnapshots() {
+        Student sameLastName = new Student("Petro", "Vasuluk", "petro.vasuluk@chnu.edu.ua", LocalDate.of(2024, 1, 15));
+        StudentRepository students = new StudentRepository();
+        students.addAll(List.of(student1, student2));
+
+        Map<String, List<Student>> before = students.groupByLastName();
+        assertEquals(Map.of("Vasuluk", List.of(student1), "Rotar", List.of(student2)), before);
+        assertSame(before, students.groupByLastName());
+        assertThrows(UnsupportedOperationException.class, () -> before.put("Shevchuk", List.of(student3)));
+
+        students.add(sameLastName);
+        students.remove(student2);
+        Map<String, List<Student>> after = students.groupByLastName();
+        assertEquals(Map.of("Vasuluk", List.of(student1, sameLastName)), after);
+        assertEquals(2, before.size());
+        assertEquals(Map.of(LocalDate.of(2023, 9, 1), 1L, LocalDate.of(2024, 1, 15), 1L),
+                students.countByEnrollmentDate());
+
+        students.clear();
+        assertTrue(students.groupByLastName().isEmpty());
+        assertTrue(students.countByEnrollmentDate().isEmpty());
+    }
+
+    @Test
+    @DisplayName("Test trigram index matches substring search ignoring case")
+    void testTrigramIndexSearch() {
+        Course course3 = new Course("Java Streams", "Functional data processing", 3, LocalDate.of(2025, 6, 1));
+        courseRepository.addAll(List.of(course1, course2, course3));
+        TrigramIndex<Course> titles = courseRepository.registerTrigramIndex("title", Course::title);
+
+        assertEquals(List.of(course1, course3), titles.search("JAVA"));
+        assertEquals(List.of(course1), titles.search("a prog"));
+        assertEquals(List.of(course2, course3), titles.search("st"));
+        assertTrue(titles.search("javascript").isEmpty());
+        assertTrue(titles.search("").isEmpty());
+
+        courseRepository.remove(course1);
+        assertEquals(List.of(course3), titles.search("java"));
+        assertEquals(2, titles.documentCount());
+
+        courseRepository.clear();
+        assertEquals(0, titles.gramCount());
+        assertTrue(titles.search("st").isEmpty());
+    }
+
+    @Test
+    @DisplayName("Test containing finders agree with a full scan")
+    void testContainingFinders() {
+        ModuleRepository modules = new ModuleRepository();
+        myModule module3 = new myModule("Streams API", "Working with streams and collectors");
+        modules.addAll(List.of(module1, module2, module3));
+
+        for (String term : List.of("Stream", "ep d", "co", "x", "introduction", " concepts ")) {
+            String folded = term.trim().toLowerCase();
+            List<myModule> expected = modules.stream()
+                    .filter(module -> module.content().toLowerCase().contains(folded))
+                    .toList();
+            assertEquals(expected, modules.findByContentContaining(term), term);
+        }
+        assertEquals(List.of(module1), modules.findByTitleContaining("INTRO"));
+    }
+
+    @Test
+    @DisplayName("Test email and domain indexes on StudentRepository")
+    void testStudentEmailIndexes() {
+        Student otherDomain = new Student("Ivan", "Bilyk", "Ivan.Bilyk@Gmail.com", LocalDate.of(2024, 3, 1));
+        StudentRepository students = new StudentRepository();
+        students.addAll(List.of(student1, student2, otherDomain));
+
+        assertEquals(List.of(student1, student2), students.findByEmailDomain("CHNU.edu.ua"));
+        assertEquals(List.of(otherDomain), students.findByEmailDomain(" gmail.com "));
+        assertTrue(students.findByEmailDomain("edu.ua").isEmpty());
+
+        assertTrue(students.hasStudentWithEmail("ivan.bilyk@gmail.com"));
+        assertTrue(students.hasStudentWithEmail(" YURIY.VASULUK@chnu.edu.ua"));
+        assertFalse(students.hasStudentWithEmail(student3.email()));
+
+        students.remove(otherDomain);
+        assertFalse(students.hasStudentWithEmail("ivan.bilyk@gmail.com"));
+        assertTrue(students.findByEmailDomain("gmail.com").isEmpty());
+    }
+
+    @Test
+    @DisplayName("Test query planner drives from the most selective index")
+    void testQueryPlannerChoosesIndex() {
+        StudentRepository students = new StudentRepository();
+        for (int i = 0; i < 40; i++) {
+            String domain = i % 10 == 0 ? "gmail.com" : "chnu.edu.ua";
+            students.add(new Student("Student", "Rotar", "student" + i + "@" + domain, LocalDate.of(2024, 1, 1).plusDays(i)));
+        }
+
+        Query<Student> query = students.query()
+                .whereEquals(StudentRepository.LAST_NAME, "rotar")
+                .whereEquals(StudentRepository.EMAIL_DOMAIN, "gmail.com")
+                .whereBetween(StudentRepository.ENROLLMENT_DATE, LocalDate.of(2024, 1, 1), LocalDate.of(2024, 1, 31));
+        QueryPlan plan = query.explain();
+
+        assertEquals(QueryPlan.Access.INDEX_LOOKUP, plan.access());
+        assertEquals(StudentRepository.EMAIL_DOMAIN_INDEX, plan.source());
+        assertEquals(4, plan.estimatedRows());
+        assertEquals(2, plan.filters().size());
+        assertTrue(plan.explain().contains("RANGE_SCAN " + StudentRepository.ENROLLMENT_DATE_INDEX));
+
+        List<Student> expected = students.stream()
+                .filter(student -> student.email().endsWith("@gmail.com"))
+                .filter(student -> student.enrollmentDate().getMonthValue() == 1)
+                .toList();
+        assertEquals(expected, query.list());
+        assertEquals(4, students.query().whereEquals(StudentRepository.EMAIL_DOMAIN, "gmail.com").count());
+    }
+
+    @Test
+    @DisplayName("Test query planner ignores an index built with another extractor")
+    void testQueryPlannerChecksFieldBinding() {
+        InstructorRepository instructors = new InstructorRepository();
+        instructors.add(new Instructor("John", "Smith", 5));
+        instructors.add(new Instructor("Anna", "Brown", 12));
+
+        Field<Instructor, String> lastName = Field.of(InstructorRepository.LAST_NAME_INDEX, Instructor::lastName);
+        Query<Instructor> query = instructors.query().whereEquals(lastName, "Smith");
+        assertNotEquals(QueryPlan.Access.INDEX_LOOKUP, query.explain().access());
+        assertEquals(1, query.list().size());
+        assertEquals("Smith", query.list().get(0).lastName());
+
+        Field<Instructor, Integer> months = Field.of(InstructorRepository.EXPERTISE_INDEX, i -> i.expertise() * 12);
+        assertEquals(1, instructors.query().whereGreaterThan(months, 100).count());
+
+        Query<Instructor> bound = instructors.query().whereEquals(InstructorRepository.LAST_NAME, "smith");
+        assertEquals(QueryPlan.Access.INDEX_LOOKUP, bound.explain().access());
+        assertEquals(1, bound.count());
+    }
+
+    @Test
+    @DisplayName("Test case-insensitive lookups do not depend on the default locale")
+    void testLookupsIgnoreDefaultLocale() {
+        Locale previous = Locale.getDefault();
+        Locale.setDefault(Locale.forLanguageTag("tr"));
+        try {
+            InstructorRepository instructors = new InstructorRepository();
+            instructors.add(new Instructor("Ivan", "Ivanov", 7));
+            assertEquals(1, instructors.findByLastName("ivanov").size());
+
+            StudentRepository students = new StudentRepository();
+            students.add(new Student("Iryna", "Ilchenko", "iryna@chnu.edu.ua", LocalDate.of(2024, 1, 1)));
+            assertEquals(1, students.findByFirstName("iryna").size());
+            assertEquals(1, students.countByLastName("ILCHENKO"));
+
+            ModuleRepository modules = new ModuleRepository();
+            modules.add(new myModule("Intro to Java", "Basics of the language and the JVM"));
+            assertTrue(modules.hasModuleWithTitle("intro to java"));
+        } finally {
+            Locale.setDefault(previous);
+        }
+    }
+
+    @Test
+    @DisplayName("Test query ordering, limit, projection and full scan fallback")
+    void testQueryOrderLimitProjection() {
+        StudentRepository students = new StudentRepository();
+        students.addAll(List.of(student1, student2, student3));
+
+        List<String> emails = students.query()
+                .whereGreaterThan(StudentRepository.ENROLLMENT_DATE, LocalDate.of(2023, 12, 31))
+                .orderBy("enrollmentDate desc", Student.BY_ENROLLMENT_DATE.reversed())
+                .limit(1)
+                .select(Student::email);
+        assertEquals(List.of(student3.email()), emails);
+
+        Query<Student> scan = students.query().filter("first name starts with A",
+                student -> student.firstName().startsWith("A"));
+        assertEquals(QueryPlan.Access.FULL_SCAN, scan.explain().access());
+        assertEquals(List.of(student2), scan.list());
+
+        Query<Student> byIdentity = students.query()
+                .whereIdentity(student1.email())
+                .whereContains(StudentRepository.LAST_NAME_SEARCH, "VASU");
+        assertEquals(QueryPlan.Access.IDENTITY_LOOKUP, byIdentity.explain().access());
+        assertEquals(List.of(student1), byIdentity.list());
+        assertTrue(students.query().whereIdentity(student1.email())
+                .whereContains(StudentRepository.LAST_NAME_SEARCH, "rotar").list().isEmpty());
+        assertTrue(students.query().limit(0).list().isEmpty());
+    }
+
+    @ParameterizedTest
+    @EnumSource(StorageMode.class)
+    @DisplayName("Test execution policy switches to its own pool above the threshold")
+    void testExecutionPolicyThreshold(StorageMode mode) {
+        StudentRepository students = new StudentRepository(mode);
+        students.setExecutionPolicy(ExecutionPolicy.withThreshold(500, 4));
+        students.addAll(List.of(student1, student2));
+
+        assertEquals(List.of(student1.email(), student2.email()), students.getAllEmails());
+        assertEquals(ExecutionPolicy.Mode.SEQUENTIAL, students.getLastScanMode());
+
+        List<Student> batch = new ArrayList<>();
+        for (int i = 0; i < 3000; i++) {
+            batch.add(new Student("Name", "Surname", "student" + i + "@chnu.edu.ua", LocalDate.of(2024, 1, 1)));
+        }
+        students.addAll(batch);
+
+        ExecutionPolicy.Execution<Set<String>> threads = students.scan(items -> items
+                .map(student -> Thread.currentThread().getName())
+                .collect(Collectors.toSet()));
+        assertEquals(ExecutionPolicy.Mode.PARALLEL, threads.mode());
+        assertEquals(students.size(), threads.elements());
+        assertTrue(threads.result().stream().allMatch(name -> name.startsWith("repository-scan-")));
+
+        List<String> expected = students.stream().map(Student::email).toList();
+        assertEquals(expected, students.getAllEmails());
+        assertEquals(ExecutionPolicy.Mode.PARALLEL, students.getLastScanMode());
+
+        List<Student> scanned = students.query()
+                .filter("email contains 9@", student -> student.email().contains("9@"))
+                .list();
+        assertEquals(students.stream().filter(student -> student.email().contains("9@")).toList(), scanned);
+        assertEquals(ExecutionPolicy.Mode.PARALLEL, students.getLastScanMode());
+        assertTrue(students.getExecutionPolicy().getParallelRuns() >= 3);
+    }
+
+    @ParameterizedTest
+    @EnumSource(StorageMode.class)
+    @DisplayName("Test snapshot spliterator stays exactly sized through splits and removals")
+    void testSnapshotSpliteratorSizing(StorageMode mode) {
+        GenericRepository<Integer> numbers = new GenericRepository<>(String::valueOf, "Number", mode);
+        List<Integer> values = new ArrayList<>();
+        for (int i = 0; i < 5000; i++) {
+            values.add(i);
+        }
+        numbers.addAll(values);
+        for (int i = 0; i < 5000; i += 3) {
+            numbers.remove(i);
+        }
+
+        Spliterator<Integer> suffix = numbers.parallelStream().spliterator();
+        assertTrue(suffix.hasCharacteristics(Spliterator.SIZED | Spliterator.SUBSIZED | Spliterator.IMMUTABLE));
+        assertEquals(numbers.size(), suffix.getExactSizeIfKnown());
+
+        Spliterator<Integer> prefix = suffix.trySplit();
+        assertNotNull(prefix);
+        long prefixSize = prefix.getExactSizeIfKnown();
+        long suffixSize = suffix.getExactSizeIfKnown();
+        assertEquals(numbers.size(), prefixSize + suffixSize);
+        assertTrue(Math.abs(prefixSize - suffixSize) <= SegmentedStorage.CHUNK_SIZE);
+
+        List<Integer> seen = new ArrayList<>();
+        assertTrue(prefix.tryAdvance(seen::add));
+        assertEquals(prefixSize - 1, prefix.getExactSizeIfKnown());
+        prefix.forEachRemaining(seen::add);
+        assertEquals(prefixSize, seen.size());
+        suffix.forEachRemaining(seen::add);
+        assertEquals(numbers.stream().toList(), seen);
+
+        assertEquals(numbers.stream().mapToLong(Integer::longValue).sum(),
+                numbers.parallelStream().mapToLong(Integer::longValue).sum());
+    }
+
+    @Test
+    @DisplayName("Test listeners receive ordered add, remove and clear events")
+    void testSynchronousChangeEvents() {
+        List<List<ChangeEvent<Student>>> received = new ArrayList<>();
+        studentRepository.addListener(received::add);
+        studentRepository.addListener(events -> {
+            throw new IllegalStateException("broken consumer");
+        });
+
+        studentRepository.add(student1);
+        studentRepository.addAll(List.of(student2, student1, student3));
+        studentRepository.add(student1);
+        studentRepository.remove(student2);
+        studentRepository.removeByIdentity(student3.email());
+        studentRepository.clear();
+
+        assertEquals(List.of(1, 2, 1, 1, 1), received.stream().map(List::size).toList());
+        List<ChangeEvent<Student>> events = received.stream().flatMap(List::stream).toList();
+        assertEquals(List.of(ChangeEvent.Type.ADD, ChangeEvent.Type.ADD, ChangeEvent.Type.ADD,
+                        ChangeEvent.Type.REMOVE, ChangeEvent.Type.REMOVE, ChangeEvent.Type.CLEAR),
+                events.stream().map(ChangeEvent::type).toList());
+        assertEquals(List.of(0L, 1L, 2L, 3L, 4L, 5L), events.stream().map(ChangeEvent::sequence).toList());
+        assertEquals(student3, events.get(2).item());
+        assertEquals(student2.email(), events.get(3).identity());
+        assertNull(events.get(5).item());
+        assertTrue(studentRepository.isEmpty());
+    }
+
+    @Test
+    @DisplayName("Test batching dispatcher delivers every event in order off the writing thread")
+    void testBatchingDispatcher() throws InterruptedException {
+        List<ChangeEvent<Integer>> received = Collections.synchronizedList(new ArrayList<>());
+        List<Integer> batchSizes = Collections.synchronizedList(new ArrayList<>());
+        Set<String> threads = ConcurrentHashMap.newKeySet();
+        GenericRepository<Integer> numbers = new GenericRepository<>(String::valueOf, "Number");
+
+        try (BatchingDispatcher<Integer> dispatcher = new BatchingDispatcher<>(events -> {
+            threads.add(Thread.currentThread().getName());
+            batchSizes.add(events.size());
+            received.addAll(events);
+        }, 50, Duration.ofMillis(20), 64)) {
+            numbers.addListener(dispatcher);
+            for (int i = 0; i < 500; i++) {
+                numbers.add(i);
+            }
+            for (int i = 0; i < 500; i += 2) {
+                numbers.remove(i);
+            }
+            assertTrue(dispatcher.flush(Duration.ofSeconds(5)));
+            assertEquals(750, dispatcher.getDeliveredCount());
+            numbers.removeListener(dispatcher);
+        }
+
+        assertEquals(750, received.size());
+        for (int i = 0; i < received.size(); i++) {
+            assertEquals(i, received.get(i).sequence());
+        }
+        assertTrue(batchSizes.stream().allMatch(size -> size <= 50));
+        assertEquals(Set.of("repository-events"), threads);
+
+        Set<Integer> replayed = new HashSet<>();
+        received.forEach(event -> {
+            if (event.type() == ChangeEvent.Type.ADD) {
+                replayed.add(event.item());
+            } else {
+                replayed.remove(event.item());
+            }
+        });
+        assertEquals(Set.copyOf(numbers.getAll()), replayed);
+    }
+
+    @Test
+    @DisplayName("Test batching dispatcher loses no event to a concurrent close, an interrupt or a dead worker")
+    void testBatchingDispatcherCloseAndFailures() throws Exception {
+        AtomicLong received = new AtomicLong();
+        BatchingDispatcher<Integer> dispatcher = new BatchingDispatcher<>(
+                events -> received.addAndGet(events.size()), 8, Duration.ofMillis(1), 4);
+        ChangeEvent<Integer> event = new ChangeEvent<>(ChangeEvent.Type.ADD, 0, "Number", "1", 1);
+        List<Thread> writers = new ArrayList<>();
+        for (int w = 0; w < 4; w++) {
+            Thread writer = new Thread(() -> {
+                for (int i = 0; i < 2_000; i++) {
+                    dispatcher.onChanges(List.of(event, event));
+                }
+            });
+            writers.add(writer);
+            writer.start();
+        }
+        Thread.sleep(5);
+        dispatcher.close();
+        for (Thread writer : writers) {
+            writer.join();
+        }
+        // every event accepted before close() was delivered, none was queued behind the stop marker
+        assertTrue(dispatcher.flush(Duration.ofMillis(100)));
+        assertEquals(received.get(), dispatcher.getDeliveredCount());
+
+        List<ChangeEvent<Integer>> delivered = Collections.synchronizedList(new ArrayList<>());
+        try (BatchingDispatcher<Integer> interrupted = new BatchingDispatcher<>(delivered::addAll, 2,
+                Duration.ofMillis(1), 1)) {
+            Thread.currentThread().interrupt();
+            interrupted.onChanges(List.of(event, event, event, event, event));
+            assertTrue(Thread.interrupted());
+            assertTrue(interrupted.flush(Duration.ofSeconds(5)));
+            assertEquals(5, delivered.size());
+        }
+
+        BatchingDispatcher<Integer> broken = new BatchingDispatcher<>(events -> {
+            throw new AssertionError("listener bug");
+        }, 1, Duration.ZERO, 1);
+        broken.onChanges(List.of(event));
+        // with the worker gone and the queue full, writers and close() return instead of hanging
+        Thread writer = new Thread(() -> {
+            broken.onChanges(List.of(event, event, event));
+            broken.close();
+        });
+        writer.start();
+        writer.join(5_000);
+        assertFalse(writer.isAlive());
+    }
+
+    @Test
+    @DisplayName("Test canonicalizer shares equal modules and names between stored items")
+    void testCanonicalizerSharesValues() {
+        ValueDictionary dictionary = new ValueDictionary(1000);
+        AssignmentRepository assignments = new AssignmentRepository();
+        assignments.setCanonicalizer(assignment -> AssignmentUtils.canonical(assignment, dictionary));
+        LocalDate dueDate = LocalDate.now().plusDays(3);
+        for (int i = 0; i < 5; i++) {
+            // a fresh module and title per assignment, as a parser would produce them
+            myModule module = new myModule(new String("Interning"), "Dictionary encoded values");
+            assignments.add(new Assignment(module, dueDate.plusDays(i), 20 + i, Mark.GOOD));
+        }
+
+        List<Assignment> stored = assignments.getAll();
+        assertEquals(5, stored.size());
+        assertTrue(stored.stream().allMatch(assignment -> assignment.module() == stored.get(0).module()));
+        ValueDictionary.Stats stats = dictionary.getStats();
+        assertEquals(1, stats.values());
+        assertEquals(4, stats.valueHits());
+        assertTrue(stats.deduplicatedBytes() > 0);
+
+        // each repository has its own dictionary, and emails never enter it
+        StudentRepository students = new StudentRepository();
+        StudentRepository others = new StudentRepository();
+        students.add(new Student("Oksana", "Melnyk", "oksana.melnyk@chnu.edu.ua", LocalDate.of(2025, 1, 3)));
+        students.add(new Student("Oksana", "Melnyk", "o.melnyk@chnu.edu.ua", LocalDate.of(2025, 1, 4)));
+        assertEquals(2, students.getValueDictionary().getStats().strings());
+        assertEquals(0, others.getValueDictionary().getStats().strings());
+
+        ValueDictionary tiny = new ValueDictionary(1);
+        String first = tiny.intern(new String("kept"));
+        assertSame(first, tiny.intern(new String("kept")));
+        String unique = new String("not kept");
+        assertSame(unique, tiny.intern(unique));
+        tiny.clear();
+        assertEquals(0, tiny.getStats().strings());
+    }
+}
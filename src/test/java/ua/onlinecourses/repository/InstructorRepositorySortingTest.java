@@ -197,4 +197,31 @@ class InstructorRepositorySortingTest {
         assertEquals("Онипа", sorted.get(1).lastName());
         assertEquals("Скрипа", sorted.get(2).lastName());
     }
-}
\ No newline at end of file
+
+    @Test
+    @DisplayName("topByExpertise should match the head of sortByExpertise")
+    void testTopByExpertise() {
+        List<Instructor> top = instructorRepository.topByExpertise(3);
+
+        assertEquals(instructorRepository.sortByExpertise().subList(0, 3), top);
+        assertEquals(List.of(instructor4, instructor2, instructor5), instructorRepository.topByExpertise(3));
+        assertEquals(5, instructorRepository.topByExpertise(10).size());
+        assertTrue(instructorRepository.topByExpertise(0).isEmpty());
+    }
+
+    @Test
+    @DisplayName("pageByExpertise should walk all instructors page by page")
+    void testPageByExpertise() {
+        Page<Instructor> first = instructorRepository.pageByExpertise(null, 2);
+        assertEquals(List.of(instructor4, instructor2), first.items());
+        assertTrue(first.hasMore());
+
+        Page<Instructor> second = instructorRepository.pageByExpertise(first.nextKey(), 2);
+        assertEquals(List.of(instructor5, instructor1), second.items());
+        assertTrue(second.hasMore());
+
+        Page<Instructor> third = instructorRepository.pageByExpertise(second.nextKey(), 2);
+        assertEquals(List.of(instructor3), third.items());
+        assertFalse(third.hasMore());
+    }
+}
@@ -0,0 +1,191 @@
+package ua.onlinecourses.repository;
+
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import ua.onlinecourses.model.Instructor;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Objects;
+import java.util.stream.Stream;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+@DisplayName("LsmStorage Tests")
+class LsmStorageTest {
+
+    @TempDir
+    Path tempDir;
+
+    private LsmStorage<Instructor> open(int memtableLimit) throws IOException {
+        return LsmStorage.open(tempDir.resolve("instructors"), Instructor.class, memtableLimit, 3, false);
+    }
+
+    private static GenericRepository<Instructor> repository(LsmStorage<Instructor> storage) {
+        return new GenericRepository<>(LsmStorageTest::identity, "Instructor", storage);
+    }
+
+    // the instructor code repeats across generated names, so these tests key on the full name
+    private static String identity(Instructor instructor) {
+        return instructor.firstName() + " " + instructor.lastName();
+    }
+
+    private static Instructor instructor(int i) {
+        return new Instructor("Name", "Surname" + (char) ('a' + i % 26) + (char) ('a' + i / 26), 5 + i % 30);
+    }
+
+    @Test
+    @DisplayName("Items survive memtable flushes, compaction and reopening")
+    void testFlushCompactAndReopen() throws IOException {
+        List<Instructor> expected = new ArrayList<>();
+        try (LsmStorage<Instructor> storage = open(8)) {
+            GenericRepository<Instructor> repository = repository(storage);
+            for (int i = 0; i < 40; i++) {
+                Instructor instructor = instructor(i);
+                assertTrue(repository.add(instructor));
+                expected.add(instructor);
+            }
+            for (int i = 0; i < 40; i += 4) {
+                assertTrue(repository.remove(expected.get(i)));
+            }
+            assertFalse(repository.add(expected.get(1)));
+            assertTrue(storage.getFlushCount() >= 5);
+
+            storage.compact();
+            assertEquals(1, storage.getSegmentCount());
+            assertEquals(30, repository.size());
+            assertFalse(repository.contains(expected.get(0)));
+            assertEquals(expected.get(5), repository.findByIdentity(identity(expected.get(5))).orElseThrow());
+        }
+        for (int i = 0; i < 40; i += 4) {
+            expected.set(i, null);
+        }
+        expected.removeIf(Objects::isNull);
+
+        try (LsmStorage<Instructor> storage = open(8)) {
+            GenericRepository<Instructor> repository = repository(storage);
+            assertEquals(30, repository.size());
+            assertEquals(repository.sortByIdentity("asc"), repository.getAll());
+            assertEquals(expected.size(), repository.getAll().size());
+            assertTrue(repository.getAll().containsAll(expected));
+            assertEquals(30, repository.parallelStream().count());
+
+            // sequences carry on, so an unordered query still lists items in insertion order
+            Instructor later = new Instructor("Aaron", "Abbott", 12);
+            repository.add(later);
+            List<Instructor> listed = repository.query().list();
+            assertEquals(later, listed.get(listed.size() - 1));
+        }
+    }
+
+    @Test
+    @DisplayName("Unflushed writes are replayed from the log and a torn tail is dropped")
+    void testLogReplay() throws IOException {
+        Instructor first = instructor(0);
+        Instructor second = instructor(1);
+        try (LsmStorage<Instructor> storage = open(100)) {
+            GenericRepository<Instructor> repository = repository(storage);
+            repository.addAll(List.of(first, second, instructor(2)));
+            repository.removeByIdentity(identity(instructor(2)));
+            assertEquals(0, storage.getSegmentCount());
+        }
+        Files.write(tempDir.resolve("instructors").resolve("wal.log"), new byte[]{0, 0, 0},
+                StandardOpenOption.APPEND);
+
+        try (LsmStorage<Instructor> storage = open(100)) {
+            GenericRepository<Instructor> repository = repository(storage);
+            assertEquals(List.of(first, second), repository.getAll());
+            assertTrue(repository.containsIdentity(identity(second)));
+            assertFalse(repository.containsIdentity(identity(instructor(2))));
+
+            repository.clear();
+            assertTrue(repository.isEmpty());
+            repository.add(second);
+        }
+
+        try (LsmStorage<Instructor> storage = open(100)) {
+            assertEquals(List.of(second), repository(storage).getAll());
+        }
+    }
+
+    @Test
+    @DisplayName("Secondary indexes are built from the storage's entries")
+    void testIndexOverLsmStorage() throws IOException {
+        try (LsmStorage<Instructor> storage = open(4)) {
+            GenericRepository<Instructor> repository = repository(storage);
+            for (int i = 0; i < 20; i++) {
+                repository.add(instructor(i));
+            }
+            repository.registerIndex("expertise", Instructor::expertise);
+            assertEquals(List.of(instructor(3)), repository.findByIndex("expertise", 8));
+
+            repository.remove(instructor(3));
+            assertTrue(repository.findByIndex("expertise", 8).isEmpty());
+        }
+    }
+
+    @Test
+    @DisplayName("Short-circuiting reads release their segments, so compaction can delete its inputs")
+    void testShortCircuitReadsReleaseSegments() throws IOException {
+        Path directory = tempDir.resolve("instructors");
+        try (LsmStorage<Instructor> storage = open(4)) {
+            GenericRepository<Instructor> repository = repository(storage);
+            // two segments stay below the background compaction trigger of three
+            for (int i = 0; i < 8; i++) {
+                repository.add(instructor(i));
+            }
+            storage.flush();
+            assertEquals(2, storage.getSegmentCount());
+
+            try (Stream<Instructor> items = repository.stream()) {
+                assertTrue(items.anyMatch(instructor(0)::equals));
+            }
+            try (Stream<Instructor> items = repository.parallelStream()) {
+                assertTrue(items.anyMatch(instructor(1)::equals));
+            }
+            assertTrue(repository.scan(items -> items.anyMatch(instructor(2)::equals)).result());
+            repository.forEach(Objects::requireNonNull);
+
+            storage.compact();
+            assertEquals(1, storage.getSegmentCount());
+            try (Stream<Path> files = Files.list(directory)) {
+                assertEquals(1, files.filter(file -> file.toString().endsWith(".seg")).count());
+            }
+        }
+    }
+
+    @Test
+    @DisplayName("Compaction drops tombstones, so the compacted segment holds only live items")
+    void testCompactionDropsTombstones() throws IOException {
+        Path directory = tempDir.resolve("instructors");
+        try (LsmStorage<Instructor> storage = open(8)) {
+            GenericRepository<Instructor> repository = repository(storage);
+            for (int i = 0; i < 50; i++) {
+                repository.add(instructor(i));
+            }
+            for (int i = 0; i < 30; i++) {
+                assertTrue(repository.remove(instructor(i)));
+            }
+            storage.flush();
+            storage.compact();
+            assertEquals(1, storage.getSegmentCount());
+            assertEquals(20, repository.size());
+
+            Path compacted;
+            try (Stream<Path> files = Files.list(directory)) {
+                compacted = files.filter(file -> file.toString().endsWith(".seg")).findFirst().orElseThrow();
+            }
+            LsmSegment segment = LsmSegment.open(compacted, 0);
+            try {
+                assertEquals(repository.size(), segment.count());
+            } finally {
+                segment.closeQuietly();
+            }
+        }
+    }
+}
@@ -0,0 +1,131 @@
+package ua.onlinecourses.repository;
+
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import ua.onlinecourses.model.Course;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Spliterator;
+import java.util.stream.Stream;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+@DisplayName("OffHeapStorage Tests")
+class OffHeapStorageTest {
+
+    @TempDir
+    Path tempDir;
+
+    private OffHeapStorage<Course> open() throws IOException {
+        // small chunks, so a few hundred courses already span several mapped regions
+        return OffHeapStorage.open(tempDir.resolve("courses"), Course.class, 4096, false);
+    }
+
+    private static GenericRepository<Course> repository(OffHeapStorage<Course> storage) {
+        return new GenericRepository<>(Course::getFullName, "Course", storage);
+    }
+
+    private static List<Course> courses(int count) {
+        LocalDate start = LocalDate.now().plusDays(10);
+        List<Course> courses = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            courses.add(new Course(String.format("%03d mapped course", i), "Stored off heap", 1 + i % 5,
+                    start.plusDays(i)));
+        }
+        return courses;
+    }
+
+    @Test
+    @DisplayName("Items are decoded from the mapped files after reopening")
+    void testReopenRemapsItems() throws IOException {
+        List<Course> courses = courses(300);
+        try (OffHeapStorage<Course> storage = open()) {
+            GenericRepository<Course> repository = repository(storage);
+            repository.addAll(courses);
+            assertTrue(repository.remove(courses.get(7)));
+            assertFalse(repository.add(courses.get(8)));
+            assertTrue(storage.getDataBytes() > 4096);
+        }
+
+        try (OffHeapStorage<Course> storage = open()) {
+            GenericRepository<Course> repository = repository(storage);
+            List<Course> expected = new ArrayList<>(courses);
+            expected.remove(7);
+            assertEquals(expected, repository.getAll());
+            assertEquals(299, repository.size());
+            assertEquals(courses.get(42), repository.findByIdentity(courses.get(42).getFullName()).orElseThrow());
+            assertFalse(repository.containsIdentity(courses.get(7).getFullName()));
+            assertEquals(299, repository.parallelStream().count());
+
+            Course extra = courses(301).get(300);
+            repository.add(extra);
+            List<Course> listed = repository.query().list();
+            assertEquals(extra, listed.get(listed.size() - 1));
+        }
+    }
+
+    @Test
+    @DisplayName("Snapshots keep the items removed after they were taken")
+    void testSnapshotIsolation() throws IOException {
+        try (OffHeapStorage<Course> storage = open()) {
+            GenericRepository<Course> repository = repository(storage);
+            List<Course> courses = courses(100);
+            repository.addAll(courses);
+
+            Spliterator<Course> exact = repository.parallelStream().spliterator();
+            assertTrue(exact.hasCharacteristics(Spliterator.SIZED));
+
+            Iterator<Course> before = repository.stream().iterator();
+            repository.remove(courses.get(0));
+            repository.remove(courses.get(50));
+            int seen = 0;
+            while (before.hasNext()) {
+                before.next();
+                seen++;
+            }
+            assertEquals(100, seen);
+            assertEquals(98, repository.stream().count());
+            assertFalse(repository.stream().spliterator().hasCharacteristics(Spliterator.SIZED));
+        }
+    }
+
+    @Test
+    @DisplayName("Compaction and clear reclaim space without losing live items")
+    void testCompactAndClear() throws IOException {
+        List<Course> courses = courses(200);
+        try (OffHeapStorage<Course> storage = open()) {
+            GenericRepository<Course> repository = repository(storage);
+            repository.addAll(courses);
+            for (int i = 0; i < 200; i += 2) {
+                repository.remove(courses.get(i));
+            }
+            Stream<Course> beforeCompaction = repository.stream();
+            long bytesBefore = storage.getDataBytes();
+
+            storage.compact();
+            assertEquals(100, storage.getSlotCount());
+            assertTrue(storage.getDataBytes() < bytesBefore);
+            assertEquals(100, beforeCompaction.count());
+            assertEquals(courses.get(1), repository.findByIdentity(courses.get(1).getFullName()).orElseThrow());
+        }
+        try (OffHeapStorage<Course> storage = open()) {
+            GenericRepository<Course> repository = repository(storage);
+            assertEquals(100, repository.size());
+            repository.clear();
+            repository.add(courses.get(0));
+        }
+        try (OffHeapStorage<Course> storage = open()) {
+            assertEquals(List.of(courses.get(0)), repository(storage).getAll());
+        }
+        try (Stream<Path> files = Files.list(tempDir.resolve("courses"))) {
+            assertEquals(2, files.count());
+        }
+    }
+}
@@ -0,0 +1,141 @@
+package ua.onlinecourses.repository;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import ua.onlinecourses.model.Student;
+
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+@DisplayName("PartitionedRepository Tests")
+class PartitionedRepositoryTest {
+
+    private static final String[] FIRST_NAMES = {"Anna", "Bohdan", "Iryna", "Oleh", "Taras"};
+
+    private PartitionedRepository<Student, StudentRepository> partitioned;
+    private StudentRepository single;
+    private List<Student> students;
+
+    private static Student student(int i) {
+        return new Student(FIRST_NAMES[i % FIRST_NAMES.length], "Surname" + (char) ('a' + i % 7),
+                String.format("student%04d@chnu.edu.ua", i), LocalDate.of(2025, 1, 1).plusDays(i % 40));
+    }
+
+    @BeforeEach
+    void setUp() {
+        partitioned = new PartitionedRepository<>(4, StudentRepository::new);
+        // the parallel fan-out is what the tests exercise, even for a few hundred students
+        partitioned.setExecutionPolicy(ExecutionPolicy.withThreshold(0, 4));
+        single = new StudentRepository();
+        students = new ArrayList<>();
+        for (int i = 0; i < 200; i++) {
+            students.add(student(i));
+        }
+        partitioned.addAll(students);
+        single.addAll(students);
+    }
+
+    @Test
+    @DisplayName("Writes and identity lookups go to the owning partition")
+    void testRoutingAndBatchResults() {
+        assertEquals(200, partitioned.size());
+        assertTrue(partitioned.getPartitionSizes().stream().allMatch(size -> size > 20));
+        assertEquals(students.get(17), partitioned.findByIdentity(students.get(17).email()).orElseThrow());
+        assertTrue(partitioned.containsIdentity(students.get(3).email()));
+        assertTrue(partitioned.findByIdentity(null).isEmpty());
+
+        List<Student> batch = List.of(students.get(0), student(500), student(501), student(500));
+        BatchAddResult<Student> result = partitioned.addAll(batch);
+        assertEquals(List.of(false, true, true, false), result.accepted());
+        assertEquals(List.of(student(500), student(501)), result.added());
+        assertEquals(List.of(students.get(0), student(500)), result.rejected());
+
+        assertTrue(partitioned.remove(students.get(5)));
+        assertTrue(partitioned.removeByIdentity(students.get(6).email()));
+        assertFalse(partitioned.contains(students.get(5)));
+        assertEquals(200, partitioned.size());
+        assertEquals(200, partitioned.stream().count());
+        assertEquals(200, partitioned.parallelStream().count());
+    }
+
+    @Test
+    @DisplayName("Sorted reads merge to the same order as a single repository")
+    void testMergedSortsMatchSingleRepository() {
+        assertEquals(single.sorted(Student.BY_ENROLLMENT_DATE.thenComparing(Student::email)),
+                partitioned.sorted(Student.BY_ENROLLMENT_DATE.thenComparing(Student::email)));
+        assertEquals(single.sortByIdentity("desc"), partitioned.sortByIdentity("desc"));
+        assertEquals(single.sortByIdentity("asc"), partitioned.sortByIdentity("asc"));
+        assertEquals(single.topK(Student.BY_NAME, 15), partitioned.topK(Student.BY_NAME, 15));
+        assertEquals(new HashSet<>(single.sorted(null)), new HashSet<>(partitioned.sorted(null)));
+
+        List<Student> paged = new ArrayList<>();
+        Page<Student> page = partitioned.page(Student.BY_ENROLLMENT_DATE, null, 30);
+        paged.addAll(page.items());
+        while (page.hasMore()) {
+            page = partitioned.page(Student.BY_ENROLLMENT_DATE, page.nextKey(), 30);
+            paged.addAll(page.items());
+        }
+        List<Student> expected = new ArrayList<>();
+        Page<Student> singlePage = single.page(Student.BY_ENROLLMENT_DATE, null, 200);
+        expected.addAll(singlePage.items());
+        assertEquals(expected, paged);
+    }
+
+    @Test
+    @DisplayName("Indexes, aggregates and entity queries are gathered from every partition")
+    void testIndexesAndEntityQueries() {
+        assertEquals(new HashSet<>(single.findByFirstName("Anna")),
+                new HashSet<>(partitioned.gather(partition -> partition.findByFirstName("Anna"))));
+        assertEquals(single.sortByName(), partitioned.gatherSorted(StudentRepository::sortByName, Student.BY_NAME));
+
+        partitioned.registerAggregate("emailLength", student -> student.email().length());
+        single.registerAggregate("emailLength", student -> student.email().length());
+        assertEquals(single.getAggregate("emailLength").getStats(), partitioned.getAggregateStats("emailLength"));
+
+        partitioned.registerIndex("day", Student::enrollmentDate);
+        single.registerIndex("day", Student::enrollmentDate);
+        LocalDate day = LocalDate.of(2025, 1, 11);
+        assertEquals(new HashSet<>(single.findByIndex("day", day)), new HashSet<>(partitioned.findByIndex("day", day)));
+        assertTrue(partitioned.dropIndex("day"));
+
+        partitioned.clear();
+        assertTrue(partitioned.isEmpty());
+        assertEquals(0, partitioned.getAggregateStats("emailLength").count());
+    }
+
+    @Test
+    @DisplayName("Concurrent writers to different partitions all land")
+    void testConcurrentWriters() throws Exception {
+        partitioned.clear();
+        ExecutorService writers = Executors.newFixedThreadPool(4);
+        try {
+            List<Future<?>> futures = new ArrayList<>();
+            for (int w = 0; w < 4; w++) {
+                int writer = w;
+                futures.add(writers.submit(() -> {
+                    for (int i = writer; i < 800; i += 4) {
+                        assertTrue(partitioned.add(student(1000 + i)));
+                    }
+                }));
+            }
+            for (Future<?> future : futures) {
+                future.get();
+            }
+        } finally {
+            writers.shutdown();
+        }
+
+        assertEquals(800, partitioned.size());
+        for (int i = 0; i < 800; i += 37) {
+            assertTrue(partitioned.containsIdentity(student(1000 + i).email()));
+        }
+    }
+}
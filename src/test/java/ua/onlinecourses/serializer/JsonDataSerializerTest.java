@@ -5,7 +5,9 @@ import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.DisplayName;
 import org.junit.jupiter.api.Test;
 import ua.onlinecourses.exception.DataSerializationException;
+import ua.onlinecourses.model.Assignment;
 import ua.onlinecourses.model.Student;
+import ua.onlinecourses.model.myModule;
 
 import java.io.File;
 import java.time.LocalDate;
@@ -130,4 +132,23 @@ class JsonDataSerializerTest {
         List<Student> loaded = serializer.deserialize(testFilePath, Student.class);
         assertTrue(loaded.isEmpty());
     }
-}
\ No newline at end of file
+
+    @Test
+    @DisplayName("deserialize should share embedded modules within one load")
+    void testDeserializeSharesRepeatedValues() throws DataSerializationException {
+        JsonDataSerializer<Assignment> assignmentSerializer = new JsonDataSerializer<>();
+        LocalDate dueDate = LocalDate.now().plusDays(7);
+        List<Assignment> assignments = List.of(
+                new Assignment(new myModule("Streams", "Parallel streams and spliterators"), dueDate, 50, null),
+                new Assignment(new myModule("Streams", "Parallel streams and spliterators"), dueDate.plusDays(1),
+                        80, null));
+        assignmentSerializer.serialize(assignments, testFilePath);
+        List<Assignment> loadedAssignments = assignmentSerializer.deserialize(testFilePath, Assignment.class);
+
+        assertEquals(assignments, loadedAssignments);
+        assertSame(loadedAssignments.get(0).module(), loadedAssignments.get(1).module());
+        // each read has its own dictionary, so nothing is kept between loads
+        List<Assignment> reloaded = assignmentSerializer.deserialize(testFilePath, Assignment.class);
+        assertNotSame(loadedAssignments.get(0).module(), reloaded.get(0).module());
+    }
+}